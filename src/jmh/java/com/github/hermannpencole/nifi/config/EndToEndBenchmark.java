@@ -0,0 +1,203 @@
+package com.github.hermannpencole.nifi.config;
+
+import com.github.hermannpencole.nifi.config.standin.NifiStandIn;
+import com.github.hermannpencole.nifi.config.standin.SyntheticCanvas;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * benchmarks of the modes from the command line to the end of the run, against the stand-in of nifi with a canvas of
+ * n groups of 10 running processors (two stand-ins for the deployment on many clusters). Each run starts on a new
+ * canvas, the requests of the runs are reported by jmh with the score. The server mode runs the same services and is
+ * not measured here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    private static final String CANVAS = "canvas";
+
+    private static final int PROCESSORS = 10;
+
+    @Param({"10", "100"})
+    public int groups;
+
+    /**
+     * latency of each request in millisecond
+     */
+    @Param({"0", "5"})
+    public long latency;
+
+    /**
+     * delay before a change of state is visible in millisecond
+     */
+    @Param({"100"})
+    public long stateDelay;
+
+    /**
+     * part of the updates of processor refused as a stale revision (400), retried by nifi-config with the last revision
+     */
+    @Param({"0"})
+    public double conflictRate;
+
+    /**
+     * part of the schedules of group refused as the components are stopping (409), polled again by nifi-config
+     */
+    @Param({"0"})
+    public double stateErrorRate;
+
+    private NifiStandIn standIn;
+
+    /**
+     * the second cluster of the deployment on many clusters
+     */
+    private NifiStandIn otherStandIn;
+
+    private File directory;
+
+    private File configuration;
+
+    private File template;
+
+    /**
+     * the requests received by the stand-ins during the runs of the iteration, reported by jmh as secondary results
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Requests {
+
+        public long requests;
+
+        public long reads;
+
+        public long writes;
+
+        public long statusPolls;
+
+        @Setup(Level.Iteration)
+        public void clean() {
+            requests = 0;
+            reads = 0;
+            writes = 0;
+            statusPolls = 0;
+        }
+
+        @TearDown(Level.Invocation)
+        public void count(EndToEndBenchmark benchmark) {
+            count(benchmark.standIn.getRequests());
+            count(benchmark.otherStandIn.getRequests());
+        }
+
+        private void count(Map<String, Long> requestsByEndpoint) {
+            requestsByEndpoint.forEach((endpoint, count) -> {
+                requests += count;
+                if (endpoint.startsWith("GET ")) {
+                    reads += count;
+                } else {
+                    writes += count;
+                }
+                if ("GET /flow/process-groups/{id}/status".equals(endpoint)) {
+                    statusPolls += count;
+                }
+            });
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.github.hermannpencole")).setLevel(ch.qos.logback.classic.Level.WARN);
+        standIn = new NifiStandIn().stateDelay(stateDelay).templateSize(groups, PROCESSORS);
+        otherStandIn = new NifiStandIn().stateDelay(stateDelay).templateSize(groups, PROCESSORS);
+        directory = Files.createTempDirectory("end-to-end").toFile();
+        configuration = new File(directory, "configuration.json");
+        template = new File(directory, "template.xml");
+        FileUtils.write(template, "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<template encoding-version=\"1.0\"><description></description><name>template</name><snippet></snippet></template>\n", StandardCharsets.UTF_8);
+        //the configuration of the canvas, for updateConfig and plan
+        canvas();
+        Main.main(args("extractConfig", "-c", configuration.getPath()));
+        for (NifiStandIn nifi : Arrays.asList(standIn, otherStandIn)) {
+            nifi.latency(latency).staleRevision("PUT /processors/{id}", conflictRate)
+                    .error("PUT /flow/process-groups/{id}", stateErrorRate, 409, "Error injected cannot be started because it is not stopped. Current state is STOPPING");
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void canvas() {
+        for (NifiStandIn nifi : Arrays.asList(standIn, otherStandIn)) {
+            nifi.reset();
+            SyntheticCanvas.generate(nifi, NifiStandIn.ROOT_ID, CANVAS, groups, PROCESSORS, true);
+            nifi.resetRequests();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        standIn.close();
+        otherStandIn.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public void extractConfig(Requests requests) throws Exception {
+        Main.main(args("extractConfig", "-c", new File(directory, "extract.json").getPath()));
+    }
+
+    @Benchmark
+    public void updateConfig(Requests requests) throws Exception {
+        Main.main(args("updateConfig", "-c", configuration.getPath()));
+    }
+
+    @Benchmark
+    public void updateConfigDiff(Requests requests) throws Exception {
+        Main.main(args("updateConfig", "-c", configuration.getPath(), "-diff"));
+    }
+
+    @Benchmark
+    public void plan(Requests requests) throws Exception {
+        Main.main(args("plan", "-c", configuration.getPath()));
+    }
+
+    @Benchmark
+    public void undeploy(Requests requests) throws Exception {
+        Main.main(args("undeploy"));
+    }
+
+    @Benchmark
+    public void deployTemplate(Requests requests) throws Exception {
+        Main.main(args("deployTemplate", "-c", template.getPath()));
+    }
+
+    /**
+     * updateConfig on two clusters in parallel
+     */
+    @Benchmark
+    public void updateConfigClusters(Requests requests) throws Exception {
+        Main.main(argsOn(standIn.getUrl() + "," + otherStandIn.getUrl(), "updateConfig", "-c", configuration.getPath()));
+    }
+
+    private String[] args(String mode, String... options) {
+        return argsOn(standIn.getUrl(), mode, options);
+    }
+
+    private String[] argsOn(String nifi, String mode, String... options) {
+        List<String> args = Arrays.stream(options).collect(Collectors.toList());
+        args.addAll(0, Arrays.asList("-n", nifi, "-m", mode, "-b", "root>" + CANVAS));
+        return args.toArray(new String[args.size()]);
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmarks of the handling of the paths of the routes : the parse of the ends of the route, and the search of the
+ * next group of the path among the n children of a group
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreateRouteServiceBenchmark {
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int components;
+
+    private String address;
+
+    private List<ProcessGroupEntity> groups;
+
+    private String lastGroupName;
+
+    @Setup
+    public void setup() {
+        List<String> path = new ArrayList<>();
+        path.add("root");
+        for (int i = 0; i < 10; i++) {
+            path.add(" " + SyntheticFlow.groupName(i) + " ");
+        }
+        address = String.join(">", path);
+        groups = SyntheticFlow.groups(components);
+        lastGroupName = SyntheticFlow.groupName(components - 1);
+    }
+
+    @Benchmark
+    public List<String> toPath() {
+        return CreateRouteService.toPath(address);
+    }
+
+    /**
+     * the step of the path to the last child of the group
+     */
+    @Benchmark
+    public Optional<ProcessGroupEntity> findNextGroup() {
+        return FunctionUtils.findByComponentName(groups, lastGroupName);
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.ConnectionPort;
+import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.config.model.GroupProcessorsReader;
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorDTO;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmarks of the parse and the serialization of a configuration of n processors
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupProcessorsEntityBenchmark {
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int components;
+
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+
+    private GroupProcessorsEntity configuration;
+
+    private String json;
+
+    @Setup
+    public void setup() {
+        configuration = SyntheticFlow.configuration(components);
+        json = gson.toJson(configuration);
+    }
+
+    @Benchmark
+    public GroupProcessorsEntity parse() {
+        return gson.fromJson(json, GroupProcessorsEntity.class);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return gson.toJson(configuration);
+    }
+
+    /**
+     * parse group by group as updateConfig reads the configuration
+     */
+    @Benchmark
+    public int readStreaming() throws IOException {
+        int[] processors = new int[1];
+        new GroupProcessorsReader<String>(new GroupProcessorsReader.Visitor<String>() {
+            @Override
+            public String enterGroup(String parent, String name) {
+                return name;
+            }
+
+            @Override
+            public void processor(String group, ProcessorDTO processor) {
+                processors[0]++;
+            }
+
+            @Override
+            public void controllerService(String group, ControllerServiceDTO controllerService) {
+            }
+
+            @Override
+            public void connection(String group, ConnectionPort connection) {
+            }
+        }).read(new StringReader(json), "root");
+        return processors[0];
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.swagger.client.model.PositionDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupFlowEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmarks of ProcessGroupService on a group of n components
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessGroupServiceBenchmark {
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int components;
+
+    private ProcessGroupService processGroupService;
+
+    private ProcessGroupFlowEntity flow;
+
+    private String lastProcessorId;
+
+    @Setup
+    public void setup() {
+        processGroupService = SyntheticFlow.injector().getInstance(ProcessGroupService.class);
+        flow = SyntheticFlow.flow(components);
+        lastProcessorId = SyntheticFlow.processorId(components / 2 - 1);
+    }
+
+    /**
+     * order of a new snapshot of the group, the index of the flow is built
+     */
+    @Benchmark
+    public List<Set<?>> reorder() {
+        processGroupService.invalidateAllFlow();
+        return processGroupService.reorder(flow.getProcessGroupFlow());
+    }
+
+    /**
+     * place of a new component in a group full from its start position
+     */
+    @Benchmark
+    public PositionDTO getNextPosition() {
+        return processGroupService.getNextPosition(flow);
+    }
+
+    @Benchmark
+    public Optional<?> findById() {
+        return processGroupService.findById(flow.getProcessGroupFlow().getFlow(), lastProcessorId);
+    }
+}
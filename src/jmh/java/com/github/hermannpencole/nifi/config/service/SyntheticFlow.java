@@ -0,0 +1,163 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.Main;
+import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.config.utils.Backoff;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+import com.google.inject.Injector;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Synthetic flows for the benchmarks, the same for each run.
+ *
+ * A group of n components : half processors, 3/10 connections between consecutive processors, 1/10 input ports
+ * and the rest funnels, placed on a grid of 4 by line as nifi-config places them.
+ */
+final class SyntheticFlow {
+
+    static final String GROUP_ID = "synthetic-group";
+
+    private static final int BY_LINE = 4;
+
+    private SyntheticFlow() {
+    }
+
+    /**
+     * the injector of the command line with the options by default, nifi is never called by the benchmarks
+     *
+     * @return
+     */
+    static Injector injector() {
+        return Main.getInjector(Main.DEFAULT_TIMEOUT, new Backoff(), Main.DEFAULT_PLACEWIDTH, Main.createPosition(Main.DEFAULT_PLACE),
+                false, Main.DEFAULT_PARALLELISM, Main.DEFAULT_CONCURRENCY, true);
+    }
+
+    /**
+     * a group with n components
+     *
+     * @param components
+     * @return
+     */
+    static ProcessGroupFlowEntity flow(int components) {
+        int processors = components / 2;
+        int connections = components * 3 / 10;
+        int ports = components / 10;
+        int funnels = components - processors - connections - ports;
+        FlowDTO flow = new FlowDTO();
+        int place = 0;
+        for (int i = 0; i < processors; i++) {
+            ProcessorEntity processor = new ProcessorEntity();
+            processor.setId(processorId(i));
+            processor.setComponent(new ProcessorDTO());
+            processor.getComponent().setId(processorId(i));
+            processor.getComponent().setName(processorName(i));
+            processor.setPosition(position(place++));
+            flow.getProcessors().add(processor);
+        }
+        for (int i = 0; i < connections; i++) {
+            ConnectionEntity connection = new ConnectionEntity();
+            connection.setId("connection-" + i);
+            connection.setSourceId(processorId(i % processors));
+            connection.setDestinationId(processorId((i + 1) % processors));
+            flow.getConnections().add(connection);
+        }
+        for (int i = 0; i < ports; i++) {
+            PortEntity port = new PortEntity();
+            port.setId("port-" + i);
+            port.setComponent(new PortDTO());
+            port.getComponent().setName("port " + i);
+            port.setPosition(position(place++));
+            flow.getInputPorts().add(port);
+        }
+        for (int i = 0; i < funnels; i++) {
+            FunnelEntity funnel = new FunnelEntity();
+            funnel.setId("funnel-" + i);
+            funnel.setPosition(position(place++));
+            flow.getFunnels().add(funnel);
+        }
+        ProcessGroupFlowEntity flowEntity = new ProcessGroupFlowEntity();
+        flowEntity.setProcessGroupFlow(new ProcessGroupFlowDTO());
+        flowEntity.getProcessGroupFlow().setId(GROUP_ID);
+        flowEntity.getProcessGroupFlow().setFlow(flow);
+        return flowEntity;
+    }
+
+    /**
+     * the child groups of a group, n groups
+     *
+     * @param groups
+     * @return
+     */
+    static List<ProcessGroupEntity> groups(int groups) {
+        List<ProcessGroupEntity> result = new ArrayList<>(groups);
+        for (int i = 0; i < groups; i++) {
+            ProcessGroupEntity group = new ProcessGroupEntity();
+            group.setId("group-" + i);
+            group.setComponent(new ProcessGroupDTO());
+            group.getComponent().setName(groupName(i));
+            result.add(group);
+        }
+        return result;
+    }
+
+    /**
+     * a configuration of n processors with 5 properties, by group of 100 processors, and a controller service by group
+     *
+     * @param components
+     * @return
+     */
+    static GroupProcessorsEntity configuration(int components) {
+        GroupProcessorsEntity root = new GroupProcessorsEntity();
+        root.setName("root");
+        GroupProcessorsEntity group = null;
+        for (int i = 0; i < components; i++) {
+            if (i % 100 == 0) {
+                group = new GroupProcessorsEntity();
+                group.setName(groupName(i / 100));
+                ControllerServiceDTO controllerService = new ControllerServiceDTO();
+                controllerService.setName("controller " + i / 100);
+                controllerService.setProperties(properties(i));
+                group.getControllerServicesDTO().add(controllerService);
+                root.getGroupProcessorsEntity().add(group);
+            }
+            ProcessorDTO processor = new ProcessorDTO();
+            processor.setName(processorName(i));
+            processor.setConfig(new ProcessorConfigDTO());
+            processor.getConfig().setSchedulingPeriod("0 sec");
+            processor.getConfig().setProperties(properties(i));
+            group.getProcessors().add(processor);
+        }
+        return root;
+    }
+
+    static String processorId(int i) {
+        return "processor-" + i;
+    }
+
+    static String processorName(int i) {
+        return "processor " + i;
+    }
+
+    static String groupName(int i) {
+        return "group " + i;
+    }
+
+    private static Map<String, String> properties(int i) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (int property = 0; property < 5; property++) {
+            properties.put("property " + property, "value " + i + "-" + property);
+        }
+        return properties;
+    }
+
+    private static PositionDTO position(int place) {
+        PositionDTO position = new PositionDTO();
+        position.setX((double) (place % BY_LINE) * 430);
+        position.setY((double) (place / BY_LINE) * 220);
+        return position;
+    }
+}
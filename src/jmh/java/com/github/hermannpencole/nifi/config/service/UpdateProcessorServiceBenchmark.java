@@ -0,0 +1,60 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.NameIndex;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmarks of the search of the processor of the configuration in a group of n components
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateProcessorServiceBenchmark {
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int components;
+
+    private List<ProcessorEntity> processors;
+
+    private NameIndex<ProcessorEntity> processorsByName;
+
+    private String lastProcessorName;
+
+    @Setup
+    public void setup() {
+        processors = SyntheticFlow.flow(components).getProcessGroupFlow().getFlow().getProcessors();
+        processorsByName = new NameIndex<>(processors, processor -> processor.getComponent().getName());
+        lastProcessorName = SyntheticFlow.processorName(components / 2 - 1);
+    }
+
+    /**
+     * search in the list of the processors of the group
+     */
+    @Benchmark
+    public ProcessorEntity findProcByComponentName() {
+        return UpdateProcessorService.findProcByComponentName(processors, lastProcessorName);
+    }
+
+    /**
+     * search in the index by name of the group, as updateConfig does
+     */
+    @Benchmark
+    public ProcessorEntity findProcByComponentNameIndexed() {
+        return UpdateProcessorService.findProcByComponentName(processorsByName, lastProcessorName);
+    }
+
+    /**
+     * the index is built once by snapshot of the group
+     */
+    @Benchmark
+    public NameIndex<ProcessorEntity> buildNameIndex() {
+        return new NameIndex<>(processors, processor -> processor.getComponent().getName());
+    }
+}
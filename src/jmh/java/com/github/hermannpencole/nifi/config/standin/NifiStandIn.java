@@ -0,0 +1,1061 @@
+package com.github.hermannpencole.nifi.config.standin;
+
+import com.github.hermannpencole.nifi.swagger.ApiClient;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Stand-in of nifi for the end-to-end benchmarks : the subset of the rest api used by nifi-config (flow, process groups,
+ * processors, ports, connections, controller services, templates, access and flowfile queues) on a canvas in memory.
+ *
+ * The writes check the revision of the component like nifi (400 when the revision is not the last one, 409 when the
+ * state of the component does not allow the write), the changes of state of the processors, ports and controller services become visible after the state delay, and each endpoint
+ * can be slowed down by a latency or fail with an error rate. The requests are counted by endpoint.
+ */
+public class NifiStandIn implements Closeable {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(NifiStandIn.class);
+
+    public static final String ROOT_ID = "root-group";
+
+    public static final String VERSION = "1.1.2";
+
+    private static final Pattern PATH_PARAMETER = Pattern.compile("\\{[^/]+}");
+
+    private static final Pattern TEMPLATE_NAME = Pattern.compile("<name>(.*?)</name>");
+
+    static {
+        //without no delay, the delayed ack of the client adds 40 ms to each request
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /**
+     * the answer of an endpoint : an entity in json, a text, or null for an empty answer
+     */
+    private interface Handler {
+        Object handle(List<String> parameters, Map<String, String> query, String body);
+    }
+
+    private static class Route {
+        private final String method;
+        private final Pattern pattern;
+        private final String endpoint;
+        private final Handler handler;
+
+        private Route(String method, String path, Handler handler) {
+            this.method = method;
+            this.pattern = Pattern.compile(PATH_PARAMETER.matcher(path).replaceAll("([^/]+)"));
+            this.endpoint = method + " " + path;
+            this.handler = handler;
+        }
+    }
+
+    private static class ErrorRule {
+        private final double rate;
+        private final int code;
+        private final String message;
+
+        private ErrorRule(double rate, int code, String message) {
+            this.rate = rate;
+            this.code = code;
+            this.message = message;
+        }
+    }
+
+    /**
+     * a change of state not yet visible
+     */
+    private static class Transition {
+        private final Runnable apply;
+        private final long at;
+
+        private Transition(Runnable apply, long at) {
+            this.apply = apply;
+            this.at = at;
+        }
+    }
+
+    private final Gson gson = new ApiClient().getJSON().getGson();
+
+    private final List<Route> routes = new ArrayList<>();
+
+    private final Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> latencies = new ConcurrentHashMap<>();
+
+    private final Map<String, List<ErrorRule>> errors = new ConcurrentHashMap<>();
+
+    private final Random random = new Random(42);
+
+    private volatile long defaultLatency;
+
+    private volatile long stateDelay;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    //the canvas, guarded by this
+    final Map<String, ProcessGroupEntity> groups = new LinkedHashMap<>();
+    final Map<String, ProcessorEntity> processors = new LinkedHashMap<>();
+    final Map<String, PortEntity> inputPorts = new LinkedHashMap<>();
+    final Map<String, PortEntity> outputPorts = new LinkedHashMap<>();
+    final Map<String, ConnectionEntity> connections = new LinkedHashMap<>();
+    final Map<String, ControllerServiceEntity> controllerServices = new LinkedHashMap<>();
+    private final Map<String, TemplateEntity> templates = new LinkedHashMap<>();
+    private final Map<String, DropRequestEntity> dropRequests = new HashMap<>();
+    private final Map<String, Transition> transitions = new LinkedHashMap<>();
+
+    private int templateGroups = 1;
+
+    private int templateProcessors = 10;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    /**
+     * start the stand-in on a free port of localhost, with an empty root group
+     *
+     * @throws IOException
+     */
+    public NifiStandIn() throws IOException {
+        reset();
+        routes();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/nifi-api", this::handle);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "nifi-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+        LOG.info("Stand-in of nifi started on {}", getUrl());
+    }
+
+    /**
+     * the url of the api, for the option -nifi
+     *
+     * @return
+     */
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/nifi-api";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * latency of all the endpoints without their own latency
+     *
+     * @param millis
+     * @return
+     */
+    public NifiStandIn latency(long millis) {
+        this.defaultLatency = millis;
+        return this;
+    }
+
+    /**
+     * latency of an endpoint
+     *
+     * @param endpoint method and path of the api, ex : "GET /flow/process-groups/{id}/status"
+     * @param millis
+     * @return
+     */
+    public NifiStandIn latency(String endpoint, long millis) {
+        latencies.put(endpoint, millis);
+        return this;
+    }
+
+    /**
+     * delay before a change of state of a processor, a port or a controller service is visible
+     *
+     * @param millis
+     * @return
+     */
+    public NifiStandIn stateDelay(long millis) {
+        this.stateDelay = millis;
+        return this;
+    }
+
+    /**
+     * a part of the requests of the endpoint fail with the code
+     *
+     * @param endpoint method and path of the api, ex : "PUT /processors/{id}"
+     * @param rate between 0 and 1
+     * @param code http code of the error
+     * @return
+     */
+    public NifiStandIn error(String endpoint, double rate, int code) {
+        return error(endpoint, rate, code, "Error injected on " + endpoint);
+    }
+
+    /**
+     * a part of the requests of the endpoint fail with the code and the message, the rules of an endpoint are tried in
+     * the order they are added
+     *
+     * @param endpoint method and path of the api, ex : "PUT /flow/process-groups/{id}"
+     * @param rate between 0 and 1
+     * @param code http code of the error
+     * @param message body of the error, ex : "... Current state is STOPPING" with 409 is polled again by nifi-config
+     * @return
+     */
+    public NifiStandIn error(String endpoint, double rate, int code, String message) {
+        errors.computeIfAbsent(endpoint, key -> new CopyOnWriteArrayList<>()).add(new ErrorRule(rate, code, message));
+        return this;
+    }
+
+    /**
+     * a part of the writes of the endpoint are refused as a stale revision (400 like nifi), retried by nifi-config
+     * with the last revision
+     *
+     * @param endpoint method and path of the api, ex : "PUT /processors/{id}"
+     * @param rate between 0 and 1
+     * @return
+     */
+    public NifiStandIn staleRevision(String endpoint, double rate) {
+        return error(endpoint, rate, 400, staleRevisionMessage(endpoint, null));
+    }
+
+    /**
+     * size of the group created by the instantiation of a template
+     *
+     * @param groups
+     * @param processorsByGroup
+     * @return
+     */
+    public synchronized NifiStandIn templateSize(int groups, int processorsByGroup) {
+        this.templateGroups = groups;
+        this.templateProcessors = processorsByGroup;
+        return this;
+    }
+
+    /**
+     * the number of requests received by endpoint
+     *
+     * @return
+     */
+    public Map<String, Long> getRequests() {
+        return requests.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().get(), (a, b) -> a, TreeMap::new));
+    }
+
+    public long getRequestCount() {
+        return requests.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    public void resetRequests() {
+        requests.clear();
+    }
+
+    /**
+     * remove all the components, the canvas has only the root group
+     */
+    public synchronized void reset() {
+        groups.clear();
+        processors.clear();
+        inputPorts.clear();
+        outputPorts.clear();
+        connections.clear();
+        controllerServices.clear();
+        templates.clear();
+        dropRequests.clear();
+        transitions.clear();
+        ProcessGroupEntity root = new ProcessGroupEntity();
+        root.setId(ROOT_ID);
+        root.setRevision(revision());
+        root.setComponent(new ProcessGroupDTO());
+        root.getComponent().setId(ROOT_ID);
+        root.getComponent().setName("NiFi Flow");
+        groups.put(ROOT_ID, root);
+    }
+
+    // --- the canvas
+
+    String newId(String type) {
+        return type + "-" + sequence.incrementAndGet();
+    }
+
+    private static RevisionDTO revision() {
+        RevisionDTO revision = new RevisionDTO();
+        revision.setVersion(0L);
+        return revision;
+    }
+
+    synchronized ProcessGroupEntity addGroup(String parentId, String name, PositionDTO position) {
+        group(parentId);
+        ProcessGroupEntity group = new ProcessGroupEntity();
+        group.setId(newId("group"));
+        group.setRevision(revision());
+        group.setPosition(position);
+        group.setComponent(new ProcessGroupDTO());
+        group.getComponent().setId(group.getId());
+        group.getComponent().setParentGroupId(parentId);
+        group.getComponent().setName(name);
+        group.getComponent().setPosition(position);
+        groups.put(group.getId(), group);
+        return group;
+    }
+
+    synchronized ProcessorEntity addProcessor(String groupId, ProcessorDTO component) {
+        group(groupId);
+        ProcessorEntity processor = new ProcessorEntity();
+        processor.setId(newId("processor"));
+        processor.setRevision(revision());
+        processor.setPosition(component.getPosition());
+        component.setId(processor.getId());
+        component.setParentGroupId(groupId);
+        if (component.getState() == null) {
+            component.setState(ProcessorDTO.StateEnum.STOPPED);
+        }
+        if (component.getConfig() == null) {
+            component.setConfig(new ProcessorConfigDTO());
+        }
+        processor.setComponent(component);
+        processors.put(processor.getId(), processor);
+        return processor;
+    }
+
+    synchronized PortEntity addPort(String groupId, PortDTO component) {
+        group(groupId);
+        PortEntity port = new PortEntity();
+        port.setId(newId(component.getType() == PortDTO.TypeEnum.INPUT_PORT ? "input-port" : "output-port"));
+        port.setRevision(revision());
+        port.setPosition(component.getPosition());
+        component.setId(port.getId());
+        component.setParentGroupId(groupId);
+        if (component.getState() == null) {
+            component.setState(PortDTO.StateEnum.STOPPED);
+        }
+        port.setPortType(component.getType() == PortDTO.TypeEnum.INPUT_PORT ? "INPUT_PORT" : "OUTPUT_PORT");
+        port.setComponent(component);
+        (component.getType() == PortDTO.TypeEnum.INPUT_PORT ? inputPorts : outputPorts).put(port.getId(), port);
+        return port;
+    }
+
+    synchronized ConnectionEntity addConnection(String groupId, ConnectableDTO source, ConnectableDTO destination) {
+        group(groupId);
+        ConnectionEntity connection = new ConnectionEntity();
+        connection.setId(newId("connection"));
+        connection.setRevision(revision());
+        connection.setComponent(new ConnectionDTO());
+        connection.getComponent().setId(connection.getId());
+        connection.getComponent().setParentGroupId(groupId);
+        connection.getComponent().setSource(source);
+        connection.getComponent().setDestination(destination);
+        connection.setSourceId(source.getId());
+        connection.setSourceGroupId(source.getGroupId());
+        connection.setDestinationId(destination.getId());
+        connection.setDestinationGroupId(destination.getGroupId());
+        connection.setStatus(new ConnectionStatusDTO());
+        connection.getStatus().setId(connection.getId());
+        connection.getStatus().setAggregateSnapshot(new ConnectionStatusSnapshotDTO());
+        connection.getStatus().getAggregateSnapshot().setFlowFilesQueued(0);
+        connection.getStatus().getAggregateSnapshot().setQueuedCount("0");
+        connection.getStatus().getAggregateSnapshot().setQueuedSize("0 bytes");
+        connections.put(connection.getId(), connection);
+        return connection;
+    }
+
+    synchronized ControllerServiceEntity addControllerService(String groupId, ControllerServiceDTO component) {
+        group(groupId);
+        ControllerServiceEntity controllerService = new ControllerServiceEntity();
+        controllerService.setId(newId("controller-service"));
+        controllerService.setRevision(revision());
+        component.setId(controllerService.getId());
+        component.setParentGroupId(groupId);
+        if (component.getState() == null) {
+            component.setState(ControllerServiceDTO.StateEnum.DISABLED);
+        }
+        controllerService.setComponent(component);
+        controllerServices.put(controllerService.getId(), controllerService);
+        return controllerService;
+    }
+
+    private ProcessGroupEntity group(String id) {
+        ProcessGroupEntity group = groups.get("root".equals(id) ? ROOT_ID : id);
+        if (group == null) {
+            throw new StandInException(404, "Unable to find process group with id '" + id + "'.");
+        }
+        return group;
+    }
+
+    private <T> T find(Map<String, T> components, String id, String type) {
+        T component = components.get(id);
+        if (component == null) {
+            throw new StandInException(404, "Unable to find " + type + " with id '" + id + "'.");
+        }
+        return component;
+    }
+
+    private List<String> descendants(String groupId) {
+        List<String> result = new ArrayList<>();
+        result.add(groupId);
+        for (int i = 0; i < result.size(); i++) {
+            String parent = result.get(i);
+            groups.values().stream().filter(group -> parent.equals(group.getComponent().getParentGroupId()))
+                    .forEach(group -> result.add(group.getId()));
+        }
+        return result;
+    }
+
+    private static <T> List<T> inGroup(Map<String, T> components, String groupId, java.util.function.Function<T, String> parentOf) {
+        return components.values().stream().filter(component -> groupId.equals(parentOf.apply(component))).collect(Collectors.toList());
+    }
+
+    /**
+     * the revision of the write must be the last revision of the component, then the revision change
+     */
+    private static void checkRevision(String id, RevisionDTO current, RevisionDTO received) {
+        if (received == null || received.getVersion() == null || !received.getVersion().equals(current.getVersion())) {
+            throw new StandInException(400, staleRevisionMessage(id, received == null ? null : received.getVersion()));
+        }
+    }
+
+    private static String staleRevisionMessage(String id, Long version) {
+        return "[" + version + ", " + id + "] is not the most up-to-date revision. This component appears to have been modified";
+    }
+
+    private static void nextRevision(RevisionDTO current, RevisionDTO received) {
+        current.setVersion(current.getVersion() + 1);
+        if (received != null && received.getClientId() != null) {
+            current.setClientId(received.getClientId());
+        }
+    }
+
+    /**
+     * the change become visible after the state delay
+     */
+    private void transition(String id, Runnable apply) {
+        if (stateDelay <= 0) {
+            apply.run();
+            transitions.remove(id);
+        } else {
+            transitions.put(id, new Transition(apply, System.currentTimeMillis() + stateDelay));
+        }
+    }
+
+    /**
+     * apply the changes of state whose delay is elapsed
+     */
+    private void settle() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Transition> iterator = transitions.values().iterator(); iterator.hasNext(); ) {
+            Transition transition = iterator.next();
+            if (transition.at <= now) {
+                transition.apply.run();
+                iterator.remove();
+            }
+        }
+    }
+
+    // --- the http layer
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring("/nifi-api".length());
+        String method = exchange.getRequestMethod();
+        Route route = null;
+        List<String> parameters = new ArrayList<>();
+        for (Route candidate : routes) {
+            Matcher matcher = candidate.pattern.matcher(path);
+            if (candidate.method.equals(method) && matcher.matches()) {
+                route = candidate;
+                for (int i = 1; i <= matcher.groupCount(); i++) {
+                    parameters.add(URLDecoder.decode(matcher.group(i), "UTF-8"));
+                }
+                break;
+            }
+        }
+        if (route == null) {
+            LOG.warn("Stand-in of nifi : no endpoint for {} {}", method, path);
+            send(exchange, 404, "text/plain", "No endpoint " + method + " " + path);
+            return;
+        }
+        requests.computeIfAbsent(route.endpoint, endpoint -> new AtomicLong()).incrementAndGet();
+        String body = read(exchange.getRequestBody());
+        try {
+            long latency = latencies.getOrDefault(route.endpoint, defaultLatency);
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+            for (ErrorRule error : errors.getOrDefault(route.endpoint, Collections.emptyList())) {
+                synchronized (random) {
+                    if (random.nextDouble() < error.rate) {
+                        throw new StandInException(error.code, error.message);
+                    }
+                }
+            }
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            Object response;
+            String json = null;
+            synchronized (this) {
+                settle();
+                response = route.handler.handle(parameters, query, body);
+                if (response != null && !(response instanceof String)) {
+                    json = gson.toJson(response);
+                }
+            }
+            if (json != null) {
+                send(exchange, 200, "application/json", json);
+            } else {
+                send(exchange, 200, "text/plain", response == null ? "" : (String) response);
+            }
+        } catch (StandInException e) {
+            send(exchange, e.getCode(), "text/plain", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, "text/plain", "Stand-in stopped");
+        } catch (RuntimeException e) {
+            LOG.error(e.getMessage(), e);
+            send(exchange, 500, "text/plain", String.valueOf(e.getMessage()));
+        }
+    }
+
+    private static String read(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) > 0) {
+            output.write(buffer, 0, read);
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> query(String rawQuery) throws IOException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    query.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"), URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+                }
+            }
+        }
+        return query;
+    }
+
+    private static void send(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+        byte[] response = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, response.length == 0 ? -1 : response.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(response);
+        }
+    }
+
+    // --- the endpoints
+
+    private void routes() {
+        //access and information
+        routes.add(new Route("POST", "/access/token", (parameters, query, body) -> "stand-in-token"));
+        routes.add(new Route("POST", "/access/kerberos", (parameters, query, body) -> "stand-in-token"));
+        routes.add(new Route("GET", "/flow/about", (parameters, query, body) -> {
+            AboutEntity about = new AboutEntity();
+            about.setAbout(new AboutDTO());
+            about.getAbout().setTitle("NiFi stand-in");
+            about.getAbout().setVersion(VERSION);
+            return about;
+        }));
+        routes.add(new Route("GET", "/flow/client-id", (parameters, query, body) -> UUID.randomUUID().toString()));
+
+        //flow
+        routes.add(new Route("GET", "/flow/process-groups/{id}", (parameters, query, body) -> getFlow(parameters.get(0))));
+        routes.add(new Route("PUT", "/flow/process-groups/{id}", (parameters, query, body) ->
+                scheduleComponents(parameters.get(0), gson.fromJson(body, ScheduleComponentsEntity.class))));
+        routes.add(new Route("GET", "/flow/process-groups/{id}/status", (parameters, query, body) -> getStatus(parameters.get(0))));
+        routes.add(new Route("GET", "/flow/process-groups/{id}/controller-services", (parameters, query, body) ->
+                getControllerServicesFromGroup(parameters.get(0))));
+        routes.add(new Route("GET", "/flow/controller/controller-services", (parameters, query, body) -> {
+            ControllerServicesEntity entity = new ControllerServicesEntity();
+            entity.setControllerServices(new ArrayList<>());
+            return entity;
+        }));
+        routes.add(new Route("GET", "/flow/templates", (parameters, query, body) -> {
+            TemplatesEntity entity = new TemplatesEntity();
+            entity.setTemplates(new ArrayList<>(templates.values()));
+            return entity;
+        }));
+
+        //process groups
+        routes.add(new Route("GET", "/process-groups/{id}", (parameters, query, body) -> group(parameters.get(0))));
+        routes.add(new Route("DELETE", "/process-groups/{id}", (parameters, query, body) -> removeProcessGroup(parameters.get(0), query)));
+        routes.add(new Route("POST", "/process-groups/{id}/process-groups", (parameters, query, body) -> {
+            ProcessGroupEntity entity = gson.fromJson(body, ProcessGroupEntity.class);
+            return addGroup(group(parameters.get(0)).getId(), entity.getComponent().getName(), entity.getComponent().getPosition());
+        }));
+        routes.add(new Route("POST", "/process-groups/{id}/input-ports", (parameters, query, body) -> createPort(parameters.get(0), body, PortDTO.TypeEnum.INPUT_PORT)));
+        routes.add(new Route("POST", "/process-groups/{id}/output-ports", (parameters, query, body) -> createPort(parameters.get(0), body, PortDTO.TypeEnum.OUTPUT_PORT)));
+        routes.add(new Route("POST", "/process-groups/{id}/connections", (parameters, query, body) -> {
+            ConnectionEntity entity = gson.fromJson(body, ConnectionEntity.class);
+            return addConnection(group(parameters.get(0)).getId(), entity.getComponent().getSource(), entity.getComponent().getDestination());
+        }));
+        routes.add(new Route("POST", "/process-groups/{id}/templates/upload", (parameters, query, body) -> uploadTemplate(parameters.get(0), body)));
+        routes.add(new Route("POST", "/process-groups/{id}/template-instance", (parameters, query, body) ->
+                instantiateTemplate(parameters.get(0), gson.fromJson(body, InstantiateTemplateRequestEntity.class))));
+        routes.add(new Route("DELETE", "/templates/{id}", (parameters, query, body) -> {
+            TemplateEntity template = templates.remove(parameters.get(0));
+            if (template == null) {
+                throw new StandInException(404, "Unable to find template with id '" + parameters.get(0) + "'.");
+            }
+            return template;
+        }));
+
+        //components
+        routes.add(new Route("GET", "/processors/{id}", (parameters, query, body) -> find(processors, parameters.get(0), "processor")));
+        routes.add(new Route("PUT", "/processors/{id}", (parameters, query, body) -> updateProcessor(parameters.get(0), gson.fromJson(body, ProcessorEntity.class))));
+        routes.add(new Route("GET", "/input-ports/{id}", (parameters, query, body) -> find(inputPorts, parameters.get(0), "input port")));
+        routes.add(new Route("PUT", "/input-ports/{id}", (parameters, query, body) -> updatePort(inputPorts, parameters.get(0), gson.fromJson(body, PortEntity.class))));
+        routes.add(new Route("GET", "/output-ports/{id}", (parameters, query, body) -> find(outputPorts, parameters.get(0), "output port")));
+        routes.add(new Route("PUT", "/output-ports/{id}", (parameters, query, body) -> updatePort(outputPorts, parameters.get(0), gson.fromJson(body, PortEntity.class))));
+        routes.add(new Route("GET", "/connections/{id}", (parameters, query, body) -> find(connections, parameters.get(0), "connection")));
+
+        //controller services
+        routes.add(new Route("GET", "/controller-services/{id}", (parameters, query, body) -> getControllerService(parameters.get(0))));
+        routes.add(new Route("PUT", "/controller-services/{id}", (parameters, query, body) ->
+                updateControllerService(parameters.get(0), gson.fromJson(body, ControllerServiceEntity.class))));
+        routes.add(new Route("DELETE", "/controller-services/{id}", (parameters, query, body) -> removeControllerService(parameters.get(0), query)));
+        routes.add(new Route("PUT", "/controller-services/{id}/references", (parameters, query, body) ->
+                updateReferences(parameters.get(0), gson.fromJson(body, UpdateControllerServiceReferenceRequestEntity.class))));
+
+        //flowfile queues : the queues of the stand-in are always empty
+        routes.add(new Route("POST", "/flowfile-queues/{id}/drop-requests", (parameters, query, body) -> {
+            find(connections, parameters.get(0), "connection");
+            DropRequestEntity drop = new DropRequestEntity();
+            drop.setDropRequest(new DropRequestDTO());
+            drop.getDropRequest().setId(newId("drop-request"));
+            drop.getDropRequest().setFinished(true);
+            drop.getDropRequest().setCurrentCount(0);
+            drop.getDropRequest().setCurrentSize(0L);
+            dropRequests.put(drop.getDropRequest().getId(), drop);
+            return drop;
+        }));
+        routes.add(new Route("GET", "/flowfile-queues/{id}/drop-requests/{drop}", (parameters, query, body) -> find(dropRequests, parameters.get(1), "drop request")));
+        routes.add(new Route("DELETE", "/flowfile-queues/{id}/drop-requests/{drop}", (parameters, query, body) -> {
+            DropRequestEntity drop = find(dropRequests, parameters.get(1), "drop request");
+            dropRequests.remove(parameters.get(1));
+            return drop;
+        }));
+    }
+
+    private ProcessGroupFlowEntity getFlow(String id) {
+        ProcessGroupEntity group = group(id);
+        FlowDTO flow = new FlowDTO();
+        flow.setProcessGroups(inGroup(groups, group.getId(), entity -> entity.getComponent().getParentGroupId()));
+        flow.setProcessors(inGroup(processors, group.getId(), entity -> entity.getComponent().getParentGroupId()));
+        flow.setInputPorts(inGroup(inputPorts, group.getId(), entity -> entity.getComponent().getParentGroupId()));
+        flow.setOutputPorts(inGroup(outputPorts, group.getId(), entity -> entity.getComponent().getParentGroupId()));
+        flow.setConnections(inGroup(connections, group.getId(), entity -> entity.getComponent().getParentGroupId()));
+        ProcessGroupFlowEntity entity = new ProcessGroupFlowEntity();
+        entity.setProcessGroupFlow(new ProcessGroupFlowDTO());
+        entity.getProcessGroupFlow().setId(group.getId());
+        entity.getProcessGroupFlow().setParentGroupId(group.getComponent().getParentGroupId());
+        entity.getProcessGroupFlow().setBreadcrumb(new FlowBreadcrumbEntity());
+        entity.getProcessGroupFlow().getBreadcrumb().setId(group.getId());
+        entity.getProcessGroupFlow().getBreadcrumb().setBreadcrumb(new FlowBreadcrumbDTO());
+        entity.getProcessGroupFlow().getBreadcrumb().getBreadcrumb().setId(group.getId());
+        entity.getProcessGroupFlow().getBreadcrumb().getBreadcrumb().setName(group.getComponent().getName());
+        entity.getProcessGroupFlow().setFlow(flow);
+        return entity;
+    }
+
+    private ScheduleComponentsEntity scheduleComponents(String id, ScheduleComponentsEntity schedule) {
+        List<String> scope = descendants(group(id).getId());
+        boolean running = schedule.getState() == ScheduleComponentsEntity.StateEnum.RUNNING;
+        List<Object> components = new ArrayList<>();
+        if (schedule.getComponents() == null) {
+            //all the components of the group and its children
+            processors.values().stream().filter(processor -> scope.contains(processor.getComponent().getParentGroupId())).forEach(components::add);
+            inputPorts.values().stream().filter(port -> scope.contains(port.getComponent().getParentGroupId())).forEach(components::add);
+            outputPorts.values().stream().filter(port -> scope.contains(port.getComponent().getParentGroupId())).forEach(components::add);
+        } else {
+            for (Map.Entry<String, RevisionDTO> component : schedule.getComponents().entrySet()) {
+                Object found = processors.containsKey(component.getKey()) ? processors.get(component.getKey())
+                        : inputPorts.containsKey(component.getKey()) ? inputPorts.get(component.getKey())
+                        : outputPorts.get(component.getKey());
+                if (found == null) {
+                    throw new StandInException(404, "Unable to find component with id '" + component.getKey() + "'.");
+                }
+                checkRevision(component.getKey(), revisionOf(found), component.getValue());
+                components.add(found);
+            }
+        }
+        for (Object component : components) {
+            if (component instanceof ProcessorEntity) {
+                ProcessorEntity processor = (ProcessorEntity) component;
+                nextRevision(processor.getRevision(), schedule.getComponents() == null ? null : schedule.getComponents().get(processor.getId()));
+                ProcessorDTO.StateEnum state = running ? ProcessorDTO.StateEnum.RUNNING : ProcessorDTO.StateEnum.STOPPED;
+                if (processor.getComponent().getState() != ProcessorDTO.StateEnum.DISABLED) {
+                    transition(processor.getId(), () -> processor.getComponent().setState(state));
+                }
+            } else {
+                PortEntity port = (PortEntity) component;
+                nextRevision(port.getRevision(), schedule.getComponents() == null ? null : schedule.getComponents().get(port.getId()));
+                PortDTO.StateEnum state = running ? PortDTO.StateEnum.RUNNING : PortDTO.StateEnum.STOPPED;
+                transition(port.getId(), () -> port.getComponent().setState(state));
+            }
+        }
+        return schedule;
+    }
+
+    private static RevisionDTO revisionOf(Object component) {
+        return component instanceof ProcessorEntity ? ((ProcessorEntity) component).getRevision() : ((PortEntity) component).getRevision();
+    }
+
+    private Map<String, Object> getStatus(String id) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("aggregateSnapshot", snapshot(group(id).getId()));
+        Map<String, Object> entity = new LinkedHashMap<>();
+        entity.put("processGroupStatus", status);
+        return entity;
+    }
+
+    private Map<String, Object> snapshot(String groupId) {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("id", groupId);
+        snapshot.put("processorStatusSnapshots", inGroup(processors, groupId, processor -> processor.getComponent().getParentGroupId()).stream()
+                .map(processor -> componentStatus(processor.getId(), "processorStatusSnapshot",
+                        processor.getComponent().getState() == ProcessorDTO.StateEnum.RUNNING ? "Running"
+                                : processor.getComponent().getState() == ProcessorDTO.StateEnum.DISABLED ? "Disabled" : "Stopped"))
+                .collect(Collectors.toList()));
+        snapshot.put("inputPortStatusSnapshots", inGroup(inputPorts, groupId, port -> port.getComponent().getParentGroupId()).stream()
+                .map(port -> componentStatus(port.getId(), "portStatusSnapshot", port.getComponent().getState() == PortDTO.StateEnum.RUNNING ? "Running" : "Stopped"))
+                .collect(Collectors.toList()));
+        snapshot.put("outputPortStatusSnapshots", inGroup(outputPorts, groupId, port -> port.getComponent().getParentGroupId()).stream()
+                .map(port -> componentStatus(port.getId(), "portStatusSnapshot", port.getComponent().getState() == PortDTO.StateEnum.RUNNING ? "Running" : "Stopped"))
+                .collect(Collectors.toList()));
+        snapshot.put("connectionStatusSnapshots", inGroup(connections, groupId, connection -> connection.getComponent().getParentGroupId()).stream()
+                .map(connection -> {
+                    Map<String, Object> component = new LinkedHashMap<>();
+                    component.put("id", connection.getId());
+                    component.put("flowFilesQueued", 0);
+                    component.put("queuedCount", "0");
+                    Map<String, Object> entity = new LinkedHashMap<>();
+                    entity.put("id", connection.getId());
+                    entity.put("connectionStatusSnapshot", component);
+                    return entity;
+                })
+                .collect(Collectors.toList()));
+        snapshot.put("processGroupStatusSnapshots", inGroup(groups, groupId, group -> group.getComponent().getParentGroupId()).stream()
+                .map(group -> {
+                    Map<String, Object> child = new LinkedHashMap<>();
+                    child.put("id", group.getId());
+                    child.put("processGroupStatusSnapshot", snapshot(group.getId()));
+                    return child;
+                })
+                .collect(Collectors.toList()));
+        return snapshot;
+    }
+
+    private static Map<String, Object> componentStatus(String id, String type, String runStatus) {
+        Map<String, Object> component = new LinkedHashMap<>();
+        component.put("id", id);
+        component.put("runStatus", runStatus);
+        component.put("activeThreadCount", 0);
+        Map<String, Object> entity = new LinkedHashMap<>();
+        entity.put("id", id);
+        entity.put(type, component);
+        return entity;
+    }
+
+    private ControllerServicesEntity getControllerServicesFromGroup(String id) {
+        //the services of the group and of its ancestors
+        Set<String> ancestors = new HashSet<>();
+        for (ProcessGroupEntity group = group(id); group != null; group = groups.get(group.getComponent().getParentGroupId() == null ? "" : group.getComponent().getParentGroupId())) {
+            ancestors.add(group.getId());
+        }
+        ControllerServicesEntity entity = new ControllerServicesEntity();
+        entity.setControllerServices(controllerServices.values().stream()
+                .filter(controllerService -> ancestors.contains(controllerService.getComponent().getParentGroupId()))
+                .map(controllerService -> getControllerService(controllerService.getId()))
+                .collect(Collectors.toList()));
+        return entity;
+    }
+
+    private ProcessGroupEntity removeProcessGroup(String id, Map<String, String> query) {
+        ProcessGroupEntity group = group(id);
+        checkRevision(id, group.getRevision(), queryRevision(query));
+        List<String> scope = descendants(group.getId());
+        Optional<ProcessorEntity> running = processors.values().stream()
+                .filter(processor -> scope.contains(processor.getComponent().getParentGroupId()) && processor.getComponent().getState() == ProcessorDTO.StateEnum.RUNNING)
+                .findFirst();
+        if (running.isPresent()) {
+            throw new StandInException(409, "Cannot delete Process Group because Processor " + running.get().getId() + " is running");
+        }
+        Optional<ControllerServiceEntity> enabled = controllerServices.values().stream()
+                .filter(controllerService -> scope.contains(controllerService.getComponent().getParentGroupId())
+                        && controllerService.getComponent().getState() != ControllerServiceDTO.StateEnum.DISABLED)
+                .findFirst();
+        if (enabled.isPresent()) {
+            throw new StandInException(409, "Cannot delete Process Group because Controller Service " + enabled.get().getId() + " is enabled");
+        }
+        processors.values().removeIf(processor -> scope.contains(processor.getComponent().getParentGroupId()));
+        inputPorts.values().removeIf(port -> scope.contains(port.getComponent().getParentGroupId()));
+        outputPorts.values().removeIf(port -> scope.contains(port.getComponent().getParentGroupId()));
+        connections.values().removeIf(connection -> scope.contains(connection.getComponent().getParentGroupId()));
+        controllerServices.values().removeIf(controllerService -> scope.contains(controllerService.getComponent().getParentGroupId()));
+        groups.keySet().removeAll(scope);
+        return group;
+    }
+
+    private static RevisionDTO queryRevision(Map<String, String> query) {
+        RevisionDTO revision = new RevisionDTO();
+        revision.setVersion(query.containsKey("version") ? Long.valueOf(query.get("version")) : null);
+        revision.setClientId(query.get("clientId"));
+        return revision;
+    }
+
+    private PortEntity createPort(String groupId, String body, PortDTO.TypeEnum type) {
+        PortEntity entity = gson.fromJson(body, PortEntity.class);
+        PortDTO component = new PortDTO();
+        component.setName(entity.getComponent().getName());
+        component.setPosition(entity.getComponent().getPosition());
+        component.setType(type);
+        return addPort(group(groupId).getId(), component);
+    }
+
+    private TemplateEntity uploadTemplate(String groupId, String body) {
+        Matcher matcher = TEMPLATE_NAME.matcher(body);
+        if (!matcher.find()) {
+            throw new StandInException(400, "The template has no name");
+        }
+        String name = matcher.group(1);
+        if (templates.values().stream().anyMatch(template -> template.getTemplate().getName().equals(name))) {
+            throw new StandInException(409, "A template named '" + name + "' already exists.");
+        }
+        TemplateEntity template = new TemplateEntity();
+        template.setId(newId("template"));
+        template.setTemplate(new TemplateDTO());
+        template.getTemplate().setId(template.getId());
+        template.getTemplate().setName(name);
+        template.getTemplate().setGroupId(group(groupId).getId());
+        templates.put(template.getId(), template);
+        return template;
+    }
+
+    private FlowEntity instantiateTemplate(String groupId, InstantiateTemplateRequestEntity request) {
+        TemplateEntity template = find(templates, request.getTemplateId(), "template");
+        ProcessGroupEntity group = SyntheticCanvas.generate(this, group(groupId).getId(), template.getTemplate().getName(), templateGroups, templateProcessors, false);
+        FlowEntity flow = new FlowEntity();
+        flow.setFlow(new FlowDTO());
+        flow.getFlow().setProcessGroups(Collections.singletonList(group));
+        return flow;
+    }
+
+    private ProcessorEntity updateProcessor(String id, ProcessorEntity update) {
+        ProcessorEntity processor = find(processors, id, "processor");
+        checkRevision(id, processor.getRevision(), update.getRevision());
+        ProcessorDTO component = update.getComponent();
+        if ((component.getName() != null || isConfig(component.getConfig())) && processor.getComponent().getState() == ProcessorDTO.StateEnum.RUNNING) {
+            throw new StandInException(409, processor.getId() + " is not stopped.");
+        }
+        if (component.getName() != null) {
+            processor.getComponent().setName(component.getName());
+        }
+        if (component.getConfig() != null) {
+            ProcessorConfigDTO config = processor.getComponent().getConfig();
+            ProcessorConfigDTO received = component.getConfig();
+            if (received.getProperties() != null && !received.getProperties().isEmpty()) {
+                Map<String, String> properties = config.getProperties() == null ? new LinkedHashMap<>() : new LinkedHashMap<>(config.getProperties());
+                received.getProperties().forEach((name, value) -> {
+                    if (value == null) {
+                        properties.remove(name);
+                    } else {
+                        properties.put(name, value);
+                    }
+                });
+                config.setProperties(properties);
+            }
+            if (received.getSchedulingPeriod() != null) {
+                config.setSchedulingPeriod(received.getSchedulingPeriod());
+            }
+            if (received.getSchedulingStrategy() != null) {
+                config.setSchedulingStrategy(received.getSchedulingStrategy());
+            }
+            if (received.getConcurrentlySchedulableTaskCount() != null) {
+                config.setConcurrentlySchedulableTaskCount(received.getConcurrentlySchedulableTaskCount());
+            }
+            if (received.getAutoTerminatedRelationships() != null) {
+                config.setAutoTerminatedRelationships(received.getAutoTerminatedRelationships());
+            }
+            if (received.getComments() != null) {
+                config.setComments(received.getComments());
+            }
+        }
+        nextRevision(processor.getRevision(), update.getRevision());
+        if (component.getState() != null && component.getState() != processor.getComponent().getState()) {
+            ProcessorDTO.StateEnum state = component.getState();
+            transition(id, () -> processor.getComponent().setState(state));
+        }
+        return processor;
+    }
+
+    /**
+     * the models of the client have empty collections by default : a write of the state only has an empty config
+     */
+    private static boolean isConfig(ProcessorConfigDTO config) {
+        return config != null && ((config.getProperties() != null && !config.getProperties().isEmpty()) || config.getSchedulingPeriod() != null
+                || config.getSchedulingStrategy() != null || config.getConcurrentlySchedulableTaskCount() != null || config.getComments() != null);
+    }
+
+    private PortEntity updatePort(Map<String, PortEntity> ports, String id, PortEntity update) {
+        PortEntity port = find(ports, id, "port");
+        checkRevision(id, port.getRevision(), update.getRevision());
+        if (update.getComponent().getName() != null) {
+            port.getComponent().setName(update.getComponent().getName());
+        }
+        nextRevision(port.getRevision(), update.getRevision());
+        if (update.getComponent().getState() != null && update.getComponent().getState() != port.getComponent().getState()) {
+            PortDTO.StateEnum state = update.getComponent().getState();
+            transition(id, () -> port.getComponent().setState(state));
+        }
+        return port;
+    }
+
+    /**
+     * the controller service with the components that reference it
+     */
+    private ControllerServiceEntity getControllerService(String id) {
+        ControllerServiceEntity controllerService = find(controllerServices, id, "controller service");
+        List<ControllerServiceReferencingComponentEntity> references = new ArrayList<>();
+        for (ProcessorEntity processor : processors.values()) {
+            Map<String, String> properties = processor.getComponent().getConfig().getProperties();
+            if (properties != null && properties.containsValue(id)) {
+                references.add(reference(processor.getId(), processor.getRevision(), processor.getComponent().getParentGroupId(), processor.getComponent().getName(),
+                        processor.getComponent().getType(), processor.getComponent().getState().toString(), ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR));
+            }
+        }
+        for (ControllerServiceEntity other : controllerServices.values()) {
+            Map<String, String> properties = other.getComponent().getProperties();
+            if (properties != null && properties.containsValue(id)) {
+                references.add(reference(other.getId(), other.getRevision(), other.getComponent().getParentGroupId(), other.getComponent().getName(),
+                        other.getComponent().getType(), other.getComponent().getState().toString(), ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.CONTROLLERSERVICE));
+            }
+        }
+        controllerService.getComponent().setReferencingComponents(references);
+        return controllerService;
+    }
+
+    private static ControllerServiceReferencingComponentEntity reference(String id, RevisionDTO revision, String groupId, String name, String type, String state,
+                                                                         ControllerServiceReferencingComponentDTO.ReferenceTypeEnum referenceType) {
+        ControllerServiceReferencingComponentEntity reference = new ControllerServiceReferencingComponentEntity();
+        reference.setId(id);
+        reference.setRevision(revision);
+        reference.setComponent(new ControllerServiceReferencingComponentDTO());
+        reference.getComponent().setId(id);
+        reference.getComponent().setGroupId(groupId);
+        reference.getComponent().setName(name);
+        reference.getComponent().setType(type);
+        reference.getComponent().setState(state);
+        reference.getComponent().setReferenceType(referenceType);
+        reference.getComponent().setActiveThreadCount(0);
+        return reference;
+    }
+
+    private ControllerServiceEntity updateControllerService(String id, ControllerServiceEntity update) {
+        ControllerServiceEntity controllerService = find(controllerServices, id, "controller service");
+        checkRevision(id, controllerService.getRevision(), update.getRevision());
+        ControllerServiceDTO component = update.getComponent();
+        if ((component.getName() != null || (component.getProperties() != null && !component.getProperties().isEmpty()))
+                && controllerService.getComponent().getState() != ControllerServiceDTO.StateEnum.DISABLED) {
+            throw new StandInException(409, "Controller Service " + id + " cannot be modified because it is not disabled");
+        }
+        if (component.getName() != null) {
+            controllerService.getComponent().setName(component.getName());
+        }
+        if (component.getProperties() != null && !component.getProperties().isEmpty()) {
+            Map<String, String> properties = controllerService.getComponent().getProperties() == null
+                    ? new LinkedHashMap<>() : new LinkedHashMap<>(controllerService.getComponent().getProperties());
+            component.getProperties().forEach((name, value) -> {
+                if (value == null) {
+                    properties.remove(name);
+                } else {
+                    properties.put(name, value);
+                }
+            });
+            controllerService.getComponent().setProperties(properties);
+        }
+        nextRevision(controllerService.getRevision(), update.getRevision());
+        if (component.getState() == ControllerServiceDTO.StateEnum.ENABLED && controllerService.getComponent().getState() != ControllerServiceDTO.StateEnum.ENABLED) {
+            controllerService.getComponent().setState(ControllerServiceDTO.StateEnum.ENABLING);
+            transition(id, () -> controllerService.getComponent().setState(ControllerServiceDTO.StateEnum.ENABLED));
+        } else if (component.getState() == ControllerServiceDTO.StateEnum.DISABLED && controllerService.getComponent().getState() != ControllerServiceDTO.StateEnum.DISABLED) {
+            boolean referenced = processors.values().stream().anyMatch(processor -> processor.getComponent().getState() == ProcessorDTO.StateEnum.RUNNING
+                    && processor.getComponent().getConfig().getProperties() != null && processor.getComponent().getConfig().getProperties().containsValue(id));
+            if (referenced) {
+                throw new StandInException(409, "Controller Service " + id + " cannot be disabled because it is referenced by running processors");
+            }
+            controllerService.getComponent().setState(ControllerServiceDTO.StateEnum.DISABLING);
+            transition(id, () -> controllerService.getComponent().setState(ControllerServiceDTO.StateEnum.DISABLED));
+        }
+        return getControllerService(id);
+    }
+
+    private ControllerServiceEntity removeControllerService(String id, Map<String, String> query) {
+        ControllerServiceEntity controllerService = find(controllerServices, id, "controller service");
+        checkRevision(id, controllerService.getRevision(), queryRevision(query));
+        if (controllerService.getComponent().getState() != ControllerServiceDTO.StateEnum.DISABLED) {
+            throw new StandInException(409, "Controller Service " + id + " cannot be removed because it is not disabled");
+        }
+        controllerServices.remove(id);
+        return controllerService;
+    }
+
+    private ControllerServiceReferencingComponentsEntity updateReferences(String id, UpdateControllerServiceReferenceRequestEntity request) {
+        ControllerServiceEntity controllerService = getControllerService(id);
+        Map<String, RevisionDTO> revisions = request.getReferencingComponentRevisions() == null ? Collections.emptyMap() : request.getReferencingComponentRevisions();
+        for (ControllerServiceReferencingComponentEntity reference : controllerService.getComponent().getReferencingComponents()) {
+            boolean processor = reference.getComponent().getReferenceType() == ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR;
+            boolean scheduling = request.getState() == UpdateControllerServiceReferenceRequestEntity.StateEnum.RUNNING
+                    || request.getState() == UpdateControllerServiceReferenceRequestEntity.StateEnum.STOPPED;
+            if (processor != scheduling) {
+                continue;
+            }
+            if (revisions.containsKey(reference.getId())) {
+                checkRevision(reference.getId(), reference.getRevision(), revisions.get(reference.getId()));
+            }
+            nextRevision(reference.getRevision(), revisions.get(reference.getId()));
+            if (processor) {
+                ProcessorEntity referencing = processors.get(reference.getId());
+                ProcessorDTO.StateEnum state = ProcessorDTO.StateEnum.valueOf(request.getState().name());
+                if (referencing.getComponent().getState() != ProcessorDTO.StateEnum.DISABLED) {
+                    transition(referencing.getId(), () -> referencing.getComponent().setState(state));
+                }
+            } else {
+                ControllerServiceEntity referencing = controllerServices.get(reference.getId());
+                ControllerServiceDTO.StateEnum state = ControllerServiceDTO.StateEnum.valueOf(request.getState().name());
+                transition(referencing.getId(), () -> referencing.getComponent().setState(state));
+            }
+        }
+        ControllerServiceReferencingComponentsEntity entity = new ControllerServiceReferencingComponentsEntity();
+        entity.setControllerServiceReferencingComponents(getControllerService(id).getComponent().getReferencingComponents());
+        return entity;
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.hermannpencole.nifi.config.standin;
+
+/**
+ * An error answered by the stand-in with its http code, like nifi answers a request it refuses
+ */
+public class StandInException extends RuntimeException {
+
+    private final int code;
+
+    public StandInException(int code, String message) {
+        super(message);
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+}
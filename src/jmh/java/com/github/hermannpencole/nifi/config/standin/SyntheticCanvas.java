@@ -0,0 +1,108 @@
+package com.github.hermannpencole.nifi.config.standin;
+
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Synthetic canvas of any size on the stand-in, the same for each run.
+ *
+ * A group with n child groups, each with a chain of p processors that use a controller service of the group (one by
+ * child group), placed on a grid of 4 by line.
+ */
+public final class SyntheticCanvas {
+
+    public static final String SERVICE_PROPERTY = "Connection Pool";
+
+    private static final int BY_LINE = 4;
+
+    private SyntheticCanvas() {
+    }
+
+    /**
+     * create the group under the parent
+     *
+     * @param standIn
+     * @param parentId
+     * @param name the name of the group
+     * @param groups number of child groups
+     * @param processorsByGroup number of processors of each child group
+     * @param running the processors and the controller services are started
+     * @return the group
+     */
+    public static ProcessGroupEntity generate(NifiStandIn standIn, String parentId, String name, int groups, int processorsByGroup, boolean running) {
+        synchronized (standIn) {
+            ProcessGroupEntity group = standIn.addGroup(parentId, name, position(0));
+            for (int i = 0; i < groups; i++) {
+                ProcessGroupEntity child = standIn.addGroup(group.getId(), groupName(i), position(i));
+                ControllerServiceDTO controllerService = new ControllerServiceDTO();
+                controllerService.setName("pool " + i);
+                controllerService.setType("org.apache.nifi.dbcp.DBCPConnectionPool");
+                controllerService.setProperties(properties(i, null));
+                controllerService.setDescriptors(new LinkedHashMap<>());
+                controllerService.setState(running ? ControllerServiceDTO.StateEnum.ENABLED : ControllerServiceDTO.StateEnum.DISABLED);
+                String serviceId = standIn.addControllerService(group.getId(), controllerService).getId();
+                ProcessorEntity previous = null;
+                for (int j = 0; j < processorsByGroup; j++) {
+                    ProcessorDTO component = new ProcessorDTO();
+                    component.setName(processorName(j));
+                    component.setType("org.apache.nifi.processors.standard.ExecuteSQL");
+                    component.setPosition(position(j));
+                    component.setState(running ? ProcessorDTO.StateEnum.RUNNING : ProcessorDTO.StateEnum.STOPPED);
+                    component.setConfig(new ProcessorConfigDTO());
+                    component.getConfig().setSchedulingPeriod("0 sec");
+                    component.getConfig().setSchedulingStrategy("TIMER_DRIVEN");
+                    component.getConfig().setProperties(properties(j, serviceId));
+                    Map<String, PropertyDescriptorDTO> descriptors = new LinkedHashMap<>();
+                    PropertyDescriptorDTO descriptor = new PropertyDescriptorDTO();
+                    descriptor.setName(SERVICE_PROPERTY);
+                    descriptor.setIdentifiesControllerService("org.apache.nifi.dbcp.DBCPService");
+                    descriptors.put(SERVICE_PROPERTY, descriptor);
+                    component.getConfig().setDescriptors(descriptors);
+                    ProcessorEntity processor = standIn.addProcessor(child.getId(), component);
+                    if (previous != null) {
+                        standIn.addConnection(child.getId(), connectable(previous, child.getId()), connectable(processor, child.getId()));
+                    }
+                    previous = processor;
+                }
+            }
+            return group;
+        }
+    }
+
+    public static String groupName(int i) {
+        return "group " + i;
+    }
+
+    public static String processorName(int i) {
+        return "processor " + i;
+    }
+
+    private static Map<String, String> properties(int i, String serviceId) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        if (serviceId != null) {
+            properties.put(SERVICE_PROPERTY, serviceId);
+        }
+        for (int property = 0; property < 5; property++) {
+            properties.put("property " + property, "value " + i + "-" + property);
+        }
+        return properties;
+    }
+
+    private static ConnectableDTO connectable(ProcessorEntity processor, String groupId) {
+        ConnectableDTO connectable = new ConnectableDTO();
+        connectable.setId(processor.getId());
+        connectable.setGroupId(groupId);
+        connectable.setName(processor.getComponent().getName());
+        connectable.setType(ConnectableDTO.TypeEnum.PROCESSOR);
+        return connectable;
+    }
+
+    private static PositionDTO position(int place) {
+        PositionDTO position = new PositionDTO();
+        position.setX((double) (place % BY_LINE) * 430);
+        position.setY((double) (place / BY_LINE) * 220);
+        return position;
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.hermannpencole.nifi.config;
+
+import com.github.hermannpencole.nifi.config.model.ClusterResult;
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Run of the same mode on many nifi clusters in same time, each cluster on its own thread and with its own client
+ */
+public class ClusterDeployment {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(ClusterDeployment.class);
+
+    /**
+     * all : all the clusters in parallel, whatever the result of the others
+     * failFast : the clusters in parallel, the runs in progress are interrupted on the first failure
+     * canary : the first cluster alone, then the others in parallel if it succeed
+     */
+    public enum Policy { all, failFast, canary }
+
+    /**
+     * the run of the mode on a cluster
+     */
+    public interface Task {
+        void run(String address) throws Exception;
+    }
+
+    private final Policy policy;
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    public ClusterDeployment(Policy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * run the task on all the clusters with the policy
+     *
+     * @param addresses
+     * @param task
+     * @return the result by cluster, in the order of the addresses
+     */
+    public List<ClusterResult> run(List<String> addresses, Task task) {
+        List<ClusterResult> results = addresses.stream().map(ClusterResult::new).collect(Collectors.toList());
+        ExecutorService executor = Executors.newFixedThreadPool(addresses.size(), runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            int first = 0;
+            if (policy == Policy.canary) {
+                ClusterResult canary = results.get(0);
+                LOG.info("Deploy on the canary {}", canary.getAddress());
+                executor.submit(() -> run(canary, task)).get();
+                if (canary.getStatus() != ClusterResult.Status.OK) {
+                    LOG.warn("The canary {} failed, the others clusters are not deployed", canary.getAddress());
+                    return results;
+                }
+                first = 1;
+            }
+            CompletionService<ClusterResult> completion = new ExecutorCompletionService<>(executor);
+            List<ClusterResult> others = results.subList(first, results.size());
+            LOG.info("Deploy on {} clusters in parallel", others.size());
+            others.forEach(result -> completion.submit(() -> run(result, task), result));
+            for (int i = 0; i < others.size(); i++) {
+                ClusterResult done = completion.take().get();
+                if (policy == Policy.failFast && done.getStatus() == ClusterResult.Status.FAILED) {
+                    LOG.warn("{} failed, the deployment on the others clusters is interrupted", done.getAddress());
+                    cancelled.set(true);
+                    executor.shutdownNow();
+                    break;
+                }
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new ConfigException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new ConfigException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private void run(ClusterResult result, Task task) {
+        long start = System.currentTimeMillis();
+        //the progress of each cluster is isolated in the logs by the name of the thread
+        Thread.currentThread().setName(threadName(result.getAddress()));
+        try {
+            task.run(result.getAddress());
+            result.setResult(ClusterResult.Status.OK, null, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            if (cancelled.get() && isInterrupt(e)) {
+                result.setResult(ClusterResult.Status.CANCELLED, null, System.currentTimeMillis() - start);
+            } else {
+                LOG.error(e.getMessage(), e);
+                result.setResult(ClusterResult.Status.FAILED, e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage(),
+                        System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    /**
+     * the run stopped by the interrupt of the cancel, and not by an error of its own
+     */
+    private static boolean isInterrupt(Throwable e) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException || cause instanceof InterruptedIOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * log the report of the deployment
+     *
+     * @param results
+     */
+    public static void log(List<ClusterResult> results) {
+        long ok = results.stream().filter(result -> result.getStatus() == ClusterResult.Status.OK).count();
+        LOG.info("Clusters : {} deployed, {} not deployed", ok, results.size() - ok);
+        results.forEach(result -> LOG.info("      " + result.format()));
+    }
+
+    /**
+     * the name of the thread of the cluster in the logs : the host and port of the address
+     *
+     * @param address
+     * @return
+     */
+    static String threadName(String address) {
+        try {
+            String authority = URI.create(address).getAuthority();
+            return "nifi-config-" + (authority == null ? address : authority);
+        } catch (IllegalArgumentException e) {
+            return "nifi-config-" + address;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.github.hermannpencole.nifi.config;
+
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Http endpoint on localhost of the mode server : the jobs are run one by one on the warm client of the server.
+ *
+ * POST /jobs with {"args": ["-m", "updateConfig", "-b", "root>elt1", "-c", "conf.json"]} return {"status": "OK", "duration": 1250}, with the error when the status is FAILED or INVALID
+ * GET /health return {"status": "UP"}
+ *
+ * A job must have the header Authorization: Bearer with the token of the server and the content type application/json,
+ * the requests of a browser (with an header Origin) are refused : a web page cannot run a job with the token of nifi.
+ */
+public class ConfigServer {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(ConfigServer.class);
+
+    /**
+     * the run of a job with the arguments of the command line
+     */
+    public interface JobRunner {
+        void run(List<String> args) throws Exception;
+    }
+
+    private static class Job {
+        private List<String> args;
+    }
+
+    private static final List<String> CREDENTIALS = Arrays.asList("user", "password");
+
+    private final Gson gson = new Gson();
+
+    private final int port;
+
+    private final String token;
+
+    private final JobRunner runner;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    /**
+     * @param port
+     * @param token the token expected in the header Authorization of the jobs
+     * @param runner
+     */
+    public ConfigServer(int port, String token, JobRunner runner) {
+        if (token == null || token.trim().isEmpty()) {
+            throw new IllegalArgumentException("The server must have a token");
+        }
+        this.port = port;
+        this.token = token.trim();
+        this.runner = runner;
+    }
+
+    /**
+     * start to accept the jobs, on localhost only
+     *
+     * @throws IOException
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/jobs", this::handleJob);
+        server.createContext("/health", exchange -> {
+            Map<String, Object> health = new LinkedHashMap<>();
+            health.put("status", "UP");
+            send(exchange, 200, health);
+        });
+        //one job at a time : the jobs share the client and the caches
+        executor = Executors.newSingleThreadExecutor();
+        server.setExecutor(executor);
+        server.start();
+        LOG.info("Server started on http://localhost:{}/jobs", getPort());
+    }
+
+    /**
+     * stop the server, the job in progress is finished
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+            LOG.info("Server stopped");
+        }
+    }
+
+    /**
+     * the port of the server, the port chosen by the system when the port 0 is asked
+     *
+     * @return
+     */
+    public int getPort() {
+        return server == null ? port : server.getAddress().getPort();
+    }
+
+    private void handleJob(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestHeaders().containsKey("Origin")) {
+            LOG.warn("Job refused : request from the origin {}", exchange.getRequestHeaders().getFirst("Origin"));
+            send(exchange, 403, result("FAILED", "Requests from a browser are not allowed", 0));
+            return;
+        }
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, result("FAILED", "Method " + exchange.getRequestMethod() + " not allowed", 0));
+            return;
+        }
+        if (!isAuthorized(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            LOG.warn("Job refused : missing or wrong token");
+            send(exchange, 401, result("FAILED", "Missing or wrong token", 0));
+            return;
+        }
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType == null || !contentType.split(";")[0].trim().equalsIgnoreCase("application/json")) {
+            send(exchange, 415, result("FAILED", "The content type must be application/json", 0));
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            Job job = gson.fromJson(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8), Job.class);
+            if (job == null || job.args == null) {
+                throw new ParseException("The job must have the arguments of the command line in args");
+            }
+            LOG.info("Job {}", String.join(" ", toLog(job.args)));
+            runner.run(job.args);
+            send(exchange, 200, result("OK", null, System.currentTimeMillis() - start));
+        } catch (ParseException | JsonParseException e) {
+            send(exchange, 400, result("INVALID", e.getMessage(), System.currentTimeMillis() - start));
+        } catch (ApiException e) {
+            LOG.error(e.getMessage(), e);
+            send(exchange, 500, result("FAILED", e.getMessage() + ": " + e.getResponseBody(), System.currentTimeMillis() - start));
+        } catch (Exception e) {
+            LOG.error(e.getMessage(), e);
+            send(exchange, 500, result("FAILED", e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage(), System.currentTimeMillis() - start));
+        }
+    }
+
+    /**
+     * the arguments of the job without the values of the credentials (a job with credentials is refused, but logged
+     * before)
+     *
+     * @param args
+     * @return
+     */
+    static List<String> toLog(List<String> args) {
+        List<String> result = new ArrayList<>(args.size());
+        boolean secret = false;
+        for (String arg : args) {
+            String name = arg.replaceFirst("^-+", "").split("=", 2)[0];
+            if (secret) {
+                result.add("****");
+                secret = false;
+            } else if (arg.startsWith("-") && CREDENTIALS.contains(name)) {
+                secret = !arg.contains("=");
+                result.add(secret ? arg : arg.substring(0, arg.indexOf('=') + 1) + "****");
+            } else {
+                result.add(arg);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * is the header Authorization the token of the server, compared in constant time
+     */
+    private boolean isAuthorized(String authorization) {
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return false;
+        }
+        return MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), authorization.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Map<String, Object> result(String status, String error, long duration) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("status", status);
+        result.put("error", error);
+        result.put("duration", duration);
+        return result;
+    }
+
+    private void send(HttpExchange exchange, int code, Map<String, Object> body) throws IOException {
+        byte[] response = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, response.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(response);
+        }
+    }
+}
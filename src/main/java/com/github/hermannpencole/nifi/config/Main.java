@@ -1,10 +1,18 @@
 package com.github.hermannpencole.nifi.config;
 
+import com.github.hermannpencole.nifi.config.model.ClusterResult;
 import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.model.DeploymentPlan;
+import com.github.hermannpencole.nifi.config.model.ManifestEntry;
+import com.github.hermannpencole.nifi.config.model.TransportConfig;
 import com.github.hermannpencole.nifi.config.service.*;
+import com.github.hermannpencole.nifi.config.utils.Backoff;
+import com.github.hermannpencole.nifi.config.utils.CancellableApiClient;
+import com.github.hermannpencole.nifi.config.utils.StartupTimer;
 import com.github.hermannpencole.nifi.swagger.ApiClient;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.Configuration;
+import com.github.hermannpencole.nifi.swagger.client.*;
 import com.github.hermannpencole.nifi.swagger.client.model.PositionDTO;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
@@ -14,8 +22,18 @@ import org.apache.commons.cli.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.stream.Collectors;
 
 /**
@@ -37,6 +55,16 @@ public class Main {
     public static final int DEFAULT_WRITETIMEOUT = 10000;
     public static final double DEFAULT_PLACEWIDTH = 1935d;
     public static final String DEFAULT_PLACE = "0,0";
+    public static final int DEFAULT_PARALLELISM = 8;
+    public static final int DEFAULT_CONCURRENCY = 8;
+    public static final int DEFAULT_BRANCH_CONCURRENCY = 4;
+    public static final int DEFAULT_SERVER_PORT = 8686;
+    public static final String SERVER_TOKEN_VARIABLE = "NIFI_CONFIG_SERVER_TOKEN";
+
+    /**
+     * the options of a job of the mode server, the others are fixed by the server
+     */
+    public static final List<String> JOB_OPTIONS = Arrays.asList("m", "b", "c", "manifest", "branchConcurrency", "planOf", "noStartProcessors", "diff", "keepTemplate");
 
     /**
      * Print to the console the usage.
@@ -48,6 +76,56 @@ public class Main {
         formatter.printHelp("java -jar nifi-deploy-config-" + version +".jar [OPTIONS]", options);
     }
 
+    /**
+     * the options of the command line, and of the jobs of the mode server
+     *
+     * @return
+     */
+    public static Options createOptions() {
+        Options options = new Options();
+        options.addOption("h", "help", false, "Usage description");
+        options.addOption("b", "branch", true, "Target process group (must begin by root) : root > my processor > my proce2 (default root)");
+        options.addOption("m", "mode", true, "Mandatory, possible values : updateConfig/extractConfig/deployTemplate/undeploy/plan/server");
+        options.addOption("c", "conf", true, "Mandatory if mode in [updateConfig, extractConfig, deployTemplate]  : configuration file");
+        options.addOption("manifest", true, "Manifest file for updateConfig of many branches in one run, a line by branch : branch=configuration file (replace branch and conf)");
+        options.addOption("branchConcurrency", true, "Maximum number of branches of the manifest updated concurrently (default 4)");
+        options.addOption("planOf", true, "Mode planned by the mode plan, possible values : updateConfig/deployTemplate/undeploy (default updateConfig)");
+        options.addOption("n", "nifi", true, "Mandatory : Nifi URL (ex : http://localhost:8080/nifi-api), many URL separated by comma for updateConfig and deployTemplate on many clusters in parallel");
+        options.addOption("clusterPolicy", true, "Policy of the deployment on many clusters, possible values : all/failFast/canary (default all)");
+        options.addOption("user", true, "User name for access via username/password. If present, password is mandatory");
+        options.addOption("password", true, "Password for access via username/password. If present, user is mandatory");
+        options.addOption("f", "force", false, "Turn on force mode : empty queue after timeout");
+        options.addOption("timeout", true, "Allow specifying the polling timeout in second (defaut 120 seconds); negative value indicates no timeout");
+        options.addOption("interval", true, "Allow specifying the polling interval in second (default 2 seconds), the maximum delay of the polling when pollMaxDelay is not present (0 for the initial delay)");
+        options.addOption("pollInitialDelay", true, "Delay in millisecond (> 0) before the second evaluation of a polling, doubled at each attempt (default 50 ms)");
+        options.addOption("pollMaxDelay", true, "Maximum delay in millisecond between two evaluations of a polling (default interval)");
+        options.addOption("accessFromTicket", false, "Access via Kerberos ticket exchange / SPNEGO negotiation");
+        options.addOption("noVerifySsl", false, "Turn off ssl verification certificat");
+        options.addOption("noStartProcessors", false, "Turn off auto start of the processors after update of the config");
+        options.addOption("diff", false, "Turn on diff mode for updateConfig : the branch is not stopped, only the processors whose config differ and the processors using a controller whose config differ are stopped, updated and restarted if they were running");
+        options.addOption("enableDebugMode", false, "Turn on debug mode");
+        options.addOption("connectionTimeout", true, "Configure api client connection timeout (default 10 seconds)");
+        options.addOption("readTimeout", true, "configure api client read timeout (default 10 seconds)");
+        options.addOption("writeTimeout", true, "Configure api client write timeout (default 10 seconds)");
+        options.addOption("transportConf", true, "Json file of http transport configuration (maxIdleConnections, keepAlive, maxRequestsPerHost, http2, gzip), overridden by the options");
+        options.addOption("maxIdleConnections", true, "Number of idle connections kept in the pool of the api client (default 16)");
+        options.addOption("keepAlive", true, "Time in second an idle connection is kept in the pool of the api client (default 300 seconds)");
+        options.addOption("maxRequestsPerHost", true, "Maximum number of concurrent calls to nifi (default 16)");
+        options.addOption("noHttp2", false, "Turn off the negotiation of http/2");
+        options.addOption("noGzip", false, "Turn off the gzip compression of the responses");
+        options.addOption("keepTemplate", false, "Keep template after installation (default false)");
+        options.addOption("placeWidth", true, "Width of place for installing group (default 1935 : 430 * (4 + 1/2) = 4 pro line)");
+        options.addOption("startPosition", true, "Starting position for the place for installing group, format x,y (default : 0,0)");
+        options.addOption("parallelism", true, "Maximum number of process groups fetched concurrently by extractConfig (default 8)");
+        options.addOption("noBulkSchedule", false, "Turn off the start/stop of a whole wave in one request, the components are updated one by one (at most concurrency in same time)");
+        options.addOption("concurrency", true, "Maximum number of components started or stopped concurrently in the same wave, and of controller services enabled or disabled concurrently (default 8, 1 for one by one)");
+        options.addOption("serverPort", true, "Port of the mode server on localhost (default 8686)");
+        options.addOption("serverTokenFile", true, "File of the token expected by the mode server in the header Authorization: Bearer of the jobs (default the environment variable NIFI_CONFIG_SERVER_TOKEN)");
+        options.addOption("startupBudget", true, "Duration of the startup in millisecond (jvm, injector and connection to nifi) over which a warning is logged");
+        options.addOption("cdsTraining", false, "Training run of the class data sharing archive : load the classes of all the modes and exit, without nifi");
+        return options;
+    }
+
     /**
      * The main method.
      *
@@ -55,41 +133,27 @@ public class Main {
      * @throws Exception the exception
      */
     public static void main(String[] args) throws Exception {
+        StartupTimer timer = new StartupTimer();
         try {
             // Command line args parsing
             CommandLineParser commandLineParser = new DefaultParser();
-            Options options = new Options();
-            options.addOption("h", "help", false, "Usage description");
-            options.addOption("b", "branch", true, "Target process group (must begin by root) : root > my processor > my proce2 (default root)");
-            options.addOption("m", "mode", true, "Mandatory, possible values : updateConfig/extractConfig/deployTemplate/undeploy");
-            options.addOption("c", "conf", true, "Mandatory if mode in [updateConfig, extractConfig, deployTemplate]  : configuration file");
-            options.addOption("n", "nifi", true, "Mandatory : Nifi URL (ex : http://localhost:8080/nifi-api)");
-            options.addOption("user", true, "User name for access via username/password. If present, password is mandatory");
-            options.addOption("password", true, "Password for access via username/password. If present, user is mandatory");
-            options.addOption("f", "force", false, "Turn on force mode : empty queue after timeout");
-            options.addOption("timeout", true, "Allow specifying the polling timeout in second (defaut 120 seconds); negative value indicates no timeout");
-            options.addOption("interval", true, "Allow specifying the polling interval in second (default 2 seconds)");
-            options.addOption("accessFromTicket", false, "Access via Kerberos ticket exchange / SPNEGO negotiation");
-            options.addOption("noVerifySsl", false, "Turn off ssl verification certificat");
-            options.addOption("noStartProcessors", false, "Turn off auto start of the processors after update of the config");
-            options.addOption("enableDebugMode", false, "Turn on debug mode");
-            options.addOption("connectionTimeout", true, "Configure api client connection timeout (default 10 seconds)");
-            options.addOption("readTimeout", true, "configure api client read timeout (default 10 seconds)");
-            options.addOption("writeTimeout", true, "Configure api client write timeout (default 10 seconds)");
-            options.addOption("keepTemplate", false, "Keep template after installation (default false)");
-            options.addOption("placeWidth", true, "Width of place for installing group (default 1935 : 430 * (4 + 1/2) = 4 pro line)");
-            options.addOption("startPosition", true, "Starting position for the place for installing group, format x,y (default : 0,0)");
+            Options options = createOptions();
 
             // parse the command line arguments
             CommandLine cmd = commandLineParser.parse(options, args);
             if (cmd.hasOption("h")) {
                 printUsage(options);
                 System.exit(1);
-            } else if (!cmd.hasOption("n") || (!cmd.hasOption("c") && cmd.hasOption("m") && !cmd.getOptionValue("m").equals("undeploy") )) {
+            } else if (cmd.hasOption("cdsTraining")) {
+                train();
+            } else if (!cmd.hasOption("n") || isInvalidMode(cmd)) {
+                printUsage(options);
+                System.exit(1);
+            } else if (cmd.getOptionValue("n").contains(",") && !"updateConfig".equals(cmd.getOptionValue("m")) && !"deployTemplate".equals(cmd.getOptionValue("m"))) {
                 printUsage(options);
                 System.exit(1);
-            } else if (!"updateConfig".equals(cmd.getOptionValue("m")) && !"extractConfig".equals(cmd.getOptionValue("m"))
-                    && !"deployTemplate".equals(cmd.getOptionValue("m")) && !"undeploy".equals(cmd.getOptionValue("m")) ) {
+            } else if (cmd.hasOption("clusterPolicy") && !"all".equals(cmd.getOptionValue("clusterPolicy"))
+                    && !"failFast".equals(cmd.getOptionValue("clusterPolicy")) && !"canary".equals(cmd.getOptionValue("clusterPolicy"))) {
                 printUsage(options);
                 System.exit(1);
             } else if ( (cmd.hasOption("user") && !cmd.hasOption("password")) || (cmd.hasOption("password") && !cmd.hasOption("user")) ) {
@@ -99,56 +163,44 @@ public class Main {
                 //configure options
                 Integer timeout = cmd.hasOption("timeout") ? Integer.valueOf(cmd.getOptionValue("timeout")) : DEFAULT_TIMEOUT;
                 Integer interval = cmd.hasOption("interval") ? Integer.valueOf(cmd.getOptionValue("interval")) : DEFAULT_INTERVAL;
-                Integer connectionTimeout = cmd.hasOption("connectionTimeout") ? Integer.valueOf(cmd.getOptionValue("connectionTimeout")) : DEFAULT_CONNECTIONTIMEOUT;
-                Integer readTimeout = cmd.hasOption("readTimeout") ? Integer.valueOf(cmd.getOptionValue("readTimeout")) : DEFAULT_READTIMEOUT;
-                Integer writeTimeout = cmd.hasOption("writeTimeout") ? Integer.valueOf(cmd.getOptionValue("writeTimeout")) : DEFAULT_WRITETIMEOUT;
                 Double placeWidth = cmd.hasOption("placeWidth") ? Double.valueOf(cmd.getOptionValue("placeWidth")) : DEFAULT_PLACEWIDTH;
                 String startPlace = cmd.hasOption("startPosition") ? cmd.getOptionValue("startPosition") : DEFAULT_PLACE;
                 Boolean forceMode = cmd.hasOption("force");
+                Integer parallelism = cmd.hasOption("parallelism") ? Integer.valueOf(cmd.getOptionValue("parallelism")) : DEFAULT_PARALLELISM;
+                Integer concurrency = cmd.hasOption("concurrency") ? Integer.valueOf(cmd.getOptionValue("concurrency")) : DEFAULT_CONCURRENCY;
+                Boolean bulkSchedule = !cmd.hasOption("noBulkSchedule");
+                Long pollInitialDelay = cmd.hasOption("pollInitialDelay") ? Long.valueOf(cmd.getOptionValue("pollInitialDelay")) : Backoff.DEFAULT_INITIAL_DELAY;
+                //an interval of 0 (polling without pause before the backoff) polls at the initial delay
+                Long pollMaxDelay = cmd.hasOption("pollMaxDelay") ? Long.valueOf(cmd.getOptionValue("pollMaxDelay"))
+                        : (interval > 0 ? interval * 1000L : Backoff.DEFAULT_INITIAL_DELAY);
+                Backoff backoff = new Backoff(Math.min(pollInitialDelay, pollMaxDelay), pollMaxDelay);
 
                 LOG.info(String.format("Starting config_nifi %s on mode %s", version, cmd.getOptionValue("m")) );
                 String addressNifi = cmd.getOptionValue("n");
-                String fileConfiguration = cmd.getOptionValue("c");
 
-                String branch = "root";
-                if (cmd.hasOption("b")) {
-                    branch = cmd.getOptionValue("b");
-                }
-                List<String> branchList = Arrays.stream(branch.split(">")).map(String::trim).collect(Collectors.toList());
-                if (!branchList.get(0).equals("root")) {
-                    throw new ConfigException("The branch address must begin with the element 'root' ( sample : root > branch > sub-branch)");
-                }
+                List<String> branchList = getBranch(cmd);
 
-                Injector injector = getInjector(timeout, interval, placeWidth, createPosition(startPlace), forceMode);
-
-                //start
-                AccessService accessService = injector.getInstance(AccessService.class);
-                accessService.setConfiguration(addressNifi, !cmd.hasOption("noVerifySsl"), cmd.hasOption("enableDebugMode"), connectionTimeout, readTimeout, writeTimeout);
-
-                accessService.addTokenOnConfiguration(cmd.hasOption("accessFromTicket"), cmd.getOptionValue("user"), cmd.getOptionValue("password"));
-
-                InformationService infoService = injector.getInstance(InformationService.class);
-                String nifiVersion =  infoService.getVersion();
-                LOG.info(String.format("Communicate with nifi %s", nifiVersion));
-
-                if ("updateConfig".equals(cmd.getOptionValue("m"))) {
-                    //Get an instance of the bean from the context
-                    UpdateProcessorService processorService = injector.getInstance(UpdateProcessorService.class);
-                    processorService.updateByBranch(branchList, fileConfiguration, cmd.hasOption("noStartProcessors"));
-                    LOG.info("The group configuration {} is updated with the file {}.", branch, fileConfiguration);
-                } else if ("extractConfig".equals(cmd.getOptionValue("m"))) {
-                    //Get an instance of the bean from the context
-                    ExtractProcessorService processorService = injector.getInstance(ExtractProcessorService.class);
-                    processorService.extractByBranch(branchList, fileConfiguration);
-                    LOG.info("The group configuration {} is extrated on file {}", branch, fileConfiguration);
-                } else if ("deployTemplate".equals(cmd.getOptionValue("m"))) {
-                    TemplateService templateService = injector.getInstance(TemplateService.class);
-                    templateService.installOnBranch(branchList, fileConfiguration, cmd.hasOption("keepTemplate"));
-                    LOG.info("Template {} is installed on the group {}", fileConfiguration, branch);
+                List<String> addressesNifi = Arrays.stream(addressNifi.split(",")).map(String::trim).collect(Collectors.toList());
+                if (addressesNifi.size() == 1) {
+                    long start = System.currentTimeMillis();
+                    Injector injector = getInjector(timeout, backoff, placeWidth, createPosition(startPlace), forceMode, parallelism, concurrency, bulkSchedule);
+                    timer.record("injector", start);
+                    run(injector, cmd, addressNifi, branchList, timer);
                 } else {
-                    TemplateService templateService = injector.getInstance(TemplateService.class);
-                    templateService.undeploy(branchList);
-                    LOG.info("The group {} is deleted", branch);
+                    //same mode on many clusters in parallel, each with its own client
+                    ClusterDeployment.Policy policy = ClusterDeployment.Policy.valueOf(cmd.getOptionValue("clusterPolicy", ClusterDeployment.Policy.all.name()));
+                    List<ClusterResult> results = new ClusterDeployment(policy).run(addressesNifi, address -> {
+                        StartupTimer clusterTimer = timer.copy();
+                        long start = System.currentTimeMillis();
+                        Injector injector = getInjector(timeout, backoff, placeWidth, createPosition(startPlace), forceMode, parallelism, concurrency, bulkSchedule, new CancellableApiClient());
+                        clusterTimer.record("injector", start);
+                        run(injector, cmd, address, branchList, clusterTimer);
+                    });
+                    ClusterDeployment.log(results);
+                    long failed = results.stream().filter(result -> result.getStatus() != ClusterResult.Status.OK).count();
+                    if (failed > 0) {
+                        throw new ConfigException(failed + " clusters are not deployed");
+                    }
                 }
             }
         } catch (ApiException e) {
@@ -157,6 +209,277 @@ public class Main {
         }
     }
 
+    /**
+     * is the mode unknown, or an option mandatory for the mode missing
+     *
+     * @param cmd
+     * @return
+     */
+    public static boolean isInvalidMode(CommandLine cmd) {
+        return (!cmd.hasOption("c") && cmd.hasOption("m") && !cmd.getOptionValue("m").equals("undeploy") && !cmd.getOptionValue("m").equals("server")
+                    && !(cmd.getOptionValue("m").equals("plan") && "undeploy".equals(cmd.getOptionValue("planOf")))
+                    && !(cmd.getOptionValue("m").equals("updateConfig") && cmd.hasOption("manifest")) )
+                || (cmd.hasOption("manifest") && !"updateConfig".equals(cmd.getOptionValue("m")))
+                || (!"updateConfig".equals(cmd.getOptionValue("m")) && !"extractConfig".equals(cmd.getOptionValue("m"))
+                    && !"deployTemplate".equals(cmd.getOptionValue("m")) && !"undeploy".equals(cmd.getOptionValue("m"))
+                    && !"plan".equals(cmd.getOptionValue("m")) && !"server".equals(cmd.getOptionValue("m")) )
+                || ("plan".equals(cmd.getOptionValue("m")) && cmd.hasOption("planOf") && !"updateConfig".equals(cmd.getOptionValue("planOf"))
+                    && !"deployTemplate".equals(cmd.getOptionValue("planOf")) && !"undeploy".equals(cmd.getOptionValue("planOf")) );
+    }
+
+    /**
+     * the token of the mode server : the content of the file of the option serverTokenFile, or the environment variable
+     * NIFI_CONFIG_SERVER_TOKEN
+     *
+     * @param cmd
+     * @return
+     * @throws IOException
+     */
+    public static String getServerToken(CommandLine cmd) throws IOException {
+        String token = cmd.hasOption("serverTokenFile")
+                ? new String(Files.readAllBytes(Paths.get(cmd.getOptionValue("serverTokenFile"))), StandardCharsets.UTF_8)
+                : System.getenv(SERVER_TOKEN_VARIABLE);
+        if (token == null || token.trim().isEmpty()) {
+            throw new ConfigException("The mode server must have a token : option serverTokenFile or environment variable " + SERVER_TOKEN_VARIABLE);
+        }
+        return token.trim();
+    }
+
+    /**
+     * the branch of the option b
+     *
+     * @param cmd
+     * @return
+     */
+    public static List<String> getBranch(CommandLine cmd) {
+        String branch = "root";
+        if (cmd.hasOption("b")) {
+            branch = cmd.getOptionValue("b");
+        }
+        List<String> branchList = Arrays.stream(branch.split(">")).map(String::trim).collect(Collectors.toList());
+        if (!branchList.get(0).equals("root")) {
+            throw new ConfigException("The branch address must begin with the element 'root' ( sample : root > branch > sub-branch)");
+        }
+        return branchList;
+    }
+
+    /**
+     * run the mode on a nifi cluster
+     *
+     * @param injector the injector of the cluster
+     * @param cmd
+     * @param addressNifi
+     * @param branchList
+     * @param timer the timer of the startup
+     * @throws IOException
+     * @throws ApiException
+     */
+    private static void run(Injector injector, CommandLine cmd, String addressNifi, List<String> branchList, StartupTimer timer) throws IOException, ApiException {
+        //the token of the server is checked before the connection
+        String serverToken = "server".equals(cmd.getOptionValue("m")) ? getServerToken(cmd) : null;
+        long start = System.currentTimeMillis();
+        connect(injector, cmd, addressNifi);
+        timer.record("connection", start);
+        timer.log(cmd.hasOption("startupBudget") ? Long.valueOf(cmd.getOptionValue("startupBudget")) : null);
+        if ("server".equals(cmd.getOptionValue("m"))) {
+            Integer serverPort = cmd.hasOption("serverPort") ? Integer.valueOf(cmd.getOptionValue("serverPort")) : DEFAULT_SERVER_PORT;
+            ConfigServer server = new ConfigServer(serverPort, serverToken, args -> runJob(injector, args));
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        } else {
+            execute(injector, cmd, branchList);
+        }
+    }
+
+    /**
+     * training run of the class data sharing archive : the classes of all the modes are loaded, without call on nifi
+     *
+     * @throws IOException
+     */
+    private static void train() throws IOException {
+        Injector injector = getInjector(DEFAULT_TIMEOUT, new Backoff(), DEFAULT_PLACEWIDTH, createPosition(DEFAULT_PLACE), false, DEFAULT_PARALLELISM, DEFAULT_CONCURRENCY, true, new CancellableApiClient());
+        Arrays.asList(UpdateProcessorService.class, ExtractProcessorService.class, TemplateService.class, PlanService.class, ManifestService.class, InformationService.class)
+                .forEach(injector::getInstance);
+        //the apis and the models of the swagger client are loaded on demand by the modes, all are loaded from the jar
+        int loaded = 0;
+        try {
+            File jar = new File(ApiClient.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (jar.isFile()) {
+                try (JarFile jarFile = new JarFile(jar)) {
+                    for (JarEntry entry : Collections.list(jarFile.entries())) {
+                        if (entry.getName().startsWith("com/github/hermannpencole/nifi/swagger/") && entry.getName().endsWith(".class")) {
+                            try {
+                                Class.forName(entry.getName().replace('/', '.').substring(0, entry.getName().length() - ".class".length()), false, Main.class.getClassLoader());
+                                loaded++;
+                            } catch (LinkageError e) {
+                                //a class of an optional dependency of the client (oauth) not used by nifi-config
+                                LOG.debug("{} not loaded : {}", entry.getName(), e.getMessage());
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (URISyntaxException | ClassNotFoundException e) {
+            throw new ConfigException(e);
+        }
+        LOG.info("Training run : {} classes of the swagger client loaded", loaded);
+    }
+
+    /**
+     * configuration of the client of the nifi cluster and authentication
+     *
+     * @param injector the injector of the cluster
+     * @param cmd
+     * @param addressNifi
+     * @throws IOException
+     * @throws ApiException
+     */
+    private static void connect(Injector injector, CommandLine cmd, String addressNifi) throws IOException, ApiException {
+        Integer connectionTimeout = cmd.hasOption("connectionTimeout") ? Integer.valueOf(cmd.getOptionValue("connectionTimeout")) : DEFAULT_CONNECTIONTIMEOUT;
+        Integer readTimeout = cmd.hasOption("readTimeout") ? Integer.valueOf(cmd.getOptionValue("readTimeout")) : DEFAULT_READTIMEOUT;
+        Integer writeTimeout = cmd.hasOption("writeTimeout") ? Integer.valueOf(cmd.getOptionValue("writeTimeout")) : DEFAULT_WRITETIMEOUT;
+        //start
+        AccessService accessService = injector.getInstance(AccessService.class);
+        accessService.setConfiguration(addressNifi, !cmd.hasOption("noVerifySsl"), cmd.hasOption("enableDebugMode"), connectionTimeout, readTimeout, writeTimeout);
+        accessService.setTransport(createTransportConfig(accessService, cmd));
+
+        accessService.addTokenOnConfiguration(cmd.hasOption("accessFromTicket"), cmd.getOptionValue("user"), cmd.getOptionValue("password"));
+
+        InformationService infoService = injector.getInstance(InformationService.class);
+        String nifiVersion =  infoService.getVersion();
+        LOG.info(String.format("Communicate with nifi %s", nifiVersion));
+    }
+
+    /**
+     * run a job of the mode server on the warm client : the flows and the controller services read by the previous jobs
+     * are forgotten, the token and the connections are kept. The token is asked again by the request that find it
+     * expired (see AccessService). The options of the server (connection, credentials, polling ...) are refused.
+     *
+     * @param injector the injector of the cluster
+     * @param args the arguments of the job
+     * @throws IOException
+     * @throws ApiException
+     * @throws ParseException
+     */
+    private static void runJob(Injector injector, List<String> args) throws IOException, ApiException, ParseException {
+        CommandLine cmd = new DefaultParser().parse(createOptions(), args.toArray(new String[args.size()]));
+        if (!cmd.hasOption("m") || "server".equals(cmd.getOptionValue("m")) || isInvalidMode(cmd)) {
+            throw new ParseException("The job must have a mode updateConfig/extractConfig/deployTemplate/undeploy/plan and its options");
+        }
+        for (Option option : cmd.getOptions()) {
+            if (!JOB_OPTIONS.contains(option.getOpt())) {
+                throw new ParseException("The option " + option.getOpt() + " is an option of the server, not of a job");
+            }
+        }
+        List<String> branchList = getBranch(cmd);
+        injector.getInstance(ProcessGroupService.class).invalidateAllFlow();
+        injector.getInstance(ControllerServicesService.class).clearCache();
+        execute(injector, cmd, branchList);
+    }
+
+    /**
+     * run the mode on the connected nifi cluster
+     *
+     * @param injector the injector of the cluster
+     * @param cmd
+     * @param branchList
+     * @throws IOException
+     * @throws ApiException
+     */
+    private static void execute(Injector injector, CommandLine cmd, List<String> branchList) throws IOException, ApiException {
+        String fileConfiguration = cmd.getOptionValue("c");
+        String branch = String.join(">", branchList);
+        AccessService accessService = injector.getInstance(AccessService.class);
+        ProcessGroupService processGroupService = injector.getInstance(ProcessGroupService.class);
+        RevisionTracker revisionTracker = injector.getInstance(RevisionTracker.class);
+        ControllerServiceCache controllerServiceCache = injector.getInstance(ControllerServiceCache.class);
+        //the counters are cumulative on the client of the server, the run logs only its own
+        long flowCacheHits = processGroupService.getFlowCacheHits();
+        long flowCacheMisses = processGroupService.getFlowCacheMisses();
+        long requests = accessService.getRequestCount();
+        long connections = accessService.getConnectionCount();
+        long conflicts = revisionTracker.getConflicts();
+        long controllerServiceCacheHits = controllerServiceCache.getHits();
+        long failed = 0;
+        if (cmd.hasOption("manifest")) {
+            //many branches in one run, with the same client and caches
+            ManifestService manifestService = injector.getInstance(ManifestService.class);
+            Integer branchConcurrency = cmd.hasOption("branchConcurrency") ? Integer.valueOf(cmd.getOptionValue("branchConcurrency")) : DEFAULT_BRANCH_CONCURRENCY;
+            List<ManifestEntry> entries = manifestService.updateAll(manifestService.readManifest(cmd.getOptionValue("manifest")),
+                    cmd.hasOption("noStartProcessors"), cmd.hasOption("diff"), branchConcurrency);
+            manifestService.log(entries);
+            failed = entries.stream().filter(entry -> !entry.isSuccess()).count();
+        } else if ("updateConfig".equals(cmd.getOptionValue("m"))) {
+            //Get an instance of the bean from the context
+            UpdateProcessorService processorService = injector.getInstance(UpdateProcessorService.class);
+            processorService.updateByBranch(branchList, fileConfiguration, cmd.hasOption("noStartProcessors"), cmd.hasOption("diff"));
+            LOG.info("The group configuration {} is updated with the file {}.", branch, fileConfiguration);
+        } else if ("extractConfig".equals(cmd.getOptionValue("m"))) {
+            //Get an instance of the bean from the context
+            ExtractProcessorService processorService = injector.getInstance(ExtractProcessorService.class);
+            processorService.extractByBranch(branchList, fileConfiguration);
+            LOG.info("The group configuration {} is extrated on file {}", branch, fileConfiguration);
+        } else if ("deployTemplate".equals(cmd.getOptionValue("m"))) {
+            TemplateService templateService = injector.getInstance(TemplateService.class);
+            templateService.installOnBranch(branchList, fileConfiguration, cmd.hasOption("keepTemplate"));
+            LOG.info("Template {} is installed on the group {}", fileConfiguration, branch);
+        } else if ("plan".equals(cmd.getOptionValue("m"))) {
+            //nothing is written on nifi
+            PlanService planService = injector.getInstance(PlanService.class);
+            String planOf = cmd.hasOption("planOf") ? cmd.getOptionValue("planOf") : "updateConfig";
+            DeploymentPlan plan;
+            if ("deployTemplate".equals(planOf)) {
+                plan = planService.planDeploy(branchList, fileConfiguration, cmd.hasOption("keepTemplate"));
+            } else if ("undeploy".equals(planOf)) {
+                plan = planService.planUndeploy(branchList);
+            } else {
+                plan = planService.planUpdate(branchList, fileConfiguration, cmd.hasOption("noStartProcessors"), cmd.hasOption("diff"));
+            }
+            planService.log(plan);
+        } else {
+            TemplateService templateService = injector.getInstance(TemplateService.class);
+            templateService.undeploy(branchList);
+            LOG.info("The group {} is deleted", branch);
+        }
+        requests = accessService.getRequestCount() - requests;
+        connections = accessService.getConnectionCount() - connections;
+        LOG.info("Flow cache : {} hits, {} misses", processGroupService.getFlowCacheHits() - flowCacheHits, processGroupService.getFlowCacheMisses() - flowCacheMisses);
+        LOG.info("Http transport : {} requests, {} connections opened, {} reused", requests, connections, requests - connections);
+        LOG.info("Revisions : {} conflicts retried", revisionTracker.getConflicts() - conflicts);
+        LOG.info("Controller services cache : {} hits", controllerServiceCache.getHits() - controllerServiceCacheHits);
+        if (failed > 0) {
+            throw new ConfigException(failed + " branches of the manifest are not updated");
+        }
+    }
+
+    /**
+     * configuration of the http transport : the file of the option transportConf then the options
+     *
+     * @param accessService
+     * @param cmd
+     * @return
+     * @throws IOException
+     */
+    public static TransportConfig createTransportConfig(AccessService accessService, CommandLine cmd) throws IOException {
+        TransportConfig transportConfig = cmd.hasOption("transportConf") ? accessService.readTransportConfig(cmd.getOptionValue("transportConf")) : new TransportConfig();
+        if (cmd.hasOption("maxIdleConnections")) {
+            transportConfig.setMaxIdleConnections(Integer.valueOf(cmd.getOptionValue("maxIdleConnections")));
+        }
+        if (cmd.hasOption("keepAlive")) {
+            transportConfig.setKeepAlive(Integer.valueOf(cmd.getOptionValue("keepAlive")));
+        }
+        if (cmd.hasOption("maxRequestsPerHost")) {
+            transportConfig.setMaxRequestsPerHost(Integer.valueOf(cmd.getOptionValue("maxRequestsPerHost")));
+        }
+        if (cmd.hasOption("noHttp2")) {
+            transportConfig.setHttp2(false);
+        }
+        if (cmd.hasOption("noGzip")) {
+            transportConfig.setGzip(false);
+        }
+        return transportConfig;
+    }
+
     public static PositionDTO createPosition(String value){
         PositionDTO positionDTO = new PositionDTO();
         String[] split = value.split(",");
@@ -168,22 +491,68 @@ public class Main {
         return positionDTO;
     }
     /**
-     * create injector with the values pass in parameter
+     * create injector with the values pass in parameter, for the default client
+     *
+     * @param timeout
+     * @param backoff
+     * @param placeWidth
+     * @param forceMode
+     * @param parallelism
+     * @param concurrency
+     * @param bulkSchedule
+     * @return
+     */
+    public static Injector getInjector(Integer timeout, Backoff backoff, Double placeWidth, PositionDTO startPosition, Boolean forceMode, Integer parallelism, Integer concurrency, Boolean bulkSchedule) {
+        return getInjector(timeout, backoff, placeWidth, startPosition, forceMode, parallelism, concurrency, bulkSchedule, defaultApiClient());
+    }
+
+    /**
+     * the default client of the swagger, cancellable by the polling
+     */
+    private static synchronized ApiClient defaultApiClient() {
+        if (!(Configuration.getDefaultApiClient() instanceof CancellableApiClient)) {
+            Configuration.setDefaultApiClient(new CancellableApiClient());
+        }
+        return Configuration.getDefaultApiClient();
+    }
+
+    /**
+     * create injector with the values pass in parameter, the api call nifi with the client given
      *
      * @param timeout
-     * @param interval
+     * @param backoff
      * @param placeWidth
      * @param forceMode
+     * @param parallelism
+     * @param concurrency
+     * @param bulkSchedule
+     * @param apiClient
      * @return
      */
-    public static Injector getInjector(Integer timeout, Integer interval, Double placeWidth, PositionDTO startPosition, Boolean forceMode) {
+    public static Injector getInjector(Integer timeout, Backoff backoff, Double placeWidth, PositionDTO startPosition, Boolean forceMode, Integer parallelism, Integer concurrency, Boolean bulkSchedule, ApiClient apiClient) {
         return Guice.createInjector(new AbstractModule() {
             protected void configure() {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(timeout);
-                bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(interval);
+                bind(Backoff.class).toInstance(backoff);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(forceMode);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(startPosition);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(placeWidth);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(parallelism);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(concurrency);
+                bind(Boolean.class).annotatedWith(Names.named("bulkSchedule")).toInstance(bulkSchedule);
+                bind(ApiClient.class).toInstance(apiClient);
+                //the apis are created on the first use, a mode loads only the apis of its services
+                bind(AccessApi.class).toProvider(() -> new AccessApi(apiClient)).in(Singleton.class);
+                bind(ConnectionsApi.class).toProvider(() -> new ConnectionsApi(apiClient)).in(Singleton.class);
+                bind(ControllerApi.class).toProvider(() -> new ControllerApi(apiClient)).in(Singleton.class);
+                bind(ControllerServicesApi.class).toProvider(() -> new ControllerServicesApi(apiClient)).in(Singleton.class);
+                bind(FlowApi.class).toProvider(() -> new FlowApi(apiClient)).in(Singleton.class);
+                bind(FlowfileQueuesApi.class).toProvider(() -> new FlowfileQueuesApi(apiClient)).in(Singleton.class);
+                bind(InputPortsApi.class).toProvider(() -> new InputPortsApi(apiClient)).in(Singleton.class);
+                bind(OutputPortsApi.class).toProvider(() -> new OutputPortsApi(apiClient)).in(Singleton.class);
+                bind(ProcessGroupsApi.class).toProvider(() -> new ProcessGroupsApi(apiClient)).in(Singleton.class);
+                bind(ProcessorsApi.class).toProvider(() -> new ProcessorsApi(apiClient)).in(Singleton.class);
+                bind(TemplatesApi.class).toProvider(() -> new TemplatesApi(apiClient)).in(Singleton.class);
             }
         });
     }
@@ -0,0 +1,64 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import java.util.Locale;
+
+/**
+ * The result of the run of the mode on a nifi cluster, when many clusters are deployed in same time
+ */
+public class ClusterResult {
+
+    public enum Status { NOT_RUN, OK, FAILED, CANCELLED }
+
+    private final String address;
+
+    private Status status = Status.NOT_RUN;
+
+    private String error;
+
+    private long duration;
+
+    public ClusterResult(String address) {
+        this.address = address;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * the run on the cluster is done
+     *
+     * @param status
+     * @param error null on success
+     * @param duration in millisecond
+     */
+    public void setResult(Status status, String error, long duration) {
+        this.status = status;
+        this.error = error;
+        this.duration = duration;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * the line of the report
+     *
+     * @return
+     */
+    public String format() {
+        if (status == Status.NOT_RUN) {
+            return address + " : NOT RUN";
+        }
+        return String.format(Locale.ROOT, "%s : %s in %.1f s%s", address, status, duration / 1000d, error == null ? "" : " (" + error + ")");
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.PropertyDescriptorDTO;
+
+import java.util.*;
+
+/**
+ * Graph of the dependencies between controller services : a controller service depends on the controller services
+ * set in its properties that identify a controller service.
+ *
+ * The controller services are ordered in levels : all the dependencies of a level are in the previous levels.
+ * Enable execute the levels from the first, disable from the last.
+ */
+public class ControllerServiceGraph {
+
+    private final List<List<ControllerServiceEntity>> levels = new ArrayList<>();
+
+    /**
+     * @param controllerServices the controller services, the dependencies absent of the collection are ignored
+     */
+    public ControllerServiceGraph(Collection<ControllerServiceEntity> controllerServices) {
+        Map<String, ControllerServiceEntity> byId = new LinkedHashMap<>();
+        controllerServices.forEach(controllerService -> byId.putIfAbsent(controllerService.getId(), controllerService));
+        Map<String, Integer> level = new HashMap<>();
+        for (String id : byId.keySet()) {
+            level(id, byId, level, new HashSet<>());
+        }
+        for (ControllerServiceEntity controllerService : byId.values()) {
+            int i = level.get(controllerService.getId());
+            while (levels.size() <= i) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(i).add(controllerService);
+        }
+    }
+
+    /**
+     * the level is the longest path to a controller service without dependency,
+     * a cycle (refused by nifi) is cut where it is found
+     */
+    private static int level(String id, Map<String, ControllerServiceEntity> byId, Map<String, Integer> level, Set<String> path) {
+        Integer known = level.get(id);
+        if (known != null) {
+            return known;
+        }
+        path.add(id);
+        int result = 0;
+        for (String dependency : getDependencies(byId.get(id))) {
+            if (byId.containsKey(dependency) && !path.contains(dependency)) {
+                result = Math.max(result, level(dependency, byId, level, path) + 1);
+            }
+        }
+        path.remove(id);
+        level.put(id, result);
+        return result;
+    }
+
+    /**
+     * the id of the controller services set in the properties that identify a controller service
+     *
+     * @param controllerService
+     * @return
+     */
+    public static Set<String> getDependencies(ControllerServiceEntity controllerService) {
+        Set<String> dependencies = new LinkedHashSet<>();
+        if (controllerService.getComponent() == null || controllerService.getComponent().getDescriptors() == null
+                || controllerService.getComponent().getProperties() == null) {
+            return dependencies;
+        }
+        for (Map.Entry<String, PropertyDescriptorDTO> entry : controllerService.getComponent().getDescriptors().entrySet()) {
+            if (entry.getValue().getIdentifiesControllerService() != null) {
+                String dependency = controllerService.getComponent().getProperties().get(entry.getKey());
+                if (dependency != null) {
+                    dependencies.add(dependency);
+                }
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * the levels from the controller services without dependency
+     *
+     * @return
+     */
+    public List<List<ControllerServiceEntity>> getLevels() {
+        return levels;
+    }
+}
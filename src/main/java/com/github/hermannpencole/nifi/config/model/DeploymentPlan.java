@@ -0,0 +1,220 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import java.util.*;
+
+/**
+ * Operations that a mode would execute on nifi, in order, resolved against the live flow without any write.
+ *
+ * Each operation carry the estimated number of requests and of polling evaluations ; the duration of an operation
+ * is estimated with the latency of a request and the delay of a polling, and the downtime of a component
+ * is the time between the start of the operation that stop it and the end of the operation that restart it.
+ */
+public class DeploymentPlan {
+
+    public enum Type { STOP, UPDATE, DISABLE, ENABLE, START, CREATE, DELETE }
+
+    /**
+     * an operation of the plan
+     */
+    public static class Operation {
+
+        private final Type type;
+
+        private final String description;
+
+        private final int requests;
+
+        private final int polls;
+
+        private final List<String> down = new ArrayList<>();
+
+        private final List<String> up = new ArrayList<>();
+
+        Operation(Type type, String description, int requests, int polls) {
+            this.type = type;
+            this.description = description;
+            this.requests = requests;
+            this.polls = polls;
+        }
+
+        /**
+         * the components unavailable from the start of this operation
+         *
+         * @param components
+         * @return
+         */
+        public Operation down(Collection<String> components) {
+            down.addAll(components);
+            return this;
+        }
+
+        /**
+         * the components available again at the end of this operation
+         *
+         * @param components
+         * @return
+         */
+        public Operation up(Collection<String> components) {
+            up.addAll(components);
+            return this;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public int getRequests() {
+            return requests;
+        }
+
+        public int getPolls() {
+            return polls;
+        }
+
+        public List<String> getDown() {
+            return down;
+        }
+
+        public List<String> getUp() {
+            return up;
+        }
+
+        /**
+         * @param latency in millisecond
+         * @param pollDelay in millisecond
+         * @return estimated duration in millisecond
+         */
+        public long getDuration(long latency, long pollDelay) {
+            return requests * latency + polls * pollDelay;
+        }
+    }
+
+    private final String mode;
+
+    private final List<String> branch;
+
+    private final List<Operation> operations = new ArrayList<>();
+
+    private int readRequests;
+
+    private long latency;
+
+    public DeploymentPlan(String mode, List<String> branch) {
+        this.mode = mode;
+        this.branch = branch;
+    }
+
+    /**
+     * add an operation at the end of the plan
+     *
+     * @param type
+     * @param description
+     * @param requests number of requests, the evaluations of the polling included
+     * @param polls number of polling evaluations that wait before a request
+     * @return the operation, to give the components stopped and started
+     */
+    public Operation add(Type type, String description, int requests, int polls) {
+        Operation operation = new Operation(type, description, requests, polls);
+        operations.add(operation);
+        return operation;
+    }
+
+    /**
+     * the requests done only to read nifi, by the mode as by the plan
+     *
+     * @param requests
+     */
+    public void addReadRequests(int requests) {
+        readRequests += requests;
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return latency of a request in millisecond, measured while building the plan
+     */
+    public long getLatency() {
+        return latency;
+    }
+
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    public int getReadRequests() {
+        return readRequests;
+    }
+
+    public int getRequests() {
+        return readRequests + operations.stream().mapToInt(Operation::getRequests).sum();
+    }
+
+    /**
+     * @param latency in millisecond
+     * @param pollDelay in millisecond
+     * @return estimated duration of the plan in millisecond
+     */
+    public long getDuration(long latency, long pollDelay) {
+        return readRequests * latency + operations.stream().mapToLong(operation -> operation.getDuration(latency, pollDelay)).sum();
+    }
+
+    /**
+     * the estimated downtime of each component stopped by the plan, in the order they are stopped
+     *
+     * @param latency in millisecond
+     * @param pollDelay in millisecond
+     * @return downtime in millisecond, null for a component that is not restarted by the plan
+     */
+    public Map<String, Long> getDowntime(long latency, long pollDelay) {
+        Map<String, Long> downSince = new LinkedHashMap<>();
+        Map<String, Long> downtime = new LinkedHashMap<>();
+        long time = readRequests * latency;
+        for (Operation operation : operations) {
+            for (String component : operation.getDown()) {
+                downSince.putIfAbsent(component, time);
+                downtime.putIfAbsent(component, null);
+            }
+            time += operation.getDuration(latency, pollDelay);
+            for (String component : operation.getUp()) {
+                Long since = downSince.remove(component);
+                if (since != null) {
+                    downtime.put(component, time - since);
+                }
+            }
+        }
+        return downtime;
+    }
+
+    /**
+     * the report of the plan, one line by operation then one line by component stopped
+     *
+     * @param latency in millisecond
+     * @param pollDelay in millisecond
+     * @return
+     */
+    public List<String> format(long latency, long pollDelay) {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("Plan of %s on %s : %d operations, %d requests (%d reads), estimated %s (%d ms by request, %d ms by polling)",
+                mode, branch, operations.size(), getRequests(), readRequests, formatDuration(getDuration(latency, pollDelay)), latency, pollDelay));
+        int i = 1;
+        for (Operation operation : operations) {
+            lines.add(String.format("%4d. %-7s %s : %d requests, ~%s", i++, operation.getType(), operation.getDescription(),
+                    operation.getRequests(), formatDuration(operation.getDuration(latency, pollDelay))));
+        }
+        Map<String, Long> downtime = getDowntime(latency, pollDelay);
+        lines.add(downtime.isEmpty() ? "Downtime : none" : "Downtime :");
+        downtime.forEach((component, duration) ->
+                lines.add("      " + component + " : " + (duration == null ? "stopped, not restarted" : "~" + formatDuration(duration))));
+        return lines;
+    }
+
+    private static String formatDuration(long millis) {
+        return millis < 1000 ? millis + " ms" : String.format(Locale.ROOT, "%.1f s", millis / 1000d);
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import com.github.hermannpencole.nifi.swagger.client.model.ConnectionEntity;
+
+import java.util.*;
+
+/**
+ * Plan for start or stop all the components of a branch.
+ *
+ * The graph of the connections (processors, ports, funnels and remote process groups of all the groups of the branch)
+ * is condensed by strongly connected components (a cycle is handled as one component) and ordered in waves :
+ * all the upstream components of a wave are in the previous waves.
+ * Stop execute the waves from the sources to the sinks, start from the sinks to the sources.
+ */
+public class ExecutionPlan {
+
+    private final List<Set<?>> waves = new ArrayList<>();
+
+    private final List<List<ConnectionEntity>> incoming = new ArrayList<>();
+
+    public ExecutionPlan(FlowIndex flowIndex) {
+        //the nodes of the graph, in the order of the flows
+        List<Object> nodes = new ArrayList<>(flowIndex.getComponents());
+        Map<Object, Integer> nodeIndex = new IdentityHashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            nodeIndex.put(nodes.get(i), i);
+        }
+        List<List<Integer>> successors = new ArrayList<>();
+        nodes.forEach(node -> successors.add(new ArrayList<>()));
+        Map<ConnectionEntity, Integer> destinations = new IdentityHashMap<>();
+        for (ConnectionEntity connection : flowIndex.getConnections()) {
+            Optional<?> source = flowIndex.getSource(connection);
+            Optional<?> destination = flowIndex.getDestination(connection);
+            destination.ifPresent(node -> destinations.put(connection, nodeIndex.get(node)));
+            if (source.isPresent() && destination.isPresent()) {
+                successors.get(nodeIndex.get(source.get())).add(nodeIndex.get(destination.get()));
+            }
+        }
+
+        //condensation : the components are emitted from the sinks to the sources
+        int[] component = new int[nodes.size()];
+        int componentCount = stronglyConnectedComponents(successors, component);
+
+        //the level of a component is the longest path from a source
+        List<List<Integer>> componentSuccessors = new ArrayList<>();
+        for (int i = 0; i < componentCount; i++) {
+            componentSuccessors.add(new ArrayList<>());
+        }
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int successor : successors.get(node)) {
+                if (component[node] != component[successor]) {
+                    componentSuccessors.get(component[node]).add(component[successor]);
+                }
+            }
+        }
+        int[] level = new int[componentCount];
+        int maxLevel = 0;
+        for (int c = componentCount - 1; c >= 0; c--) {
+            for (int successor : componentSuccessors.get(c)) {
+                level[successor] = Math.max(level[successor], level[c] + 1);
+            }
+            maxLevel = Math.max(maxLevel, level[c]);
+        }
+
+        List<Set<Object>> result = new ArrayList<>();
+        for (int i = 0; i <= maxLevel && !nodes.isEmpty(); i++) {
+            result.add(new LinkedHashSet<>());
+            incoming.add(new ArrayList<>());
+        }
+        for (int node = 0; node < nodes.size(); node++) {
+            result.get(level[component[node]]).add(nodes.get(node));
+        }
+        destinations.forEach((connection, node) -> incoming.get(level[component[node]]).add(connection));
+        waves.addAll(result);
+    }
+
+    /**
+     * iterative tarjan, the components are numbered in reverse topological order (the sinks first)
+     *
+     * @param successors
+     * @param component component of each node
+     * @return the number of component
+     */
+    private static int stronglyConnectedComponents(List<List<Integer>> successors, int[] component) {
+        int size = successors.size();
+        int[] index = new int[size];
+        int[] lowLink = new int[size];
+        boolean[] onStack = new boolean[size];
+        Arrays.fill(index, -1);
+        Deque<Integer> stack = new ArrayDeque<>();
+        Deque<int[]> callStack = new ArrayDeque<>();
+        int nextIndex = 0;
+        int componentCount = 0;
+
+        for (int root = 0; root < size; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+            //each frame : node, position in the successors
+            callStack.push(new int[]{root, 0});
+            index[root] = lowLink[root] = nextIndex++;
+            stack.push(root);
+            onStack[root] = true;
+            while (!callStack.isEmpty()) {
+                int[] frame = callStack.peek();
+                int node = frame[0];
+                if (frame[1] < successors.get(node).size()) {
+                    int successor = successors.get(node).get(frame[1]++);
+                    if (index[successor] == -1) {
+                        index[successor] = lowLink[successor] = nextIndex++;
+                        stack.push(successor);
+                        onStack[successor] = true;
+                        callStack.push(new int[]{successor, 0});
+                    } else if (onStack[successor]) {
+                        lowLink[node] = Math.min(lowLink[node], index[successor]);
+                    }
+                } else {
+                    callStack.pop();
+                    if (!callStack.isEmpty()) {
+                        int parent = callStack.peek()[0];
+                        lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+                    }
+                    if (lowLink[node] == index[node]) {
+                        int member;
+                        do {
+                            member = stack.pop();
+                            onStack[member] = false;
+                            component[member] = componentCount;
+                        } while (member != node);
+                        componentCount++;
+                    }
+                }
+            }
+        }
+        return componentCount;
+    }
+
+    /**
+     * the waves from the sources to the sinks
+     *
+     * @return
+     */
+    public List<Set<?>> getWaves() {
+        return waves;
+    }
+
+    /**
+     * the connections that feed the components of the wave
+     *
+     * @param wave index of the wave
+     * @return
+     */
+    public List<ConnectionEntity> getIncoming(int wave) {
+        return incoming.get(wave);
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+
+import java.util.*;
+
+/**
+ * Index of the connectable components (processor, input port, output port, funnel and remote process group)
+ * of one or more flow by id, with the connections incoming and outgoing of each component.
+ *
+ * Build once by flow snapshot, the lookup by id are then in constant time.
+ */
+public class FlowIndex {
+
+    private final Map<String, Object> components = new LinkedHashMap<>();
+
+    private final Map<String, List<ConnectionEntity>> incoming = new HashMap<>();
+
+    private final Map<String, List<ConnectionEntity>> outgoing = new HashMap<>();
+
+    private final Set<ConnectionEntity> connections = new HashSet<>();
+
+    private final Set<ProcessorEntity> processors = new HashSet<>();
+
+    public FlowIndex(Collection<FlowDTO> flows) {
+        flows.forEach(this::add);
+    }
+
+    public FlowIndex(FlowDTO flow) {
+        add(flow);
+    }
+
+    private void add(FlowDTO flow) {
+        //keep the priority of the search : processor, input port, output port, funnel then remote process group
+        flow.getRemoteProcessGroups().forEach(remoteProcessGroup -> components.put(remoteProcessGroup.getId(), remoteProcessGroup));
+        flow.getFunnels().forEach(funnel -> components.put(funnel.getId(), funnel));
+        flow.getOutputPorts().forEach(port -> components.put(port.getId(), port));
+        flow.getInputPorts().forEach(port -> components.put(port.getId(), port));
+        flow.getProcessors().forEach(processor -> components.put(processor.getId(), processor));
+        processors.addAll(flow.getProcessors());
+        for (ConnectionEntity connection : flow.getConnections()) {
+            connections.add(connection);
+            outgoing.computeIfAbsent(connection.getSourceId(), id -> new ArrayList<>()).add(connection);
+            incoming.computeIfAbsent(connection.getDestinationId(), id -> new ArrayList<>()).add(connection);
+        }
+    }
+
+    /**
+     * find processor, inputport, ouput port funnel or remote processor by id
+     *
+     * @param id
+     * @return
+     */
+    public Optional<?> findById(String id) {
+        return Optional.ofNullable(components.get(id));
+    }
+
+    /**
+     * the connections that have the component as destination
+     *
+     * @param id
+     * @return
+     */
+    public List<ConnectionEntity> getIncoming(String id) {
+        return incoming.getOrDefault(id, Collections.emptyList());
+    }
+
+    /**
+     * the connections that have the component as source
+     *
+     * @param id
+     * @return
+     */
+    public List<ConnectionEntity> getOutgoing(String id) {
+        return outgoing.getOrDefault(id, Collections.emptyList());
+    }
+
+    /**
+     * all the components indexed, in the order of the flows
+     *
+     * @return
+     */
+    public Collection<Object> getComponents() {
+        return components.values();
+    }
+
+    /**
+     * the component source of the connection, the remote process group for a remote port
+     *
+     * @param connection
+     * @return
+     */
+    public Optional<?> getSource(ConnectionEntity connection) {
+        return findConnectable(connection.getSourceId(), connection.getSourceGroupId());
+    }
+
+    /**
+     * the component destination of the connection, the remote process group for a remote port
+     *
+     * @param connection
+     * @return
+     */
+    public Optional<?> getDestination(ConnectionEntity connection) {
+        return findConnectable(connection.getDestinationId(), connection.getDestinationGroupId());
+    }
+
+    private Optional<?> findConnectable(String id, String groupId) {
+        Object component = components.get(id);
+        if (component == null && groupId != null && components.get(groupId) instanceof RemoteProcessGroupEntity) {
+            //the ports of remote process group are not in the flow, the group id is the id of remote process group
+            component = components.get(groupId);
+        }
+        return Optional.ofNullable(component);
+    }
+
+    public Set<ConnectionEntity> getConnections() {
+        return connections;
+    }
+
+    public Set<ProcessorEntity> getProcessors() {
+        return processors;
+    }
+
+    /**
+     * the id of the components source of a connection
+     *
+     * @return
+     */
+    public Set<String> getSourceIds() {
+        return outgoing.keySet();
+    }
+
+    /**
+     * the id of the components destination of a connection
+     *
+     * @return
+     */
+    public Set<String> getDestinationIds() {
+        return incoming.keySet();
+    }
+}
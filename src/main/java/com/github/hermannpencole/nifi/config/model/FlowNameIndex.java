@@ -0,0 +1,28 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import com.github.hermannpencole.nifi.swagger.client.model.FlowDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorEntity;
+
+/**
+ * Index by name and by type of the components of one flow, to build once by fetched flow
+ */
+public class FlowNameIndex {
+
+    private final NameIndex<ProcessGroupEntity> processGroups;
+
+    private final NameIndex<ProcessorEntity> processors;
+
+    public FlowNameIndex(FlowDTO flow) {
+        processGroups = new NameIndex<>(flow.getProcessGroups(), item -> item.getComponent() == null ? null : item.getComponent().getName());
+        processors = new NameIndex<>(flow.getProcessors(), item -> item.getComponent() == null ? null : item.getComponent().getName());
+    }
+
+    public NameIndex<ProcessGroupEntity> getProcessGroups() {
+        return processGroups;
+    }
+
+    public NameIndex<ProcessorEntity> getProcessors() {
+        return processors;
+    }
+}
@@ -0,0 +1,185 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorDTO;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming reader of a configuration file (the schema of GroupProcessorsEntity) : the processors, controller services
+ * and connections are given to the visitor group by group while the file is read, only one of them is in memory.
+ *
+ * The group must be found by its name before its content is given, when the name is after the content
+ * (file extracted by the previous versions) the content of the group is kept in memory until the name is read.
+ *
+ * @param <T> the group found by the visitor
+ */
+public class GroupProcessorsReader<T> {
+
+    /**
+     * receive the content of the configuration
+     *
+     * @param <T> the group found by the visitor
+     */
+    public interface Visitor<T> {
+
+        /**
+         * find the child group of the configuration, call before the content of the child
+         *
+         * @param parent
+         * @param name
+         * @return
+         */
+        T enterGroup(T parent, String name);
+
+        void processor(T group, ProcessorDTO processor);
+
+        void controllerService(T group, ControllerServiceDTO controllerService);
+
+        void connection(T group, ConnectionPort connection);
+    }
+
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+
+    private final Visitor<T> visitor;
+
+    public GroupProcessorsReader(Visitor<T> visitor) {
+        this.visitor = visitor;
+    }
+
+    /**
+     * read the configuration and give the content to the visitor
+     *
+     * @param reader
+     * @param root the group of the root of the configuration
+     * @throws IOException
+     */
+    public void read(Reader reader, T root) throws IOException {
+        JsonReader in = new JsonReader(reader);
+        readGroup(in, null, root);
+        if (in.peek() != JsonToken.END_DOCUMENT) {
+            throw new ConfigException("Configuration must contain only one group, find " + in.peek() + " at " + in.getPath());
+        }
+    }
+
+    /**
+     * check the syntax of the whole configuration without keeping it, before any change on nifi
+     *
+     * @param reader
+     * @throws IOException
+     */
+    public static void validate(Reader reader) throws IOException {
+        JsonReader in = new JsonReader(reader);
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            throw new ConfigException("Configuration must be a json object, find " + in.peek());
+        }
+        in.skipValue();
+        if (in.peek() != JsonToken.END_DOCUMENT) {
+            throw new ConfigException("Configuration must contain only one group, find " + in.peek() + " at " + in.getPath());
+        }
+    }
+
+    /**
+     * @param in
+     * @param parent
+     * @param group null while the name is not read
+     * @throws IOException
+     */
+    private void readGroup(JsonReader in, T parent, T group) throws IOException {
+        GroupProcessorsEntity pending = group == null ? new GroupProcessorsEntity() : null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "name":
+                    String name = in.nextString();
+                    if (group == null) {
+                        group = visitor.enterGroup(parent, name);
+                        visit(pending, group);
+                        pending = null;
+                    }
+                    break;
+                case "processors":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        ProcessorDTO processor = gson.fromJson(in, ProcessorDTO.class);
+                        if (group == null) {
+                            pending.getProcessors().add(processor);
+                        } else {
+                            visitor.processor(group, processor);
+                        }
+                    }
+                    in.endArray();
+                    break;
+                case "controllerServices":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        ControllerServiceDTO controllerService = gson.fromJson(in, ControllerServiceDTO.class);
+                        if (group == null) {
+                            pending.getControllerServicesDTO().add(controllerService);
+                        } else {
+                            visitor.controllerService(group, controllerService);
+                        }
+                    }
+                    in.endArray();
+                    break;
+                case "connections":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        ConnectionPort connection = gson.fromJson(in, ConnectionPort.class);
+                        if (group == null) {
+                            pending.getConnectionPorts().add(connection);
+                        } else {
+                            visitor.connection(group, connection);
+                        }
+                    }
+                    in.endArray();
+                    break;
+                case "groupProcessorsEntity":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        if (group == null) {
+                            pending.getGroupProcessorsEntity().add(gson.fromJson(in, GroupProcessorsEntity.class));
+                        } else {
+                            readGroup(in, group, null);
+                        }
+                    }
+                    in.endArray();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        if (group == null) {
+            throw new ConfigException("Cannot find a group without name at " + in.getPath());
+        }
+    }
+
+    /**
+     * give a group already in memory
+     *
+     * @param configuration
+     * @param group
+     */
+    private void visit(GroupProcessorsEntity configuration, T group) {
+        configuration.getProcessors().forEach(processor -> visitor.processor(group, processor));
+        configuration.getControllerServicesDTO().forEach(controllerService -> visitor.controllerService(group, controllerService));
+        configuration.getConnectionPorts().forEach(connection -> visitor.connection(group, connection));
+        for (GroupProcessorsEntity child : configuration.getGroupProcessorsEntity()) {
+            if (child.getName() == null) {
+                throw new ConfigException("Cannot find a group without name");
+            }
+            visit(child, visitor.enterGroup(group, child.getName()));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorDTO;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Streaming writer of a configuration file (the schema of GroupProcessorsEntity) : each group is written
+ * when it is extracted, the name of the group first so that the file can be read group by group by GroupProcessorsReader.
+ *
+ * A group is written with beginGroup, processors, beginGroups (the children) ... endGroups, controllerServices then endGroup.
+ */
+public class GroupProcessorsWriter implements Closeable {
+
+    private final Gson gson = new Gson();
+
+    private final JsonWriter out;
+
+    public GroupProcessorsWriter(Writer writer) {
+        this.out = new JsonWriter(writer);
+        out.setIndent("  ");
+        out.setHtmlSafe(true);
+    }
+
+    public void beginGroup(String name) throws IOException {
+        out.beginObject();
+        out.name("name").value(name);
+    }
+
+    /**
+     * write the processors, nothing when there is no processor
+     *
+     * @param processors
+     * @throws IOException
+     */
+    public void processors(Iterator<ProcessorDTO> processors) throws IOException {
+        if (!processors.hasNext()) {
+            return;
+        }
+        out.name("processors").beginArray();
+        while (processors.hasNext()) {
+            gson.toJson(processors.next(), ProcessorDTO.class, out);
+        }
+        out.endArray();
+    }
+
+    public void beginGroups() throws IOException {
+        out.name("groupProcessorsEntity").beginArray();
+    }
+
+    public void endGroups() throws IOException {
+        out.endArray();
+    }
+
+    /**
+     * write the controller services, nothing when there is no controller service
+     *
+     * @param controllerServices
+     * @throws IOException
+     */
+    public void controllerServices(List<ControllerServiceDTO> controllerServices) throws IOException {
+        if (controllerServices.isEmpty()) {
+            return;
+        }
+        out.name("controllerServices").beginArray();
+        for (ControllerServiceDTO controllerService : controllerServices) {
+            gson.toJson(controllerService, ControllerServiceDTO.class, out);
+        }
+        out.endArray();
+    }
+
+    public void endGroup() throws IOException {
+        //the connections are not extracted
+        out.name("connections").beginArray().endArray();
+        out.endObject();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,248 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recursive status of a process group (/flow/process-groups/{id}/status?recursive=true).
+ *
+ * The swagger model don't keep the snapshot of the children process group and don't know the run status
+ * send by nifi ("Running", "Stopped" ...), so only the fields used for waiting a state are mapped here.
+ */
+public class GroupStatusEntity {
+
+    @SerializedName("processGroupStatus")
+    private Status processGroupStatus;
+
+    public Status getProcessGroupStatus() {
+        return processGroupStatus;
+    }
+
+    public void setProcessGroupStatus(Status processGroupStatus) {
+        this.processGroupStatus = processGroupStatus;
+    }
+
+    public static class Status {
+
+        @SerializedName("aggregateSnapshot")
+        private Snapshot aggregateSnapshot;
+
+        public Snapshot getAggregateSnapshot() {
+            return aggregateSnapshot;
+        }
+
+        public void setAggregateSnapshot(Snapshot aggregateSnapshot) {
+            this.aggregateSnapshot = aggregateSnapshot;
+        }
+    }
+
+    public static class Snapshot {
+
+        @SerializedName("id")
+        private String id;
+
+        @SerializedName("processorStatusSnapshots")
+        private List<ComponentEntity> processorStatusSnapshots = new ArrayList<>();
+
+        @SerializedName("inputPortStatusSnapshots")
+        private List<ComponentEntity> inputPortStatusSnapshots = new ArrayList<>();
+
+        @SerializedName("outputPortStatusSnapshots")
+        private List<ComponentEntity> outputPortStatusSnapshots = new ArrayList<>();
+
+        @SerializedName("connectionStatusSnapshots")
+        private List<ComponentEntity> connectionStatusSnapshots = new ArrayList<>();
+
+        @SerializedName("processGroupStatusSnapshots")
+        private List<ChildEntity> processGroupStatusSnapshots = new ArrayList<>();
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public List<ComponentEntity> getProcessorStatusSnapshots() {
+            return processorStatusSnapshots;
+        }
+
+        public void setProcessorStatusSnapshots(List<ComponentEntity> processorStatusSnapshots) {
+            this.processorStatusSnapshots = processorStatusSnapshots;
+        }
+
+        public List<ComponentEntity> getInputPortStatusSnapshots() {
+            return inputPortStatusSnapshots;
+        }
+
+        public void setInputPortStatusSnapshots(List<ComponentEntity> inputPortStatusSnapshots) {
+            this.inputPortStatusSnapshots = inputPortStatusSnapshots;
+        }
+
+        public List<ComponentEntity> getOutputPortStatusSnapshots() {
+            return outputPortStatusSnapshots;
+        }
+
+        public void setOutputPortStatusSnapshots(List<ComponentEntity> outputPortStatusSnapshots) {
+            this.outputPortStatusSnapshots = outputPortStatusSnapshots;
+        }
+
+        public List<ComponentEntity> getConnectionStatusSnapshots() {
+            return connectionStatusSnapshots;
+        }
+
+        public void setConnectionStatusSnapshots(List<ComponentEntity> connectionStatusSnapshots) {
+            this.connectionStatusSnapshots = connectionStatusSnapshots;
+        }
+
+        public List<ChildEntity> getProcessGroupStatusSnapshots() {
+            return processGroupStatusSnapshots;
+        }
+
+        public void setProcessGroupStatusSnapshots(List<ChildEntity> processGroupStatusSnapshots) {
+            this.processGroupStatusSnapshots = processGroupStatusSnapshots;
+        }
+    }
+
+    public static class ChildEntity {
+
+        @SerializedName("id")
+        private String id;
+
+        @SerializedName("processGroupStatusSnapshot")
+        private Snapshot processGroupStatusSnapshot;
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public Snapshot getProcessGroupStatusSnapshot() {
+            return processGroupStatusSnapshot;
+        }
+
+        public void setProcessGroupStatusSnapshot(Snapshot processGroupStatusSnapshot) {
+            this.processGroupStatusSnapshot = processGroupStatusSnapshot;
+        }
+    }
+
+    /**
+     * processor, port or connection (only one of the snapshot is filled)
+     */
+    public static class ComponentEntity {
+
+        @SerializedName("id")
+        private String id;
+
+        @SerializedName("processorStatusSnapshot")
+        private Component processorStatusSnapshot;
+
+        @SerializedName("portStatusSnapshot")
+        private Component portStatusSnapshot;
+
+        @SerializedName("connectionStatusSnapshot")
+        private Component connectionStatusSnapshot;
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public Component getProcessorStatusSnapshot() {
+            return processorStatusSnapshot;
+        }
+
+        public void setProcessorStatusSnapshot(Component processorStatusSnapshot) {
+            this.processorStatusSnapshot = processorStatusSnapshot;
+        }
+
+        public Component getPortStatusSnapshot() {
+            return portStatusSnapshot;
+        }
+
+        public void setPortStatusSnapshot(Component portStatusSnapshot) {
+            this.portStatusSnapshot = portStatusSnapshot;
+        }
+
+        public Component getConnectionStatusSnapshot() {
+            return connectionStatusSnapshot;
+        }
+
+        public void setConnectionStatusSnapshot(Component connectionStatusSnapshot) {
+            this.connectionStatusSnapshot = connectionStatusSnapshot;
+        }
+
+        public Component getSnapshot() {
+            if (processorStatusSnapshot != null) return processorStatusSnapshot;
+            if (portStatusSnapshot != null) return portStatusSnapshot;
+            return connectionStatusSnapshot;
+        }
+    }
+
+    public static class Component {
+
+        @SerializedName("id")
+        private String id;
+
+        @SerializedName("runStatus")
+        private String runStatus;
+
+        @SerializedName("activeThreadCount")
+        private Integer activeThreadCount;
+
+        @SerializedName("flowFilesQueued")
+        private Integer flowFilesQueued;
+
+        @SerializedName("queuedCount")
+        private String queuedCount;
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getRunStatus() {
+            return runStatus;
+        }
+
+        public void setRunStatus(String runStatus) {
+            this.runStatus = runStatus;
+        }
+
+        public Integer getActiveThreadCount() {
+            return activeThreadCount;
+        }
+
+        public void setActiveThreadCount(Integer activeThreadCount) {
+            this.activeThreadCount = activeThreadCount;
+        }
+
+        public Integer getFlowFilesQueued() {
+            return flowFilesQueued;
+        }
+
+        public void setFlowFilesQueued(Integer flowFilesQueued) {
+            this.flowFilesQueued = flowFilesQueued;
+        }
+
+        public String getQueuedCount() {
+            return queuedCount;
+        }
+
+        public void setQueuedCount(String queuedCount) {
+            this.queuedCount = queuedCount;
+        }
+    }
+}
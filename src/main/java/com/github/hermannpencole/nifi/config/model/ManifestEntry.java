@@ -0,0 +1,112 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A branch and the configuration to apply on it, read from a manifest, with the result of the update
+ */
+public class ManifestEntry {
+
+    private final List<String> branch;
+
+    private final String configuration;
+
+    private Set<String> controllerServices = Collections.emptySet();
+
+    private boolean done;
+
+    private String error;
+
+    private long duration;
+
+    public ManifestEntry(List<String> branch, String configuration) {
+        this.branch = branch;
+        this.configuration = configuration;
+    }
+
+    public List<String> getBranch() {
+        return branch;
+    }
+
+    public String getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * is the branch an ancestor, a descendant or the same branch : the two entries can't be updated concurrently
+     *
+     * @param other
+     * @return
+     */
+    public boolean overlaps(ManifestEntry other) {
+        int size = Math.min(branch.size(), other.branch.size());
+        return branch.subList(0, size).equals(other.branch.subList(0, size));
+    }
+
+    public Set<String> getControllerServices() {
+        return controllerServices;
+    }
+
+    /**
+     * @param controllerServices the names of the controller services configured by the configuration
+     */
+    public void setControllerServices(Set<String> controllerServices) {
+        this.controllerServices = controllerServices;
+    }
+
+    /**
+     * do the two configurations configure a controller service of the same name : the controller may be the same one
+     * of a common ancestor group, that is disabled and whose processors are stopped by the update of each branch
+     *
+     * @param other
+     * @return
+     */
+    public boolean sharesControllerService(ManifestEntry other) {
+        return !Collections.disjoint(controllerServices, other.controllerServices);
+    }
+
+    /**
+     * the update of the branch is done
+     *
+     * @param error null on success
+     * @param duration in millisecond
+     */
+    public void setResult(String error, long duration) {
+        this.done = true;
+        this.error = error;
+        this.duration = duration;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public boolean isSuccess() {
+        return done && error == null;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * the line of the report
+     *
+     * @return
+     */
+    public String format() {
+        String name = String.join(" > ", branch);
+        if (!done) {
+            return String.format("%s with %s : NOT RUN", name, configuration);
+        }
+        return String.format(Locale.ROOT, "%s with %s : %s in %.1f s%s", name, configuration, error == null ? "OK" : "FAILED",
+                duration / 1000d, error == null ? "" : " (" + error + ")");
+    }
+}
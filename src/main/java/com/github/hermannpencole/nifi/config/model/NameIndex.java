@@ -0,0 +1,65 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Index of components by trimmed name, keep the order of the components with the same name.
+ * The duplicate names are detected when the index is build.
+ *
+ * @param <T> type of component
+ */
+public class NameIndex<T> {
+
+    private final Map<String, List<T>> byName = new HashMap<>();
+
+    private final Set<String> duplicates = new LinkedHashSet<>();
+
+    /**
+     * @param components
+     * @param getName give the name of the component (null if the component has no name)
+     */
+    public NameIndex(Collection<T> components, Function<T, String> getName) {
+        for (T component : components) {
+            String name = getName.apply(component);
+            if (name == null) {
+                continue;
+            }
+            List<T> sameName = byName.computeIfAbsent(name.trim(), key -> new ArrayList<>(1));
+            sameName.add(component);
+            if (sameName.size() > 1) {
+                duplicates.add(name.trim());
+            }
+        }
+    }
+
+    /**
+     * the first component with this name (as stream().filter().findFirst())
+     *
+     * @param name
+     * @return
+     */
+    public Optional<T> findFirst(String name) {
+        List<T> sameName = byName.get(name.trim());
+        return sameName == null ? Optional.empty() : Optional.of(sameName.get(0));
+    }
+
+    /**
+     * all the components with this name
+     *
+     * @param name
+     * @return
+     */
+    public List<T> findAll(String name) {
+        return byName.getOrDefault(name.trim(), Collections.emptyList());
+    }
+
+    /**
+     * the names used by more than one component
+     *
+     * @return
+     */
+    public Set<String> getDuplicates() {
+        return duplicates;
+    }
+}
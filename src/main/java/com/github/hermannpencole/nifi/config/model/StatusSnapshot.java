@@ -0,0 +1,107 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Status of all the processors, ports and connections of a process group and its children,
+ * build from one recursive status of the process group.
+ */
+public class StatusSnapshot {
+
+    private final Map<String, GroupStatusEntity.Component> components = new HashMap<>();
+
+    private final Map<String, GroupStatusEntity.Component> connections = new HashMap<>();
+
+    public StatusSnapshot(GroupStatusEntity.Snapshot processGroupStatus) {
+        add(processGroupStatus);
+    }
+
+    private void add(GroupStatusEntity.Snapshot processGroupStatus) {
+        if (processGroupStatus == null) {
+            return;
+        }
+        addAll(components, processGroupStatus.getProcessorStatusSnapshots());
+        addAll(components, processGroupStatus.getInputPortStatusSnapshots());
+        addAll(components, processGroupStatus.getOutputPortStatusSnapshots());
+        addAll(connections, processGroupStatus.getConnectionStatusSnapshots());
+        if (processGroupStatus.getProcessGroupStatusSnapshots() != null) {
+            for (GroupStatusEntity.ChildEntity child : processGroupStatus.getProcessGroupStatusSnapshots()) {
+                add(child.getProcessGroupStatusSnapshot());
+            }
+        }
+    }
+
+    private static void addAll(Map<String, GroupStatusEntity.Component> map, List<GroupStatusEntity.ComponentEntity> entities) {
+        if (entities == null) {
+            return;
+        }
+        for (GroupStatusEntity.ComponentEntity entity : entities) {
+            if (entity.getSnapshot() != null) {
+                map.put(entity.getId(), entity.getSnapshot());
+            }
+        }
+    }
+
+    /**
+     * is stopped when the processor (or port) is not running and have no active thread.
+     * a component unknown by the status is not considered stopped : the wait keep polling until the timeout
+     *
+     * @param id
+     * @return
+     */
+    public boolean isStopped(String id) {
+        GroupStatusEntity.Component component = components.get(id);
+        return component != null && !"running".equalsIgnoreCase(component.getRunStatus()) && !hasActiveThreads(id);
+    }
+
+    /**
+     * is running when the processor (or port) is scheduled.
+     * a component unknown by the status is not considered running : the wait keep polling until the timeout
+     *
+     * @param id
+     * @return
+     */
+    public boolean isRunning(String id) {
+        GroupStatusEntity.Component component = components.get(id);
+        return component != null && "running".equalsIgnoreCase(component.getRunStatus());
+    }
+
+    public boolean hasActiveThreads(String id) {
+        GroupStatusEntity.Component component = components.get(id);
+        return component != null && component.getActiveThreadCount() != null && component.getActiveThreadCount() > 0;
+    }
+
+    /**
+     * the queue is empty when there is no flowfile queued.
+     * a connection unknown by the status is not considered empty : the wait keep polling until the timeout
+     *
+     * @param id
+     * @return
+     */
+    public boolean isEmptyQueue(String id) {
+        GroupStatusEntity.Component connection = connections.get(id);
+        if (connection == null) {
+            return false;
+        }
+        if (connection.getFlowFilesQueued() != null) {
+            return connection.getFlowFilesQueued() == 0;
+        }
+        return connection.getQueuedCount() == null || "0".equals(connection.getQueuedCount().trim());
+    }
+
+    public List<String> getNotStopped(Collection<String> ids) {
+        return ids.stream().filter(id -> !isStopped(id)).collect(Collectors.toList());
+    }
+
+    public List<String> getNotRunning(Collection<String> ids) {
+        return ids.stream().filter(id -> !isRunning(id)).collect(Collectors.toList());
+    }
+
+    public List<String> getNotEmptyQueues(Collection<String> ids) {
+        return ids.stream().filter(id -> !isEmptyQueue(id)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Configuration of the http transport used for all the calls to nifi,
+ * read from the file of the option transportConf ; the options of the command line override the file.
+ */
+public class TransportConfig {
+
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 16;
+
+    public static final int DEFAULT_KEEP_ALIVE = 300;
+
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 16;
+
+    /**
+     * number of idle connections kept in the pool
+     */
+    @SerializedName("maxIdleConnections")
+    private Integer maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+
+    /**
+     * time in second an idle connection is kept in the pool
+     */
+    @SerializedName("keepAlive")
+    private Integer keepAlive = DEFAULT_KEEP_ALIVE;
+
+    /**
+     * number of concurrent calls to the same host, the next calls wait a free slot
+     */
+    @SerializedName("maxRequestsPerHost")
+    private Integer maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+
+    /**
+     * negotiate http/2 (with ALPN on https) when nifi support it
+     */
+    @SerializedName("http2")
+    private Boolean http2 = true;
+
+    /**
+     * ask the responses compressed with gzip, decoded transparently
+     */
+    @SerializedName("gzip")
+    private Boolean gzip = true;
+
+    public Integer getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public void setMaxIdleConnections(Integer maxIdleConnections) {
+        this.maxIdleConnections = maxIdleConnections;
+    }
+
+    public Integer getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(Integer keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public Integer getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    public void setMaxRequestsPerHost(Integer maxRequestsPerHost) {
+        this.maxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    public Boolean getHttp2() {
+        return http2;
+    }
+
+    public void setHttp2(Boolean http2) {
+        this.http2 = http2;
+    }
+
+    public Boolean getGzip() {
+        return gzip;
+    }
+
+    public void setGzip(Boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    @Override
+    public String toString() {
+        return "maxIdleConnections=" + maxIdleConnections + ", keepAlive=" + keepAlive + "s, maxRequestsPerHost=" + maxRequestsPerHost
+                + ", http2=" + http2 + ", gzip=" + gzip;
+    }
+}
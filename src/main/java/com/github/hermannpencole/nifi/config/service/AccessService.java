@@ -1,12 +1,24 @@
 package com.github.hermannpencole.nifi.config.service;
 
+import com.github.hermannpencole.nifi.config.model.TransportConfig;
 import com.github.hermannpencole.nifi.swagger.ApiClient;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.Configuration;
 import com.github.hermannpencole.nifi.swagger.client.AccessApi;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.squareup.okhttp.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by SFRJ2737 on 2017-05-28.
@@ -16,9 +28,26 @@ import javax.inject.Singleton;
 @Singleton
 public class AccessService {
 
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(AccessService.class);
+
     @Inject
     private AccessApi apiInstance;
 
+    /**
+     * the client of the nifi cluster, one by cluster when many clusters are deployed in same time
+     */
+    @Inject
+    private ApiClient apiClient;
+
+    private HostLimiter hostLimiter;
+
+    private TokenRefresher tokenRefresher;
+
+    private final ConnectionCounter connectionCounter = new ConnectionCounter();
+
     /**
      * add token on http client. The token is ask to nifi.
      *
@@ -28,19 +57,25 @@ public class AccessService {
      * @throws ApiException
      */
     public void addTokenOnConfiguration(boolean accessFromTicket, String username, String password) throws ApiException {
-        ApiClient client = Configuration.getDefaultApiClient();
-        if (accessFromTicket) {
-            String token = apiInstance.createAccessTokenFromTicket();
-            client.setAccessToken(token);
-        } else if (username != null) {
-            String token = apiInstance.createAccessToken(username, password);
-            client.setAccessToken(token);
+        if (!accessFromTicket && username == null) {
+            return;
         }
-        Configuration.setDefaultApiClient(client);
+        ApiClient client = getApiClient();
+        String token = createAccessToken(accessFromTicket, username, password);
+        client.setAccessToken(token);
+        //an expired token is asked again by the request that gets the 401, then only this request is sent again
+        OkHttpClient httpClient = client.getHttpClient();
+        httpClient.interceptors().remove(tokenRefresher);
+        tokenRefresher = new TokenRefresher(accessFromTicket, username, password, token);
+        httpClient.interceptors().add(0, tokenRefresher);
+    }
+
+    private String createAccessToken(boolean accessFromTicket, String username, String password) throws ApiException {
+        return accessFromTicket ? apiInstance.createAccessTokenFromTicket() : apiInstance.createAccessToken(username, password);
     }
 
     /**
-     * Configure the default http client
+     * Configure the http client
      *
      * @param basePath
      * @param verifySsl
@@ -52,14 +87,206 @@ public class AccessService {
      */
     public void setConfiguration(String basePath, boolean verifySsl, boolean debugging,
                                         int connectionTimeout, int readTimeout, int writeTimeout) throws ApiException {
-        ApiClient client = Configuration.getDefaultApiClient()
-        //ApiClient client = new ApiClient()
+        getApiClient()
                 .setBasePath(basePath)
                 .setVerifyingSsl(verifySsl)
                 .setConnectTimeout(connectionTimeout)
                 .setReadTimeout(readTimeout)
                 .setWriteTimeout(writeTimeout)
                 .setDebugging(debugging);
-        Configuration.setDefaultApiClient(client);
+    }
+
+    /**
+     * read the configuration of the http transport
+     *
+     * @param fileConfiguration json file
+     * @return
+     * @throws IOException
+     */
+    public TransportConfig readTransportConfig(String fileConfiguration) throws IOException {
+        File file = new File(fileConfiguration);
+        if (!file.exists()) {
+            throw new FileNotFoundException("File transport configuration " + file.getName() + " is empty or doesn't exist");
+        }
+        Gson gson = new GsonBuilder().create();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8")) {
+            TransportConfig transportConfig = gson.fromJson(reader, TransportConfig.class);
+            return transportConfig == null ? new TransportConfig() : transportConfig;
+        }
+    }
+
+    /**
+     * Configure the pool of connection, the concurrency by host, the protocols and the compression of the http client.
+     * Can be call again : the previous interceptors are replaced
+     *
+     * @param transportConfig
+     */
+    public void setTransport(TransportConfig transportConfig) {
+        OkHttpClient httpClient = getApiClient().getHttpClient();
+        httpClient.setConnectionPool(new ConnectionPool(transportConfig.getMaxIdleConnections(), transportConfig.getKeepAlive(), TimeUnit.SECONDS));
+        httpClient.getDispatcher().setMaxRequestsPerHost(transportConfig.getMaxRequestsPerHost());
+        httpClient.setProtocols(transportConfig.getHttp2()
+                ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                : Collections.singletonList(Protocol.HTTP_1_1));
+
+        //the dispatcher limit only the asynchronous calls, the calls of the api are synchronous
+        httpClient.interceptors().remove(hostLimiter);
+        hostLimiter = new HostLimiter(transportConfig.getMaxRequestsPerHost());
+        httpClient.interceptors().add(hostLimiter);
+
+        //okhttp ask and decode gzip when the request have no Accept-Encoding
+        httpClient.interceptors().remove(IDENTITY_ENCODING);
+        if (!transportConfig.getGzip()) {
+            httpClient.interceptors().add(IDENTITY_ENCODING);
+        }
+
+        httpClient.networkInterceptors().remove(connectionCounter);
+        httpClient.networkInterceptors().add(connectionCounter);
+        LOG.debug("http transport : {}", transportConfig);
+    }
+
+    /**
+     * the client of the cluster, the default client when no client is given
+     *
+     * @return
+     */
+    public ApiClient getApiClient() {
+        return apiClient == null ? Configuration.getDefaultApiClient() : apiClient;
+    }
+
+    /**
+     * number of requests send on the network since the configuration of the transport, cumulative over the jobs
+     * of the mode server (the run takes the difference)
+     *
+     * @return
+     */
+    public long getRequestCount() {
+        return connectionCounter.requests.get();
+    }
+
+    /**
+     * number of connections opened since the configuration of the transport, cumulative over the jobs of the mode server
+     *
+     * @return
+     */
+    public long getConnectionCount() {
+        return connectionCounter.connections.get();
+    }
+
+    /**
+     * number of requests send on a connection already used (without tcp connect and tls handshake)
+     *
+     * @return
+     */
+    public long getReusedConnectionCount() {
+        return getRequestCount() - getConnectionCount();
+    }
+
+    private static final Interceptor IDENTITY_ENCODING = chain -> {
+        Request request = chain.request();
+        if (request.header("Accept-Encoding") != null) {
+            return chain.proceed(request);
+        }
+        return chain.proceed(request.newBuilder().header("Accept-Encoding", "identity").build());
+    };
+
+    /**
+     * at most maxRequestsPerHost calls in same time by host
+     */
+    private static class HostLimiter implements Interceptor {
+
+        private final int maxRequestsPerHost;
+
+        private final Map<String, Semaphore> hosts = new ConcurrentHashMap<>();
+
+        HostLimiter(int maxRequestsPerHost) {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Semaphore semaphore = hosts.computeIfAbsent(chain.request().httpUrl().host(), host -> new Semaphore(maxRequestsPerHost));
+            try {
+                semaphore.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            }
+            try {
+                return chain.proceed(chain.request());
+            } finally {
+                semaphore.release();
+            }
+        }
+    }
+
+    /**
+     * on a 401 of a request with a token, ask a new token and send the request again ; the threads that get a 401 in
+     * same time ask one token. Before the limit by host, so that the request waiting the token holds no permit
+     */
+    private class TokenRefresher implements Interceptor {
+
+        private final boolean accessFromTicket;
+
+        private final String username;
+
+        private final String password;
+
+        private String authorization;
+
+        TokenRefresher(boolean accessFromTicket, String username, String password, String token) {
+            this.accessFromTicket = accessFromTicket;
+            this.username = username;
+            this.password = password;
+            this.authorization = "Bearer " + token;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            Response response = chain.proceed(request);
+            String sent = request.header("Authorization");
+            if (response.code() != 401 || sent == null || request.httpUrl().encodedPath().contains("/access/")) {
+                return response;
+            }
+            response.body().close();
+            return chain.proceed(request.newBuilder().header("Authorization", renew(sent)).build());
+        }
+
+        private synchronized String renew(String sent) throws IOException {
+            //another request may have renewed the token since this request was sent
+            if (sent.equals(authorization)) {
+                LOG.info("The token is expired, new authentication");
+                try {
+                    String token = createAccessToken(accessFromTicket, username, password);
+                    getApiClient().setAccessToken(token);
+                    authorization = "Bearer " + token;
+                } catch (ApiException e) {
+                    throw new IOException("Cannot renew the token : " + e.getMessage() + ": " + e.getResponseBody(), e);
+                }
+            }
+            return authorization;
+        }
+    }
+
+    /**
+     * count the requests and the connections used by the requests
+     */
+    private static class ConnectionCounter implements Interceptor {
+
+        private final AtomicLong requests = new AtomicLong();
+
+        private final AtomicLong connections = new AtomicLong();
+
+        private final Set<Connection> known = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            requests.incrementAndGet();
+            if (chain.connection() != null && known.add(chain.connection())) {
+                connections.incrementAndGet();
+            }
+            return chain.proceed(chain.request());
+        }
     }
 }
@@ -1,6 +1,8 @@
 package com.github.hermannpencole.nifi.config.service;
 
+import com.github.hermannpencole.nifi.config.model.StatusSnapshot;
 import com.github.hermannpencole.nifi.config.model.TimeoutException;
+import com.github.hermannpencole.nifi.config.utils.Backoff;
 import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.ConnectionsApi;
@@ -13,6 +15,9 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Class that offer service for process group
@@ -32,9 +37,8 @@ public class ConnectionService {
     @Inject
     public Integer timeout;
 
-    @Named("interval")
     @Inject
-    public Integer interval;
+    public Backoff backoff;
 
     @Named("forceMode")
     @Inject
@@ -46,6 +50,9 @@ public class ConnectionService {
     @Inject
     private FlowfileQueuesApi flowfileQueuesApi;
 
+    @Inject
+    private StatusService statusService;
+
     public boolean isEmptyQueue(ConnectionEntity connectionEntity) throws ApiException {
         return connectionsApi.getConnection(connectionEntity.getId()).getStatus().getAggregateSnapshot().getQueuedCount().equals("0");
     }
@@ -56,17 +63,11 @@ public class ConnectionService {
                 ConnectionEntity connection = connectionsApi.getConnection(connectionEntity.getId());
                 LOG.info(" {} : there is {} FlowFile ({} bytes) on the queue ", connection.getId(), connection.getStatus().getAggregateSnapshot().getQueuedCount(), connection.getStatus().getAggregateSnapshot().getQueuedSize());
                 return !connection.getStatus().getAggregateSnapshot().getQueuedCount().equals("0");
-            }, interval, timeout);
+            }, backoff, timeout);
         } catch (TimeoutException e) {
             //empty queue if forced mode
             if (forceMode) {
-                DropRequestEntity dropRequest= flowfileQueuesApi.createDropRequest(connectionEntity.getId());
-                FunctionUtils.runWhile(() -> {
-                    DropRequestEntity drop = flowfileQueuesApi.getDropRequest(connectionEntity.getId(), dropRequest.getDropRequest().getId());
-                    return !drop.getDropRequest().getFinished();
-                }, interval, timeout);
-                LOG.info(" {} : {} FlowFile ({} bytes) were removed from the queue", connectionEntity.getId(), dropRequest.getDropRequest().getCurrentCount(), dropRequest.getDropRequest().getCurrentSize());
-                flowfileQueuesApi.removeDropRequest(connectionEntity.getId(), dropRequest.getDropRequest().getId());
+                dropQueue(connectionEntity.getId());
             } else {
                 LOG.error(e.getMessage(),e);
                 throw e;
@@ -75,4 +76,40 @@ public class ConnectionService {
 
     }
 
+    /**
+     * wait that the queues of all the connections are empty, with one status of the process group by polling
+     * (in one pass all queue are empty even when there is cycle)
+     *
+     * @param processGroupId process group containing the connections (directly or in its children)
+     * @param connections
+     * @throws ApiException
+     */
+    public void waitEmptyQueues(String processGroupId, Collection<ConnectionEntity> connections) throws ApiException {
+        List<String> ids = connections.stream().map(ConnectionEntity::getId).collect(Collectors.toList());
+        try {
+            statusService.waitEmptyQueues(processGroupId, ids);
+        } catch (TimeoutException e) {
+            //empty queue if forced mode
+            if (forceMode) {
+                StatusSnapshot status = statusService.getStatus(processGroupId);
+                for (String id : status.getNotEmptyQueues(ids)) {
+                    dropQueue(id);
+                }
+            } else {
+                LOG.error(e.getMessage(),e);
+                throw e;
+            }
+        }
+    }
+
+    private void dropQueue(String connectionId) throws ApiException {
+        DropRequestEntity dropRequest= flowfileQueuesApi.createDropRequest(connectionId);
+        FunctionUtils.runWhile(() -> {
+            DropRequestEntity drop = flowfileQueuesApi.getDropRequest(connectionId, dropRequest.getDropRequest().getId());
+            return !drop.getDropRequest().getFinished();
+        }, backoff, timeout);
+        LOG.info(" {} : {} FlowFile ({} bytes) were removed from the queue", connectionId, dropRequest.getDropRequest().getCurrentCount(), dropRequest.getDropRequest().getCurrentSize());
+        flowfileQueuesApi.removeDropRequest(connectionId, dropRequest.getDropRequest().getId());
+    }
+
 }
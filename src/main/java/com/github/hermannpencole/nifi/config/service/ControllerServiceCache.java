@@ -0,0 +1,102 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.RevisionDTO;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Controller services read during an operation : a controller service is read once while its revision is the revision
+ * of the last write, and the callers that ask for a controller service being read wait the same request.
+ *
+ * The entries are invalidated by the writes on the controller service or on its references, and cleared at the end
+ * of the operation.
+ */
+@Singleton
+public class ControllerServiceCache {
+
+    @Inject
+    private RevisionTracker revisionTracker;
+
+    private final Map<String, CompletableFuture<ControllerServiceEntity>> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * the controller service read, or being read, with the revision of the last write ; else read it
+     *
+     * @param id
+     * @param read read the controller service on nifi
+     * @return
+     */
+    public ControllerServiceEntity get(String id, Function<String, ControllerServiceEntity> read) {
+        CompletableFuture<ControllerServiceEntity> created = new CompletableFuture<>();
+        CompletableFuture<ControllerServiceEntity> entry = entries.compute(id, (key, previous) ->
+                previous == null || isOutdated(key, previous) ? created : previous);
+        if (entry != created) {
+            hits.incrementAndGet();
+            return join(entry);
+        }
+        try {
+            created.complete(read.apply(id));
+        } catch (Throwable e) {
+            //the threads waiting on this entry must fail too, whatever the error
+            entries.remove(id, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+        return join(created);
+    }
+
+    /**
+     * an entry read is outdated when a write gave a more recent revision, an entry being read is never outdated
+     */
+    private boolean isOutdated(String id, CompletableFuture<ControllerServiceEntity> entry) {
+        if (!entry.isDone() || entry.isCompletedExceptionally()) {
+            return entry.isCompletedExceptionally();
+        }
+        RevisionDTO written = revisionTracker.getRevision(id, null);
+        RevisionDTO read = entry.join().getRevision();
+        return written != null && written.getVersion() != null
+                && (read == null || read.getVersion() == null || read.getVersion() < written.getVersion());
+    }
+
+    private static ControllerServiceEntity join(CompletableFuture<ControllerServiceEntity> entry) {
+        try {
+            return entry.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ConfigException(e.getCause());
+        }
+    }
+
+    /**
+     * the controller service, or its references, has been written
+     *
+     * @param id
+     */
+    public void invalidate(String id) {
+        entries.remove(id);
+    }
+
+    /**
+     * end of the operation
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+}
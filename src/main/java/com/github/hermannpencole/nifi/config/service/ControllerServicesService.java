@@ -1,8 +1,11 @@
 package com.github.hermannpencole.nifi.config.service;
 
+import com.github.hermannpencole.nifi.config.model.ControllerServiceGraph;
+import com.github.hermannpencole.nifi.config.utils.Backoff;
 import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.ControllerServicesApi;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,8 +13,8 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.CONTROLLERSERVICE;
@@ -34,16 +37,28 @@ public class ControllerServicesService {
     @Inject
     public Integer timeout;
 
-    @Named("interval")
     @Inject
-    public Integer interval;
+    public Backoff backoff;
+
+    @Named("concurrency")
+    @Inject
+    public Integer concurrency;
 
     @Inject
     private ControllerServicesApi controllerServicesApi;
 
+    @Inject
+    private FlowApi flowApi;
+
     @Inject
     private ProcessorService processorService;
 
+    @Inject
+    private RevisionTracker revisionTracker;
+
+    @Inject
+    private ControllerServiceCache controllerServiceCache;
+
     /**
      * disable, update and re enable the controller
      *
@@ -54,25 +69,26 @@ public class ControllerServicesService {
      * @throws InterruptedException
      */
     public ControllerServiceEntity updateControllerService(ControllerServiceDTO controllerServiceDTO, ControllerServiceEntity controllerServiceEntity, boolean forceByController) throws ApiException {
-        //Disabling this controller service
-       // ControllerServiceEntity controllerServiceEntityUpdate = setStateControllerService(controllerServiceEntity, ControllerServiceDTO.StateEnum.DISABLED);
-        ControllerServiceEntity controllerServiceEntityUpdate = controllerServicesApi.getControllerService(controllerServiceEntity.getId());
+        //the descriptors are read only when the controller given don't have them, the revision is the revision of the last write
+        Map<String, PropertyDescriptorDTO> descriptors = controllerServiceEntity.getComponent() == null ? null : controllerServiceEntity.getComponent().getDescriptors();
+        if (!forceByController && descriptors == null) {
+            descriptors = controllerServicesApi.getControllerService(controllerServiceEntity.getId()).getComponent().getDescriptors();
+        }
 
         //update processor
         ControllerServiceEntity controllerServiceEntityConf = new ControllerServiceEntity();
-        controllerServiceEntityConf.setRevision(controllerServiceEntityUpdate.getRevision());
         controllerServiceEntityConf.setComponent(controllerServiceDTO);
         controllerServiceEntityConf.getComponent().setId(controllerServiceEntity.getId());
         controllerServiceEntityConf.getComponent().setRestricted(null);
         if (! forceByController) {
             //remove controller link
-            for (Map.Entry<String, PropertyDescriptorDTO> entry : controllerServiceEntityUpdate.getComponent().getDescriptors().entrySet()) {
+            for (Map.Entry<String, PropertyDescriptorDTO> entry : descriptors.entrySet()) {
                 if (entry.getValue().getIdentifiesControllerService() != null) {
                     controllerServiceDTO.getProperties().remove(entry.getKey());
                 }
             }
         }
-        controllerServiceEntityUpdate = controllerServicesApi.updateControllerService(controllerServiceEntity.getId(), controllerServiceEntityConf);
+        ControllerServiceEntity controllerServiceEntityUpdate = write(controllerServiceEntity, controllerServiceEntityConf);
         LOG.info( " {} ({}) is UPDATED", controllerServiceEntityUpdate.getComponent().getName(), controllerServiceEntityUpdate.getId());
 
         //Enabling this controller service
@@ -90,14 +106,67 @@ public class ControllerServicesService {
      * @throws ApiException
      */
     public ControllerServiceEntity setStateControllerService(ControllerServiceEntity controllerServiceEntity, ControllerServiceDTO.StateEnum state) throws ApiException {
+        return setStateControllerServices(Collections.singletonList(controllerServiceEntity), state).get(controllerServiceEntity.getId());
+    }
+
+    /**
+     * Set the state of controller services in the order of their dependencies : enable the controllers used by a
+     * controller before it (the controllers used and not given are enabled too), disable a controller before the controllers it use.
+     * The controllers of a level of the graph are updated in parallel, with one polling for the level.
+     *
+     * @param controllerServices
+     * @param state
+     * @return the controllers updated by id
+     * @throws ApiException
+     */
+    public Map<String, ControllerServiceEntity> setStateControllerServices(Collection<ControllerServiceEntity> controllerServices, ControllerServiceDTO.StateEnum state) throws ApiException {
+        Map<String, ControllerServiceEntity> toUpdate = new LinkedHashMap<>();
+        controllerServices.forEach(controllerService -> toUpdate.put(controllerService.getId(), controllerService));
+        if (state.equals(ControllerServiceDTO.StateEnum.ENABLED)) {
+            addDependencies(toUpdate);
+        }
+        List<List<ControllerServiceEntity>> levels = new ArrayList<>(new ControllerServiceGraph(toUpdate.values()).getLevels());
+        if (state.equals(ControllerServiceDTO.StateEnum.DISABLED)) {
+            Collections.reverse(levels);
+        }
+        Map<String, ControllerServiceEntity> result = new LinkedHashMap<>();
+        for (List<ControllerServiceEntity> level : levels) {
+            List<Supplier<ControllerServiceEntity>> writes = level.stream()
+                    .map(controllerService -> (Supplier<ControllerServiceEntity>) () -> writeState(controllerService, state))
+                    .collect(Collectors.toList());
+            FunctionUtils.runAll(writes, concurrency).forEach(controllerService -> result.put(controllerService.getId(), controllerService));
+            waitState(level, state);
+        }
+        return result;
+    }
 
-        if (state.equals(ControllerServiceDTO.StateEnum.ENABLED))
-            setStateControllerServicesReference(controllerServiceEntity.getId(), ControllerServiceDTO.StateEnum.ENABLED);
+    /**
+     * add the controllers used by the controllers to enable (read fresh, the properties may have been updated),
+     * the controllers used already enabled are not updated
+     */
+    private void addDependencies(Map<String, ControllerServiceEntity> toUpdate) {
+        Deque<String> toRead = new ArrayDeque<>(toUpdate.keySet());
+        Set<String> read = new HashSet<>();
+        while (!toRead.isEmpty()) {
+            String id = toRead.pop();
+            if (!read.add(id)) {
+                continue;
+            }
+            ControllerServiceEntity controllerService = controllerServicesApi.getControllerService(id);
+            if (toUpdate.containsKey(id)) {
+                //the revision of the last write is kept by the tracker
+                toUpdate.put(id, controllerService);
+            } else if (!ControllerServiceDTO.StateEnum.ENABLED.equals(controllerService.getComponent().getState())) {
+                toUpdate.put(id, controllerService);
+            } else {
+                continue;
+            }
+            toRead.addAll(ControllerServiceGraph.getDependencies(controllerService));
+        }
+    }
 
-        ControllerServiceEntity controllerServiceEntityUpdate = controllerServicesApi.getControllerService(controllerServiceEntity.getId());
-        //Disabling this controller service
+    private ControllerServiceEntity writeState(ControllerServiceEntity controllerServiceEntity, ControllerServiceDTO.StateEnum state) {
         ControllerServiceEntity controllerServiceEntityEmpty = new ControllerServiceEntity();
-        controllerServiceEntityEmpty.setRevision(controllerServiceEntityUpdate.getRevision());
         controllerServiceEntityEmpty.setComponent(new ControllerServiceDTO());
         controllerServiceEntityEmpty.getComponent().setId(controllerServiceEntity.getId());
         controllerServiceEntityEmpty.getComponent().setState(state);
@@ -108,19 +177,73 @@ public class ControllerServicesService {
         controllerServiceEntityEmpty.getComponent().setPersistsState(null);
         controllerServiceEntityEmpty.getComponent().setRestricted(null);
         LOG.info(" {} ({}) update for {}" , controllerServiceEntity.getComponent().getName(), controllerServiceEntity.getId(), state);
-        controllerServiceEntityUpdate = controllerServicesApi.updateControllerService(controllerServiceEntity.getId(), controllerServiceEntityEmpty);
-        //Wait disabled
+        return write(controllerServiceEntity, controllerServiceEntityEmpty);
+    }
+
+    /**
+     * wait the state of all the controllers of a level : the controllers alone on their group are read by id,
+     * the others with the controllers of their group
+     */
+    private void waitState(List<ControllerServiceEntity> controllerServices, ControllerServiceDTO.StateEnum state) {
+        Map<String, ControllerServiceEntity> waiting = new LinkedHashMap<>();
+        controllerServices.forEach(controllerService -> waiting.put(controllerService.getId(), controllerService));
         FunctionUtils.runWhile(()-> {
-            LOG.info(" {} ({}) waiting for {}" , controllerServiceEntity.getComponent().getName(), controllerServiceEntity.getId(), state);
-            ControllerServiceEntity controllerService = controllerServicesApi.getControllerService(controllerServiceEntity.getId());
-            LOG.info(" {} ({}) is {}" , controllerService.getComponent().getName(), controllerService.getId(), controllerService.getComponent().getState());
-            return !controllerService.getComponent().getState().equals(state);
-        }, interval, timeout);
-        return controllerServiceEntityUpdate;
+            Map<String, List<ControllerServiceEntity>> byGroup = waiting.values().stream()
+                    .collect(Collectors.groupingBy(controllerService -> String.valueOf(controllerService.getComponent().getParentGroupId()), LinkedHashMap::new, Collectors.toList()));
+            List<ControllerServiceEntity> fresh = new ArrayList<>();
+            byGroup.forEach((groupId, inGroup) -> {
+                if (inGroup.size() == 1 || inGroup.get(0).getComponent().getParentGroupId() == null) {
+                    inGroup.forEach(controllerService -> fresh.add(controllerServicesApi.getControllerService(controllerService.getId())));
+                } else {
+                    fresh.addAll(flowApi.getControllerServicesFromGroup(groupId).getControllerServices());
+                }
+            });
+            for (ControllerServiceEntity controllerService : fresh) {
+                if (waiting.containsKey(controllerService.getId())) {
+                    LOG.info(" {} ({}) is {}" , controllerService.getComponent().getName(), controllerService.getId(), controllerService.getComponent().getState());
+                    if (controllerService.getComponent().getState().equals(state)) {
+                        waiting.remove(controllerService.getId());
+                    }
+                }
+            }
+            if (!waiting.isEmpty()) {
+                LOG.info(" {} controllers waiting for {}" , waiting.size(), state);
+            }
+            return !waiting.isEmpty();
+        }, backoff, timeout);
     }
 
+    /**
+     * write the controller with the revision of the last write (or of the controller given), retried on conflict
+     *
+     * @param controllerServiceEntity
+     * @param body
+     * @return
+     */
+    private ControllerServiceEntity write(ControllerServiceEntity controllerServiceEntity, ControllerServiceEntity body) {
+        String id = controllerServiceEntity.getId();
+        return revisionTracker.write(id, controllerServiceEntity.getRevision(), revision -> {
+            body.setRevision(revision);
+            return controllerServicesApi.updateControllerService(id, body);
+        }, ControllerServiceEntity::getRevision, () -> controllerServicesApi.getControllerService(id).getRevision());
+    }
+
+    /**
+     * the controller service, read once during the operation while it is not written
+     *
+     * @param id
+     * @return
+     * @throws ApiException
+     */
     public ControllerServiceEntity getControllerServices(String id) throws ApiException {
-        return controllerServicesApi.getControllerService(id);
+        return controllerServiceCache.get(id, controllerServicesApi::getControllerService);
+    }
+
+    /**
+     * forget the controller services read, at the end of an operation
+     */
+    public void clearCache() {
+        controllerServiceCache.clear();
     }
 
     public void setStateReferencingControllerServices(String id, UpdateControllerServiceReferenceRequestEntity.StateEnum state) throws ApiException {
@@ -135,6 +258,7 @@ public class ControllerServicesService {
                 updateControllerServiceReferenceRequestEntity.setState(state);
                 updateControllerServiceReferenceRequestEntity.setReferencingComponentRevisions(referencingControllerServices);
                 controllerServiceReferencingComponentsEntity = controllerServicesApi.updateControllerServiceReferences(id, updateControllerServiceReferenceRequestEntity);
+                controllerServiceCache.invalidate(id);
             } catch (ApiException e) {
                 LOG.info(e.getResponseBody());
                 //how obtain the real state of controllerServiceReference and don't have this bullshit trick
@@ -145,24 +269,10 @@ public class ControllerServicesService {
                 }
             }
             return controllerServiceReferencingComponentsEntity == null;
-        }, interval, timeout);
+        }, backoff, timeout);
     }
 
 
-    public void setStateControllerServicesReference(String id, ControllerServiceDTO.StateEnum state) throws ApiException {
-        //Get fresh references
-        ControllerServiceEntity controllerServiceEntity = controllerServicesApi.getControllerService(id);
-
-        //remove controller link
-        for (Map.Entry<String, PropertyDescriptorDTO> entry : controllerServiceEntity.getComponent().getDescriptors().entrySet()) {
-            if (entry.getValue().getIdentifiesControllerService() != null) {
-                String idController = controllerServiceEntity.getComponent().getProperties().get(entry.getKey());
-                if(idController != null)
-                    setStateControllerService(controllerServicesApi.getControllerService(idController), state);
-            }
-        }
-    }
-
     public void setStateReferenceProcessors(ControllerServiceEntity controllerServiceEntityFind, UpdateControllerServiceReferenceRequestEntity.StateEnum state) throws ApiException {
         FunctionUtils.runWhile(()-> {
             ControllerServiceEntity controllerServiceEntity = null;
@@ -175,7 +285,8 @@ public class ControllerServicesService {
                 updateControllerServiceReferenceRequestEntity.setReferencingComponentRevisions(referencingProcessorsServices);
                 updateControllerServiceReferenceRequestEntity.setState(state);
                 controllerServicesApi.updateControllerServiceReferences(controllerServiceEntityFind.getId(), updateControllerServiceReferenceRequestEntity);
-                controllerServiceEntity = controllerServicesApi.getControllerService(controllerServiceEntityFind.getId());
+                controllerServiceCache.invalidate(controllerServiceEntityFind.getId());
+                controllerServiceEntity = getControllerServices(controllerServiceEntityFind.getId());
             } catch (ApiException e) {
                 LOG.info(e.getResponseBody());
                 //how obtain the real state of controllerServiceReference and don't have this bullshit trick
@@ -186,7 +297,7 @@ public class ControllerServicesService {
                 }
             }
             return (controllerServiceEntity == null);
-        }, interval, timeout);
+        }, backoff, timeout);
 
         //be sure stop/start ALL processor
         for (String idProcessor : getReferencingServices(controllerServiceEntityFind.getId(), PROCESSOR, "ALL").keySet() ) {
@@ -196,6 +307,8 @@ public class ControllerServicesService {
             else
                 processorService.setState(processorEntity, ProcessorDTO.StateEnum.RUNNING);
         }
+        //the revisions of the processors referenced by the controllers read are outdated
+        controllerServiceCache.clear();
     }
 
     public Map<String, RevisionDTO> getReferencingServices(String id, ControllerServiceReferencingComponentDTO.ReferenceTypeEnum type, String filteredState) throws ApiException {
@@ -208,11 +321,37 @@ public class ControllerServicesService {
         return referencingControllerServices;
     }
 
+    /**
+     * the processors that use the controller service, directly or by a controller service that reference it
+     * (they must be stopped to disable the controller service)
+     *
+     * @param id
+     * @return id of the processors
+     * @throws ApiException
+     */
+    public Set<String> getReferencingProcessors(String id) throws ApiException {
+        Set<String> processors = new LinkedHashSet<>();
+        Set<String> visited = new HashSet<>();
+        Deque<String> controllerServices = new ArrayDeque<>();
+        controllerServices.push(id);
+        while (!controllerServices.isEmpty()) {
+            String controllerServiceId = controllerServices.pop();
+            if (!visited.add(controllerServiceId)) {
+                continue;
+            }
+            processors.addAll(getReferencingServices(controllerServiceId, PROCESSOR, "ALL").keySet());
+            getReferencingServices(controllerServiceId, CONTROLLERSERVICE, "ALL").keySet().forEach(controllerServices::push);
+        }
+        return processors;
+    }
+
     public void remove(ControllerServiceEntity controllerServiceToRemove) throws ApiException {
         //Disabling this controller service
         ControllerServiceEntity controllerServiceEntityUpdate = setStateControllerService(controllerServiceToRemove, ControllerServiceDTO.StateEnum.DISABLED);
         LOG.info(" {} ({}) trying removing", controllerServiceEntityUpdate.getComponent().getName(), controllerServiceEntityUpdate.getId());
         ControllerServiceEntity controllerServiceEntity = controllerServicesApi.removeControllerService(controllerServiceEntityUpdate.getId(), controllerServiceEntityUpdate.getRevision().getVersion().toString(), controllerServiceEntityUpdate.getRevision().getClientId());
+        revisionTracker.remove(controllerServiceEntityUpdate.getId());
+        controllerServiceCache.invalidate(controllerServiceEntityUpdate.getId());
         LOG.info(" {} ({}) is removed", controllerServiceEntity.getComponent().getName(), controllerServiceEntity.getId());
     }
 
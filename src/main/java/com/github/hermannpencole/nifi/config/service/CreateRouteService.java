@@ -36,6 +36,9 @@ public class CreateRouteService {
   @Inject
   private FlowApi flowapi;
 
+  @Inject
+  private ProcessGroupService processGroupService;
+
   private String clientId;
 
   private String getClientId() {
@@ -60,7 +63,7 @@ public class CreateRouteService {
   private ProcessGroupFlowEntity advanceToNextProcessGroup( final String processGroupName, final ProcessGroupFlowEntity flowEntity) {
     return findByComponentName(
             flowEntity.getProcessGroupFlow().getFlow().getProcessGroups(), processGroupName)
-            .map(flowEntityChild -> flowapi.getFlow(flowEntityChild.getId()))
+            .map(flowEntityChild -> processGroupService.getFlow(flowEntityChild.getId()))
             .orElseThrow(() -> new ConfigException("Couldn't find process group '" + processGroupName + "'"));
   }
 
@@ -71,7 +74,9 @@ public class CreateRouteService {
     if (port.isPresent()) {
       return port.get();
     } else {
-      return portService.createPort(processGroupFlow.getId(), destinationInputPort,matchConnectableTypeToPortType(connectableType));
+      PortEntity created = portService.createPort(processGroupFlow.getId(), destinationInputPort,matchConnectableTypeToPortType(connectableType));
+      processGroupService.invalidateFlow(processGroupFlow.getId());
+      return created;
     }
   }
 
@@ -82,7 +87,7 @@ public class CreateRouteService {
           case OUTPUT_PORT:
             return destination.getComponent().getParentGroupId();
           case INPUT_PORT: default:
-            return flowapi.getFlow(source.getComponent().getParentGroupId()).getProcessGroupFlow().getParentGroupId();
+            return processGroupService.getFlow(source.getComponent().getParentGroupId()).getProcessGroupFlow().getParentGroupId();
         }
       case INPUT_PORT:
         switch (destination.getComponent().getType()) {
@@ -141,7 +146,7 @@ public class CreateRouteService {
 
     // Traverse back up to root and start examining the flow
     while (branch.hasPrevious()) branch.previous();
-    ProcessGroupFlowEntity flowEntity = flowapi.getFlow("root");
+    ProcessGroupFlowEntity flowEntity = processGroupService.getFlow("root");
     branch.next();
 
     // Traverse back down the process group hierarchy
@@ -166,11 +171,12 @@ public class CreateRouteService {
     while (connectables.hasNext()) {
       current = next;
       next = connectables.next();
-      ProcessGroupFlowEntity flowEntity = flowapi.getFlow(determineConnectionLocation(current, next));
+      ProcessGroupFlowEntity flowEntity = processGroupService.getFlow(determineConnectionLocation(current, next));
       ConnectionEntity connectionEntity = createConnectionEntity(current, next);
 
       if (!connectionExists( flowEntity.getProcessGroupFlow().getFlow().getConnections().stream(), connectionEntity)) {
         processGroupsApi.createConnection(flowEntity.getProcessGroupFlow().getId(), connectionEntity);
+        processGroupService.invalidateFlow(flowEntity.getProcessGroupFlow().getId());
       }
     }
   }
@@ -228,10 +234,20 @@ public class CreateRouteService {
       for (ConnectionPort routeConnectionEntity : connections) {
         createRoute(
                 routeConnectionEntity.getName(),
-                Arrays.stream(routeConnectionEntity.getSource().split(">")).map(String::trim).collect(Collectors.toList()),
-                Arrays.stream(routeConnectionEntity.getDestination().split(">")).map(String::trim).collect(Collectors.toList()),
+                toPath(routeConnectionEntity.getSource()),
+                toPath(routeConnectionEntity.getDestination()),
                 !optionNoStartProcessors);
       }
 
   }
+
+  /**
+   * the path of the process group at an end of a route : root > group > sub group
+   *
+   * @param address
+   * @return
+   */
+  static List<String> toPath(String address) {
+    return Arrays.stream(address.split(">")).map(String::trim).collect(Collectors.toList());
+  }
 }
@@ -1,23 +1,24 @@
 package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.model.ConfigException;
-import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.config.model.GroupProcessorsWriter;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.ControllerApi;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.model.*;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 /**
  * Class that offer service for nifi processor
@@ -42,6 +43,10 @@ public class ExtractProcessorService {
     @Inject
     private FlowApi flowapi;
 
+    @Named("parallelism")
+    @Inject
+    public Integer parallelism;
+
     /**
      *
      * @param branch
@@ -55,52 +60,83 @@ public class ExtractProcessorService {
         ProcessGroupFlowEntity componentSearch = processGroupService.changeDirectory(branch)
                 .orElseThrow(() -> new ConfigException(("cannot find " + Arrays.toString(branch.toArray()))));
 
-        //add group processors and processors
-        GroupProcessorsEntity result = extractJsonFromComponent(componentSearch);
-
-        //add controllers
-        ControllerServicesEntity controllerServicesEntity = flowapi.getControllerServicesFromGroup(componentSearch.getProcessGroupFlow().getId());
-        if ( !controllerServicesEntity.getControllerServices().isEmpty() ) {
-            result.setControllerServicesDTO(new ArrayList<>());
-        }
-        for (ControllerServiceEntity controllerServiceEntity : controllerServicesEntity.getControllerServices()) {
-            result.getControllerServicesDTO().add(extractController(controllerServiceEntity));
-        }
+        //controllers
+        List<ControllerServiceDTO> controllerServices = flowapi.getControllerServicesFromGroup(componentSearch.getProcessGroupFlow().getId())
+                .getControllerServices().stream()
+                .map(this::extractController)
+                .collect(Collectors.toList());
 
-        //convert to json
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        //group processors and processors, written while extracted
         LOG.debug("saving in file {}", fileConfiguration);
-        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
-            gson.toJson(result, writer);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        try (GroupProcessorsWriter writer = new GroupProcessorsWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+            extractGroup(writer, componentSearch, controllerServices, executor);
         } finally {
+            executor.shutdownNow();
             LOG.debug("extractByBranch end");
         }
     }
 
     /**
-     * extract from component
+     * write the group then drop it, the children groups are written depth-first in the order of the flow.
+     * The next parallelism children are fetched while a child is written, so at most parallelism groups
+     * by level of the branch are kept in memory
      *
-     * @param idComponent
-     * @return
-     * @throws ApiException
+     * @param writer
+     * @param processGroupFlowEntity
+     * @param controllerServices
+     * @param executor
+     * @throws IOException
      */
-    private GroupProcessorsEntity extractJsonFromComponent(ProcessGroupFlowEntity idComponent) throws ApiException {
-        GroupProcessorsEntity result = new GroupProcessorsEntity();
-        ProcessGroupFlowDTO processGroupFlow = idComponent.getProcessGroupFlow();
-        result.setName(processGroupFlow.getBreadcrumb().getBreadcrumb().getName());
-        processGroupFlow.getFlow().getProcessors()
-                .forEach(processor -> result.getProcessors().add(extractProcessor(processor.getComponent())));
-        for (ProcessGroupEntity processGroups : processGroupFlow.getFlow().getProcessGroups()) {
-            result.getGroupProcessorsEntity().add(extractJsonFromComponent(flowapi.getFlow(processGroups.getId())));
-        }
-        if (result.getGroupProcessorsEntity().isEmpty()) {
-            result.setGroupProcessorsEntity(null);
+    private void extractGroup(GroupProcessorsWriter writer, ProcessGroupFlowEntity processGroupFlowEntity,
+                              List<ControllerServiceDTO> controllerServices, ExecutorService executor) throws IOException {
+        ProcessGroupFlowDTO processGroupFlow = processGroupFlowEntity.getProcessGroupFlow();
+        writer.beginGroup(processGroupFlow.getBreadcrumb().getBreadcrumb().getName());
+        writer.processors(processGroupFlow.getFlow().getProcessors().stream()
+                .map(processor -> extractProcessor(processor.getComponent()))
+                .iterator());
+        List<String> children = processGroupFlow.getFlow().getProcessGroups().stream()
+                .map(ProcessGroupEntity::getId)
+                .collect(Collectors.toList());
+        //the processors of the snapshot are modified by the extraction
+        processGroupService.invalidateFlow(processGroupFlow.getId());
+
+        if (!children.isEmpty()) {
+            writer.beginGroups();
+            Iterator<String> next = children.iterator();
+            Deque<Future<ProcessGroupFlowEntity>> fetching = new ArrayDeque<>();
+            while (fetching.size() < Math.max(1, parallelism) && next.hasNext()) {
+                fetching.add(fetch(next.next(), executor));
+            }
+            while (!fetching.isEmpty()) {
+                ProcessGroupFlowEntity child = get(fetching.poll());
+                if (next.hasNext()) {
+                    fetching.add(fetch(next.next(), executor));
+                }
+                extractGroup(writer, child, Collections.emptyList(), executor);
+            }
+            writer.endGroups();
         }
-        if (result.getProcessors().isEmpty()) {
-            result.setProcessors(null);
+        writer.controllerServices(controllerServices);
+        writer.endGroup();
+    }
+
+    private Future<ProcessGroupFlowEntity> fetch(String processGroupId, ExecutorService executor) {
+        return executor.submit(() -> processGroupService.getFlow(processGroupId));
+    }
+
+    private static ProcessGroupFlowEntity get(Future<ProcessGroupFlowEntity> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ConfigException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConfigException(e);
         }
-        result.setControllerServicesDTO(null);
-        return result;
     }
 
     /**
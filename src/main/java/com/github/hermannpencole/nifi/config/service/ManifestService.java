@@ -0,0 +1,202 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.model.ConnectionPort;
+import com.github.hermannpencole.nifi.config.model.GroupProcessorsReader;
+import com.github.hermannpencole.nifi.config.model.ManifestEntry;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Update of many branches in one run : the branches of a manifest share the client and the caches,
+ * the independent branches are updated concurrently
+ */
+@Singleton
+public class ManifestService {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(ManifestService.class);
+
+    @Inject
+    private UpdateProcessorService updateProcessorService;
+
+    /**
+     * read the manifest : one line by branch, branch=configuration file (relative to the manifest),
+     * the empty lines and the lines beginning by # are ignored
+     *
+     * @param fileManifest
+     * @return
+     * @throws IOException
+     */
+    public List<ManifestEntry> readManifest(String fileManifest) throws IOException {
+        File file = new File(fileManifest);
+        if (!file.exists()) {
+            throw new FileNotFoundException("Manifest " + file.getName() + " doesn't exist");
+        }
+        List<ManifestEntry> entries = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+                continue;
+            }
+            int separator = line.indexOf('=');
+            if (separator < 0) {
+                throw new ConfigException("Line " + lineNumber + " of the manifest must have format branch=configuration file : " + line);
+            }
+            List<String> branch = Arrays.stream(line.substring(0, separator).split(">")).map(String::trim).collect(Collectors.toList());
+            if (!branch.get(0).equals("root")) {
+                throw new ConfigException("The branch address must begin with the element 'root' ( sample : root > branch > sub-branch) on line " + lineNumber + " of the manifest");
+            }
+            File configuration = new File(line.substring(separator + 1).trim());
+            if (!configuration.isAbsolute()) {
+                configuration = new File(file.getAbsoluteFile().getParentFile(), configuration.getPath());
+            }
+            entries.add(new ManifestEntry(branch, configuration.getPath()));
+        }
+        return entries;
+    }
+
+    /**
+     * update the branches of the manifest : a branch is updated after the branches of the manifest before it
+     * that contain it or are contained by it, or that configure a controller service of the same name ; the others
+     * branches are updated concurrently (at most concurrency). An update that fail don't stop the others.
+     *
+     * @param entries
+     * @param optionNoStartProcessors
+     * @param optionDiff
+     * @param concurrency
+     * @return the entries with their result
+     */
+    public List<ManifestEntry> updateAll(List<ManifestEntry> entries, boolean optionNoStartProcessors, boolean optionDiff, int concurrency) {
+        entries.forEach(entry -> entry.setControllerServices(readControllerServices(entry.getConfiguration())));
+        List<List<ManifestEntry>> chains = getChains(entries);
+        LOG.info("Update of {} branches, {} independent, {} concurrently", entries.size(), chains.size(), Math.min(concurrency, chains.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, chains.size())));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (List<ManifestEntry> chain : chains) {
+                futures.add(executor.submit(() -> chain.forEach(entry -> update(entry, optionNoStartProcessors, optionDiff))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new ConfigException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new ConfigException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return entries;
+    }
+
+    private void update(ManifestEntry entry, boolean optionNoStartProcessors, boolean optionDiff) {
+        long start = System.currentTimeMillis();
+        String error = null;
+        try {
+            updateProcessorService.updateByBranch(entry.getBranch(), entry.getConfiguration(), optionNoStartProcessors, optionDiff);
+            LOG.info("The group configuration {} is updated with the file {}.", entry.getBranch(), entry.getConfiguration());
+        } catch (ApiException e) {
+            LOG.error(e.getMessage(), e);
+            error = e.getMessage() + ": " + e.getResponseBody();
+        } catch (IOException | RuntimeException e) {
+            LOG.error(e.getMessage(), e);
+            error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        }
+        entry.setResult(error, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * the names of the controller services of the root of the configuration (the controllers configured by the update),
+     * none when the configuration can't be read : its update fails with the error
+     *
+     * @param fileConfiguration
+     * @return
+     */
+    Set<String> readControllerServices(String fileConfiguration) {
+        Set<String> names = new HashSet<>();
+        File file = new File(fileConfiguration);
+        if (!file.exists()) {
+            return names;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            new GroupProcessorsReader<>(new GroupProcessorsReader.Visitor<Boolean>() {
+                @Override
+                public Boolean enterGroup(Boolean parent, String name) {
+                    return false;
+                }
+
+                @Override
+                public void processor(Boolean root, ProcessorDTO processor) {
+                }
+
+                @Override
+                public void controllerService(Boolean root, ControllerServiceDTO controllerService) {
+                    if (root && controllerService.getName() != null) {
+                        names.add(controllerService.getName().trim());
+                    }
+                }
+
+                @Override
+                public void connection(Boolean root, ConnectionPort connection) {
+                }
+            }).read(reader, true);
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Cannot read the controller services of {} : {}", fileConfiguration, e.getMessage());
+        }
+        return names;
+    }
+
+    /**
+     * the entries grouped by overlapping branches or shared controller services, in the order of the manifest
+     *
+     * @param entries
+     * @return
+     */
+    List<List<ManifestEntry>> getChains(List<ManifestEntry> entries) {
+        List<List<ManifestEntry>> chains = new ArrayList<>();
+        for (ManifestEntry entry : entries) {
+            List<ManifestEntry> chain = new ArrayList<>();
+            for (Iterator<List<ManifestEntry>> iterator = chains.iterator(); iterator.hasNext(); ) {
+                List<ManifestEntry> other = iterator.next();
+                if (other.stream().anyMatch(item -> entry.overlaps(item) || entry.sharesControllerService(item))) {
+                    chain.addAll(other);
+                    iterator.remove();
+                }
+            }
+            chain.sort(Comparator.comparingInt(entries::indexOf));
+            chain.add(entry);
+            chains.add(chain);
+        }
+        return chains;
+    }
+
+    /**
+     * log the report of the update
+     *
+     * @param entries
+     */
+    public void log(List<ManifestEntry> entries) {
+        long failed = entries.stream().filter(entry -> !entry.isSuccess()).count();
+        LOG.info("Manifest : {} branches updated, {} failed", entries.size() - failed, failed);
+        entries.forEach(entry -> LOG.info("      " + entry.format()));
+    }
+}
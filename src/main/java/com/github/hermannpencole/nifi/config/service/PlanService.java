@@ -0,0 +1,552 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.*;
+import com.github.hermannpencole.nifi.config.utils.Backoff;
+import com.github.hermannpencole.nifi.config.utils.ConfigDiff;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.github.hermannpencole.nifi.config.model.DeploymentPlan.Type.*;
+import static com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.CONTROLLERSERVICE;
+import static com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR;
+
+/**
+ * Class that build the plan of updateConfig, deployTemplate and undeploy without any write on nifi :
+ * the branch is resolved with the same services than the modes, only the reads are executed.
+ *
+ * The number of requests of each operation follow the implementation of the services, a polling is counted
+ * as one evaluation ; the latency of a request is measured on the reads of the plan.
+ */
+@Singleton
+public class PlanService {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(PlanService.class);
+
+    /**
+     * latency of a request in millisecond when it can't be measured
+     */
+    public static final long DEFAULT_LATENCY = 100;
+
+    @Inject
+    private ProcessGroupService processGroupService;
+
+    @Inject
+    private UpdateProcessorService updateProcessorService;
+
+    @Inject
+    private ControllerServicesService controllerServicesService;
+
+    @Inject
+    private ProcessorService processorService;
+
+    @Inject
+    private PortService portService;
+
+    @Inject
+    private AccessService accessService;
+
+    @Inject
+    private FlowApi flowapi;
+
+    @Inject
+    public Backoff backoff;
+
+    @Named("bulkSchedule")
+    @Inject
+    public Boolean bulkSchedule;
+
+    /**
+     * plan of updateConfig
+     *
+     * @param branch
+     * @param fileConfiguration
+     * @param optionNoStartProcessors
+     * @param optionDiff
+     * @return
+     * @throws IOException
+     * @throws ApiException
+     */
+    public DeploymentPlan planUpdate(List<String> branch, String fileConfiguration, boolean optionNoStartProcessors, boolean optionDiff) throws IOException, ApiException {
+        File file = new File(fileConfiguration);
+        if (!file.exists()) {
+            throw new FileNotFoundException("File configuration " + file.getName() + " is empty or doesn't exist");
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8")) {
+            GroupProcessorsReader.validate(reader);
+        }
+        DeploymentPlan plan = new DeploymentPlan(optionDiff ? "updateConfig -diff" : "updateConfig", branch);
+        Measure measure = new Measure();
+        ProcessGroupFlowEntity componentSearch = processGroupService.changeDirectory(branch)
+                .orElseThrow(() -> new ConfigException(("cannot find " + Arrays.toString(branch.toArray()))));
+        if (!optionDiff) {
+            planStop(plan, componentSearch);
+        }
+
+        //the processors of the configuration
+        GroupToPlan root = new GroupToPlan(componentSearch);
+        PlanVisitor visitor = new PlanVisitor(root, optionDiff);
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8")) {
+            new GroupProcessorsReader<>(visitor).read(reader, root);
+        }
+        List<UpdateProcessorService.ControllerToUpdate> controllers = updateProcessorService.findControllers(
+                root.controllerServices, componentSearch.getProcessGroupFlow().getId(), optionDiff);
+
+        if (optionDiff) {
+            //same scope than the minimal update
+            Set<String> scope = new LinkedHashSet<>();
+            visitor.changes.forEach(processor -> scope.add(processor.getId()));
+            for (UpdateProcessorService.ControllerToUpdate controller : controllers) {
+                scope.addAll(controllerServicesService.getReferencingProcessors(controller.controllerService.getId()));
+                for (ControllerServiceEntity oldControllerService : controller.oldControllersService) {
+                    scope.addAll(controllerServicesService.getReferencingProcessors(oldControllerService.getId()));
+                }
+            }
+            List<ProcessorEntity> processors = scope.stream().map(processorService::getById).collect(Collectors.toList());
+            List<ProcessorEntity> toStop = processors.stream().filter(this::isNotDisabled).collect(Collectors.toList());
+            if (!toStop.isEmpty()) {
+                plan.add(STOP, toStop.size() + " processors changed or using a controller changed", toStop.size() * 2, 1)
+                        .down(names(toStop.stream().filter(this::isRunning)));
+            }
+            visitor.changes.forEach(processor -> plan.add(UPDATE, "processor " + name(processor), 1, 0));
+            planControllers(plan, controllers, false);
+            Set<String> changed = visitor.changes.stream().map(ProcessorEntity::getId).collect(Collectors.toSet());
+            List<ProcessorEntity> restart = toStop.stream().filter(processor -> isRunning(processor) || changed.contains(processor.getId()))
+                    .collect(Collectors.toList());
+            if (!optionNoStartProcessors && !restart.isEmpty()) {
+                plan.add(START, restart.size() + " processors", restart.size() * 3, 1).up(names(restart.stream()));
+            }
+        } else {
+            visitor.changes.forEach(processor -> plan.add(UPDATE, "processor " + name(processor), 1, 0));
+            planControllers(plan, controllers, true);
+        }
+
+        for (ConnectionPort connection : root.connections) {
+            planRoute(plan, connection, !optionNoStartProcessors);
+        }
+
+        if (!optionNoStartProcessors && !optionDiff) {
+            planStart(plan, componentSearch);
+        }
+        measure.end(plan);
+        return plan;
+    }
+
+    /**
+     * plan of deployTemplate
+     *
+     * @param branch
+     * @param fileConfiguration
+     * @param keepTemplate
+     * @return
+     * @throws IOException
+     * @throws ApiException
+     */
+    public DeploymentPlan planDeploy(List<String> branch, String fileConfiguration, boolean keepTemplate) throws IOException, ApiException {
+        File file = new File(fileConfiguration);
+        if (!file.exists()) {
+            throw new FileNotFoundException("Template " + file.getName() + " doesn't exist");
+        }
+        DeploymentPlan plan = new DeploymentPlan("deployTemplate", branch);
+        Measure measure = new Measure();
+        ProcessGroupFlowEntity flowEntity = processGroupService.getFlow("root");
+        for (String processGroupName : branch.subList(1, branch.size())) {
+            Optional<ProcessGroupEntity> child = flowEntity == null ? Optional.empty()
+                    : new FlowNameIndex(flowEntity.getProcessGroupFlow().getFlow()).getProcessGroups().findFirst(processGroupName);
+            if (child.isPresent()) {
+                flowEntity = processGroupService.getFlow(child.get().getId());
+            } else {
+                plan.add(CREATE, "process group " + processGroupName, 2, 0);
+                flowEntity = null;
+            }
+        }
+        String name = FilenameUtils.getBaseName(file.getName());
+        boolean oldTemplate = flowapi.getTemplates().getTemplates().stream()
+                .anyMatch(template -> template.getTemplate().getName().equals(name));
+        if (oldTemplate) {
+            plan.add(DELETE, "old template " + name, 1, 0);
+        }
+        plan.add(CREATE, "upload template " + name, 1, 0);
+        plan.add(CREATE, "instantiate template " + name, 1, 0);
+        if (!keepTemplate) {
+            plan.add(DELETE, "template " + name, 1, 0);
+        }
+        measure.end(plan);
+        return plan;
+    }
+
+    /**
+     * plan of undeploy
+     *
+     * @param branch
+     * @return
+     * @throws ApiException
+     */
+    public DeploymentPlan planUndeploy(List<String> branch) throws ApiException {
+        DeploymentPlan plan = new DeploymentPlan("undeploy", branch);
+        Measure measure = new Measure();
+        Optional<ProcessGroupFlowEntity> processGroupFlow = processGroupService.changeDirectory(branch);
+        if (!processGroupFlow.isPresent()) {
+            LOG.warn("cannot find " + Arrays.toString(branch.toArray()));
+            measure.end(plan);
+            return plan;
+        }
+        String id = processGroupFlow.get().getProcessGroupFlow().getId();
+        planStop(plan, processGroupFlow.get());
+
+        for (TemplateEntity template : flowapi.getTemplates().getTemplates()) {
+            if (id.equals(template.getTemplate().getGroupId())) {
+                plan.add(DELETE, "template " + template.getTemplate().getName(), 1, 0);
+            }
+        }
+        for (ControllerServiceEntity controllerService : flowapi.getControllerServicesFromGroup(id).getControllerServices()) {
+            if (id.equals(controllerService.getComponent().getParentGroupId())) {
+                List<ControllerServiceReferencingComponentEntity> processors = referencing(controllerService, PROCESSOR);
+                plan.add(STOP, "processors referencing " + name(controllerService), 4 + 2 * processors.size(), 1);
+                plan.add(DISABLE, "controllers referencing " + name(controllerService), 2, 1)
+                        .down(referencingNames(referencing(controllerService, CONTROLLERSERVICE)));
+                plan.add(DISABLE, "controller " + name(controllerService), 3, 1)
+                        .down(Collections.singletonList("controller " + name(controllerService)));
+            }
+        }
+        plan.add(DELETE, "process group " + branch.get(branch.size() - 1) + " (" + id + ")", 2, 0);
+        measure.end(plan);
+        return plan;
+    }
+
+    /**
+     * log the report of the plan
+     *
+     * @param plan
+     */
+    public void log(DeploymentPlan plan) {
+        plan.format(plan.getLatency(), backoff.getInitialDelay()).forEach(LOG::info);
+    }
+
+    /**
+     * the stop of the branch by waves, as ProcessGroupService.stop
+     *
+     * @param plan
+     * @param processGroupFlow
+     */
+    private void planStop(DeploymentPlan plan, ProcessGroupFlowEntity processGroupFlow) {
+        ExecutionPlan executionPlan = processGroupService.getExecutionPlan(processGroupFlow.getProcessGroupFlow());
+        List<Set<?>> waves = executionPlan.getWaves();
+        for (int i = 0; i < waves.size(); i++) {
+            if (!executionPlan.getIncoming(i).isEmpty()) {
+                plan.add(STOP, "wait empty queues of wave " + (i + 1) + "/" + waves.size() + " (" + executionPlan.getIncoming(i).size() + " connections)", 1, 1);
+            }
+            List<ProcessorEntity> processors = processors(waves.get(i)).stream().filter(this::isRunning).collect(Collectors.toList());
+            List<PortEntity> ports = ports(waves.get(i)).stream()
+                    .filter(port -> PortDTO.StateEnum.RUNNING.equals(port.getComponent().getState())).collect(Collectors.toList());
+            if (processors.isEmpty() && ports.isEmpty()) {
+                continue;
+            }
+            int requests = bulkSchedule ? 1 : processors.size() + ports.size();
+            int waits = processors.isEmpty() ? 0 : 1;
+            plan.add(STOP, "wave " + (i + 1) + "/" + waves.size() + " : " + processors.size() + " processors, " + ports.size() + " ports", requests + waits, waits)
+                    .down(names(processors.stream()));
+        }
+        plan.add(STOP, "process group " + processGroupFlow.getProcessGroupFlow().getId() + " and its children", 1, 0);
+    }
+
+    /**
+     * the start of the branch by waves from the sinks, as ProcessGroupService.start ;
+     * the state of the components is the state before the plan
+     *
+     * @param plan
+     * @param processGroupFlow
+     */
+    private void planStart(DeploymentPlan plan, ProcessGroupFlowEntity processGroupFlow) {
+        plan.add(START, "refresh of process group " + processGroupFlow.getProcessGroupFlow().getId(), 1, 0);
+        List<Set<?>> waves = processGroupService.getExecutionPlan(processGroupFlow.getProcessGroupFlow()).getWaves();
+        for (int i = waves.size() - 1; i >= 0; i--) {
+            List<ProcessorEntity> processors = processors(waves.get(i)).stream().filter(this::isNotDisabled).collect(Collectors.toList());
+            List<PortEntity> ports = ports(waves.get(i)).stream()
+                    .filter(port -> !PortDTO.StateEnum.DISABLED.equals(port.getComponent().getState())).collect(Collectors.toList());
+            if (processors.isEmpty() && ports.isEmpty()) {
+                continue;
+            }
+            int requests = bulkSchedule ? 1 : processors.size() + ports.size();
+            int waits = processors.isEmpty() ? 0 : 1;
+            plan.add(START, "wave " + (i + 1) + "/" + waves.size() + " : " + processors.size() + " processors, " + ports.size() + " ports", requests + waits, waits)
+                    .up(names(processors.stream()));
+        }
+        plan.add(START, "process group " + processGroupFlow.getProcessGroupFlow().getId() + " and its children", 1, 0);
+    }
+
+    /**
+     * the update of the controllers, as UpdateProcessorService.updateControllers
+     *
+     * @param plan
+     * @param controllers
+     * @param manageProcessors
+     */
+    private void planControllers(DeploymentPlan plan, List<UpdateProcessorService.ControllerToUpdate> controllers, boolean manageProcessors) {
+        List<ControllerServiceEntity> deleted = new ArrayList<>();
+        Map<ControllerServiceEntity, List<ControllerServiceReferencingComponentEntity>> referencingControllers = new LinkedHashMap<>();
+        Map<ControllerServiceEntity, List<ControllerServiceReferencingComponentEntity>> referencingProcessors = new LinkedHashMap<>();
+        List<UpdateProcessorService.ControllerToUpdate> configured = new ArrayList<>();
+        for (UpdateProcessorService.ControllerToUpdate controller : controllers) {
+            List<ControllerServiceReferencingComponentEntity> processors = new ArrayList<>(referencing(controller.controllerService, PROCESSOR));
+            List<ControllerServiceReferencingComponentEntity> controllerServices = new ArrayList<>(referencing(controller.controllerService, CONTROLLERSERVICE));
+            for (ControllerServiceEntity oldControllerService : controller.oldControllersService) {
+                List<ControllerServiceReferencingComponentEntity> oldProcessors = referencing(oldControllerService, PROCESSOR);
+                List<ControllerServiceReferencingComponentEntity> oldControllerServices = referencing(oldControllerService, CONTROLLERSERVICE);
+                plan.add(STOP, "processors referencing old " + name(oldControllerService), 5 + 2 * oldProcessors.size(), 1)
+                        .down(referencingNames(running(oldProcessors)));
+                plan.add(DISABLE, "controllers referencing old " + name(oldControllerService), 2, 1)
+                        .down(referencingNames(running(oldControllerServices)));
+                for (ControllerServiceReferencingComponentEntity component : oldControllerService.getComponent().getReferencingComponents()) {
+                    plan.add(UPDATE, "reference of " + component.getComponent().getName() + " to " + name(controller.controllerService), 2, 0);
+                }
+                processors.addAll(oldProcessors);
+                controllerServices.addAll(oldControllerServices);
+                deleted.add(oldControllerService);
+            }
+            referencingProcessors.put(controller.controllerService, processors);
+            referencingControllers.put(controller.controllerService, controllerServices);
+            if (controller.configuration.getProperties() != null && !controller.configuration.getProperties().isEmpty()) {
+                if (manageProcessors) {
+                    plan.add(STOP, "processors referencing " + name(controller.controllerService), 4 + 2 * processors.size(), 1)
+                            .down(referencingNames(running(processors)));
+                }
+                plan.add(DISABLE, "controllers referencing " + name(controller.controllerService), 2, 1)
+                        .down(referencingNames(running(controllerServices)));
+                configured.add(controller);
+            }
+        }
+        //the controllers are disabled and enabled by level of their dependencies, a level in parallel with one polling
+        List<List<ControllerServiceEntity>> levels = new ControllerServiceGraph(configured.stream()
+                .map(controller -> controller.controllerService).collect(Collectors.toList())).getLevels();
+        for (int i = levels.size() - 1; i >= 0; i--) {
+            plan.add(DISABLE, controllersOfLevel(levels.get(i)), levels.get(i).size() + 1, 1)
+                    .down(controllerNames(levels.get(i)));
+        }
+        for (UpdateProcessorService.ControllerToUpdate controller : configured) {
+            plan.add(UPDATE, "controller " + name(controller.controllerService), 2, 0);
+        }
+        for (ControllerServiceEntity oldControllerService : deleted) {
+            plan.add(DELETE, "old controller " + name(oldControllerService), 5, 1)
+                    .down(Collections.singletonList("controller " + name(oldControllerService)));
+        }
+        for (List<ControllerServiceEntity> level : new ControllerServiceGraph(referencingControllers.keySet()).getLevels()) {
+            plan.add(ENABLE, controllersOfLevel(level), 2 * level.size() + 1, 1)
+                    .up(controllerNames(level));
+        }
+        referencingControllers.forEach((controllerService, controllerServices) -> plan.add(ENABLE, "controllers referencing " + name(controllerService), 2, 1)
+                .up(referencingNames(controllerServices)));
+        if (manageProcessors) {
+            referencingProcessors.forEach((controllerService, processors) -> plan.add(START, "processors referencing " + name(controllerService), 4 + 2 * processors.size(), 1)
+                    .up(referencingNames(processors)));
+        }
+    }
+
+    private String controllersOfLevel(List<ControllerServiceEntity> level) {
+        return level.size() == 1 ? "controller " + name(level.get(0)) : level.size() + " controllers";
+    }
+
+    private List<String> controllerNames(List<ControllerServiceEntity> level) {
+        return level.stream().map(controllerService -> "controller " + name(controllerService)).collect(Collectors.toList());
+    }
+
+    /**
+     * the ports and connections of a route, as CreateRouteService.createRoute : only the missing ports are created,
+     * a connection is counted when one of its ports is created
+     *
+     * @param plan
+     * @param connection
+     * @param startRoute
+     */
+    private void planRoute(DeploymentPlan plan, ConnectionPort connection, boolean startRoute) {
+        List<String> sourcePath = Arrays.stream(connection.getSource().split(">")).map(String::trim).collect(Collectors.toList());
+        List<String> destinationPath = Arrays.stream(connection.getDestination().split(">")).map(String::trim).collect(Collectors.toList());
+        ListIterator<String> source = sourcePath.listIterator();
+        ListIterator<String> destination = destinationPath.listIterator();
+        while (!source.next().equals(destination.next())) ;
+        int mergeLevel = source.nextIndex();
+
+        List<Boolean> created = new ArrayList<>();
+        List<Boolean> sourceCreated = planPorts(plan, connection.getName(), sourcePath, mergeLevel, "output");
+        Collections.reverse(sourceCreated);
+        created.addAll(sourceCreated);
+        created.addAll(planPorts(plan, connection.getName(), destinationPath, destination.nextIndex(), "input"));
+        for (int i = 1; i < created.size(); i++) {
+            if (created.get(i - 1) || created.get(i)) {
+                plan.add(CREATE, "connection of route " + connection.getName(), 1, 0);
+            }
+        }
+        if (startRoute && !created.isEmpty()) {
+            plan.add(START, created.size() + " ports of route " + connection.getName(), 2 * created.size(), 0);
+        }
+    }
+
+    /**
+     * @return for each port of the path from the merge level, true if the port must be created
+     */
+    private List<Boolean> planPorts(DeploymentPlan plan, String name, List<String> path, int mergeLevel, String type) {
+        List<Boolean> created = new ArrayList<>();
+        ProcessGroupFlowEntity flowEntity = processGroupService.getFlow("root");
+        for (int i = 1; i < path.size(); i++) {
+            String processGroupName = path.get(i);
+            ProcessGroupEntity processGroup = new FlowNameIndex(flowEntity.getProcessGroupFlow().getFlow()).getProcessGroups().findFirst(processGroupName)
+                    .orElseThrow(() -> new ConfigException("Couldn't find process group '" + processGroupName + "'"));
+            flowEntity = processGroupService.getFlow(processGroup.getId());
+            if (i >= mergeLevel) {
+                boolean missing = !portService.findPortEntityByName(flowEntity.getProcessGroupFlow().getFlow(), name).isPresent();
+                if (missing) {
+                    plan.add(CREATE, type + " port " + name + " on " + processGroupName, 1, 0);
+                }
+                created.add(missing);
+            }
+        }
+        return created;
+    }
+
+    /**
+     * find the processors of the configuration, keep the controllers and connections of the root of the branch
+     */
+    private static class GroupToPlan {
+
+        private final FlowNameIndex flowNameIndex;
+
+        private final List<ControllerServiceDTO> controllerServices = new ArrayList<>();
+
+        private final List<ConnectionPort> connections = new ArrayList<>();
+
+        GroupToPlan(ProcessGroupFlowEntity processGroupFlow) {
+            this.flowNameIndex = new FlowNameIndex(processGroupFlow.getProcessGroupFlow().getFlow());
+        }
+    }
+
+    private class PlanVisitor implements GroupProcessorsReader.Visitor<GroupToPlan> {
+
+        private final GroupToPlan root;
+
+        private final boolean diff;
+
+        /**
+         * the processors to update
+         */
+        private final List<ProcessorEntity> changes = new ArrayList<>();
+
+        PlanVisitor(GroupToPlan root, boolean diff) {
+            this.root = root;
+            this.diff = diff;
+        }
+
+        @Override
+        public GroupToPlan enterGroup(GroupToPlan parent, String name) {
+            ProcessGroupEntity processGroup = parent.flowNameIndex.getProcessGroups().findFirst(name)
+                    .orElseThrow(() -> new ConfigException(("cannot find " + name)));
+            return new GroupToPlan(processGroupService.getFlow(processGroup.getId()));
+        }
+
+        @Override
+        public void processor(GroupToPlan group, ProcessorDTO processorOnConfig) {
+            ProcessorEntity processor = UpdateProcessorService.findProcByComponentName(group.flowNameIndex.getProcessors(), processorOnConfig.getName());
+            if (!diff || !ConfigDiff.diff(processorOnConfig, processor.getComponent()).isEmpty()) {
+                changes.add(processor);
+            }
+        }
+
+        @Override
+        public void controllerService(GroupToPlan group, ControllerServiceDTO controllerService) {
+            if (group == root) {
+                root.controllerServices.add(controllerService);
+            }
+        }
+
+        @Override
+        public void connection(GroupToPlan group, ConnectionPort connection) {
+            if (group == root) {
+                root.connections.add(connection);
+            }
+        }
+    }
+
+    /**
+     * count the reads of the plan and measure the latency of a request
+     */
+    private class Measure {
+
+        private final long started = System.nanoTime();
+
+        private final long requests = accessService.getRequestCount();
+
+        void end(DeploymentPlan plan) {
+            long reads = accessService.getRequestCount() - requests;
+            long elapsed = (System.nanoTime() - started) / 1000000;
+            plan.addReadRequests((int) reads);
+            plan.setLatency(reads > 0 ? Math.max(1, elapsed / reads) : DEFAULT_LATENCY);
+        }
+    }
+
+    private boolean isRunning(ProcessorEntity processor) {
+        return ProcessorDTO.StateEnum.RUNNING.equals(processor.getComponent().getState());
+    }
+
+    private boolean isNotDisabled(ProcessorEntity processor) {
+        return !ProcessorDTO.StateEnum.DISABLED.equals(processor.getComponent().getState());
+    }
+
+    private List<ProcessorEntity> processors(Set<?> wave) {
+        return wave.stream().filter(ProcessorEntity.class::isInstance).map(ProcessorEntity.class::cast).collect(Collectors.toList());
+    }
+
+    private List<PortEntity> ports(Set<?> wave) {
+        return wave.stream().filter(PortEntity.class::isInstance).map(PortEntity.class::cast).collect(Collectors.toList());
+    }
+
+    private List<ControllerServiceReferencingComponentEntity> referencing(ControllerServiceEntity controllerService,
+                                                                         ControllerServiceReferencingComponentDTO.ReferenceTypeEnum type) {
+        if (controllerService.getComponent().getReferencingComponents() == null) {
+            return Collections.emptyList();
+        }
+        return controllerService.getComponent().getReferencingComponents().stream()
+                .filter(item -> item.getComponent().getReferenceType() == type)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * the referencing components running (processors) or enabled (controllers)
+     */
+    private List<ControllerServiceReferencingComponentEntity> running(List<ControllerServiceReferencingComponentEntity> components) {
+        return components.stream()
+                .filter(item -> "RUNNING".equals(item.getComponent().getState()) || "ENABLED".equals(item.getComponent().getState()))
+                .collect(Collectors.toList());
+    }
+
+    private List<String> names(Stream<ProcessorEntity> processors) {
+        return processors.map(processor -> "processor " + name(processor)).collect(Collectors.toList());
+    }
+
+    private List<String> referencingNames(List<ControllerServiceReferencingComponentEntity> components) {
+        return components.stream()
+                .map(item -> (item.getComponent().getReferenceType() == PROCESSOR ? "processor " : "controller ")
+                        + item.getComponent().getName() + " (" + item.getId() + ")")
+                .collect(Collectors.toList());
+    }
+
+    private String name(ProcessorEntity processor) {
+        return processor.getComponent().getName() + " (" + processor.getId() + ")";
+    }
+
+    private String name(ControllerServiceEntity controllerService) {
+        return controllerService.getComponent().getName() + " (" + controllerService.getId() + ")";
+    }
+}
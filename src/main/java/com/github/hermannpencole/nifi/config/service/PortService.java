@@ -1,6 +1,7 @@
 package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.utils.Backoff;
 import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.InputPortsApi;
@@ -34,9 +35,8 @@ public class PortService {
     @Inject
     public Integer timeout;
 
-    @Named("interval")
     @Inject
-    public Integer interval;
+    public Backoff backoff;
 
     @Inject
     private InputPortsApi inputPortsApi;
@@ -44,6 +44,9 @@ public class PortService {
     @Inject
     private OutputPortsApi outputPortsApi;
 
+    @Inject
+    private RevisionTracker revisionTracker;
+
     @Inject
     private ProcessGroupsApi processGroupsApi;
 
@@ -55,14 +58,7 @@ public class PortService {
      * @param state
      */
     public void setState(PortEntity port, PortDTO.StateEnum state) {
-        if (port.getComponent().getState().equals( PortDTO.StateEnum.DISABLED)) {
-            LOG.info(" {} ({}) is disabled ", port.getComponent().getName() ,port.getId(), port.getComponent().getState());
-            return;
-        }
-        //how obtain state of and don't have this bullshit trick
-        //trick for don't have error : xxxx cannot be started because it is not stopped. Current state is STOPPING
-        if (port.getComponent().getState().equals(state)) {
-            LOG.info(" {} ({}) is already {}", port.getComponent().getName() ,port.getId(), port.getComponent().getState());
+        if (!needUpdate(port, state)) {
             return;
         }
 
@@ -70,7 +66,6 @@ public class PortService {
             boolean haveResult = false;
             try {
                 PortEntity body = new PortEntity();
-                body.setRevision(port.getRevision());
                 body.setComponent(new PortDTO());
                 body.getComponent().setState(state);
                 body.getComponent().setId(port.getId());
@@ -79,11 +74,13 @@ public class PortService {
                 body.getComponent().setUserAccessControl(null);
                 body.getComponent().setGroupAccessControl(null);
                 body.getComponent().setValidationErrors(null);
-                PortEntity portEntity;
-                if (port.getComponent().getType()== PortDTO.TypeEnum.INPUT_PORT)
-                    portEntity = inputPortsApi.updateInputPort(port.getId(), body);
-                else
-                    portEntity = outputPortsApi.updateOutputPort(port.getId(), body);
+                PortEntity portEntity = revisionTracker.write(port.getId(), port.getRevision(), revision -> {
+                    body.setRevision(revision);
+                    if (port.getComponent().getType()== PortDTO.TypeEnum.INPUT_PORT)
+                        return inputPortsApi.updateInputPort(port.getId(), body);
+                    else
+                        return outputPortsApi.updateOutputPort(port.getId(), body);
+                }, PortEntity::getRevision, () -> getById(port.getId(), port.getComponent().getType()).getRevision());
                 LOG.info(" {} ({}) is {} ", portEntity.getComponent().getName(), portEntity.getId(), portEntity.getComponent().getState());
                 haveResult = true;
             } catch (ApiException e) {
@@ -94,12 +91,34 @@ public class PortService {
                 LOG.info(e.getResponseBody());
             }
             return !haveResult;
-        }, interval, timeout);
+        }, backoff, timeout);
 
     }
 
+    /**
+     * is the port not yet in the state (not disabled)
+     *
+     * @param port
+     * @param state
+     * @return
+     */
+    public boolean needUpdate(PortEntity port, PortDTO.StateEnum state) {
+        if (port.getComponent().getState().equals( PortDTO.StateEnum.DISABLED)) {
+            LOG.info(" {} ({}) is disabled ", port.getComponent().getName() ,port.getId(), port.getComponent().getState());
+            return false;
+        }
+        //how obtain state of and don't have this bullshit trick
+        //trick for don't have error : xxxx cannot be started because it is not stopped. Current state is STOPPING
+        if (port.getComponent().getState().equals(state)) {
+            LOG.info(" {} ({}) is already {}", port.getComponent().getName() ,port.getId(), port.getComponent().getState());
+            return false;
+        }
+        return true;
+    }
+
     private Optional<PortEntity> findPortEntityByName(final Stream<PortEntity> portEntities, final String name) {
-        return portEntities.filter(item -> item.getComponent().getName().trim().equals(name.trim())).findFirst();
+        String trimmedName = name.trim();
+        return portEntities.filter(item -> item.getComponent().getName().trim().equals(trimmedName)).findFirst();
     }
 
     public Optional<PortEntity> findPortEntityByName(final FlowDTO flow, final String componentName) {
@@ -1,5 +1,9 @@
 package com.github.hermannpencole.nifi.config.service;
 
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.model.ExecutionPlan;
+import com.github.hermannpencole.nifi.config.model.FlowIndex;
+import com.github.hermannpencole.nifi.config.utils.Backoff;
 import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
@@ -12,8 +16,9 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static com.github.hermannpencole.nifi.config.utils.FunctionUtils.findByComponentName;
 
@@ -48,6 +53,9 @@ public class ProcessGroupService {
     @Inject
     private ConnectionService connectionService;
 
+    @Inject
+    private StatusService statusService;
+
     @Named("placeWidth")
     @Inject
     public Double placeWidth;
@@ -60,9 +68,97 @@ public class ProcessGroupService {
     @Inject
     public Integer timeout;
 
-    @Named("interval")
     @Inject
-    public Integer interval;
+    public Backoff backoff;
+
+    @Named("concurrency")
+    @Inject
+    public Integer concurrency;
+
+    @Named("bulkSchedule")
+    @Inject
+    public Boolean bulkSchedule;
+
+    /**
+     * flow snapshot fetched during this run, by process group id ("root" is kept as alias)
+     */
+    private final Map<String, ProcessGroupFlowEntity> flowCache = new ConcurrentHashMap<>();
+    private final AtomicLong flowCacheHits = new AtomicLong();
+    private final AtomicLong flowCacheMisses = new AtomicLong();
+
+    /**
+     * index of the process group and its children by process group id, with the snapshots used to build it
+     */
+    private final Map<String, Map.Entry<List<FlowDTO>, FlowIndex>> flowIndexCache = new ConcurrentHashMap<>();
+
+    /**
+     * get the flow of the process group, fetched only once per run while no write invalidate it
+     *
+     * @param id id of process group ("root" for the root process group)
+     * @return
+     * @throws ApiException
+     */
+    public ProcessGroupFlowEntity getFlow(String id) throws ApiException {
+        ProcessGroupFlowEntity flowEntity = flowCache.get(id);
+        if (flowEntity != null) {
+            flowCacheHits.incrementAndGet();
+            return flowEntity;
+        }
+        flowCacheMisses.incrementAndGet();
+        flowEntity = flowapi.getFlow(id);
+        flowCache.put(id, flowEntity);
+        if (flowEntity.getProcessGroupFlow() != null && flowEntity.getProcessGroupFlow().getId() != null) {
+            flowCache.put(flowEntity.getProcessGroupFlow().getId(), flowEntity);
+        }
+        return flowEntity;
+    }
+
+    /**
+     * remove the snapshot of the process group from the cache, must be call after each write on a component of the group
+     * (the revision of the component change)
+     *
+     * @param id id of process group
+     */
+    public void invalidateFlow(String id) {
+        if (id == null) {
+            return;
+        }
+        ProcessGroupFlowEntity flowEntity = flowCache.remove(id);
+        if (flowEntity != null) {
+            //remove also the alias ("root")
+            flowCache.values().removeIf(item -> item == flowEntity);
+        }
+    }
+
+    /**
+     * remove the snapshot of the process group and of all its children already in the cache
+     *
+     * @param id id of process group
+     */
+    public void invalidateBranch(String id) {
+        ProcessGroupFlowEntity flowEntity = flowCache.get(id);
+        if (flowEntity != null && flowEntity.getProcessGroupFlow() != null && flowEntity.getProcessGroupFlow().getFlow() != null) {
+            flowEntity.getProcessGroupFlow().getFlow().getProcessGroups().forEach(child -> invalidateBranch(child.getId()));
+        }
+        invalidateFlow(id);
+    }
+
+    /**
+     * remove all the snapshot of the cache
+     */
+    public void invalidateAllFlow() {
+        flowCache.clear();
+        flowIndexCache.clear();
+    }
+
+    public long getFlowCacheHits() {
+        return flowCacheHits.get();
+    }
+
+    public long getFlowCacheMisses() {
+        return flowCacheMisses.get();
+    }
+
     /**
      * browse nifi on branch pass in parameter
      *
@@ -71,13 +167,13 @@ public class ProcessGroupService {
      * @throws ApiException
      */
     public Optional<ProcessGroupFlowEntity> changeDirectory(List<String> branch) throws ApiException {
-        ProcessGroupFlowEntity flowEntity = flowapi.getFlow("root");
+        ProcessGroupFlowEntity flowEntity = getFlow("root");
         for (String processGroupName : branch.subList(1, branch.size())) {
             Optional<ProcessGroupEntity> flowEntityChild = findByComponentName(flowEntity.getProcessGroupFlow().getFlow().getProcessGroups(), processGroupName);
             if (!flowEntityChild.isPresent()) {
                 return Optional.empty();
             }
-            flowEntity = flowapi.getFlow(flowEntityChild.get().getId());
+            flowEntity = getFlow(flowEntityChild.get().getId());
         }
         return Optional.of(flowEntity);
     }
@@ -93,7 +189,7 @@ public class ProcessGroupService {
         //generate clientID
         String clientId = flowapi.generateClientId();
         //find root
-        ProcessGroupFlowEntity flowEntity = flowapi.getFlow("root");
+        ProcessGroupFlowEntity flowEntity = getFlow("root");
         for (String processGroupName : branch.subList(1, branch.size())) {
             Optional<ProcessGroupEntity> flowEntityChild = findByComponentName(flowEntity.getProcessGroupFlow().getFlow().getProcessGroups(), processGroupName);
             if (!flowEntityChild.isPresent()) {
@@ -106,9 +202,10 @@ public class ProcessGroupService {
                 created.getComponent().setName(processGroupName);
                 created.getComponent().setPosition(position);
                 created = processGroupsApi.createProcessGroup(flowEntity.getProcessGroupFlow().getId(), created);
-                flowEntity = flowapi.getFlow(created.getId());
+                invalidateFlow(flowEntity.getProcessGroupFlow().getId());
+                flowEntity = getFlow(created.getId());
             } else {
-                flowEntity = flowapi.getFlow(flowEntityChild.get().getId());
+                flowEntity = getFlow(flowEntityChild.get().getId());
             }
         }
         return flowEntity;
@@ -128,83 +225,228 @@ public class ProcessGroupService {
         body.setState(state);
         body.setComponents(null);//for all
         flowapi.scheduleComponents(id, body);
+        //all the revision of the group and its children change
+        invalidateBranch(id);
     }
 
     /**
-     * start the processor group.
-     * Begin by processor that consumme flow and end with processor that consumme stream and create flow
+     * start the processor group and all its children.
+     * Execute the plan from the sinks to the sources : a component is started when all its downstream components are running
      *
      * @param processGroupFlow
      * @throws ApiException
      */
     public void start(ProcessGroupFlowEntity processGroupFlow) throws ApiException {
+        String processGroupId = processGroupFlow.getProcessGroupFlow().getId();
+        ExecutorService executor = newStateExecutor();
         try {
-            List<Set<?>> listing = reorder(processGroupFlow.getProcessGroupFlow());
-            for (int i = (listing.size() - 1); i >= 0; i--) {
-                Set<?> set = listing.get(i);
-                for (Object object : set) {
-                    if (object instanceof ProcessorEntity) {
-                        processorService.setState((ProcessorEntity) object, ProcessorDTO.StateEnum.RUNNING);
-                    } else if (object instanceof PortEntity) {
-                        portService.setState((PortEntity) object, PortDTO.StateEnum.STOPPED);
-                    }
+            List<Set<?>> waves = getExecutionPlan(processGroupFlow.getProcessGroupFlow()).getWaves();
+            for (int i = (waves.size() - 1); i >= 0; i--) {
+                skipRemoteProcessGroups(waves.get(i), ScheduleComponentsEntity.StateEnum.RUNNING);
+                List<String> processorsToWait = bulkSchedule
+                        ? scheduleWave(processGroupId, waves.get(i), ScheduleComponentsEntity.StateEnum.RUNNING)
+                        : updateState(executor, waves.get(i), ProcessorDTO.StateEnum.RUNNING, PortDTO.StateEnum.RUNNING);
+                //one status of the branch for all the processors of the wave
+                if (!processorsToWait.isEmpty()) {
+                    statusService.waitRunning(processGroupId, processorsToWait);
                 }
             }
-            for (ProcessGroupEntity procGroupInConf : processGroupFlow.getProcessGroupFlow().getFlow().getProcessGroups()) {
-                ProcessGroupFlowEntity processGroupFlowEntity = flowapi.getFlow(procGroupInConf.getId());
-                start(processGroupFlowEntity);
-            }
-            setState(processGroupFlow.getProcessGroupFlow().getId(), ScheduleComponentsEntity.StateEnum.RUNNING);
+            setState(processGroupId, ScheduleComponentsEntity.StateEnum.RUNNING);
         } catch (Exception e) {
-            setState(processGroupFlow.getProcessGroupFlow().getId(), ScheduleComponentsEntity.StateEnum.STOPPED);
+            setState(processGroupId, ScheduleComponentsEntity.StateEnum.STOPPED);
             throw e;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
     }
 
     /**
-     * stop the processor group.
-     * Begin by processor that consumme stream and create flow and end with processor that consumme flow.
+     * stop the processor group and all its children.
+     * Execute the plan from the sources to the sinks : a component is stopped when all its upstream components are stopped
+     * and the queues that feed it are empty
      *
      * @param processGroupFlow
      * @throws ApiException
      */
     public void stop(ProcessGroupFlowEntity processGroupFlow) throws ApiException {
+        String processGroupId = processGroupFlow.getProcessGroupFlow().getId();
+        ExecutorService executor = newStateExecutor();
         try {
-            List<Set<?>> listing = reorder( processGroupFlow.getProcessGroupFlow());
-            for (int i = 0; i < (listing.size()); i++) {
-                Set<?> set = listing.get(i);
-
-                if (set.size()>0 && set.stream().findFirst().get() instanceof ConnectionEntity) {
+            ExecutionPlan plan = getExecutionPlan(processGroupFlow.getProcessGroupFlow());
+            List<Set<?>> waves = plan.getWaves();
+            for (int i = 0; i < waves.size(); i++) {
+                List<ConnectionEntity> incoming = plan.getIncoming(i);
+                if (!incoming.isEmpty()) {
                     //make be sur that in one pass all queue are empty (for the case when there is cycle)
-                    boolean emptyQueue = true;
-                    do {
-                        emptyQueue = true;
-                        for (Object o : set) {
-                            emptyQueue = emptyQueue && connectionService.isEmptyQueue((ConnectionEntity) o);
-                        }
-                        if (!emptyQueue) {
-                            for (Object o : set) { connectionService.waitEmptyQueue((ConnectionEntity) o); }
-                        }
-                    } while (!emptyQueue);
+                    connectionService.waitEmptyQueues(processGroupId, incoming);
                 }
-                //TODO manage remoteProcessGroup
-                for (Object object : set) {
-                    if (object instanceof ProcessorEntity) {
-                        processorService.setState((ProcessorEntity) object, ProcessorDTO.StateEnum.STOPPED);
-                    } else if (object instanceof PortEntity) {
-                        portService.setState((PortEntity) object, PortDTO.StateEnum.STOPPED);
-                    }
+                skipRemoteProcessGroups(waves.get(i), ScheduleComponentsEntity.StateEnum.STOPPED);
+                List<String> processorsToWait = bulkSchedule
+                        ? scheduleWave(processGroupId, waves.get(i), ScheduleComponentsEntity.StateEnum.STOPPED)
+                        : updateState(executor, waves.get(i), ProcessorDTO.StateEnum.STOPPED, PortDTO.StateEnum.STOPPED);
+                //one status of the branch for all the processors of the wave
+                if (!processorsToWait.isEmpty()) {
+                    statusService.waitStopped(processGroupId, processorsToWait);
                 }
             }
-            for (ProcessGroupEntity procGroupInConf : processGroupFlow.getProcessGroupFlow().getFlow().getProcessGroups()) {
-                ProcessGroupFlowEntity processGroupFlowEntity = flowapi.getFlow(procGroupInConf.getId());
-                stop(processGroupFlowEntity);
-            }
-            setState(processGroupFlow.getProcessGroupFlow().getId(), ScheduleComponentsEntity.StateEnum.STOPPED);
+            setState(processGroupId, ScheduleComponentsEntity.StateEnum.STOPPED);
         } catch (Exception e) {
-            setState(processGroupFlow.getProcessGroupFlow().getId(), ScheduleComponentsEntity.StateEnum.RUNNING);
+            setState(processGroupId, ScheduleComponentsEntity.StateEnum.RUNNING);
             throw e;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * the threads of the updates one by one, for all the waves of a start or a stop (none with the bulk schedule)
+     *
+     * @return
+     */
+    private ExecutorService newStateExecutor() {
+        return bulkSchedule ? null : Executors.newFixedThreadPool(Math.max(1, concurrency));
+    }
+
+    /**
+     * the transmission of the remote process groups is not managed : the waves skip them, with the bulk schedule
+     * as with the updates one by one
+     *
+     * @param wave
+     * @param state
+     */
+    private void skipRemoteProcessGroups(Set<?> wave, ScheduleComponentsEntity.StateEnum state) {
+        for (Object object : wave) {
+            if (object instanceof RemoteProcessGroupEntity) {
+                RemoteProcessGroupEntity remoteProcessGroup = (RemoteProcessGroupEntity) object;
+                LOG.warn("Remote process group {} ({}) skipped : its transmission is not changed to {}",
+                        remoteProcessGroup.getComponent() == null ? null : remoteProcessGroup.getComponent().getName(),
+                        remoteProcessGroup.getId(), state);
+            }
+        }
+    }
+
+    /**
+     * ask the new state for all the components of the wave with one request,
+     * the request carry the revision of exactly the components to update
+     *
+     * @param processGroupId the group that contains all the components of the wave (directly or in children)
+     * @param wave
+     * @param state
+     * @return the id of the processors to wait, in the order of the wave
+     */
+    private List<String> scheduleWave(String processGroupId, Set<?> wave, ScheduleComponentsEntity.StateEnum state) {
+        ProcessorDTO.StateEnum processorState = ProcessorDTO.StateEnum.valueOf(state.name());
+        PortDTO.StateEnum portState = PortDTO.StateEnum.valueOf(state.name());
+        Map<String, RevisionDTO> components = new LinkedHashMap<>();
+        List<String> processorsToWait = new ArrayList<>();
+        for (Object object : wave) {
+            if (object instanceof ProcessorEntity) {
+                ProcessorEntity processor = (ProcessorEntity) object;
+                if (processorService.needWait(processor, processorState)) {
+                    processorsToWait.add(processor.getId());
+                    if (processorService.needUpdate(processor, processorState)) {
+                        components.put(processor.getId(), processor.getRevision());
+                    }
+                }
+            } else if (object instanceof PortEntity) {
+                PortEntity port = (PortEntity) object;
+                if ((portState == PortDTO.StateEnum.STOPPED || isValid(port)) && portService.needUpdate(port, portState)) {
+                    components.put(port.getId(), port.getRevision());
+                }
+            }
+        }
+        if (components.isEmpty()) {
+            return processorsToWait;
+        }
+        ScheduleComponentsEntity body = new ScheduleComponentsEntity();
+        body.setId(processGroupId);
+        body.setState(state);
+        body.setComponents(components);
+        LOG.info(" {} component(s) of ({}) update for {}", components.size(), processGroupId, state);
+        FunctionUtils.runWhile(() -> {
+            try {
+                flowapi.scheduleComponents(processGroupId, body);
+            } catch (ApiException e) {
+                //trick for don't have error : xxxx cannot be started because it is not stopped. Current state is STOPPING
+                if (e.getResponseBody() == null || !e.getResponseBody().endsWith("Current state is STOPPING")) {
+                    throw new ConfigException(e.getMessage() + ": " + e.getResponseBody(), e);
+                }
+                LOG.info(e.getResponseBody());
+                return true;
+            }
+            return false;
+        }, backoff, timeout);
+        return processorsToWait;
+    }
+
+    /**
+     * ask the new state for all the components of the wave, at most concurrency update in same time
+     *
+     * @param executor
+     * @param wave
+     * @param processorState
+     * @param portState
+     * @return the id of the processors to wait, in the order of the wave
+     */
+    private List<String> updateState(ExecutorService executor, Set<?> wave, ProcessorDTO.StateEnum processorState, PortDTO.StateEnum portState) {
+        List<Callable<String>> updates = new ArrayList<>();
+        for (Object object : wave) {
+            if (object instanceof ProcessorEntity) {
+                ProcessorEntity processor = (ProcessorEntity) object;
+                updates.add(() -> processorService.updateState(processor, processorState) ? processor.getId() : null);
+            } else if (object instanceof PortEntity && (portState == PortDTO.StateEnum.STOPPED || isValid((PortEntity) object))) {
+                PortEntity port = (PortEntity) object;
+                updates.add(() -> {
+                    portService.setState(port, portState);
+                    return null;
+                });
+            }
+        }
+        List<String> processorsToWait = new ArrayList<>();
+        if (updates.isEmpty()) {
+            return processorsToWait;
+        }
+        try {
+            for (Future<String> future : executor.invokeAll(updates)) {
+                String processorId = future.get();
+                if (processorId != null) {
+                    processorsToWait.add(processorId);
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ConfigException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new ConfigException(e);
         }
+        return processorsToWait;
+    }
+
+    /**
+     * a port without connection can't be started, it's left to the start of the group
+     *
+     * @param port
+     * @return
+     */
+    private boolean isValid(PortEntity port) {
+        return port.getComponent() == null || port.getComponent().getValidationErrors() == null
+                || port.getComponent().getValidationErrors().isEmpty();
+    }
+
+    /**
+     * build the plan for start or stop the process group and all its children
+     *
+     * @param processGroupFlow
+     * @return
+     */
+    public ExecutionPlan getExecutionPlan(ProcessGroupFlowDTO processGroupFlow) {
+        return new ExecutionPlan(getFlowIndex(processGroupFlow));
     }
 
     /**
@@ -218,27 +460,21 @@ public class ProcessGroupService {
     public List<Set<?>> reorder(ProcessGroupFlowDTO processGroupFlow) {
         List<Set<?>> level = new ArrayList<>();
 
-        Set<ProcessGroupFlowDTO> allProcessGroupFlow = getAllProcessGroupFlow(processGroupFlow);
-        Set<ConnectionEntity> allConnections = allProcessGroupFlow.stream().flatMap(p->p.getFlow().getConnections().stream()).collect(Collectors.toSet());
-        Set<ProcessorEntity> allProcessors = allProcessGroupFlow.stream().flatMap(p->p.getFlow().getProcessors().stream()).collect(Collectors.toSet());
+        FlowIndex flowIndex = getFlowIndex(processGroupFlow);
 
         //get the first
-        Set<String> destination = new HashSet<>();
-        Set<String> source = new HashSet<>();
-        allProcessors.forEach( processor-> source.add(processor.getId()));
-        allConnections.forEach( connection -> {
-            destination.add(connection.getDestinationId());
-            source.add(connection.getSourceId());
-        });
+        Set<String> destination = new HashSet<>(flowIndex.getDestinationIds());
+        Set<String> source = new HashSet<>(flowIndex.getSourceIds());
+        flowIndex.getProcessors().forEach( processor-> source.add(processor.getId()));
 
         //get the first (the first have no destination)
         Set<String> first = new HashSet<>(source);
         first.removeAll(destination);
-        level.add(first.stream().map(id -> findById(allProcessGroupFlow,id)).filter(Optional::isPresent).map(Optional::get).collect(Collectors.toSet()));
+        level.add(first.stream().map(flowIndex::findById).filter(Optional::isPresent).map(Optional::get).collect(Collectors.toSet()));
 
         //get the other (the other have destination)
-        level.add(allConnections);
-        level.add(destination.stream().map(id -> findById(allProcessGroupFlow,id)).filter(Optional::isPresent).map(Optional::get).collect(Collectors.toSet()));
+        level.add(new HashSet<>(flowIndex.getConnections()));
+        level.add(destination.stream().map(flowIndex::findById).filter(Optional::isPresent).map(Optional::get).collect(Collectors.toSet()));
 
         if (level.isEmpty()) {
             level.add(new HashSet<ProcessorEntity>());
@@ -246,13 +482,50 @@ public class ProcessGroupService {
         return level;
     }
 
-    private Set<ProcessGroupFlowDTO> getAllProcessGroupFlow(ProcessGroupFlowDTO processGroupFlow) {
-        Set<ProcessGroupFlowDTO> result = new HashSet<>();
+    /**
+     * get the index of the components of the process group and all its children.
+     * The index is build only once while the snapshots of the flows don't change
+     *
+     * @param processGroupFlow
+     * @return
+     */
+    public FlowIndex getFlowIndex(ProcessGroupFlowDTO processGroupFlow) {
+        List<FlowDTO> flows = getAllProcessGroupFlow(processGroupFlow).stream()
+                .map(ProcessGroupFlowDTO::getFlow).collect(Collectors.toList());
+        Map.Entry<List<FlowDTO>, FlowIndex> cached = flowIndexCache.get(processGroupFlow.getId());
+        if (cached != null && isSameSnapshots(cached.getKey(), flows)) {
+            return cached.getValue();
+        }
+        FlowIndex flowIndex = new FlowIndex(flows);
+        if (processGroupFlow.getId() != null) {
+            flowIndexCache.put(processGroupFlow.getId(), new AbstractMap.SimpleImmutableEntry<>(flows, flowIndex));
+        }
+        return flowIndex;
+    }
+
+    private static boolean isSameSnapshots(List<FlowDTO> cached, List<FlowDTO> flows) {
+        if (cached.size() != flows.size()) {
+            return false;
+        }
+        for (int i = 0; i < cached.size(); i++) {
+            if (cached.get(i) != flows.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<ProcessGroupFlowDTO> getAllProcessGroupFlow(ProcessGroupFlowDTO processGroupFlow) {
+        List<ProcessGroupFlowDTO> result = new ArrayList<>();
+        addAllProcessGroupFlow(processGroupFlow, result);
+        return result;
+    }
+
+    private void addAllProcessGroupFlow(ProcessGroupFlowDTO processGroupFlow, List<ProcessGroupFlowDTO> result) {
         result.add(processGroupFlow);
         for (ProcessGroupEntity processGroup : processGroupFlow.getFlow().getProcessGroups()) {
-            result.add(flowapi.getFlow(processGroup.getId()).getProcessGroupFlow());
+            addAllProcessGroupFlow(getFlow(processGroup.getId()).getProcessGroupFlow(), result);
         }
-        return result;
     }
 
     /**
@@ -306,7 +579,8 @@ public class ProcessGroupService {
                 }
             }
             return processGroupToRemove == null;
-        }, interval, timeout);
+        }, backoff, timeout);
+        invalidateAllFlow();
     }
 
     /**
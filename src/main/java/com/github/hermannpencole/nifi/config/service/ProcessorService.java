@@ -1,6 +1,7 @@
 package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.utils.Backoff;
 import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.ProcessorsApi;
@@ -12,6 +13,11 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class that offer service for process group
@@ -30,13 +36,15 @@ public class ProcessorService {
     @Inject
     public Integer timeout;
 
-    @Named("interval")
     @Inject
-    public Integer interval;
+    public Backoff backoff;
 
     @Inject
     private ProcessorsApi processorsApi;
 
+    @Inject
+    private RevisionTracker revisionTracker;
+
     /**
      * the the state of processor
      *
@@ -44,32 +52,73 @@ public class ProcessorService {
      * @param state
      */
     public void setState(ProcessorEntity processor, ProcessorDTO.StateEnum state) {
-        //how obtain state of and don't have this bullshit trick
-        //trick for don't have error : xxxx cannot be started because it is not stopped. Current state is STOPPING
-        if (processor.getComponent().getState().equals(ProcessorDTO.StateEnum.DISABLED)) {
-            LOG.info(" {} ({}) is already disabled nifi-config make no update", processor.getComponent().getName() ,processor.getId());
+        if (!updateState(processor, state)) {
             return;
         }
-        boolean isReallyStopped = isReallyStopped(processor);
-        if ((state.equals(ProcessorDTO.StateEnum.STOPPED) && state.equals(processor.getComponent().getState()) && isReallyStopped)
-                || (state.equals(ProcessorDTO.StateEnum.RUNNING) && state.equals(processor.getComponent().getState()) ) ) {
-            LOG.info(" {} ({}) is already {}", processor.getComponent().getName() ,processor.getId(), processor.getComponent().getState());
-            return;
+        FunctionUtils.await(waitState(processor, state));
+    }
+
+    /**
+     * set the state of the processors, all the processors are asked before waiting
+     *
+     * @param processors
+     * @param state
+     */
+    public void setState(Collection<ProcessorEntity> processors, ProcessorDTO.StateEnum state) {
+        List<CompletableFuture<Void>> waits = new ArrayList<>();
+        for (ProcessorEntity processor : processors) {
+            if (updateState(processor, state)) {
+                waits.add(waitState(processor, state));
+            }
         }
+        FunctionUtils.await(waits);
+    }
 
-        if (state.equals(ProcessorDTO.StateEnum.STOPPED) && state.equals(processor.getComponent().getState()) && !isReallyStopped) {
-            //no update just waiting
-        } else {
+    /**
+     * wait that the processor is really in the state, without holding a thread between two check
+     *
+     * @param processor
+     * @param state
+     * @return
+     */
+    public CompletableFuture<Void> waitState(ProcessorEntity processor, ProcessorDTO.StateEnum state) {
+        return FunctionUtils.pollWhile(()-> {
+            LOG.info(" {} ({}) waiting for {}", processor.getComponent().getName() ,processor.getId(), state);
+            ProcessorEntity processorEntity= processorsApi.getProcessor(processor.getId());
+            boolean reallyStopped = isReallyStopped(processorEntity);
+            LOG.info(" {} ({}) is {} (have thread active : {}) ", processorEntity.getComponent().getName(), processorEntity.getId(), processorEntity.getComponent().getState(), !reallyStopped);
+            if ( (state.equals(ProcessorDTO.StateEnum.STOPPED) && state.equals(processorEntity.getComponent().getState()) && isReallyStopped(processorEntity))
+                || (state.equals(ProcessorDTO.StateEnum.RUNNING) && state.equals(processorEntity.getComponent().getState())) ) {
+                return false;
+            }
+            return true;
+        }, backoff, timeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * ask the state of processor without waiting that the processor is really in the state
+     *
+     * @param processor
+     * @param state
+     * @return false if the processor is already in the state (no need to wait)
+     */
+    public boolean updateState(ProcessorEntity processor, ProcessorDTO.StateEnum state) {
+        if (!needWait(processor, state)) {
+            return false;
+        }
+        if (needUpdate(processor, state)) {
             try {
                 ProcessorEntity body = new ProcessorEntity();
-                body.setRevision(processor.getRevision());
                 body.setComponent(new ProcessorDTO());
                 body.getComponent().setState(state);
                 body.getComponent().setId(processor.getId());
                 body.getComponent().setRestricted(null);
                 LOG.info(" {} ({}) update for {}", processor.getComponent().getName() ,processor.getId(), state);
-                ProcessorEntity processorEntity = processorsApi.updateProcessor(processor.getId(), body);
-                processor.setRevision(processorEntity.getRevision());
+                //the processor may belong to the snapshot of the flow : the new revision is kept by the tracker only
+                revisionTracker.write(processor.getId(), processor.getRevision(), revision -> {
+                    body.setRevision(revision);
+                    return processorsApi.updateProcessor(processor.getId(), body);
+                }, ProcessorEntity::getRevision, () -> processorsApi.getProcessor(processor.getId()).getRevision());
             } catch (ApiException e) {
                 if (e.getResponseBody() == null || !e.getResponseBody().endsWith("Current state is STOPPING")) {
                     logErrors(processor);
@@ -78,19 +127,40 @@ public class ProcessorService {
                 LOG.info(e.getResponseBody());
             }
         }
+        return true;
+    }
 
-        FunctionUtils.runWhile(()-> {
-            LOG.info(" {} ({}) waiting for {}", processor.getComponent().getName() ,processor.getId(), state);
-            ProcessorEntity processorEntity= processorsApi.getProcessor(processor.getId());
-            boolean reallyStopped = isReallyStopped(processorEntity);
-            LOG.info(" {} ({}) is {} (have thread active : {}) ", processorEntity.getComponent().getName(), processorEntity.getId(), processorEntity.getComponent().getState(), !reallyStopped);
-            if ( (state.equals(ProcessorDTO.StateEnum.STOPPED) && state.equals(processorEntity.getComponent().getState()) && isReallyStopped(processorEntity))
-                || (state.equals(ProcessorDTO.StateEnum.RUNNING) && state.equals(processorEntity.getComponent().getState())) ) {
-                return false;
-            }
-            return true;
-        }, interval, timeout);
+    /**
+     * is the processor not yet in the state (not disabled)
+     *
+     * @param processor
+     * @param state
+     * @return false if the processor is already in the state (no need to wait)
+     */
+    public boolean needWait(ProcessorEntity processor, ProcessorDTO.StateEnum state) {
+        //how obtain state of and don't have this bullshit trick
+        //trick for don't have error : xxxx cannot be started because it is not stopped. Current state is STOPPING
+        if (processor.getComponent().getState().equals(ProcessorDTO.StateEnum.DISABLED)) {
+            LOG.info(" {} ({}) is already disabled nifi-config make no update", processor.getComponent().getName() ,processor.getId());
+            return false;
+        }
+        if ((state.equals(ProcessorDTO.StateEnum.STOPPED) && state.equals(processor.getComponent().getState()) && isReallyStopped(processor))
+                || (state.equals(ProcessorDTO.StateEnum.RUNNING) && state.equals(processor.getComponent().getState()) ) ) {
+            LOG.info(" {} ({}) is already {}", processor.getComponent().getName() ,processor.getId(), processor.getComponent().getState());
+            return false;
+        }
+        return true;
+    }
 
+    /**
+     * must the state be asked to nifi (a processor stopped with thread active is only waited)
+     *
+     * @param processor
+     * @param state
+     * @return
+     */
+    public boolean needUpdate(ProcessorEntity processor, ProcessorDTO.StateEnum state) {
+        return !(state.equals(ProcessorDTO.StateEnum.STOPPED) && state.equals(processor.getComponent().getState()));
     }
 
     /**
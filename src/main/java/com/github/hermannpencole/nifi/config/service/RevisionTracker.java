@@ -0,0 +1,132 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.model.RevisionDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Revision of the components written during this run : the revision returned by a write is used by the next write
+ * on the same component, without reading the component before.
+ *
+ * When the revision is not the last one (the component was changed by nifi or by another client), the write is rejected
+ * with 400 'is not the most up-to-date revision' ; the revision is then read again and the write retried, at most
+ * MAX_RETRIES times.
+ */
+@Singleton
+public class RevisionTracker {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(RevisionTracker.class);
+
+    public static final int MAX_RETRIES = 3;
+
+    private final Map<String, RevisionDTO> revisions = new ConcurrentHashMap<>();
+
+    private final AtomicLong conflicts = new AtomicLong();
+
+    /**
+     * the most recent revision of the component between the revision known by the caller and the revision of the last write
+     *
+     * @param id
+     * @param known revision known by the caller, may be null
+     * @return a copy of the revision, null if no revision is known
+     */
+    public RevisionDTO getRevision(String id, RevisionDTO known) {
+        RevisionDTO tracked = revisions.get(id);
+        RevisionDTO revision = tracked == null || (known != null && version(known) > version(tracked)) ? known : tracked;
+        return revision == null ? null : copy(revision);
+    }
+
+    /**
+     * keep the revision of the component if it is more recent than the revision already kept
+     *
+     * @param id
+     * @param revision
+     */
+    public void setRevision(String id, RevisionDTO revision) {
+        if (revision == null) {
+            return;
+        }
+        revisions.merge(id, revision, (previous, next) -> version(next) >= version(previous) ? next : previous);
+    }
+
+    /**
+     * forget the revision of the component (removed)
+     *
+     * @param id
+     */
+    public void remove(String id) {
+        revisions.remove(id);
+    }
+
+    /**
+     * write the component with its most recent revision, keep the revision returned ;
+     * on conflict read the revision and retry
+     *
+     * @param id id of the component
+     * @param known revision known by the caller, may be null
+     * @param write the write with the revision to use (null when no revision is known)
+     * @param revisionOf the revision of the result of the write
+     * @param refresh read the revision of the component on nifi
+     * @param <T> result of the write
+     * @return the result of the write
+     */
+    public <T> T write(String id, RevisionDTO known, Function<RevisionDTO, T> write, Function<T, RevisionDTO> revisionOf, Supplier<RevisionDTO> refresh) {
+        RevisionDTO revision = getRevision(id, known);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                T result = write.apply(revision);
+                RevisionDTO written = result == null ? null : revisionOf.apply(result);
+                if (written != null) {
+                    revisions.put(id, written);
+                }
+                return result;
+            } catch (ApiException e) {
+                if (!isConflict(e) || attempt >= MAX_RETRIES) {
+                    throw e;
+                }
+                conflicts.incrementAndGet();
+                LOG.info("revision {} of {} is not the last one, retry with the revision of nifi", version(revision), id);
+                RevisionDTO fresh = refresh.get();
+                revisions.put(id, fresh);
+                revision = copy(fresh);
+            }
+        }
+    }
+
+    /**
+     * is the write rejected because the revision is not the last one : nifi answers 400 with this message, the 409 are
+     * errors of state (not stopped, not disabled ...) that a new revision does not solve
+     *
+     * @param e
+     * @return
+     */
+    public static boolean isConflict(ApiException e) {
+        return e.getCode() == 400 && e.getResponseBody() != null && e.getResponseBody().contains("is not the most up-to-date revision");
+    }
+
+    public long getConflicts() {
+        return conflicts.get();
+    }
+
+    private static long version(RevisionDTO revision) {
+        return revision.getVersion() == null ? -1 : revision.getVersion();
+    }
+
+    private static RevisionDTO copy(RevisionDTO revision) {
+        RevisionDTO copy = new RevisionDTO();
+        copy.setVersion(revision.getVersion());
+        copy.setClientId(revision.getClientId());
+        return copy;
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.GroupStatusEntity;
+import com.github.hermannpencole.nifi.config.model.StatusSnapshot;
+import com.github.hermannpencole.nifi.config.utils.Backoff;
+import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
+import com.github.hermannpencole.nifi.swagger.ApiClient;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
+import com.squareup.okhttp.Call;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Class that offer service for watching the status of all the components of a process group
+ * with one recursive status request by polling
+ */
+@Singleton
+public class StatusService {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(StatusService.class);
+
+    @Named("timeout")
+    @Inject
+    public Integer timeout;
+
+    @Inject
+    public Backoff backoff;
+
+    @Inject
+    private FlowApi flowapi;
+
+    /**
+     * get the status of all the components of the process group and its children
+     *
+     * @param processGroupId
+     * @return
+     * @throws ApiException
+     */
+    public StatusSnapshot getStatus(String processGroupId) throws ApiException {
+        GroupStatusEntity status = getGroupStatus(processGroupId);
+        return new StatusSnapshot(status == null || status.getProcessGroupStatus() == null ? null : status.getProcessGroupStatus().getAggregateSnapshot());
+    }
+
+    /**
+     * same call as flowapi.getProcessGroupStatus(id, true, false, null) but with our own model,
+     * the swagger model lose the snapshots of the children groups
+     *
+     * @param processGroupId
+     * @return
+     * @throws ApiException
+     */
+    private GroupStatusEntity getGroupStatus(String processGroupId) throws ApiException {
+        ApiClient apiClient = flowapi.getApiClient();
+        String path = "/flow/process-groups/" + apiClient.escapeString(processGroupId) + "/status";
+        Map<String, String> headerParams = new HashMap<>();
+        headerParams.put("Accept", apiClient.selectHeaderAccept(new String[]{"application/json"}));
+        headerParams.put("Content-Type", apiClient.selectHeaderContentType(new String[]{"*/*"}));
+        Call call = apiClient.buildCall(path, "GET", apiClient.parameterToPairs("", "recursive", true),
+                null, headerParams, new HashMap<>(), new String[]{"auth"}, null);
+        return apiClient.<GroupStatusEntity>execute(call, GroupStatusEntity.class).getData();
+    }
+
+    /**
+     * wait until the processors (or ports) are stopped and have no active thread
+     *
+     * @param processGroupId
+     * @param ids
+     */
+    public void waitStopped(String processGroupId, Collection<String> ids) {
+        waitFor(processGroupId, status -> status.getNotStopped(ids), "stopped");
+    }
+
+    /**
+     * wait until the processors (or ports) are running
+     *
+     * @param processGroupId
+     * @param ids
+     */
+    public void waitRunning(String processGroupId, Collection<String> ids) {
+        waitFor(processGroupId, status -> status.getNotRunning(ids), "running");
+    }
+
+    /**
+     * wait until the queues of the connections are empty
+     *
+     * @param processGroupId
+     * @param ids
+     */
+    public void waitEmptyQueues(String processGroupId, Collection<String> ids) {
+        waitFor(processGroupId, status -> status.getNotEmptyQueues(ids), "empty queue");
+    }
+
+    /**
+     * poll the status of the process group until there is no more component waited
+     *
+     * @param processGroupId
+     * @param waited give the components not yet in the expected state
+     * @param description
+     */
+    private void waitFor(String processGroupId, Function<StatusSnapshot, List<String>> waited, String description) {
+        FunctionUtils.runWhile(() -> {
+            List<String> notReady = waited.apply(getStatus(processGroupId));
+            if (!notReady.isEmpty()) {
+                LOG.info(" {} component(s) of ({}) waiting for {} : {}", notReady.size(), processGroupId, description, notReady);
+            }
+            return !notReady.isEmpty();
+        }, backoff, timeout);
+    }
+
+}
@@ -60,10 +60,6 @@ public class TemplateService {
     @Inject
     public Integer timeout;
 
-    @Named("interval")
-    @Inject
-    public Integer interval;
-
     /**
      * @param branch
      * @param fileConfiguration
@@ -87,6 +83,7 @@ public class TemplateService {
         instantiateTemplate.setOriginX(0d);
         instantiateTemplate.setOriginY(0d);
         processGroupsApi.instantiateTemplate(processGroupFlow.getId(), instantiateTemplate);
+        processGroupService.invalidateFlow(processGroupFlow.getId());
         if (!keepTemplate) {
             templatesApi.removeTemplate(template.get().getTemplate().getId());
         }
@@ -131,6 +128,7 @@ public class TemplateService {
                 }
             }
         }
+        controllerServicesService.clearCache();
 
         processGroupService.delete(processGroupFlow.get().getProcessGroupFlow().getId());
 
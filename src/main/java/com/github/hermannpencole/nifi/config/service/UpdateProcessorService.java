@@ -1,13 +1,11 @@
 package com.github.hermannpencole.nifi.config.service;
 
-import com.github.hermannpencole.nifi.config.model.ConfigException;
-import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.config.model.*;
+import com.github.hermannpencole.nifi.config.utils.ConfigDiff;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.ProcessorsApi;
 import com.github.hermannpencole.nifi.swagger.client.model.*;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,7 +16,6 @@ import java.net.URISyntaxException;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static com.github.hermannpencole.nifi.config.utils.FunctionUtils.findByComponentName;
 import static com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.CONTROLLERSERVICE;
 import static com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR;
 
@@ -50,6 +47,12 @@ public class UpdateProcessorService {
     @Inject
     private ProcessorsApi processorsApi;
 
+    @Inject
+    private ProcessorService processorService;
+
+    @Inject
+    private RevisionTracker revisionTracker;
+
     /**
      * @param branch
      * @param fileConfiguration
@@ -58,47 +61,71 @@ public class UpdateProcessorService {
      * @throws ApiException
      */
     public void updateByBranch(List<String> branch, String fileConfiguration, boolean optionNoStartProcessors) throws IOException, ApiException {
+        updateByBranch(branch, fileConfiguration, optionNoStartProcessors, false);
+    }
+
+    /**
+     * @param branch
+     * @param fileConfiguration
+     * @param optionNoStartProcessors
+     * @param optionDiff only the processors and controllers whose configuration differ from nifi are stopped, updated and restarted ;
+     *                   the branch is not stopped
+     * @throws IOException
+     * @throws ApiException
+     */
+    public void updateByBranch(List<String> branch, String fileConfiguration, boolean optionNoStartProcessors, boolean optionDiff) throws IOException, ApiException {
         File file = new File(fileConfiguration);
         if (!file.exists()) {
             throw new FileNotFoundException("File configuration " + file.getName() + " is empty or doesn't exist");
         }
 
         LOG.info("Processing : " + file.getName());
-        Gson gson = new GsonBuilder().serializeNulls().create();
+        //check the whole file before stopping the branch
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8")) {
+            GroupProcessorsReader.validate(reader);
+        }
 
         try (Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8")) {
-            GroupProcessorsEntity configuration = gson.fromJson(reader, GroupProcessorsEntity.class);
             ProcessGroupFlowEntity componentSearch = processGroupService.changeDirectory(branch)
                     .orElseThrow(() -> new ConfigException(("cannot find " + Arrays.toString(branch.toArray()))));
 
-            //Stop branch
-            processGroupService.stop(componentSearch);
-            LOG.info(Arrays.toString(branch.toArray()) + " is stopped");
+            if (!optionDiff) {
+                //Stop branch
+                processGroupService.stop(componentSearch);
+                LOG.info(Arrays.toString(branch.toArray()) + " is stopped");
 
-            //Stop connexion ??
+                //Stop connexion ??
 
-            //the state change, then the revision also in nifi 1.3.0 (only?) reload processGroup
-            componentSearch = flowapi.getFlow(componentSearch.getProcessGroupFlow().getId());
+                //the state change, then the revision also in nifi 1.3.0 (only?) reload processGroup
+                componentSearch = processGroupService.getFlow(componentSearch.getProcessGroupFlow().getId());
+            }
 
             //generate clientID
             String clientId = flowapi.generateClientId();
-            updateComponent(configuration, componentSearch, clientId);
+            //the processors are updated while reading (or kept in diff mode), the controllers and connections of the branch are applied at the end
+            GroupToUpdate root = new GroupToUpdate(componentSearch);
+            UpdateVisitor visitor = new UpdateVisitor(root, clientId, optionDiff);
+            new GroupProcessorsReader<>(visitor).read(reader, root);
 
             //controller
-            updateControllers(configuration, componentSearch.getProcessGroupFlow().getId(), clientId);
+            List<ControllerToUpdate> controllers = findControllers(root.controllerServices, componentSearch.getProcessGroupFlow().getId(), optionDiff);
+            if (optionDiff) {
+                updateMinimalScope(visitor.changes, controllers, clientId, !optionNoStartProcessors);
+                LOG.info("{} processors updated, {} processors unchanged", visitor.changes.size(), visitor.unchanged);
+            } else {
+                updateControllers(controllers, clientId, true);
+            }
 
-            //connexion
-            createRouteService.createRoutes(configuration.getConnectionPorts(), optionNoStartProcessors);
+            //connexion (only the missing ports and connections are created)
+            createRouteService.createRoutes(root.connections, optionNoStartProcessors);
 
-            if (!optionNoStartProcessors) {
+            if (!optionNoStartProcessors && !optionDiff) {
                 //Run all nifi processors
-                componentSearch = flowapi.getFlow(componentSearch.getProcessGroupFlow().getId());
+                componentSearch = processGroupService.getFlow(componentSearch.getProcessGroupFlow().getId());
                 processGroupService.start(componentSearch);
                 //setState(componentSearch, ProcessorDTO.StateEnum.RUNNING);
                 LOG.info(Arrays.toString(branch.toArray()) + " is running");
             }
-        } catch (InterruptedException e) {
-            LOG.error(e.getMessage(), e);
         } finally {
             LOG.debug("updateByBranch end");
         }
@@ -106,24 +133,175 @@ public class UpdateProcessorService {
 
 
     /**
+     * a group of the branch, found with the name of the configuration
+     */
+    private static class GroupToUpdate {
+
+        private final String id;
+
+        private final FlowNameIndex flowNameIndex;
+
+        private final List<ControllerServiceDTO> controllerServices = new ArrayList<>();
+
+        private final List<ConnectionPort> connections = new ArrayList<>();
+
+        GroupToUpdate(ProcessGroupFlowEntity processGroupFlow) {
+            this.id = processGroupFlow.getProcessGroupFlow().getId();
+            this.flowNameIndex = new FlowNameIndex(processGroupFlow.getProcessGroupFlow().getFlow());
+            if (!flowNameIndex.getProcessors().getDuplicates().isEmpty() || !flowNameIndex.getProcessGroups().getDuplicates().isEmpty()) {
+                LOG.warn("Duplicate names on process group ({}), the first is updated : processors {} process groups {}",
+                        id, flowNameIndex.getProcessors().getDuplicates(), flowNameIndex.getProcessGroups().getDuplicates());
+            }
+        }
+    }
+
+    /**
+     * update the processors while reading the configuration, keep the controllers and connections of the root of the branch
+     */
+    private class UpdateVisitor implements GroupProcessorsReader.Visitor<GroupToUpdate> {
+
+        private final GroupToUpdate root;
+
+        private final String clientId;
+
+        private final boolean diff;
+
+        /**
+         * in diff mode, the configuration of the processors changed by id
+         */
+        private final Map<String, ProcessorDTO> changes = new LinkedHashMap<>();
+
+        private int unchanged;
+
+        UpdateVisitor(GroupToUpdate root, String clientId, boolean diff) {
+            this.root = root;
+            this.clientId = clientId;
+            this.diff = diff;
+        }
+
+        @Override
+        public GroupToUpdate enterGroup(GroupToUpdate parent, String name) {
+            ProcessGroupEntity processorGroupToUpdate = parent.flowNameIndex.getProcessGroups().findFirst(name)
+                    .orElseThrow(() -> new ConfigException(("cannot find " + name)));
+            return new GroupToUpdate(processGroupService.getFlow(processorGroupToUpdate.getId()));
+        }
+
+        @Override
+        public void processor(GroupToUpdate group, ProcessorDTO processorOnConfig) {
+            ProcessorEntity processorToUpdate = findProcByComponentName(group.flowNameIndex.getProcessors(), processorOnConfig.getName());
+            if (!diff) {
+                updateProcessor(processorToUpdate, processorOnConfig, false, clientId);
+                return;
+            }
+            List<String> changes = ConfigDiff.diff(processorOnConfig, processorToUpdate.getComponent());
+            if (changes.isEmpty()) {
+                LOG.debug("Processor {} ({}) is unchanged", processorToUpdate.getComponent().getName(), processorToUpdate.getId());
+                unchanged++;
+                return;
+            }
+            LOG.info("Processor {} ({}) differ on {}", processorToUpdate.getComponent().getName(), processorToUpdate.getId(), changes);
+            this.changes.put(processorToUpdate.getId(), processorOnConfig);
+        }
+
+        @Override
+        public void controllerService(GroupToUpdate group, ControllerServiceDTO controllerService) {
+            //only the controllers of the branch are configured
+            if (group == root) {
+                root.controllerServices.add(controllerService);
+            }
+        }
+
+        @Override
+        public void connection(GroupToUpdate group, ConnectionPort connection) {
+            //only the connections of the branch are configured
+            if (group == root) {
+                root.connections.add(connection);
+            }
+        }
+    }
+
+    /**
+     * stop only the processors changed and the processors that use a controller changed (directly or by
+     * a controller that reference it), update them, then restart the processors that was running ;
+     * the rest of the branch keep running
      *
-     * @param configuration
+     * @param changes configuration of the processors changed by id
+     * @param controllers controllers changed
+     * @param clientId
+     * @param start restart the processors that was running before the stop, a processor stopped stays stopped
+     * @throws ApiException
+     */
+    private void updateMinimalScope(Map<String, ProcessorDTO> changes, List<ControllerToUpdate> controllers, String clientId, boolean start) throws ApiException {
+        Set<String> scope = new LinkedHashSet<>(changes.keySet());
+        for (ControllerToUpdate controller : controllers) {
+            scope.addAll(controllerServicesService.getReferencingProcessors(controller.controllerService.getId()));
+            for (ControllerServiceEntity oldControllerService : controller.oldControllersService) {
+                scope.addAll(controllerServicesService.getReferencingProcessors(oldControllerService.getId()));
+            }
+        }
+        if (scope.isEmpty()) {
+            LOG.info("Nothing to update");
+            return;
+        }
+        List<ProcessorEntity> processors = scope.stream().map(processorService::getById).collect(Collectors.toList());
+        Set<String> restart = processors.stream()
+                .filter(processor -> ProcessorDTO.StateEnum.RUNNING.equals(processor.getComponent().getState()))
+                .map(ProcessorEntity::getId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        LOG.info("Stop {} processors : {} changed, {} using a controller changed", scope.size(), changes.size(), scope.size() - changes.size());
+        processorService.setState(processors, ProcessorDTO.StateEnum.STOPPED);
+
+        for (Map.Entry<String, ProcessorDTO> change : changes.entrySet()) {
+            updateProcessor(processorService.getById(change.getKey()), change.getValue(), false, clientId);
+        }
+        updateControllers(controllers, clientId, false);
+
+        if (start) {
+            processorService.setState(restart.stream().map(processorService::getById).collect(Collectors.toList()), ProcessorDTO.StateEnum.RUNNING);
+            LOG.info("Restart {} processors", restart.size());
+        }
+    }
+
+    /**
+     * a controller of the configuration, with the controllers of same name on the group to replace
+     */
+    static class ControllerToUpdate {
+
+        final ControllerServiceDTO configuration;
+
+        final ControllerServiceEntity controllerService;
+
+        final Collection<ControllerServiceEntity> oldControllersService;
+
+        ControllerToUpdate(ControllerServiceDTO configuration, ControllerServiceEntity controllerService, Collection<ControllerServiceEntity> oldControllersService) {
+            this.configuration = configuration;
+            this.controllerService = controllerService;
+            this.oldControllersService = oldControllersService;
+        }
+    }
+
+    /**
+     * find the controllers of the configuration
+     *
+     * @param controllerServices
      * @param idComponent
+     * @param diff skip the controllers whose configuration is the same on nifi
+     * @return
      * @throws ApiException
      */
-    private void updateControllers(GroupProcessorsEntity configuration, String idComponent, String clientId) throws ApiException, InterruptedException {
+    List<ControllerToUpdate> findControllers(List<ControllerServiceDTO> controllerServices, String idComponent, boolean diff) throws ApiException {
         ControllerServicesEntity controllerServicesEntity = flowapi.getControllerServicesFromGroup(idComponent);
         //must we use flowapi.getControllerServicesFromController() ??
         /*ControllerServicesEntity controllerServiceController = flowapi.getControllerServicesFromController();
         for (ControllerServiceEntity controllerServiceEntity: controllerServiceController.getControllerServices()) {
             controllerServicesEntity.addControllerServicesItem(controllerServiceEntity);
         }*/
-        List<ControllerServiceEntity> controllerUpdated = new ArrayList<>();
-        List<ControllerServiceEntity> controllerDeleted = new ArrayList<>();
+        List<ControllerToUpdate> result = new ArrayList<>();
+        NameIndex<ControllerServiceEntity> controllerServicesByName = controllerServices.isEmpty() ? null
+                : new NameIndex<>(controllerServicesEntity.getControllerServices(), item -> item.getComponent().getName());
 
-
-        for (ControllerServiceDTO controllerServiceDTO : configuration.getControllerServicesDTO()) {
-            List<ControllerServiceEntity> all = controllerServicesEntity.getControllerServices().stream().filter(item -> item.getComponent().getName().trim().equals(controllerServiceDTO.getName().trim())).collect(Collectors.toList());
+        for (ControllerServiceDTO controllerServiceDTO : controllerServices) {
+            List<ControllerServiceEntity> all = controllerServicesByName.findAll(controllerServiceDTO.getName());
 
             ControllerServiceEntity controllerServiceEntityFind = null;
             Map<String, ControllerServiceEntity> oldControllersService = new HashMap<>();
@@ -145,32 +323,66 @@ public class UpdateProcessorService {
             } else {
                 throw new ConfigException("Cannot find controller " + controllerServiceDTO.getName());
             }
+            if (diff && oldControllersService.isEmpty() && ConfigDiff.diff(controllerServiceDTO, controllerServiceEntityFind.getComponent()).isEmpty()) {
+                LOG.info("Controller {} ({}) is unchanged", controllerServiceDTO.getName(), controllerServiceEntityFind.getId());
+                continue;
+            }
+            result.add(new ControllerToUpdate(controllerServiceDTO, controllerServiceEntityFind, oldControllersService.values()));
+        }
+        return result;
+    }
+
+    /**
+     * update the controllers, one update of controllers at a time : the controllers may be shared by the branches
+     * of a manifest updated concurrently
+     *
+     * @param controllers
+     * @param clientId
+     * @param manageProcessors stop and restart the processors that reference the controllers, false when the caller stop them
+     * @throws ApiException
+     */
+    private synchronized void updateControllers(List<ControllerToUpdate> controllers, String clientId, boolean manageProcessors) throws ApiException {
+        //the controllers are read once by step of the update, and not kept after (a failed update is cleared by the next one)
+        controllerServicesService.clearCache();
+        List<ControllerServiceEntity> controllerUpdated = new ArrayList<>();
+        List<ControllerServiceEntity> controllerDeleted = new ArrayList<>();
+        List<ControllerToUpdate> controllerConfigured = new ArrayList<>();
+        for (ControllerToUpdate controller : controllers) {
+            ControllerServiceEntity controllerServiceEntityFind = controller.controllerService;
             //remove old
-            stopOldReference(oldControllersService.values());
+            stopOldReference(controller.oldControllersService);
             //update new reference for ReferencingComponents on oldControllersService
-            updateOldReference(oldControllersService.values(), controllerServiceEntityFind.getId(), clientId);
-            controllerDeleted.addAll(oldControllersService.values());
+            updateOldReference(controller.oldControllersService, controllerServiceEntityFind.getId(), clientId);
+            controllerDeleted.addAll(controller.oldControllersService);
             controllerUpdated.add(controllerServiceEntityFind);
-            if (controllerServiceDTO.getProperties() != null && !controllerServiceDTO.getProperties().isEmpty()) {
-                //stopping referencing processors and reporting tasks
-                controllerServicesService.setStateReferenceProcessors(controllerServiceEntityFind, UpdateControllerServiceReferenceRequestEntity.StateEnum.STOPPED);
+            if (controller.configuration.getProperties() != null && !controller.configuration.getProperties().isEmpty()) {
+                if (manageProcessors) {
+                    //stopping referencing processors and reporting tasks
+                    controllerServicesService.setStateReferenceProcessors(controllerServiceEntityFind, UpdateControllerServiceReferenceRequestEntity.StateEnum.STOPPED);
+                }
 
                 //Disabling referencing controller services
                 controllerServicesService.setStateReferencingControllerServices(controllerServiceEntityFind.getId(), UpdateControllerServiceReferenceRequestEntity.StateEnum.DISABLED);
+                controllerConfigured.add(controller);
+            }
+        }
 
-                //Disabling this controller service
-                ControllerServiceEntity controllerServiceEntityUpdate = controllerServicesService.setStateControllerService(controllerServiceEntityFind, ControllerServiceDTO.StateEnum.DISABLED);
-                controllerServiceEntityUpdate = controllerServicesService.updateControllerService(controllerServiceDTO, controllerServiceEntityUpdate, false);
+        if (!controllerConfigured.isEmpty()) {
+            //Disabling the controller services, in the order of their dependencies
+            Map<String, ControllerServiceEntity> controllerDisabled = controllerServicesService.setStateControllerServices(
+                    controllerConfigured.stream().map(controller -> controller.controllerService).collect(Collectors.toList()), ControllerServiceDTO.StateEnum.DISABLED);
+            for (ControllerToUpdate controller : controllerConfigured) {
+                ControllerServiceEntity controllerServiceEntityUpdate = controllerDisabled.getOrDefault(controller.controllerService.getId(), controller.controllerService);
+                controllerServicesService.updateControllerService(controller.configuration, controllerServiceEntityUpdate, false);
             }
         }
 
         //remove old
         removeOldReference(controllerDeleted);
 
-        // start enabling service
-        for (ControllerServiceEntity controllerServiceEntity : controllerUpdated) {
-            //Enabling this controller service
-            controllerServicesService.setStateControllerService(controllerServiceEntity, ControllerServiceDTO.StateEnum.ENABLED);
+        // start enabling service, the controllers used first
+        if (!controllerUpdated.isEmpty()) {
+            controllerServicesService.setStateControllerServices(controllerUpdated, ControllerServiceDTO.StateEnum.ENABLED);
         }
         //enabling ref controller service in separate way because ref conroller is may be not configured
         for (ControllerServiceEntity controllerServiceEntity : controllerUpdated) {
@@ -178,11 +390,17 @@ public class UpdateProcessorService {
             controllerServicesService.setStateReferencingControllerServices(controllerServiceEntity.getId(), UpdateControllerServiceReferenceRequestEntity.StateEnum.ENABLED);
         }
         //start ref processor in separate way because the processor can have multiple controller
-        for (ControllerServiceEntity controllerServiceEntity : controllerUpdated) {
+        for (ControllerServiceEntity controllerServiceEntity : manageProcessors ? controllerUpdated : Collections.<ControllerServiceEntity>emptyList()) {
             //Starting referencing processors and reporting tasks
             controllerServicesService.setStateReferenceProcessors(controllerServiceEntity, UpdateControllerServiceReferenceRequestEntity.StateEnum.RUNNING);
         }
 
+        //the referencing processors have a new revision
+        if (!controllerUpdated.isEmpty()) {
+            processGroupService.invalidateAllFlow();
+        }
+        controllerServicesService.clearCache();
+
         //must we start all controller referencing on the group ?
        // for (ControllerServiceEntity controllerServiceEntity :  controllerServicesEntity.getControllerServices()) {
             //Enabling this controller service
@@ -259,23 +477,6 @@ public class UpdateProcessorService {
         return newProperties;
     }
 
-    /**
-     * @param configuration
-     * @param componentSearch
-     * @param clientId
-     * @throws ApiException
-     */
-    private void updateComponent(GroupProcessorsEntity configuration, ProcessGroupFlowEntity componentSearch, String clientId) throws ApiException {
-        FlowDTO flow = componentSearch.getProcessGroupFlow().getFlow();
-        configuration.getProcessors().forEach(processorOnConfig -> updateProcessor(
-                findProcByComponentName(flow.getProcessors(), processorOnConfig.getName()), processorOnConfig, false, clientId));
-        for (GroupProcessorsEntity procGroupInConf : configuration.getGroupProcessorsEntity()) {
-            ProcessGroupEntity processorGroupToUpdate = findByComponentName(flow.getProcessGroups(), procGroupInConf.getName())
-                    .orElseThrow(() -> new ConfigException(("cannot find " + procGroupInConf.getName())));
-            updateComponent(procGroupInConf, flowapi.getFlow(processorGroupToUpdate.getId()), clientId);
-        }
-    }
-
     /**
      * update processor configuration with valueToPutInProc
      * at first find id of each processor and in second way update it
@@ -286,6 +487,7 @@ public class UpdateProcessorService {
      */
     private void updateProcessor(ProcessorEntity processorToUpdate, ProcessorDTO componentToPutInProc, boolean forceByController, String clientId) {
         try {
+            String parentGroupId = processorToUpdate.getComponent().getParentGroupId();
             componentToPutInProc.setId(processorToUpdate.getId());
             LOG.info("Update config processor {} ({}) ", processorToUpdate.getComponent().getName(), processorToUpdate.getId());
             //update on nifi
@@ -313,13 +515,22 @@ public class UpdateProcessorService {
                     }
                 }
             }
-            processorToUpdate.setComponent(componentToPutInProc);
-            processorToUpdate.getRevision().setClientId(clientId);
-
-            processorsApi.updateProcessor(processorToUpdate.getId(), processorToUpdate);
+            //the processor to update belongs to the snapshot of the flow, the write is done on a copy
+            ProcessorEntity body = new ProcessorEntity();
+            body.setId(processorToUpdate.getId());
+            body.setComponent(componentToPutInProc);
+
+            revisionTracker.write(processorToUpdate.getId(), processorToUpdate.getRevision(), revision -> {
+                if (revision != null) {
+                    revision.setClientId(clientId);
+                }
+                body.setRevision(revision);
+                return processorsApi.updateProcessor(processorToUpdate.getId(), body);
+            }, ProcessorEntity::getRevision, () -> processorsApi.getProcessor(processorToUpdate.getId()).getRevision());
+            processGroupService.invalidateFlow(parentGroupId);
 
             //nifiService.updateProcessorProperties(toUpdate, componentToPutInProc.getString("id"));
-            LOG.info("Processor {} ({}) have config updated ", processorToUpdate.getComponent().getName(), processorToUpdate.getId());
+            LOG.info("Processor {} ({}) have config updated ", componentToPutInProc.getName(), processorToUpdate.getId());
         } catch (ApiException e) {
             throw new ConfigException(e.getMessage() + ": " + e.getResponseBody(), e);
         }
@@ -327,9 +538,14 @@ public class UpdateProcessorService {
 
     //can static => utils
     public static ProcessorEntity findProcByComponentName(List<ProcessorEntity> listGroup, String name) {
+        String trimmedName = name.trim();
         return listGroup.stream()
-                .filter(item -> item.getComponent().getName().trim().equals(name.trim()))
+                .filter(item -> item.getComponent().getName().trim().equals(trimmedName))
                 .findFirst().orElseThrow(() -> new ConfigException(("cannot find " + name)));
     }
 
+    public static ProcessorEntity findProcByComponentName(NameIndex<ProcessorEntity> processorsByName, String name) {
+        return processorsByName.findFirst(name).orElseThrow(() -> new ConfigException(("cannot find " + name)));
+    }
+
 }
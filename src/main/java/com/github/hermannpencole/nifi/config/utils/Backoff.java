@@ -0,0 +1,89 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delay between two evaluations of a polling, in millisecond.
+ *
+ * The first evaluation is retried after initialDelay, then the delay double at each attempt up to maxDelay ;
+ * a random part (jitter) is removed from each delay so that many pollings started together don't call nifi
+ * at the same time.
+ */
+public class Backoff {
+
+    public static final long DEFAULT_INITIAL_DELAY = 50;
+
+    public static final long DEFAULT_MAX_DELAY = 2000;
+
+    private static final double DEFAULT_JITTER = 0.2d;
+
+    private final long initialDelay;
+
+    private final long maxDelay;
+
+    private final double jitter;
+
+    /**
+     * backoff by default : 50 ms up to 2 seconds
+     */
+    public Backoff() {
+        this(DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    public Backoff(long initialDelay, long maxDelay) {
+        this(initialDelay, maxDelay, DEFAULT_JITTER);
+    }
+
+    private Backoff(long initialDelay, long maxDelay, double jitter) {
+        //a delay of 0 would call nifi in a loop without pause
+        if (initialDelay <= 0 || maxDelay < initialDelay) {
+            throw new ConfigException("The polling delays must verify 0 < initial delay (" + initialDelay + " ms) <= max delay (" + maxDelay + " ms)");
+        }
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.jitter = jitter;
+    }
+
+    /**
+     * same delay for all the attempts, without jitter
+     *
+     * @param delay in millisecond
+     * @return
+     */
+    public static Backoff fixed(long delay) {
+        return new Backoff(delay, delay, 0d);
+    }
+
+    /**
+     * delay before the next evaluation
+     *
+     * @param attempt number of evaluations already done minus one (0 for the delay after the first evaluation)
+     * @return delay in millisecond, between (1 - jitter) * delay and delay
+     */
+    public long getDelay(int attempt) {
+        long delay = initialDelay;
+        for (int i = 0; i < attempt && delay < maxDelay; i++) {
+            delay = delay * 2;
+        }
+        delay = Math.min(delay, maxDelay);
+        if (jitter > 0 && delay > 0) {
+            delay = delay - (long) (delay * jitter * ThreadLocalRandom.current().nextDouble());
+        }
+        return delay;
+    }
+
+    public long getInitialDelay() {
+        return initialDelay;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    @Override
+    public String toString() {
+        return initialDelay == maxDelay ? maxDelay + " ms" : initialDelay + " ms up to " + maxDelay + " ms";
+    }
+}
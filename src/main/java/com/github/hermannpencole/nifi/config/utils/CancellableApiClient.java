@@ -0,0 +1,20 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.github.hermannpencole.nifi.swagger.ApiClient;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.ApiResponse;
+import com.squareup.okhttp.Call;
+
+import java.lang.reflect.Type;
+
+/**
+ * Client of nifi whose http call in progress is cancelled when the polling that made it is cancelled or reach its
+ * timeout : an interrupt does not stop a blocking read of okhttp, the cancel of the call close its socket.
+ */
+public class CancellableApiClient extends ApiClient {
+
+    @Override
+    public <T> ApiResponse<T> execute(Call call, Type returnType) throws ApiException {
+        return FunctionUtils.cancellable(call::cancel, () -> super.execute(call, returnType));
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorConfigDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.PropertyDescriptorDTO;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compare the configuration of a component with the component on nifi.
+ *
+ * Only the fields present in the configuration are compared : nifi keep the value of a field absent on update.
+ * The value of a sensitive property is hidden by nifi, so a sensitive property of the configuration is always a change.
+ */
+public final class ConfigDiff {
+
+    private ConfigDiff() { }
+
+    /**
+     * the fields of the configuration of the processor that differ from the processor on nifi.
+     * The properties that identify a controller service are ignored, they are not updated by the configuration
+     *
+     * @param configuration
+     * @param processor the processor on nifi
+     * @return the name of the fields that differ, empty if the processor is up to date
+     */
+    public static List<String> diff(ProcessorDTO configuration, ProcessorDTO processor) {
+        ProcessorConfigDTO expected = configuration.getConfig();
+        ProcessorConfigDTO actual = processor.getConfig();
+        if (expected == null) {
+            return Collections.emptyList();
+        }
+        List<String> changes = new ArrayList<>();
+        diffProperties(expected.getProperties(), actual.getProperties(), actual.getDescriptors(), true, changes);
+        diffField("schedulingPeriod", expected.getSchedulingPeriod(), actual.getSchedulingPeriod(), changes);
+        diffField("schedulingStrategy", expected.getSchedulingStrategy(), actual.getSchedulingStrategy(), changes);
+        diffField("executionNode", expected.getExecutionNode(), actual.getExecutionNode(), changes);
+        diffField("penaltyDuration", expected.getPenaltyDuration(), actual.getPenaltyDuration(), changes);
+        diffField("yieldDuration", expected.getYieldDuration(), actual.getYieldDuration(), changes);
+        diffField("bulletinLevel", expected.getBulletinLevel(), actual.getBulletinLevel(), changes);
+        diffField("runDurationMillis", expected.getRunDurationMillis(), actual.getRunDurationMillis(), changes);
+        diffField("concurrentlySchedulableTaskCount", expected.getConcurrentlySchedulableTaskCount(), actual.getConcurrentlySchedulableTaskCount(), changes);
+        diffField("comments", expected.getComments(), actual.getComments(), changes);
+        diffField("lossTolerant", expected.getLossTolerant(), actual.getLossTolerant(), changes);
+        diffField("annotationData", expected.getAnnotationData(), actual.getAnnotationData(), changes);
+        return changes;
+    }
+
+    /**
+     * the fields of the configuration of the controller service that differ from the controller service on nifi
+     *
+     * @param configuration
+     * @param controllerService the controller service on nifi
+     * @return the name of the fields that differ, empty if the controller service is up to date
+     */
+    public static List<String> diff(ControllerServiceDTO configuration, ControllerServiceDTO controllerService) {
+        List<String> changes = new ArrayList<>();
+        diffProperties(configuration.getProperties(), controllerService.getProperties(), controllerService.getDescriptors(), false, changes);
+        diffField("comments", configuration.getComments(), controllerService.getComments(), changes);
+        diffField("annotationData", configuration.getAnnotationData(), controllerService.getAnnotationData(), changes);
+        return changes;
+    }
+
+    private static void diffProperties(Map<String, String> expected, Map<String, String> actual, Map<String, PropertyDescriptorDTO> descriptors,
+                                       boolean ignoreControllerService, List<String> changes) {
+        if (expected == null) {
+            return;
+        }
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            PropertyDescriptorDTO descriptor = descriptors == null ? null : descriptors.get(entry.getKey());
+            if (descriptor != null && ignoreControllerService && descriptor.getIdentifiesControllerService() != null) {
+                continue;
+            }
+            boolean sensitive = descriptor != null && Boolean.TRUE.equals(descriptor.getSensitive()) && entry.getValue() != null;
+            if (sensitive || actual == null || !Objects.equals(entry.getValue(), actual.get(entry.getKey()))) {
+                changes.add("properties." + entry.getKey());
+            }
+        }
+    }
+
+    private static void diffField(String name, Object expected, Object actual, List<String> changes) {
+        if (expected != null && !expected.equals(actual)) {
+            changes.add(name);
+        }
+    }
+}
@@ -6,13 +6,14 @@ import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public final class FunctionUtils {
     /**
@@ -20,54 +21,274 @@ public final class FunctionUtils {
      */
     private final static Logger LOG = LoggerFactory.getLogger(FunctionUtils.class);
 
+    /**
+     * shared scheduler for all the polling : only plan the next evaluation
+     */
+    private final static ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("nifi-config-scheduler-"));
+
+    /**
+     * the evaluations are done on reused thread, a thread is held only while a condition is evaluated
+     */
+    private final static ExecutorService WORKERS = Executors.newCachedThreadPool(daemonThreadFactory("nifi-config-poller-"));
+
+    /**
+     * the polling whose function is evaluated by the thread
+     */
+    private final static ThreadLocal<Poll> EVALUATING = new ThreadLocal<>();
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
     private FunctionUtils() { }
 
-    public static void runTimeout(Runnable function, int timeout) {
-        java.util.concurrent.ExecutorService executor = Executors.newSingleThreadExecutor();
-        final Future future = executor.submit(function);
+    /**
+     * evaluate the function every interval until it return false, on the shared scheduler.
+     * The future fail with TimeoutException after timeout (negative value for no timeout) ; cancel the future
+     * or reach the timeout cancel the http call in progress of the evaluation (see cancellable)
+     *
+     * @param function return true while the condition is not reached
+     * @param interval
+     * @param timeout
+     * @param unit unit of interval and timeout
+     * @return
+     */
+    public static CompletableFuture<Void> pollWhile(Supplier<Boolean> function, long interval, long timeout, TimeUnit unit) {
+        return pollWhile(function, Backoff.fixed(unit.toMillis(interval)), timeout, unit);
+    }
+
+    /**
+     * evaluate the function until it return false, with a delay between the evaluations given by the backoff
+     *
+     * @param function return true while the condition is not reached
+     * @param backoff
+     * @param timeout
+     * @param unit unit of timeout
+     * @return
+     */
+    public static CompletableFuture<Void> pollWhile(Supplier<Boolean> function, Backoff backoff, long timeout, TimeUnit unit) {
+        Poll poll = new Poll(function, backoff);
+        WORKERS.execute(poll);
+        if (timeout >= 0) {
+            ScheduledFuture<?> timer = SCHEDULER.schedule(() -> {
+                poll.completeExceptionally(new TimeoutException("timeout after " + timeout + " " + unit.toString().toLowerCase()));
+            }, timeout, unit);
+            poll.whenComplete((result, e) -> timer.cancel(false));
+        }
+        return poll;
+    }
+
+    /**
+     * wait the end of all the futures
+     *
+     * @param futures
+     */
+    public static void await(Collection<? extends CompletableFuture<?>> futures) {
+        await(CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])));
+    }
+
+    /**
+     * wait the end of the future and throw the exception of the function (ConfigException or TimeoutException)
+     *
+     * @param future
+     */
+    public static void await(CompletableFuture<?> future) {
         try {
-            if (timeout < 0 ) {
-                future.get();
-            } else {
-                future.get(timeout, TimeUnit.SECONDS);
-            }
+            future.get();
         } catch (ExecutionException e) {
-            LOG.debug(e.getMessage(),e);
+            LOG.debug(e.getMessage(), e);
+            throw toConfigException(e.getCause());
+        } catch (CancellationException e) {
+            throw new ConfigException(e);
+        } catch (InterruptedException e) {
             future.cancel(true);
-            if (e.getCause() instanceof ConfigException) {
-                throw (ConfigException)e.getCause();
+            throw new ConfigException(e);
+        }
+    }
+
+    /**
+     * run the functions in parallel, at most concurrency in same time, and wait the end of all of them ;
+     * the first exception of a function is thrown as is
+     *
+     * @param functions
+     * @param concurrency maximum number of functions run in same time
+     * @param <T>
+     * @return the results, in the order of the functions
+     */
+    public static <T> List<T> runAll(Collection<Supplier<T>> functions, int concurrency) {
+        if (functions.size() == 1 || concurrency <= 1) {
+            return functions.stream().map(Supplier::get).collect(Collectors.toList());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, functions.size()));
+        try {
+            return runAll(functions, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> List<T> runAll(Collection<Supplier<T>> functions, ExecutorService executor) {
+        List<CompletableFuture<T>> futures = functions.stream()
+                .map(function -> CompletableFuture.supplyAsync(function, executor))
+                .collect(Collectors.toList());
+        List<T> results = new ArrayList<>();
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
             throw new ConfigException(e.getCause());
         } catch (InterruptedException e) {
-            future.cancel(true);
+            futures.forEach(future -> future.cancel(true));
             throw new ConfigException(e);
-        } catch (java.util.concurrent.TimeoutException e) {
-            future.cancel(true);
-            throw new TimeoutException(e);
+        }
+        return results;
+    }
+
+    /**
+     * run the call, cancelled by the cancel of the polling evaluated by this thread (or by its timeout) ;
+     * out of a polling the call is only run
+     *
+     * @param cancel cancel the call in progress, from another thread
+     * @param call
+     * @param <T>
+     * @return the result of the call
+     */
+    public static <T> T cancellable(Runnable cancel, Supplier<T> call) {
+        Poll poll = EVALUATING.get();
+        if (poll == null) {
+            return call.get();
+        }
+        poll.setCancelCall(cancel);
+        try {
+            return call.get();
         } finally {
-            executor.shutdownNow();
+            poll.setCancelCall(null);
         }
+    }
 
+    private static RuntimeException toConfigException(Throwable cause) {
+        if (cause instanceof ConfigException || cause instanceof TimeoutException) {
+            return (RuntimeException) cause;
+        }
+        return new ConfigException(cause);
     }
 
-    public static void runWhile(Supplier<Boolean> function, int interval) {
-       while (function.get()) {
-           try {
-               //interval are in second
-               Thread.sleep(interval * 1000);
-           } catch (InterruptedException e) {
-               throw new ConfigException(e);
-           }
-       }
+    /**
+     * one polling : reschedule itself with the shared scheduler until the function return false
+     */
+    private static class Poll extends CompletableFuture<Void> implements Runnable {
+
+        private final Supplier<Boolean> function;
+
+        private final Backoff backoff;
+
+        private int attempt;
+
+        private Runnable cancelCall;
+
+        private ScheduledFuture<?> next;
+
+        Poll(Supplier<Boolean> function, Backoff backoff) {
+            this.function = function;
+            this.backoff = backoff;
+        }
+
+        @Override
+        public void run() {
+            if (isDone()) {
+                return;
+            }
+            EVALUATING.set(this);
+            try {
+                if (!function.get()) {
+                    complete(null);
+                } else {
+                    synchronized (this) {
+                        if (!isDone()) {
+                            next = SCHEDULER.schedule(() -> WORKERS.execute(this), backoff.getDelay(attempt++), TimeUnit.MILLISECONDS);
+                        }
+                    }
+                }
+            } catch (Throwable e) {
+                completeExceptionally(e);
+            } finally {
+                EVALUATING.remove();
+            }
+        }
+
+        /**
+         * the cancel of the http call in progress, the call is cancelled at once when the polling is already stopped
+         */
+        private void setCancelCall(Runnable cancel) {
+            synchronized (this) {
+                if (cancel == null || !isDone()) {
+                    cancelCall = cancel;
+                    return;
+                }
+            }
+            cancel.run();
+        }
+
+        @Override
+        public boolean completeExceptionally(Throwable ex) {
+            boolean completed = super.completeExceptionally(ex);
+            stop();
+            return completed;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            stop();
+            return cancelled;
+        }
+
+        private synchronized void stop() {
+            if (next != null) {
+                next.cancel(false);
+            }
+            if (cancelCall != null) {
+                cancelCall.run();
+            }
+        }
     }
 
+    /**
+     * evaluate the function every interval (in second) until it return false, without holding a thread while waiting
+     *
+     * @param function return true while the condition is not reached
+     * @param interval in second
+     * @param timeout in second, negative value indicates no timeout
+     */
     public static void runWhile(Supplier<Boolean> function, int interval, int timeout) {
-        runTimeout(() -> runWhile(function, interval ), timeout);
+        await(pollWhile(function, interval, timeout, TimeUnit.SECONDS));
+    }
+
+    /**
+     * evaluate the function until it return false, with a delay between the evaluations given by the backoff
+     *
+     * @param function return true while the condition is not reached
+     * @param backoff
+     * @param timeout in second, negative value indicates no timeout
+     */
+    public static void runWhile(Supplier<Boolean> function, Backoff backoff, int timeout) {
+        await(pollWhile(function, backoff, timeout, TimeUnit.SECONDS));
     }
 
     public static Optional<ProcessGroupEntity> findByComponentName(List<ProcessGroupEntity> listGroup, String name) {
+        String trimmedName = name.trim();
         return listGroup.stream()
-                .filter(item -> item.getComponent() != null && item.getComponent().getName().trim().equals(name.trim()))
+                .filter(item -> item.getComponent() != null && item.getComponent().getName().trim().equals(trimmedName))
                 .findFirst();
     }
 }
@@ -0,0 +1,79 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Duration of the phases of the startup, from the start of the jvm to the first call on nifi, in millisecond.
+ *
+ * The phase jvm is the loading of the jvm and of the classes up to the main method.
+ */
+public class StartupTimer {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(StartupTimer.class);
+
+    private final long jvmStart;
+
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    /**
+     * the timer of the jvm in progress, started in the main method
+     */
+    public StartupTimer() {
+        this(ManagementFactory.getRuntimeMXBean().getStartTime());
+        phases.put("jvm", System.currentTimeMillis() - jvmStart);
+    }
+
+    private StartupTimer(long jvmStart) {
+        this.jvmStart = jvmStart;
+    }
+
+    /**
+     * the same phases, for another cluster started by the same jvm
+     *
+     * @return
+     */
+    public StartupTimer copy() {
+        StartupTimer copy = new StartupTimer(jvmStart);
+        copy.phases.putAll(phases);
+        return copy;
+    }
+
+    /**
+     * the phase is ended
+     *
+     * @param phase
+     * @param start the time of the beginning of the phase, in millisecond
+     */
+    public void record(String phase, long start) {
+        phases.put(phase, System.currentTimeMillis() - start);
+    }
+
+    public Map<String, Long> getPhases() {
+        return phases;
+    }
+
+    /**
+     * log the duration of the startup, with a warning when it is over the budget
+     *
+     * @param budget in millisecond, null for no budget
+     * @return the duration from the start of the jvm
+     */
+    public long log(Long budget) {
+        long total = System.currentTimeMillis() - jvmStart;
+        String detail = phases.entrySet().stream().map(phase -> phase.getKey() + " " + phase.getValue() + " ms").collect(Collectors.joining(", "));
+        LOG.info("Startup in {} ms : {}", total, detail);
+        if (budget != null && total > budget) {
+            LOG.warn("The startup ({} ms) is over the budget of {} ms", total, budget);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.hermannpencole.nifi.config;
+
+import com.github.hermannpencole.nifi.config.model.ClusterResult;
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for ClusterDeployment
+ */
+public class ClusterDeploymentTest {
+
+    private static final List<String> ADDRESSES = Arrays.asList("http://nifi1:8080/nifi-api", "http://nifi2:8080/nifi-api", "http://nifi3:8080/nifi-api");
+
+    @Test
+    public void runAllTest() {
+        Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+        List<ClusterResult> results = new ClusterDeployment(ClusterDeployment.Policy.all).run(ADDRESSES, address -> {
+            threads.add(Thread.currentThread().getName());
+            if (address.contains("nifi2")) {
+                throw new ConfigException("cannot find root > elt1");
+            }
+        });
+
+        assertEquals(ClusterResult.Status.OK, results.get(0).getStatus());
+        assertEquals(ClusterResult.Status.FAILED, results.get(1).getStatus());
+        assertEquals("cannot find root > elt1", results.get(1).getError());
+        assertEquals(ClusterResult.Status.OK, results.get(2).getStatus());
+        //the progress of each cluster is on its own thread
+        assertEquals(new HashSet<>(Arrays.asList("nifi-config-nifi1:8080", "nifi-config-nifi2:8080", "nifi-config-nifi3:8080")), threads);
+    }
+
+    @Test(timeout = 10000)
+    public void runFailFastTest() {
+        CountDownLatch started = new CountDownLatch(3);
+        List<ClusterResult> results = new ClusterDeployment(ClusterDeployment.Policy.failFast).run(ADDRESSES, address -> {
+            started.countDown();
+            if (address.contains("nifi2")) {
+                started.await();
+                throw new ConfigException("timeout");
+            }
+            if (address.contains("nifi3")) {
+                //interrupted by the failure of nifi2
+                Thread.sleep(60000);
+            }
+        });
+
+        assertEquals(ClusterResult.Status.FAILED, results.get(1).getStatus());
+        assertEquals(ClusterResult.Status.CANCELLED, results.get(2).getStatus());
+    }
+
+    @Test(timeout = 10000)
+    public void runFailFastOtherErrorTest() {
+        CountDownLatch started = new CountDownLatch(3);
+        List<ClusterResult> results = new ClusterDeployment(ClusterDeployment.Policy.failFast).run(ADDRESSES, address -> {
+            started.countDown();
+            if (address.contains("nifi2")) {
+                started.await();
+                throw new ConfigException("timeout");
+            }
+            if (address.contains("nifi3")) {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    //an error of its own after the cancel is not hidden as cancelled
+                    throw new ConfigException("cannot find root > elt1");
+                }
+            }
+        });
+
+        assertEquals(ClusterResult.Status.FAILED, results.get(1).getStatus());
+        assertEquals(ClusterResult.Status.FAILED, results.get(2).getStatus());
+        assertEquals("cannot find root > elt1", results.get(2).getError());
+    }
+
+    @Test
+    public void runCanaryTest() {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<ClusterResult> results = new ClusterDeployment(ClusterDeployment.Policy.canary).run(ADDRESSES, order::add);
+
+        assertEquals(ADDRESSES.get(0), order.get(0));
+        assertEquals(3, order.size());
+        assertTrue(results.stream().allMatch(result -> result.getStatus() == ClusterResult.Status.OK));
+    }
+
+    @Test
+    public void runCanaryFailedTest() {
+        List<ClusterResult> results = new ClusterDeployment(ClusterDeployment.Policy.canary).run(ADDRESSES, address -> {
+            throw new ConfigException("canary failed");
+        });
+
+        assertEquals(ClusterResult.Status.FAILED, results.get(0).getStatus());
+        assertEquals(ClusterResult.Status.NOT_RUN, results.get(1).getStatus());
+        assertEquals(ClusterResult.Status.NOT_RUN, results.get(2).getStatus());
+        assertEquals("http://nifi2:8080/nifi-api : NOT RUN", results.get(1).format());
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.hermannpencole.nifi.config;
+
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import org.apache.commons.cli.ParseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for ConfigServer
+ */
+public class ConfigServerTest {
+
+    private static final String TOKEN = "secret-token";
+
+    private final List<List<String>> jobs = Collections.synchronizedList(new ArrayList<>());
+
+    private ConfigServer server;
+
+    @Before
+    public void setup() throws IOException {
+        server = new ConfigServer(0, TOKEN, args -> {
+            if (args.isEmpty()) {
+                throw new ParseException("The job must have a mode");
+            }
+            if (args.contains("root>fail")) {
+                throw new ConfigException("cannot find root > fail");
+            }
+            jobs.add(args);
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void jobTest() throws IOException {
+        String response = post("{\"args\": [\"-m\", \"updateConfig\", \"-b\", \"root>elt1\", \"-c\", \"conf.json\"]}", 200);
+        assertTrue(response.contains("\"status\":\"OK\""));
+        //the warm server run the next jobs
+        post("{\"args\": [\"-m\", \"undeploy\", \"-b\", \"root>elt1\"]}", 200);
+        assertEquals(Arrays.asList("-m", "updateConfig", "-b", "root>elt1", "-c", "conf.json"), jobs.get(0));
+        assertEquals(2, jobs.size());
+    }
+
+    @Test
+    public void jobFailedTest() throws IOException {
+        String response = post("{\"args\": [\"-m\", \"undeploy\", \"-b\", \"root>fail\"]}", 500);
+        assertTrue(response.contains("\"status\":\"FAILED\""));
+        assertTrue(response.contains("cannot find root \\u003e fail"));
+    }
+
+    @Test
+    public void jobInvalidTest() throws IOException {
+        assertTrue(post("{\"args\": []}", 400).contains("\"status\":\"INVALID\""));
+        assertTrue(post("{\"mode\": \"undeploy\"}", 400).contains("\"status\":\"INVALID\""));
+        assertTrue(post("not json", 400).contains("\"status\":\"INVALID\""));
+        assertTrue(jobs.isEmpty());
+    }
+
+    @Test
+    public void jobFromBrowserTest() throws IOException {
+        //a simple request of a web page, without preflight (HttpURLConnection does not send the header Origin)
+        String body = "{\"args\": [\"-m\", \"undeploy\", \"-b\", \"root>prod\"]}";
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+             Scanner scanner = new Scanner(socket.getInputStream(), "UTF-8")) {
+            socket.getOutputStream().write(("POST /jobs HTTP/1.1\r\nHost: localhost\r\nOrigin: http://evil.example.com\r\n"
+                    + "Content-Type: text/plain\r\nAuthorization: Bearer " + TOKEN + "\r\nContent-Length: " + body.length() + "\r\n\r\n" + body).getBytes(StandardCharsets.UTF_8));
+            assertEquals("HTTP/1.1 403 Forbidden", scanner.nextLine());
+        }
+        assertTrue(jobs.isEmpty());
+    }
+
+    @Test
+    public void jobWithoutTokenTest() throws IOException {
+        String job = "{\"args\": [\"-m\", \"undeploy\", \"-b\", \"root>prod\"]}";
+        assertEquals(401, send(connection("application/json", null), job));
+        assertEquals(401, send(connection("application/json", "Bearer wrong"), job));
+        assertTrue(jobs.isEmpty());
+    }
+
+    @Test
+    public void jobNotJsonTest() throws IOException {
+        assertEquals(415, send(connection("text/plain", "Bearer " + TOKEN), "{\"args\": [\"-m\", \"undeploy\", \"-b\", \"root>prod\"]}"));
+        assertTrue(jobs.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void serverWithoutTokenTest() {
+        new ConfigServer(0, " ", args -> {});
+    }
+
+    @Test
+    public void healthTest() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + "/health").openConnection();
+        assertEquals(200, connection.getResponseCode());
+    }
+
+    private String post(String body, int expectedCode) throws IOException {
+        HttpURLConnection connection = connection("application/json", "Bearer " + TOKEN);
+        assertEquals(expectedCode, send(connection, body));
+        try (InputStream input = expectedCode == 200 ? connection.getInputStream() : connection.getErrorStream();
+             Scanner scanner = new Scanner(input, "UTF-8").useDelimiter("\\A")) {
+            return scanner.hasNext() ? scanner.next() : "";
+        }
+    }
+
+    private HttpURLConnection connection(String contentType, String authorization) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + "/jobs").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        return connection;
+    }
+
+    private int send(HttpURLConnection connection, String body) throws IOException {
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return connection.getResponseCode();
+    }
+
+    @Test
+    public void toLogTest() {
+        assertEquals(Arrays.asList("-m", "updateConfig", "-user", "****", "-password", "****", "--password=****", "-c", "conf.json"),
+                ConfigServer.toLog(Arrays.asList("-m", "updateConfig", "-user", "admin", "-password", "secret", "--password=secret", "-c", "conf.json")));
+    }
+}
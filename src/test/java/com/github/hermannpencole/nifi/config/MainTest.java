@@ -1,6 +1,8 @@
 package com.github.hermannpencole.nifi.config;
 
 import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.model.DeploymentPlan;
+import com.github.hermannpencole.nifi.config.model.ManifestEntry;
 import com.github.hermannpencole.nifi.config.service.*;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.model.PositionDTO;
@@ -8,6 +10,7 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.name.Names;
+import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.UnrecognizedOptionException;
 import org.junit.Before;
 import org.junit.Test;
@@ -19,12 +22,20 @@ import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
 
+import java.io.File;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyObject;
-import static org.mockito.Mockito.doThrow;
-import static org.mockito.Mockito.verify;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
 
 
 /**
@@ -46,6 +57,10 @@ public class MainTest {
     private ExtractProcessorService extractProcessorServiceMock;
     @Mock
     private InformationService informationServiceMock;
+    @Mock
+    private ManifestService manifestServiceMock;
+    @Mock
+    private PlanService planServiceMock;
 
     @Before
     public void init() {
@@ -65,6 +80,9 @@ public class MainTest {
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("bulkSchedule")).toInstance(true);
             }
         });
         //given
@@ -87,6 +105,9 @@ public class MainTest {
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("bulkSchedule")).toInstance(true);
             }
         });
         //given
@@ -109,6 +130,9 @@ public class MainTest {
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("bulkSchedule")).toInstance(true);
             }
         });
         //given
@@ -132,6 +156,9 @@ public class MainTest {
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("bulkSchedule")).toInstance(true);
             }
         });
         //given
@@ -139,7 +166,7 @@ public class MainTest {
         Mockito.when(Guice.createInjector((AbstractModule)anyObject())).thenReturn(injector);
 
         Main.main(new String[]{"-nifi","http://localhost:8080/nifi-api","-branch","\"root>N2\"","-conf","adr","-m","updateConfig","-user","user","-password","password"});
-        verify(updateProcessorServiceMock).updateByBranch(Arrays.asList("root","N2"), "adr",false);
+        verify(updateProcessorServiceMock).updateByBranch(Arrays.asList("root","N2"), "adr",false, false);
     }
 
     @Test
@@ -154,6 +181,9 @@ public class MainTest {
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("bulkSchedule")).toInstance(true);
             }
         });
         //given
@@ -243,6 +273,9 @@ public class MainTest {
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("bulkSchedule")).toInstance(true);
             }
         });
         //given
@@ -251,4 +284,197 @@ public class MainTest {
         doThrow(new ApiException()).when(accessServiceMock).addTokenOnConfiguration(false, null ,null);
         Main.main(new String[]{"-nifi","http://localhost:8080/nifi-api","-branch","\"root>N2\"","-conf","adr","-m","undeploy"});
     }
+
+    /**
+     * the injector returned by Guice.createInjector : the services mocked and the options
+     */
+    private Injector mockInjector() {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(AccessService.class).toInstance(accessServiceMock);
+                bind(InformationService.class).toInstance(informationServiceMock);
+                bind(TemplateService.class).toInstance(templateServiceMock);
+                bind(UpdateProcessorService.class).toInstance(updateProcessorServiceMock);
+                bind(ExtractProcessorService.class).toInstance(extractProcessorServiceMock);
+                bind(ManifestService.class).toInstance(manifestServiceMock);
+                bind(PlanService.class).toInstance(planServiceMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
+                bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
+                bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("bulkSchedule")).toInstance(true);
+            }
+        });
+        PowerMockito.mockStatic(Guice.class);
+        Mockito.when(Guice.createInjector((AbstractModule)anyObject())).thenReturn(injector);
+        return injector;
+    }
+
+    @Test
+    public void mainIntervalZeroTest() throws Exception {
+        mockInjector();
+        //the polling without pause of the old versions polls at the initial delay
+        Main.main(new String[]{"-nifi","http://localhost:8080/nifi-api","-branch","root>N2","-m","undeploy","-interval","0"});
+        verify(templateServiceMock).undeploy(Arrays.asList("root","N2"));
+    }
+
+    @Test
+    public void mainManifestTest() throws Exception {
+        mockInjector();
+        List<ManifestEntry> entries = Collections.singletonList(new ManifestEntry(Arrays.asList("root","N2"), "adr"));
+        entries.get(0).setResult(null, 10);
+        Mockito.when(manifestServiceMock.readManifest("manifest.json")).thenReturn(entries);
+        Mockito.when(manifestServiceMock.updateAll(entries, false, true, 2)).thenReturn(entries);
+
+        Main.main(new String[]{"-nifi","http://localhost:8080/nifi-api","-m","updateConfig","-manifest","manifest.json","-diff","-branchConcurrency","2"});
+        verify(manifestServiceMock).updateAll(entries, false, true, 2);
+        verify(manifestServiceMock).log(entries);
+        verify(updateProcessorServiceMock, never()).updateByBranch(any(), any(), anyBoolean(), anyBoolean());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void mainManifestErrorTest() throws Exception {
+        mockInjector();
+        List<ManifestEntry> entries = Collections.singletonList(new ManifestEntry(Arrays.asList("root","N2"), "adr"));
+        entries.get(0).setResult("cannot find root > N2", 10);
+        Mockito.when(manifestServiceMock.readManifest("manifest.json")).thenReturn(entries);
+        Mockito.when(manifestServiceMock.updateAll(entries, false, false, Main.DEFAULT_BRANCH_CONCURRENCY)).thenReturn(entries);
+
+        Main.main(new String[]{"-nifi","http://localhost:8080/nifi-api","-m","updateConfig","-manifest","manifest.json"});
+    }
+
+    @Test
+    public void mainPlanTest() throws Exception {
+        mockInjector();
+        DeploymentPlan plan = new DeploymentPlan("updateConfig", Arrays.asList("root","N2"));
+        Mockito.when(planServiceMock.planUpdate(Arrays.asList("root","N2"), "adr", false, false)).thenReturn(plan);
+
+        Main.main(new String[]{"-nifi","http://localhost:8080/nifi-api","-branch","root>N2","-conf","adr","-m","plan"});
+        verify(planServiceMock).log(plan);
+        verify(updateProcessorServiceMock, never()).updateByBranch(any(), any(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    public void mainPlanOfTest() throws Exception {
+        mockInjector();
+        DeploymentPlan planUndeploy = new DeploymentPlan("undeploy", Arrays.asList("root","N2"));
+        Mockito.when(planServiceMock.planUndeploy(Arrays.asList("root","N2"))).thenReturn(planUndeploy);
+        DeploymentPlan planDeploy = new DeploymentPlan("deployTemplate", Arrays.asList("root","N2"));
+        Mockito.when(planServiceMock.planDeploy(Arrays.asList("root","N2"), "adr", true)).thenReturn(planDeploy);
+
+        //undeploy without configuration
+        Main.main(new String[]{"-nifi","http://localhost:8080/nifi-api","-branch","root>N2","-m","plan","-planOf","undeploy"});
+        Main.main(new String[]{"-nifi","http://localhost:8080/nifi-api","-branch","root>N2","-conf","adr","-m","plan","-planOf","deployTemplate","-keepTemplate"});
+        verify(planServiceMock).log(planUndeploy);
+        verify(planServiceMock).log(planDeploy);
+        verify(templateServiceMock, never()).undeploy(any());
+        verify(templateServiceMock, never()).installOnBranch(any(), any(), anyBoolean());
+    }
+
+    @Test
+    public void mainServerJobTest() throws Exception {
+        Injector injector = mockInjector();
+        //a job runs on the client of the server
+        Whitebox.invokeMethod(Main.class, "runJob", injector, Arrays.asList("-m","undeploy","-b","root>N2"));
+        verify(templateServiceMock).undeploy(Arrays.asList("root","N2"));
+        //the options of the server and the mode server are refused
+        for (List<String> job : Arrays.asList(Arrays.asList("-m","undeploy","-timeout","5"),
+                Arrays.asList("-m","undeploy","-nifi","http://other:8080/nifi-api"),
+                Arrays.asList("-m","undeploy","-user","user","-password","password"),
+                Arrays.asList("-m","server"),
+                Arrays.asList("-m","updateConfig"))) {
+            try {
+                Whitebox.invokeMethod(Main.class, "runJob", injector, job);
+                fail("job accepted : " + job);
+            } catch (ParseException e) {
+                //expected
+            }
+        }
+        verify(templateServiceMock, times(1)).undeploy(any());
+        verify(updateProcessorServiceMock, never()).updateByBranch(any(), any(), anyBoolean(), anyBoolean());
+        //the counters of the transport are read at the start and at the end of the job
+        verify(accessServiceMock, times(2)).getRequestCount();
+        verify(accessServiceMock, times(2)).getConnectionCount();
+    }
+
+    @Test(expected = ConfigException.class)
+    public void mainServerWithoutTokenTest() throws Exception {
+        mockInjector();
+        File tokenFile = File.createTempFile("token", ".txt");
+        tokenFile.deleteOnExit();
+        try {
+            //the token file is empty
+            Main.main(new String[]{"-nifi","http://localhost:8080/nifi-api","-m","server","-serverTokenFile",tokenFile.getPath()});
+        } finally {
+            //the token is checked before the connection
+            verify(accessServiceMock, never()).addTokenOnConfiguration(anyBoolean(), any(), any());
+        }
+    }
+
+    @Test
+    public void mainMultiClusterTest() throws Exception {
+        mockInjector();
+
+        Main.main(new String[]{"-nifi","http://nifi1:8080/nifi-api, http://nifi2:8080/nifi-api","-branch","root>N2","-conf","adr","-m","updateConfig"});
+        verify(accessServiceMock).setConfiguration(eq("http://nifi1:8080/nifi-api"), anyBoolean(), anyBoolean(), anyInt(), anyInt(), anyInt());
+        verify(accessServiceMock).setConfiguration(eq("http://nifi2:8080/nifi-api"), anyBoolean(), anyBoolean(), anyInt(), anyInt(), anyInt());
+        verify(updateProcessorServiceMock, times(2)).updateByBranch(Arrays.asList("root","N2"), "adr", false, false);
+    }
+
+    @Test
+    public void mainMultiClusterErrorTest() throws Exception {
+        mockInjector();
+        doThrow(new ConfigException("cannot find root > N2")).when(templateServiceMock).installOnBranch(any(), any(), anyBoolean());
+        try {
+            Main.main(new String[]{"-nifi","http://nifi1:8080/nifi-api,http://nifi2:8080/nifi-api","-branch","root>N2","-conf","adr","-m","deployTemplate"});
+            fail("deployment without error");
+        } catch (ConfigException e) {
+            assertEquals("2 clusters are not deployed", e.getMessage());
+        }
+        //the policy all deploys on all the clusters
+        verify(templateServiceMock, times(2)).installOnBranch(Arrays.asList("root","N2"), "adr", false);
+    }
+
+    @Test
+    public void mainCdsTrainingTest() throws Exception {
+        mockInjector();
+        Main.main(new String[]{"-cdsTraining"});
+        //the services are loaded, without nifi
+        verifyZeroInteractions(accessServiceMock, informationServiceMock, updateProcessorServiceMock, templateServiceMock);
+    }
+
+    @Test
+    public void mainPrintUsageManifestWithoutUpdateTest() throws Exception {
+        PowerMockito.mockStatic(System.class);
+        Main.main(new String[]{"-nifi","http://localhost:8080/nifi-api","-m","undeploy","-manifest","manifest.json"});
+        PowerMockito.verifyStatic();
+        System.exit(1);
+    }
+
+    @Test
+    public void mainPrintUsageMultiClusterExtractTest() throws Exception {
+        PowerMockito.mockStatic(System.class);
+        Main.main(new String[]{"-nifi","http://nifi1:8080/nifi-api,http://nifi2:8080/nifi-api","-conf","adr","-m","extractConfig"});
+        PowerMockito.verifyStatic();
+        System.exit(1);
+    }
+
+    @Test
+    public void mainPrintUsageClusterPolicyUnknowTest() throws Exception {
+        PowerMockito.mockStatic(System.class);
+        Main.main(new String[]{"-nifi","http://nifi1:8080/nifi-api,http://nifi2:8080/nifi-api","-conf","adr","-m","updateConfig","-clusterPolicy","other"});
+        PowerMockito.verifyStatic();
+        System.exit(1);
+    }
+
+    @Test
+    public void mainPrintUsagePlanOfUnknowTest() throws Exception {
+        PowerMockito.mockStatic(System.class);
+        Main.main(new String[]{"-nifi","http://localhost:8080/nifi-api","-conf","adr","-m","plan","-planOf","extractConfig"});
+        PowerMockito.verifyStatic();
+        System.exit(1);
+    }
 }
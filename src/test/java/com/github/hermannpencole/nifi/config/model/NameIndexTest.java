@@ -0,0 +1,53 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import com.github.hermannpencole.nifi.config.service.TestUtils;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorEntity;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for NameIndex
+ */
+public class NameIndexTest {
+
+    @Test
+    public void findUniqueTest() {
+        NameIndex<ProcessorEntity> index = new NameIndex<>(Arrays.asList(
+                TestUtils.createProcessorEntity("1", "first"),
+                TestUtils.createProcessorEntity("2", " second ")),
+                item -> item.getComponent().getName());
+        assertEquals("1", index.findFirst("first").get().getId());
+        //the names are trimmed
+        assertEquals("2", index.findFirst("second ").get().getId());
+        assertEquals(1, index.findAll("second").size());
+        assertTrue(index.getDuplicates().isEmpty());
+    }
+
+    @Test
+    public void findMissingTest() {
+        ProcessorEntity withoutName = TestUtils.createProcessorEntity("2", null);
+        NameIndex<ProcessorEntity> index = new NameIndex<>(Arrays.asList(
+                TestUtils.createProcessorEntity("1", "first"), withoutName),
+                item -> item.getComponent().getName());
+        assertFalse(index.findFirst("missing").isPresent());
+        assertEquals(Collections.emptyList(), index.findAll("missing"));
+    }
+
+    @Test
+    public void findDuplicateTest() {
+        NameIndex<ProcessorEntity> index = new NameIndex<>(Arrays.asList(
+                TestUtils.createProcessorEntity("1", "same"),
+                TestUtils.createProcessorEntity("2", "other"),
+                TestUtils.createProcessorEntity("3", "same ")),
+                item -> item.getComponent().getName());
+        //the first in the order of the flow, as stream().filter().findFirst()
+        assertEquals("1", index.findFirst("same").get().getId());
+        assertEquals(2, index.findAll("same").size());
+        assertEquals("3", index.findAll("same").get(1).getId());
+        assertEquals(Collections.singleton("same"), index.getDuplicates());
+    }
+}
@@ -1,7 +1,15 @@
 package com.github.hermannpencole.nifi.config.service;
 
+import com.github.hermannpencole.nifi.config.model.TransportConfig;
 import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.Configuration;
 import com.github.hermannpencole.nifi.swagger.client.AccessApi;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
@@ -9,8 +17,16 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.mockito.Mockito.*;
 
 /**
@@ -49,5 +65,88 @@ public class AccessServiceTest {
         verify(accessApiMock, never()).createAccessToken(anyString(), anyString());
     }
 
+    @Test
+    public void readTransportConfigTest() throws IOException {
+        TransportConfig transportConfig = accessService.readTransportConfig("src/test/resources/transport.json");
+        assertEquals(32, transportConfig.getMaxIdleConnections().intValue());
+        assertFalse(transportConfig.getHttp2());
+        //not in the file
+        assertEquals(TransportConfig.DEFAULT_MAX_REQUESTS_PER_HOST, transportConfig.getMaxRequestsPerHost().intValue());
+    }
+
+    @Test
+    public void setTransportReuseConnectionTest() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] body = "{}".getBytes("UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        try {
+            TransportConfig transportConfig = new TransportConfig();
+            transportConfig.setHttp2(false);
+            accessService.setTransport(transportConfig);
+            //configure twice don't add the interceptors twice
+            accessService.setTransport(transportConfig);
+            OkHttpClient httpClient = Configuration.getDefaultApiClient().getHttpClient();
+            assertEquals(Collections.singletonList(Protocol.HTTP_1_1), httpClient.getProtocols());
+            for (int i = 0; i < 3; i++) {
+                Response response = httpClient.newCall(new Request.Builder().url("http://localhost:" + server.getAddress().getPort() + "/nifi-api").build()).execute();
+                response.body().string();
+            }
+            assertEquals(3, accessService.getRequestCount());
+            assertEquals(1, accessService.getConnectionCount());
+            assertEquals(2, accessService.getReusedConnectionCount());
+        } finally {
+            server.stop(0);
+        }
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void refreshExpiredTokenTest() throws IOException {
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            received.add(authorization);
+            byte[] body = "{}".getBytes("UTF-8");
+            exchange.sendResponseHeaders("Bearer new".equals(authorization) ? 200 : 401, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        try {
+            when(accessApiMock.createAccessToken("user", "pwd")).thenReturn("old", "new");
+            accessService.addTokenOnConfiguration(false, "user", "pwd");
+            OkHttpClient httpClient = Configuration.getDefaultApiClient().getHttpClient();
+            String url = "http://localhost:" + server.getAddress().getPort() + "/nifi-api/processors/id";
+            //the request with the expired token is sent again alone with the new token
+            Response response = httpClient.newCall(new Request.Builder().url(url).header("Authorization", "Bearer old").build()).execute();
+            response.body().string();
+            assertEquals(200, response.code());
+            assertEquals(Arrays.asList("Bearer old", "Bearer new"), received);
+            //a request sent with the expired token after the renewal don't ask a token again
+            response = httpClient.newCall(new Request.Builder().url(url).header("Authorization", "Bearer old").build()).execute();
+            response.body().string();
+            assertEquals(200, response.code());
+            verify(accessApiMock, times(2)).createAccessToken("user", "pwd");
+            //without token the 401 is the answer
+            response = httpClient.newCall(new Request.Builder().url(url).build()).execute();
+            response.body().string();
+            assertEquals(401, response.code());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        //the interceptors are added on the default client shared by the tests
+        Configuration.getDefaultApiClient().getHttpClient().interceptors().clear();
+        Configuration.getDefaultApiClient().getHttpClient().networkInterceptors().clear();
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceEntity;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for ControllerServiceCache
+ */
+public class ControllerServiceCacheTest {
+
+    @Test
+    public void getTest() {
+        Injector injector = Guice.createInjector();
+        ControllerServiceCache cache = injector.getInstance(ControllerServiceCache.class);
+        RevisionTracker revisionTracker = injector.getInstance(RevisionTracker.class);
+        AtomicInteger reads = new AtomicInteger();
+
+        cache.get("id", id -> { reads.incrementAndGet(); return TestUtils.createControllerServiceEntity(id, "name"); });
+        cache.get("id", id -> { reads.incrementAndGet(); return TestUtils.createControllerServiceEntity(id, "name"); });
+        assertEquals(1, reads.get());
+        assertEquals(1, cache.getHits());
+
+        //a write give a more recent revision than the revision read
+        revisionTracker.setRevision("id", TestUtils.createRevision(11L));
+        cache.get("id", id -> { reads.incrementAndGet(); return TestUtils.createControllerServiceEntity(id, "name"); });
+        assertEquals(2, reads.get());
+
+        cache.invalidate("id");
+        cache.get("id", id -> { reads.incrementAndGet(); return TestUtils.createControllerServiceEntity(id, "name"); });
+        assertEquals(3, reads.get());
+
+        cache.clear();
+        cache.get("id", id -> { reads.incrementAndGet(); return TestUtils.createControllerServiceEntity(id, "name"); });
+        assertEquals(4, reads.get());
+    }
+
+    @Test
+    public void getConcurrentTest() throws Exception {
+        ControllerServiceCache cache = Guice.createInjector().getInstance(ControllerServiceCache.class);
+        AtomicInteger reads = new AtomicInteger();
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ControllerServiceEntity> first = executor.submit(() -> cache.get("id", id -> {
+                reads.incrementAndGet();
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return TestUtils.createControllerServiceEntity(id, "name");
+            }));
+            reading.await();
+            //the second caller wait the read in progress
+            Future<ControllerServiceEntity> second = executor.submit(() -> cache.get("id", id -> {
+                reads.incrementAndGet();
+                return TestUtils.createControllerServiceEntity(id, "other");
+            }));
+            release.countDown();
+            assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, reads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void getErrorNotKeptTest() {
+        ControllerServiceCache cache = Guice.createInjector().getInstance(ControllerServiceCache.class);
+        try {
+            cache.get("id", id -> { throw new ApiException(404, "Not Found"); });
+            fail();
+        } catch (ApiException e) {
+            assertEquals(404, e.getCode());
+        }
+        assertEquals("name", cache.get("id", id -> TestUtils.createControllerServiceEntity(id, "name")).getComponent().getName());
+    }
+
+    @Test
+    public void getErrorReleaseWaitingTest() throws Exception {
+        ControllerServiceCache cache = Guice.createInjector().getInstance(ControllerServiceCache.class);
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ControllerServiceEntity> first = executor.submit(() -> cache.get("id", id -> {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                throw new StackOverflowError();
+            }));
+            reading.await();
+            Future<ControllerServiceEntity> second = executor.submit(() -> cache.get("id", id -> TestUtils.createControllerServiceEntity(id, "other")));
+            //the second caller wait the read in progress
+            while (cache.getHits() == 0) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            try {
+                first.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof StackOverflowError);
+            }
+            //the caller waiting the read fail too instead of waiting for ever
+            try {
+                second.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof ConfigException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.ControllerServicesApi;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.model.*;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
@@ -13,7 +14,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
-import java.util.ArrayList;
+import java.util.*;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -30,12 +31,16 @@ public class ControllerServicesServiceTest {
     @Mock
     private ControllerServicesApi controllerServicesApiMock;
 
+    @Mock
+    private FlowApi flowApiMock;
+
     @Test
     public void updateControllerServiceTest() throws InterruptedException {
         Injector injector = Guice.createInjector(new AbstractModule() {
             protected void configure() {
                 bind(ControllerServicesApi.class).toInstance(controllerServicesApiMock);
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(2);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
             }
@@ -69,12 +74,50 @@ public class ControllerServicesServiceTest {
      //   assertEquals(ControllerServiceDTO.StateEnum.ENABLED, controllerServiceCapture.getAllValues().get(2).getComponent().getState());
     }
 
+    @Test
+    public void updateControllerServiceRevisionTest() {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(ControllerServicesApi.class).toInstance(controllerServicesApiMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(2);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+            }
+        });
+        ControllerServiceEntity controllerService = TestUtils.createControllerServiceEntity("id","name");
+        ControllerServiceEntity controllerServiceUpdated = TestUtils.createControllerServiceEntity("id","name");
+        controllerServiceUpdated.setRevision(TestUtils.createRevision(11L));
+        ControllerServiceEntity controllerServiceOnNifi = TestUtils.createControllerServiceEntity("id","name");
+        controllerServiceOnNifi.setRevision(TestUtils.createRevision(13L));
+        ControllerServiceEntity controllerServiceUpdatedAgain = TestUtils.createControllerServiceEntity("id","name");
+        controllerServiceUpdatedAgain.setRevision(TestUtils.createRevision(14L));
+        List<Long> versions = new ArrayList<>();
+        when(controllerServicesApiMock.updateControllerService(eq("id"), any())).then(invocation -> {
+            versions.add(((ControllerServiceEntity) invocation.getArguments()[1]).getRevision().getVersion());
+            switch (versions.size()) {
+                case 1: return controllerServiceUpdated;
+                case 2: throw new ApiException("Bad Request", 400, null, "[11, null, id] is not the most up-to-date revision. This component appears to have been modified");
+                default: return controllerServiceUpdatedAgain;
+            }
+        });
+        when(controllerServicesApiMock.getControllerService("id")).thenReturn(controllerServiceOnNifi);
+
+        ControllerServicesService controllerServicesService = injector.getInstance(ControllerServicesService.class);
+        controllerServicesService.updateControllerService(new ControllerServiceDTO(), controllerService, false);
+        //the entity given is not up to date, the revision of the last write is used then the revision of nifi after the conflict
+        controllerServicesService.updateControllerService(new ControllerServiceDTO(), controllerService, false);
+
+        assertEquals(Arrays.asList(10L, 11L, 13L), versions);
+        verify(controllerServicesApiMock, times(1)).getControllerService("id");
+    }
+
     @Test
     public void setStateReferencingControllerServicesTest() throws ApiException {
         Injector injector = Guice.createInjector(new AbstractModule() {
             protected void configure() {
                 bind(ControllerServicesApi.class).toInstance(controllerServicesApiMock);
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(2);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
             }
@@ -102,4 +145,129 @@ public class ControllerServicesServiceTest {
         assertTrue(updateControllerServiceReferenceRequestCapture.getValue().getReferencingComponentRevisions().containsKey("idRef"));
     }
 
-}
\ No newline at end of file
+    private ControllerServiceEntity createControllerService(String id, String idUsed, ControllerServiceDTO.StateEnum state) {
+        ControllerServiceEntity controllerService = TestUtils.createControllerServiceEntity(id, id);
+        controllerService.getComponent().setParentGroupId("idGroup");
+        controllerService.getComponent().setState(state);
+        PropertyDescriptorDTO descriptor = new PropertyDescriptorDTO();
+        controllerService.getComponent().getDescriptors().put("key", descriptor);
+        if (idUsed != null) {
+            descriptor.setIdentifiesControllerService("org.apache.nifi.dbcp.DBCPService");
+            controllerService.getComponent().getProperties().put("key", idUsed);
+        }
+        return controllerService;
+    }
+
+    @Test
+    public void setStateControllerServicesTest() {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(ControllerServicesApi.class).toInstance(controllerServicesApiMock);
+                bind(FlowApi.class).toInstance(flowApiMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(2);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+            }
+        });
+        //idA and idB use idDb, not given and disabled
+        ControllerServiceEntity controllerServiceA = createControllerService("idA", "idDb", ControllerServiceDTO.StateEnum.DISABLED);
+        ControllerServiceEntity controllerServiceB = createControllerService("idB", "idDb", ControllerServiceDTO.StateEnum.DISABLED);
+        when(controllerServicesApiMock.getControllerService("idA")).thenReturn(controllerServiceA);
+        when(controllerServicesApiMock.getControllerService("idB")).thenReturn(controllerServiceB);
+        when(controllerServicesApiMock.getControllerService("idDb"))
+                .thenReturn(createControllerService("idDb", null, ControllerServiceDTO.StateEnum.DISABLED))
+                .thenReturn(createControllerService("idDb", null, ControllerServiceDTO.StateEnum.ENABLED));
+        ControllerServicesEntity group = new ControllerServicesEntity();
+        group.getControllerServices().add(createControllerService("idA", "idDb", ControllerServiceDTO.StateEnum.ENABLED));
+        group.getControllerServices().add(createControllerService("idB", "idDb", ControllerServiceDTO.StateEnum.ENABLED));
+        when(flowApiMock.getControllerServicesFromGroup("idGroup")).thenReturn(group);
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        when(controllerServicesApiMock.updateControllerService(any(), any())).then(invocation -> {
+            written.add((String) invocation.getArguments()[0]);
+            return createControllerService((String) invocation.getArguments()[0], null, ControllerServiceDTO.StateEnum.ENABLING);
+        });
+
+        ControllerServicesService controllerServicesService = injector.getInstance(ControllerServicesService.class);
+        Map<String, ControllerServiceEntity> result = controllerServicesService.setStateControllerServices(
+                Arrays.asList(controllerServiceA, controllerServiceB), ControllerServiceDTO.StateEnum.ENABLED);
+
+        //the controller used is enabled first, the two others in parallel with one polling of their group
+        assertEquals(new HashSet<>(Arrays.asList("idDb", "idA", "idB")), result.keySet());
+        assertEquals("idDb", written.get(0));
+        assertEquals(new HashSet<>(Arrays.asList("idA", "idB")), new HashSet<>(written.subList(1, 3)));
+        verify(flowApiMock, times(1)).getControllerServicesFromGroup("idGroup");
+        verify(controllerServicesApiMock, times(1)).getControllerService("idA");
+        verify(controllerServicesApiMock, times(2)).getControllerService("idDb");
+    }
+
+    @Test
+    public void setStateControllerServicesDisableTest() {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(ControllerServicesApi.class).toInstance(controllerServicesApiMock);
+                bind(FlowApi.class).toInstance(flowApiMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(2);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+            }
+        });
+        ControllerServiceEntity controllerServiceDb = createControllerService("idDb", null, ControllerServiceDTO.StateEnum.ENABLED);
+        ControllerServiceEntity controllerServiceA = createControllerService("idA", "idDb", ControllerServiceDTO.StateEnum.ENABLED);
+        when(controllerServicesApiMock.getControllerService("idDb")).thenReturn(createControllerService("idDb", null, ControllerServiceDTO.StateEnum.DISABLED));
+        when(controllerServicesApiMock.getControllerService("idA")).thenReturn(createControllerService("idA", "idDb", ControllerServiceDTO.StateEnum.DISABLED));
+        List<String> written = new ArrayList<>();
+        when(controllerServicesApiMock.updateControllerService(any(), any())).then(invocation -> {
+            written.add((String) invocation.getArguments()[0]);
+            return createControllerService((String) invocation.getArguments()[0], null, ControllerServiceDTO.StateEnum.DISABLING);
+        });
+
+        ControllerServicesService controllerServicesService = injector.getInstance(ControllerServicesService.class);
+        controllerServicesService.setStateControllerServices(Arrays.asList(controllerServiceDb, controllerServiceA), ControllerServiceDTO.StateEnum.DISABLED);
+
+        //the controller using is disabled before the controller used, without reading them before
+        assertEquals(Arrays.asList("idA", "idDb"), written);
+        verify(controllerServicesApiMock, times(1)).getControllerService("idA");
+        verify(controllerServicesApiMock, times(1)).getControllerService("idDb");
+        verifyZeroInteractions(flowApiMock);
+    }
+
+    @Test
+    public void getReferencingProcessorsTest() {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(ControllerServicesApi.class).toInstance(controllerServicesApiMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(2);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+            }
+        });
+        ControllerServiceEntity controllerService = TestUtils.createControllerServiceEntity("id", "name");
+        ControllerServiceEntity controllerServiceReferencing = TestUtils.createControllerServiceEntity("idRef", "nameRef");
+        controllerService.getComponent().getReferencingComponents().add(createReference("idRef", ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.CONTROLLERSERVICE));
+        controllerService.getComponent().getReferencingComponents().add(createReference("idProc", ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR));
+        controllerServiceReferencing.getComponent().getReferencingComponents().add(createReference("idProc2", ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR));
+        when(controllerServicesApiMock.getControllerService("id")).thenReturn(controllerService);
+        when(controllerServicesApiMock.getControllerService("idRef")).thenReturn(controllerServiceReferencing);
+
+        ControllerServicesService controllerServicesService = injector.getInstance(ControllerServicesService.class);
+
+        assertEquals(new HashSet<>(Arrays.asList("idProc", "idProc2")), controllerServicesService.getReferencingProcessors("id"));
+        //the processors and the controllers referencing are found with one read of each controller
+        verify(controllerServicesApiMock, times(1)).getControllerService("id");
+        verify(controllerServicesApiMock, times(1)).getControllerService("idRef");
+        controllerServicesService.clearCache();
+        controllerServicesService.getReferencingProcessors("id");
+        verify(controllerServicesApiMock, times(2)).getControllerService("id");
+    }
+
+    private ControllerServiceReferencingComponentEntity createReference(String id, ControllerServiceReferencingComponentDTO.ReferenceTypeEnum type) {
+        ControllerServiceReferencingComponentEntity reference = new ControllerServiceReferencingComponentEntity();
+        reference.setId(id);
+        reference.setRevision(TestUtils.createRevision(1L));
+        reference.setComponent(new ControllerServiceReferencingComponentDTO());
+        reference.getComponent().setReferenceType(type);
+        reference.getComponent().setState("RUNNING");
+        return reference;
+    }
+
+}
@@ -7,6 +7,8 @@ import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.model.ControllerServicesEntity;
 import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupFlowEntity;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
@@ -21,6 +23,7 @@ import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 /**
  * API tests for AccessApi
@@ -36,6 +39,11 @@ public class ExtractProcessorServiceTest {
     @InjectMocks
     private ExtractProcessorService extractService;
 
+    @Before
+    public void init() {
+        extractService.parallelism = 4;
+    }
+
     @Test(expected = ConfigException.class)
     public void extractNotExitingBranchTest() throws ApiException, IOException, URISyntaxException {
         List<String> branch = Arrays.asList("root", "elt1");
@@ -96,7 +104,7 @@ public class ExtractProcessorServiceTest {
         when(flowapiMock.getControllerServicesFromGroup("idComponent")).thenReturn(controllerServicesEntity);
 
         ProcessGroupFlowEntity subGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubGroup", "nameSubGroup");
-        when(flowapiMock.getFlow(subGroupResponse.getProcessGroupFlow().getId())).thenReturn(subGroupResponse);
+        when(processGroupServiceMock.getFlow(subGroupResponse.getProcessGroupFlow().getId())).thenReturn(subGroupResponse);
 
         extractService.extractByBranch(branch, temp.getAbsolutePath());
         Gson gson = new Gson();
@@ -112,7 +120,71 @@ public class ExtractProcessorServiceTest {
         }
     }
 
+    @Test
+    public void extractSiblingGroupsInOrderTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        File temp = File.createTempFile("tempfile", ".tmp");
+
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+        for (int i = 0; i < 20; i++) {
+            response.getProcessGroupFlow().getFlow()
+                    .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubGroup" + i, "nameSubGroup" + i));
+            ProcessGroupFlowEntity subGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubGroup" + i, "nameSubGroup" + i);
+            when(processGroupServiceMock.getFlow("idSubGroup" + i)).thenReturn(subGroupResponse);
+        }
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        when(flowapiMock.getControllerServicesFromGroup("idComponent")).thenReturn(new ControllerServicesEntity());
+
+        extractService.extractByBranch(branch, temp.getAbsolutePath());
+        Gson gson = new Gson();
+        try (Reader reader = new InputStreamReader(new FileInputStream(temp), "UTF-8")) {
+            GroupProcessorsEntity result = gson.fromJson(reader, GroupProcessorsEntity.class);
+            assertEquals(20, result.getGroupProcessorsEntity().size());
+            for (int i = 0; i < 20; i++) {
+                assertEquals("nameSubGroup" + i, result.getGroupProcessorsEntity().get(i).getName());
+            }
+        }
+    }
+
+    @Test
+    public void extractStreamedTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        File temp = File.createTempFile("tempfile", ".tmp");
 
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+        response.getProcessGroupFlow().getFlow()
+                .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubGroup", "nameSubGroup"));
+        ProcessGroupFlowEntity subGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubGroup", "nameSubGroup");
+        subGroupResponse.getProcessGroupFlow().getFlow()
+                .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubSubGroup", "nameSubSubGroup"));
+        ProcessGroupFlowEntity subSubGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubSubGroup", "nameSubSubGroup");
+        subSubGroupResponse.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc", "nameProc"));
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        when(processGroupServiceMock.getFlow("idSubGroup")).thenReturn(subGroupResponse);
+        when(processGroupServiceMock.getFlow("idSubSubGroup")).thenReturn(subSubGroupResponse);
+        when(flowapiMock.getControllerServicesFromGroup("idComponent")).thenReturn(new ControllerServicesEntity());
+
+        extractService.extractByBranch(branch, temp.getAbsolutePath());
 
+        //the snapshots are dropped once written
+        verify(processGroupServiceMock).invalidateFlow("idComponent");
+        verify(processGroupServiceMock).invalidateFlow("idSubGroup");
+        verify(processGroupServiceMock).invalidateFlow("idSubSubGroup");
+        try (Reader reader = new InputStreamReader(new FileInputStream(temp), "UTF-8")) {
+            //the name is before the content of the group
+            JsonReader jsonReader = new JsonReader(reader);
+            jsonReader.beginObject();
+            assertEquals("name", jsonReader.nextName());
+            assertEquals("nameComponent", jsonReader.nextString());
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(temp), "UTF-8")) {
+            GroupProcessorsEntity result = new Gson().fromJson(reader, GroupProcessorsEntity.class);
+            GroupProcessorsEntity subSubGroup = result.getGroupProcessorsEntity().get(0).getGroupProcessorsEntity().get(0);
+            assertEquals("nameSubSubGroup", subSubGroup.getName());
+            assertEquals("nameProc", subSubGroup.getProcessors().get(0).getName());
+            assertTrue(result.getControllerServicesDTO().isEmpty());
+        }
+    }
 
-}
\ No newline at end of file
+}
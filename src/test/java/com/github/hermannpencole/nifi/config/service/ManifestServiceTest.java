@@ -0,0 +1,117 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.model.ManifestEntry;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * API tests for ManifestService
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ManifestServiceTest {
+    @Mock
+    private UpdateProcessorService updateProcessorServiceMock;
+
+    @InjectMocks
+    private ManifestService manifestService;
+
+    @Test
+    public void readManifestTest() throws IOException {
+        File manifest = new File(getClass().getClassLoader().getResource("manifest.txt").getPath());
+
+        List<ManifestEntry> entries = manifestService.readManifest(manifest.getPath());
+
+        assertEquals(3, entries.size());
+        assertEquals(Arrays.asList("root", "elt1"), entries.get(0).getBranch());
+        //the configuration is relative to the manifest
+        assertEquals(new File(manifest.getParentFile(), "mytest1.json").getPath(), entries.get(0).getConfiguration());
+        assertEquals(Arrays.asList("root", "elt2"), entries.get(1).getBranch());
+        assertEquals(new File("/tmp/mytest2.json").getPath(), entries.get(1).getConfiguration());
+        assertEquals(Arrays.asList("root", "elt1", "elt3"), entries.get(2).getBranch());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void readManifestErrorTest() throws IOException {
+        File manifest = File.createTempFile("manifest", ".txt");
+        manifest.deleteOnExit();
+        java.nio.file.Files.write(manifest.toPath(), Arrays.asList("elt1=mytest1.json"));
+        manifestService.readManifest(manifest.getPath());
+    }
+
+    @Test
+    public void getChainsTest() {
+        ManifestEntry elt1 = new ManifestEntry(Arrays.asList("root", "elt1"), "a.json");
+        ManifestEntry elt2 = new ManifestEntry(Arrays.asList("root", "elt2"), "b.json");
+        ManifestEntry elt3 = new ManifestEntry(Arrays.asList("root", "elt3", "sub"), "c.json");
+        ManifestEntry elt1Sub = new ManifestEntry(Arrays.asList("root", "elt1", "sub"), "d.json");
+        ManifestEntry elt3Parent = new ManifestEntry(Arrays.asList("root", "elt3"), "e.json");
+
+        List<List<ManifestEntry>> chains = manifestService.getChains(Arrays.asList(elt1, elt2, elt3, elt1Sub, elt3Parent));
+
+        assertEquals(3, chains.size());
+        assertTrue(chains.contains(Arrays.asList(elt2)));
+        assertTrue(chains.contains(Arrays.asList(elt1, elt1Sub)));
+        assertTrue(chains.contains(Arrays.asList(elt3, elt3Parent)));
+    }
+
+    @Test
+    public void getChainsSharedControllerTest() {
+        ManifestEntry elt1 = new ManifestEntry(Arrays.asList("root", "elt1"), "a.json");
+        ManifestEntry elt2 = new ManifestEntry(Arrays.asList("root", "elt2"), "b.json");
+        ManifestEntry elt3 = new ManifestEntry(Arrays.asList("root", "elt3"), "c.json");
+        elt1.setControllerServices(new HashSet<>(Arrays.asList("pool", "cache")));
+        elt2.setControllerServices(new HashSet<>(Arrays.asList("other")));
+        elt3.setControllerServices(new HashSet<>(Arrays.asList("pool")));
+
+        List<List<ManifestEntry>> chains = manifestService.getChains(Arrays.asList(elt1, elt2, elt3));
+
+        //the siblings that configure the same controller are updated one after the other
+        assertEquals(2, chains.size());
+        assertTrue(chains.contains(Arrays.asList(elt2)));
+        assertTrue(chains.contains(Arrays.asList(elt1, elt3)));
+    }
+
+    @Test
+    public void readControllerServicesTest() {
+        String configuration = getClass().getClassLoader().getResource("mytestController.json").getPath();
+        assertEquals(Collections.singleton("nameCtrl"), manifestService.readControllerServices(configuration));
+        //the update reports the missing configuration
+        assertTrue(manifestService.readControllerServices("missing.json").isEmpty());
+    }
+
+    @Test
+    public void updateAllTest() throws IOException {
+        ManifestEntry elt1 = new ManifestEntry(Arrays.asList("root", "elt1"), "a.json");
+        ManifestEntry elt2 = new ManifestEntry(Arrays.asList("root", "elt2"), "b.json");
+        ManifestEntry elt1Sub = new ManifestEntry(Arrays.asList("root", "elt1", "sub"), "c.json");
+        doThrow(new ApiException(500, "Internal Server Error")).when(updateProcessorServiceMock).updateByBranch(elt2.getBranch(), "b.json", false, true);
+
+        List<ManifestEntry> entries = manifestService.updateAll(Arrays.asList(elt1, elt2, elt1Sub), false, true, 4);
+
+        //a branch failed don't stop the others, the branches overlapping are updated in the order of the manifest
+        assertTrue(entries.get(0).isSuccess());
+        assertFalse(entries.get(1).isSuccess());
+        assertTrue(entries.get(1).getError().startsWith("Internal Server Error"));
+        assertTrue(entries.get(1).format().contains("FAILED"));
+        assertTrue(entries.get(2).isSuccess());
+        InOrder inOrder = inOrder(updateProcessorServiceMock);
+        inOrder.verify(updateProcessorServiceMock).updateByBranch(elt1.getBranch(), "a.json", false, true);
+        inOrder.verify(updateProcessorServiceMock).updateByBranch(elt1Sub.getBranch(), "c.json", false, true);
+    }
+}
@@ -0,0 +1,184 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.DeploymentPlan;
+import com.github.hermannpencole.nifi.config.model.ExecutionPlan;
+import com.github.hermannpencole.nifi.config.model.FlowIndex;
+import com.github.hermannpencole.nifi.config.utils.Backoff;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.github.hermannpencole.nifi.config.model.DeploymentPlan.Type.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * API tests for PlanService
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PlanServiceTest {
+    @Mock
+    private ProcessGroupService processGroupServiceMock;
+
+    @Mock
+    private UpdateProcessorService updateProcessorServiceMock;
+
+    @Mock
+    private ControllerServicesService controllerServicesServiceMock;
+
+    @Mock
+    private ProcessorService processorServiceMock;
+
+    @Mock
+    private PortService portServiceMock;
+
+    @Mock
+    private AccessService accessServiceMock;
+
+    @Mock
+    private FlowApi flowapiMock;
+
+    @InjectMocks
+    private PlanService planService;
+
+    @Before
+    public void init() {
+        planService.backoff = Backoff.fixed(50);
+        planService.bulkSchedule = true;
+    }
+
+    private ProcessGroupFlowEntity createBranch() {
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+        ProcessorEntity proc = TestUtils.createProcessorEntity("idProc", "nameProc");
+        proc.getComponent().setState(ProcessorDTO.StateEnum.RUNNING);
+        ProcessorEntity proc2 = TestUtils.createProcessorEntity("idProc2", "nameProc2");
+        proc2.getComponent().setState(ProcessorDTO.StateEnum.STOPPED);
+        response.getProcessGroupFlow().getFlow().getProcessors().add(proc);
+        response.getProcessGroupFlow().getFlow().getProcessors().add(proc2);
+        when(processGroupServiceMock.getExecutionPlan(response.getProcessGroupFlow()))
+                .thenReturn(new ExecutionPlan(new FlowIndex(response.getProcessGroupFlow().getFlow())));
+        return response;
+    }
+
+    private ControllerServiceEntity createController() {
+        ControllerServiceEntity controllerService = TestUtils.createControllerServiceEntity("idCtrl", "nameCtrl");
+        ControllerServiceReferencingComponentEntity reference = new ControllerServiceReferencingComponentEntity();
+        reference.setId("idProc");
+        reference.setComponent(new ControllerServiceReferencingComponentDTO());
+        reference.getComponent().setName("nameProc");
+        reference.getComponent().setReferenceType(ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR);
+        reference.getComponent().setState("RUNNING");
+        controllerService.getComponent().getReferencingComponents().add(reference);
+        return controllerService;
+    }
+
+    @Test
+    public void planUpdateTest() throws ApiException, IOException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        ProcessGroupFlowEntity response = createBranch();
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        ControllerServiceEntity controllerService = createController();
+        ControllerServiceDTO configuration = new ControllerServiceDTO();
+        configuration.getProperties().put("key", "other");
+        when(updateProcessorServiceMock.findControllers(any(), eq("idComponent"), eq(false))).thenReturn(Collections.singletonList(
+                new UpdateProcessorService.ControllerToUpdate(configuration, controllerService, Collections.emptyList())));
+
+        DeploymentPlan plan = planService.planUpdate(branch, getClass().getClassLoader().getResource("mytestDiff.json").getPath(), false, false);
+
+        assertEquals(Arrays.asList(STOP, STOP, UPDATE, UPDATE, STOP, DISABLE, DISABLE, UPDATE, ENABLE, ENABLE, START, START, START, START),
+                plan.getOperations().stream().map(DeploymentPlan.Operation::getType).collect(Collectors.toList()));
+        assertEquals(PlanService.DEFAULT_LATENCY, plan.getLatency());
+        //the processor running is down from the stop of the branch to the start of the processors of the controller
+        Map<String, Long> downtime = plan.getDowntime(100, 50);
+        assertEquals(new HashSet<>(Arrays.asList("processor nameProc (idProc)", "controller nameCtrl (idCtrl)")), downtime.keySet());
+        assertTrue(downtime.get("processor nameProc (idProc)") > downtime.get("controller nameCtrl (idCtrl)"));
+        assertEquals(plan.getOperations().size() + 4, plan.format(100, 50).size());
+        //nothing is written
+        verify(processGroupServiceMock, never()).stop(any());
+        verify(processGroupServiceMock, never()).start(any());
+        verifyZeroInteractions(processorServiceMock, controllerServicesServiceMock);
+        verify(flowapiMock, never()).generateClientId();
+    }
+
+    @Test
+    public void planUpdateDiffTest() throws ApiException, IOException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        ProcessGroupFlowEntity response = createBranch();
+        response.getProcessGroupFlow().getFlow().getProcessors().forEach(processor -> {
+            processor.getComponent().getConfig().setProperties(new HashMap<>());
+            processor.getComponent().getConfig().getProperties().put("Input Directory", "/tmp");
+        });
+        response.getProcessGroupFlow().getFlow().getProcessors().get(0).getComponent().getConfig().setSchedulingPeriod("0 sec");
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        when(processorServiceMock.getById("idProc2")).thenReturn(response.getProcessGroupFlow().getFlow().getProcessors().get(1));
+        when(updateProcessorServiceMock.findControllers(any(), eq("idComponent"), eq(true))).thenReturn(Collections.emptyList());
+
+        DeploymentPlan plan = planService.planUpdate(branch, getClass().getClassLoader().getResource("mytestDiff.json").getPath(), false, true);
+
+        //only the processor changed, stopped before the plan, is stopped, updated and started
+        assertEquals(Arrays.asList(STOP, UPDATE, START),
+                plan.getOperations().stream().map(DeploymentPlan.Operation::getType).collect(Collectors.toList()));
+        assertEquals("processor nameProc2 (idProc2)", plan.getOperations().get(1).getDescription());
+        assertTrue(plan.getDowntime(100, 50).isEmpty());
+        verify(processGroupServiceMock, never()).getExecutionPlan(any());
+    }
+
+    @Test
+    public void planUndeployTest() throws ApiException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        ProcessGroupFlowEntity response = createBranch();
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        TemplatesEntity templates = new TemplatesEntity();
+        TemplateEntity template = new TemplateEntity();
+        template.setTemplate(new TemplateDTO());
+        template.getTemplate().setName("nameTemplate");
+        template.getTemplate().setGroupId("idComponent");
+        templates.getTemplates().add(template);
+        when(flowapiMock.getTemplates()).thenReturn(templates);
+        ControllerServicesEntity controllerServicesEntity = new ControllerServicesEntity();
+        ControllerServiceEntity controllerService = createController();
+        controllerService.getComponent().setParentGroupId("idComponent");
+        controllerServicesEntity.getControllerServices().add(controllerService);
+        when(flowapiMock.getControllerServicesFromGroup("idComponent")).thenReturn(controllerServicesEntity);
+        when(accessServiceMock.getRequestCount()).thenReturn(10L, 14L);
+
+        DeploymentPlan plan = planService.planUndeploy(branch);
+
+        assertEquals(Arrays.asList(STOP, STOP, DELETE, STOP, DISABLE, DISABLE, DELETE),
+                plan.getOperations().stream().map(DeploymentPlan.Operation::getType).collect(Collectors.toList()));
+        assertEquals(4, plan.getReadRequests());
+        Map<String, Long> downtime = plan.getDowntime(100, 50);
+        assertNull(downtime.get("processor nameProc (idProc)"));
+        assertNull(downtime.get("controller nameCtrl (idCtrl)"));
+        assertFalse(downtime.containsKey("processor nameProc2 (idProc2)"));
+        verify(processGroupServiceMock, never()).delete(any());
+    }
+
+    @Test
+    public void planDeployTest() throws ApiException, IOException {
+        List<String> branch = Arrays.asList("root", "elt1", "elt2");
+        ProcessGroupFlowEntity root = TestUtils.createProcessGroupFlowEntity("root", "root");
+        root.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idElt1", "elt1"));
+        when(processGroupServiceMock.getFlow("root")).thenReturn(root);
+        when(processGroupServiceMock.getFlow("idElt1")).thenReturn(TestUtils.createProcessGroupFlowEntity("idElt1", "elt1"));
+        when(flowapiMock.getTemplates()).thenReturn(new TemplatesEntity());
+
+        DeploymentPlan plan = planService.planDeploy(branch, getClass().getClassLoader().getResource("mytest1.json").getPath(), false);
+
+        assertEquals(Arrays.asList(CREATE, CREATE, CREATE, DELETE),
+                plan.getOperations().stream().map(DeploymentPlan.Operation::getType).collect(Collectors.toList()));
+        assertEquals("process group elt2", plan.getOperations().get(0).getDescription());
+        assertTrue(plan.getDowntime(100, 50).isEmpty());
+        verify(processGroupServiceMock, never()).createDirectory(any());
+    }
+}
@@ -1,6 +1,10 @@
 package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.Main;
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.model.ExecutionPlan;
+import com.github.hermannpencole.nifi.config.model.FlowIndex;
+import com.github.hermannpencole.nifi.config.utils.Backoff;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.ProcessGroupsApi;
@@ -9,9 +13,11 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.name.Names;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -40,9 +46,23 @@ public class ProcessGroupServiceTest {
     @Mock
     private ConnectionService connectionServiceMock;
 
+    @Mock
+    private StatusService statusServiceMock;
+
+    @Mock
+    private PortService portServiceMock;
+
     @InjectMocks
     private ProcessGroupService processGroupService;
 
+    @Before
+    public void init() {
+        processGroupService.concurrency = 4;
+        processGroupService.bulkSchedule = false;
+        processGroupService.backoff = new Backoff(1, 10);
+        processGroupService.timeout = 10;
+    }
+
     @Test
     public void changeDirectoryNotExitingTest() throws ApiException, IOException, URISyntaxException {
         List<String> branch = Arrays.asList("root", "elt2");
@@ -72,6 +92,50 @@ public class ProcessGroupServiceTest {
         assertEquals("idElt1", response.get().getProcessGroupFlow().getId());
     }
 
+    @Test
+    public void getFlowCacheTest() throws ApiException, IOException, URISyntaxException {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("idRoot", "root");
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc","nameProc") );
+        when(flowApiMock.getFlow("root")).thenReturn(responseRoot);
+        when(flowApiMock.getFlow("idRoot")).thenReturn(responseRoot);
+
+        assertEquals(responseRoot, processGroupService.getFlow("root"));
+        assertEquals(responseRoot, processGroupService.getFlow("idRoot"));
+        assertEquals(1, processGroupService.getFlowCacheMisses());
+        assertEquals(1, processGroupService.getFlowCacheHits());
+
+        //invalidation of the group and the alias
+        processGroupService.invalidateFlow("idRoot");
+        processGroupService.getFlow("root");
+        assertEquals(2, processGroupService.getFlowCacheMisses());
+        verify(flowApiMock, times(2)).getFlow("root");
+        verify(flowApiMock, never()).getFlow("idRoot");
+    }
+
+    @Test
+    public void getFlowIndexTest() throws ApiException, IOException, URISyntaxException {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("idRoot", "root");
+        responseRoot.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idChild", "child"));
+        responseRoot.getProcessGroupFlow().getFlow().getProcessors().add(TestUtils.createProcessorEntity("1", "name1"));
+        responseRoot.getProcessGroupFlow().getFlow().getConnections().add(TestUtils.createConnectionEntity("idCnx1", "1", "2"));
+        ProcessGroupFlowEntity responseChild = TestUtils.createProcessGroupFlowEntity("idChild", "child");
+        responseChild.getProcessGroupFlow().getFlow().getProcessors().add(TestUtils.createProcessorEntity("2", "name2"));
+        when(flowApiMock.getFlow("idChild")).thenReturn(responseChild, TestUtils.createProcessGroupFlowEntity("idChild", "child"));
+
+        FlowIndex flowIndex = processGroupService.getFlowIndex(responseRoot.getProcessGroupFlow());
+        assertEquals("2", ((ProcessorEntity) flowIndex.findById("2").get()).getId());
+        assertFalse(flowIndex.findById("3").isPresent());
+        assertEquals("idCnx1", flowIndex.getOutgoing("1").get(0).getId());
+        assertEquals("idCnx1", flowIndex.getIncoming("2").get(0).getId());
+        assertTrue(flowIndex.getIncoming("1").isEmpty());
+        //same snapshots : same index
+        assertSame(flowIndex, processGroupService.getFlowIndex(responseRoot.getProcessGroupFlow()));
+        //new snapshot of the child : new index
+        processGroupService.invalidateFlow("idChild");
+        assertNotSame(flowIndex, processGroupService.getFlowIndex(responseRoot.getProcessGroupFlow()));
+    }
+
     @Test
     public void createDirectoryNotExitingTest() throws ApiException, IOException, URISyntaxException {
         List<String> branch = Arrays.asList("root", "elt2");
@@ -95,6 +159,8 @@ public class ProcessGroupServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(4);
+                bind(Boolean.class).annotatedWith(Names.named("bulkSchedule")).toInstance(true);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(Main.createPosition("0,0"));
             }
         });
@@ -138,11 +204,138 @@ public class ProcessGroupServiceTest {
                 .getProcessors().add(TestUtils.createProcessorEntity("idProc","nameProc") );
         responseRoot.getProcessGroupFlow().getFlow()
                 .getProcessors().add(TestUtils.createProcessorEntity("idProc2","nameProc2") );
+        when(processorServiceMock.updateState(any(), any())).thenReturn(true);
         processGroupService.start(responseRoot);
         ArgumentCaptor<ProcessorEntity> processorCapture = ArgumentCaptor.forClass(ProcessorEntity.class);
-        verify(processorServiceMock, times(2)).setState(processorCapture.capture(), eq(ProcessorDTO.StateEnum.RUNNING));
+        verify(processorServiceMock, times(2)).updateState(processorCapture.capture(), eq(ProcessorDTO.StateEnum.RUNNING));
         assertEquals("idProc2", processorCapture.getAllValues().get(0).getId());
         assertEquals("idProc", processorCapture.getAllValues().get(1).getId());
+        verify(statusServiceMock).waitRunning("root", Collections.singletonList("idProc2"));
+        verify(statusServiceMock).waitRunning("root", Collections.singletonList("idProc"));
+    }
+
+    //    root : 1 -> in
+    //    child : in -> 3 -> 4 -> 3 (cycle), 4 -> out
+    //    root : out -> 2
+    private ProcessGroupFlowEntity createBranchWithChild() {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        FlowDTO root = responseRoot.getProcessGroupFlow().getFlow();
+        root.getProcessGroups().add(TestUtils.createProcessGroupEntity("idChild", "child"));
+        root.getProcessors().add(TestUtils.createProcessorEntity("1", "name1"));
+        root.getProcessors().add(TestUtils.createProcessorEntity("2", "name2"));
+        root.getConnections().add(TestUtils.createConnectionEntity("idCnx1", "1", "in"));
+        root.getConnections().add(TestUtils.createConnectionEntity("idCnx2", "out", "2"));
+        ProcessGroupFlowEntity responseChild = TestUtils.createProcessGroupFlowEntity("idChild", "child");
+        FlowDTO child = responseChild.getProcessGroupFlow().getFlow();
+        child.getInputPorts().add(TestUtils.createPortEntity("in", "in", PortDTO.TypeEnum.INPUT_PORT));
+        child.getOutputPorts().add(TestUtils.createPortEntity("out", "out", PortDTO.TypeEnum.OUTPUT_PORT));
+        child.getProcessors().add(TestUtils.createProcessorEntity("3", "name3"));
+        child.getProcessors().add(TestUtils.createProcessorEntity("4", "name4"));
+        child.getConnections().add(TestUtils.createConnectionEntity("idCnx3", "in", "3"));
+        child.getConnections().add(TestUtils.createConnectionEntity("idCnx4", "3", "4"));
+        child.getConnections().add(TestUtils.createConnectionEntity("idCnx5", "4", "3"));
+        child.getConnections().add(TestUtils.createConnectionEntity("idCnx6", "4", "out"));
+        when(flowApiMock.getFlow("idChild")).thenReturn(responseChild);
+        return responseRoot;
+    }
+
+    private static List<String> getIds(Set<?> wave) {
+        List<String> ids = new ArrayList<>();
+        for (Object component : wave) {
+            ids.add(component instanceof ProcessorEntity ? ((ProcessorEntity) component).getId() : ((PortEntity) component).getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void getExecutionPlanTest() throws ApiException, IOException, URISyntaxException {
+        ExecutionPlan plan = processGroupService.getExecutionPlan(createBranchWithChild().getProcessGroupFlow());
+        List<Set<?>> waves = plan.getWaves();
+        assertEquals(5, waves.size());
+        assertEquals(Collections.singletonList("1"), getIds(waves.get(0)));
+        assertEquals(Collections.singletonList("in"), getIds(waves.get(1)));
+        assertEquals(Arrays.asList("3", "4"), getIds(waves.get(2)));
+        assertEquals(Collections.singletonList("out"), getIds(waves.get(3)));
+        assertEquals(Collections.singletonList("2"), getIds(waves.get(4)));
+        assertTrue(plan.getIncoming(0).isEmpty());
+        assertEquals(3, plan.getIncoming(2).size());
+    }
+
+    @Test
+    public void stopBranchWithChildTest() throws ApiException, IOException, URISyntaxException {
+        when(processorServiceMock.updateState(any(), any())).thenReturn(true);
+        processGroupService.stop(createBranchWithChild());
+        ArgumentCaptor<ProcessorEntity> processorCapture = ArgumentCaptor.forClass(ProcessorEntity.class);
+        verify(processorServiceMock, times(4)).updateState(processorCapture.capture(), eq(ProcessorDTO.StateEnum.STOPPED));
+        assertEquals("1", processorCapture.getAllValues().get(0).getId());
+        assertEquals("2", processorCapture.getAllValues().get(3).getId());
+        verify(statusServiceMock).waitStopped("root", Arrays.asList("3", "4"));
+        verify(portServiceMock, times(2)).setState(any(), eq(PortDTO.StateEnum.STOPPED));
+        verify(connectionServiceMock, times(4)).waitEmptyQueues(eq("root"), any());
+        verify(flowApiMock).scheduleComponents(eq("root"), any());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void stopWaveErrorTest() throws ApiException, IOException, URISyntaxException {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        for (int i = 0; i < 10; i++) {
+            responseRoot.getProcessGroupFlow().getFlow()
+                    .getProcessors().add(TestUtils.createProcessorEntity("idProc" + i, "nameProc" + i));
+        }
+        when(processorServiceMock.updateState(any(), any())).thenReturn(true);
+        when(processorServiceMock.updateState(argThat(new ArgumentMatcher<ProcessorEntity>() {
+            @Override
+            public boolean matches(Object argument) {
+                return argument != null && "idProc5".equals(((ProcessorEntity) argument).getId());
+            }
+        }), any())).thenThrow(new ConfigException("error"));
+        try {
+            processGroupService.stop(responseRoot);
+        } finally {
+            //all the wave is asked and the group is restarted
+            verify(processorServiceMock, times(10)).updateState(any(), eq(ProcessorDTO.StateEnum.STOPPED));
+            verify(statusServiceMock, never()).waitStopped(any(), any());
+            ScheduleComponentsEntity body = new ScheduleComponentsEntity();
+            body.setId("root");
+            body.setState(ScheduleComponentsEntity.StateEnum.RUNNING);
+            body.setComponents(null);
+            verify(flowApiMock).scheduleComponents("root", body);
+        }
+    }
+
+    @Test
+    public void startBulkScheduleTest() throws ApiException, IOException, URISyntaxException {
+        processGroupService.bulkSchedule = true;
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        responseRoot.getProcessGroupFlow().getFlow().getConnections().add(TestUtils.createConnectionEntity("idCnx", "idProc","idProc2"));
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc","nameProc") );
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc2","nameProc2") );
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc3","nameProc3") );
+        when(processorServiceMock.needWait(any(), any())).thenReturn(true);
+        when(processorServiceMock.needUpdate(any(), any())).thenReturn(true);
+        //idProc3 is stopping : only waited
+        when(processorServiceMock.needUpdate(argThat(new ArgumentMatcher<ProcessorEntity>() {
+            @Override
+            public boolean matches(Object argument) {
+                return argument != null && "idProc3".equals(((ProcessorEntity) argument).getId());
+            }
+        }), any())).thenReturn(false);
+        processGroupService.start(responseRoot);
+
+        ArgumentCaptor<ScheduleComponentsEntity> bodyCapture = ArgumentCaptor.forClass(ScheduleComponentsEntity.class);
+        verify(flowApiMock, times(3)).scheduleComponents(eq("root"), bodyCapture.capture());
+        //the sinks first then the sources, then the whole group
+        assertEquals(Collections.singleton("idProc2"), bodyCapture.getAllValues().get(0).getComponents().keySet());
+        assertEquals(100L, bodyCapture.getAllValues().get(0).getComponents().get("idProc2").getVersion().longValue());
+        assertEquals(Collections.singleton("idProc"), bodyCapture.getAllValues().get(1).getComponents().keySet());
+        assertEquals(ScheduleComponentsEntity.StateEnum.RUNNING, bodyCapture.getAllValues().get(1).getState());
+        assertNull(bodyCapture.getAllValues().get(2).getComponents());
+        verify(statusServiceMock).waitRunning("root", Collections.singletonList("idProc2"));
+        verify(statusServiceMock).waitRunning("root", Arrays.asList("idProc", "idProc3"));
+        verify(processorServiceMock, never()).updateState(any(), any());
     }
 
     @Test
@@ -155,18 +348,41 @@ public class ProcessGroupServiceTest {
                 .getProcessors().add(TestUtils.createProcessorEntity("idProc","nameProc") );
         responseRoot.getProcessGroupFlow().getFlow()
                 .getProcessors().add(TestUtils.createProcessorEntity("idProc2","nameProc2") );
-        when(connectionServiceMock.isEmptyQueue(any())).thenReturn(false).thenReturn(true);
+        when(processorServiceMock.updateState(any(), any())).thenReturn(true);
         processGroupService.stop(responseRoot);
         ArgumentCaptor<ProcessorEntity> processorCapture = ArgumentCaptor.forClass(ProcessorEntity.class);
-        verify(processorServiceMock, times(2)).setState(processorCapture.capture(), eq(ProcessorDTO.StateEnum.STOPPED));
+        verify(processorServiceMock, times(2)).updateState(processorCapture.capture(), eq(ProcessorDTO.StateEnum.STOPPED));
         assertEquals("idProc", processorCapture.getAllValues().get(0).getId());
         assertEquals("idProc2", processorCapture.getAllValues().get(1).getId());
-        ArgumentCaptor<ConnectionEntity> connectionCapture = ArgumentCaptor.forClass(ConnectionEntity.class);
-        verify(connectionServiceMock).waitEmptyQueue(connectionCapture.capture());
-        assertEquals("idProc", connectionCapture.getValue().getSourceId());
+        verify(statusServiceMock).waitStopped("root", Collections.singletonList("idProc"));
+        verify(statusServiceMock).waitStopped("root", Collections.singletonList("idProc2"));
+        ArgumentCaptor<Collection> connectionCapture = ArgumentCaptor.forClass(Collection.class);
+        verify(connectionServiceMock).waitEmptyQueues(eq("root"), connectionCapture.capture());
+        assertEquals(1, connectionCapture.getValue().size());
+        assertEquals("idProc", ((ConnectionEntity) connectionCapture.getValue().iterator().next()).getSourceId());
 
     }
 
+    @Test
+    public void stopRemoteProcessGroupTest() throws ApiException, IOException, URISyntaxException {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        responseRoot.getProcessGroupFlow().getFlow().getConnections().add(TestUtils.createConnectionEntity("idCnx", "idProc","idRpg"));
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc","nameProc") );
+        RemoteProcessGroupEntity remoteProcessGroup = new RemoteProcessGroupEntity();
+        remoteProcessGroup.setId("idRpg");
+        remoteProcessGroup.setComponent(new RemoteProcessGroupDTO());
+        remoteProcessGroup.getComponent().setName("nameRpg");
+        responseRoot.getProcessGroupFlow().getFlow().getRemoteProcessGroups().add(remoteProcessGroup);
+        when(processorServiceMock.updateState(any(), any())).thenReturn(true);
+        processGroupService.stop(responseRoot);
+        //the remote process group is skipped
+        verify(processorServiceMock, times(1)).updateState(any(), eq(ProcessorDTO.StateEnum.STOPPED));
+        verify(statusServiceMock, times(1)).waitStopped(eq("root"), any());
+        verify(statusServiceMock).waitStopped("root", Collections.singletonList("idProc"));
+        verify(flowApiMock, times(1)).scheduleComponents(eq("root"), any());
+    }
+
     @Test
 //    1 - 2
 //    2 - 7
@@ -285,6 +501,8 @@ public class ProcessGroupServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(4);
+                bind(Boolean.class).annotatedWith(Names.named("bulkSchedule")).toInstance(true);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(Main.createPosition("0,0"));
             }
         });
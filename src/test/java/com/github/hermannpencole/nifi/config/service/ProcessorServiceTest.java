@@ -72,6 +72,8 @@ public class ProcessorServiceTest {
         verify(processorsApiMock).updateProcessor(eq("id"), processorEntity.capture());
         assertEquals("id", processorEntity.getValue().getComponent().getId());
         assertEquals( ProcessorDTO.StateEnum.RUNNING, processorEntity.getValue().getComponent().getState());
+        //the processor of the snapshot is not modified
+        assertEquals(ProcessorDTO.StateEnum.STOPPED, processor.getComponent().getState());
     }
 
     @Test(expected = ConfigException.class)
@@ -0,0 +1,92 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.model.RevisionDTO;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * tests for RevisionTracker
+ */
+public class RevisionTrackerTest {
+
+    @Test
+    public void getRevisionTest() {
+        RevisionTracker revisionTracker = new RevisionTracker();
+        assertNull(revisionTracker.getRevision("id", null));
+        assertEquals(Long.valueOf(5), revisionTracker.getRevision("id", TestUtils.createRevision(5L)).getVersion());
+        revisionTracker.setRevision("id", TestUtils.createRevision(7L));
+        //the most recent wins
+        assertEquals(Long.valueOf(7), revisionTracker.getRevision("id", TestUtils.createRevision(5L)).getVersion());
+        assertEquals(Long.valueOf(9), revisionTracker.getRevision("id", TestUtils.createRevision(9L)).getVersion());
+        revisionTracker.setRevision("id", TestUtils.createRevision(6L));
+        assertEquals(Long.valueOf(7), revisionTracker.getRevision("id", null).getVersion());
+        revisionTracker.remove("id");
+        assertNull(revisionTracker.getRevision("id", null));
+    }
+
+    @Test
+    public void writeConflictRetryTest() {
+        RevisionTracker revisionTracker = new RevisionTracker();
+        AtomicInteger refresh = new AtomicInteger();
+        RevisionDTO result = revisionTracker.write("id", TestUtils.createRevision(1L), revision -> {
+            if (revision.getVersion() < 3) {
+                throw new ApiException("Bad Request", 400, null, "[1, null, id] is not the most up-to-date revision. This component appears to have been modified");
+            }
+            return TestUtils.createRevision(revision.getVersion() + 1);
+        }, revision -> revision, () -> TestUtils.createRevision(1L + refresh.incrementAndGet()));
+        assertEquals(Long.valueOf(4), result.getVersion());
+        assertEquals(2, refresh.get());
+        assertEquals(2, revisionTracker.getConflicts());
+        assertEquals(Long.valueOf(4), revisionTracker.getRevision("id", null).getVersion());
+    }
+
+    @Test
+    public void writeConflictBoundedTest() {
+        RevisionTracker revisionTracker = new RevisionTracker();
+        AtomicInteger writes = new AtomicInteger();
+        try {
+            revisionTracker.<RevisionDTO>write("id", TestUtils.createRevision(1L), revision -> {
+                writes.incrementAndGet();
+                throw new ApiException("Bad Request", 400, null, "[1, null, id] is not the most up-to-date revision. This component appears to have been modified");
+            }, revision -> revision, () -> TestUtils.createRevision(1L));
+            fail();
+        } catch (ApiException e) {
+            assertEquals(400, e.getCode());
+        }
+        assertEquals(RevisionTracker.MAX_RETRIES + 1, writes.get());
+    }
+
+    @Test
+    public void writeStateErrorNotRetriedTest() {
+        RevisionTracker revisionTracker = new RevisionTracker();
+        AtomicInteger writes = new AtomicInteger();
+        try {
+            revisionTracker.<RevisionDTO>write("id", TestUtils.createRevision(1L), revision -> {
+                writes.incrementAndGet();
+                throw new ApiException("Conflict", 409, null, "id is not stopped. Current state is STOPPING");
+            }, revision -> revision, () -> {
+                fail();
+                return null;
+            });
+            fail();
+        } catch (ApiException e) {
+            assertEquals(409, e.getCode());
+        }
+        assertEquals(1, writes.get());
+        assertEquals(0, revisionTracker.getConflicts());
+    }
+
+    @Test(expected = ApiException.class)
+    public void writeErrorNotRetriedTest() {
+        new RevisionTracker().<RevisionDTO>write("id", TestUtils.createRevision(1L), revision -> {
+            throw new ApiException(400, "invalid");
+        }, revision -> revision, () -> {
+            fail();
+            return null;
+        });
+    }
+}
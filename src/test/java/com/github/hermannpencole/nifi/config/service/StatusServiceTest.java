@@ -0,0 +1,122 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.GroupStatusEntity;
+import com.github.hermannpencole.nifi.config.model.StatusSnapshot;
+import com.github.hermannpencole.nifi.config.model.TimeoutException;
+import com.github.hermannpencole.nifi.swagger.ApiClient;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.ApiResponse;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * API tests for StatusService
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class StatusServiceTest {
+
+    @Mock
+    private FlowApi flowApiMock;
+
+    @Mock
+    private ApiClient apiClientMock;
+
+    private StatusService createStatusService() throws ApiException {
+        when(flowApiMock.getApiClient()).thenReturn(apiClientMock);
+        when(apiClientMock.escapeString(anyString())).thenAnswer(invocation -> invocation.getArguments()[0]);
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(FlowApi.class).toInstance(flowApiMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+            }
+        });
+        return injector.getInstance(StatusService.class);
+    }
+
+    private static ApiResponse<GroupStatusEntity> createStatus(String queuedCount, String runStatus, int activeThreadCount) {
+        GroupStatusEntity.Component processor = new GroupStatusEntity.Component();
+        processor.setRunStatus(runStatus);
+        processor.setActiveThreadCount(activeThreadCount);
+        GroupStatusEntity.ComponentEntity processorEntity = new GroupStatusEntity.ComponentEntity();
+        processorEntity.setId("idProc");
+        processorEntity.setProcessorStatusSnapshot(processor);
+
+        GroupStatusEntity.Component connection = new GroupStatusEntity.Component();
+        connection.setQueuedCount(queuedCount);
+        GroupStatusEntity.ComponentEntity connectionEntity = new GroupStatusEntity.ComponentEntity();
+        connectionEntity.setId("idCnx");
+        connectionEntity.setConnectionStatusSnapshot(connection);
+
+        //the components are in a child group
+        GroupStatusEntity.Snapshot child = new GroupStatusEntity.Snapshot();
+        child.getProcessorStatusSnapshots().add(processorEntity);
+        child.getConnectionStatusSnapshots().add(connectionEntity);
+        GroupStatusEntity.ChildEntity childEntity = new GroupStatusEntity.ChildEntity();
+        childEntity.setId("idChild");
+        childEntity.setProcessGroupStatusSnapshot(child);
+
+        GroupStatusEntity status = new GroupStatusEntity();
+        status.setProcessGroupStatus(new GroupStatusEntity.Status());
+        status.getProcessGroupStatus().setAggregateSnapshot(new GroupStatusEntity.Snapshot());
+        status.getProcessGroupStatus().getAggregateSnapshot().getProcessGroupStatusSnapshots().add(childEntity);
+        return new ApiResponse<>(200, new HashMap<>(), status);
+    }
+
+    @Test
+    public void getStatusTest() throws ApiException {
+        when(apiClientMock.<GroupStatusEntity>execute(any(), eq(GroupStatusEntity.class)))
+                .thenReturn(createStatus("5", "Stopped", 1));
+        StatusSnapshot status = createStatusService().getStatus("root");
+        assertFalse(status.isEmptyQueue("idCnx"));
+        assertFalse(status.isStopped("idProc"));
+        assertTrue(status.hasActiveThreads("idProc"));
+        //a component missing in the status is not ready
+        assertFalse(status.isEmptyQueue("unknown"));
+        assertFalse(status.isStopped("unknown"));
+        assertFalse(status.isRunning("unknown"));
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void waitStoppedMissingTest() throws ApiException {
+        when(apiClientMock.<GroupStatusEntity>execute(any(), eq(GroupStatusEntity.class)))
+                .thenReturn(new ApiResponse<>(200, new HashMap<>(), new GroupStatusEntity()));
+        createStatusService().waitStopped("root", Arrays.asList("idProc"));
+    }
+
+    @Test
+    public void waitStoppedTest() throws ApiException {
+        when(apiClientMock.<GroupStatusEntity>execute(any(), eq(GroupStatusEntity.class)))
+                .thenReturn(createStatus("5", "Stopped", 1))
+                .thenReturn(createStatus("0", "Stopped", 0));
+        StatusService statusService = createStatusService();
+        statusService.timeout = 10;
+        statusService.waitStopped("root", Arrays.asList("idProc"));
+        statusService.waitEmptyQueues("root", Arrays.asList("idCnx"));
+        //one status for the first wait (not stopped) + one for the stop + one for the queue
+        verify(apiClientMock, times(3)).execute(any(), eq(GroupStatusEntity.class));
+        verify(apiClientMock, times(3)).buildCall(eq("/flow/process-groups/root/status"), eq("GET"), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void waitRunningTimeoutTest() throws ApiException {
+        when(apiClientMock.<GroupStatusEntity>execute(any(), eq(GroupStatusEntity.class)))
+                .thenReturn(createStatus("0", "Stopped", 0));
+        createStatusService().waitRunning("root", Arrays.asList("idProc"));
+    }
+
+}
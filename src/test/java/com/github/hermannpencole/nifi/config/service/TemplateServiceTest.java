@@ -140,6 +140,8 @@ public class TemplateServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
+                bind(Integer.class).annotatedWith(Names.named("concurrency")).toInstance(4);
+                bind(Boolean.class).annotatedWith(Names.named("bulkSchedule")).toInstance(true);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
             }
         });
@@ -57,6 +57,19 @@ public class TestUtils {
         return proc;
     }
 
+    public static PortEntity createPortEntity(String id, String name, PortDTO.TypeEnum type) {
+        PortEntity port = new PortEntity();
+        port.setId(id);
+        PortDTO portDTO = new PortDTO();
+        portDTO.setName(name);
+        portDTO.setId(id);
+        portDTO.setType(type);
+        portDTO.setState(PortDTO.StateEnum.STOPPED);
+        port.setComponent(portDTO);
+        port.setRevision(createRevision(10L));
+        return port;
+    }
+
     public static ConnectionEntity createConnectionEntity(String id, String sourceId, String destinationId) {
         ConnectionEntity connectionEntity = new ConnectionEntity();
         connectionEntity.setId(id);
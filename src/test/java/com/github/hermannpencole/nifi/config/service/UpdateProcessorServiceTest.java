@@ -8,18 +8,25 @@ import com.github.hermannpencole.nifi.swagger.client.model.*;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 /**
  * API tests for AccessApi
@@ -41,6 +48,12 @@ public class UpdateProcessorServiceTest {
     @Mock
     private CreateRouteService createRouteServiceMock;
 
+    @Mock
+    private ProcessorService processorServiceMock;
+
+    @Spy
+    private RevisionTracker revisionTracker = new RevisionTracker();
+
     @InjectMocks
     private UpdateProcessorService updateProcessorService;
 
@@ -60,12 +73,12 @@ public class UpdateProcessorServiceTest {
                 .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubGroup", "nameSubGroup"));
 
         when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
-        when(flowapiMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
+        when(processGroupServiceMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
 
         ProcessGroupFlowEntity subGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubGroup", "nameSubGroup");
         subGroupResponse.getProcessGroupFlow().getFlow()
                 .getProcessors().add(TestUtils.createProcessorEntity("idProc2", "nameProc2"));
-        when(flowapiMock.getFlow(subGroupResponse.getProcessGroupFlow().getId())).thenReturn(subGroupResponse);
+        when(processGroupServiceMock.getFlow(subGroupResponse.getProcessGroupFlow().getId())).thenReturn(subGroupResponse);
 
         updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytest1.json").getPath(), false);
 
@@ -86,7 +99,7 @@ public class UpdateProcessorServiceTest {
         response.getProcessGroupFlow().getFlow().getProcessors().add(proc);
 
         when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
-        when(flowapiMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
+        when(processGroupServiceMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
 
         updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytestAutoTerminateRelationShip.json").getPath(), false);
 
@@ -95,6 +108,9 @@ public class UpdateProcessorServiceTest {
         verify(processorsApiMock).updateProcessor(eq("idProc"), processorEntity.capture());
         assertEquals(1, processorEntity.getValue().getComponent().getConfig().getAutoTerminatedRelationships().size());
         assertEquals("testRelation", processorEntity.getValue().getComponent().getConfig().getAutoTerminatedRelationships().get(0));
+        //the processor of the snapshot is not modified
+        assertNotSame(proc, processorEntity.getValue());
+        assertNotSame(proc.getComponent(), processorEntity.getValue().getComponent());
     }
 
     @Test
@@ -103,11 +119,12 @@ public class UpdateProcessorServiceTest {
         ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
 
         when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
-        when(flowapiMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
+        when(processGroupServiceMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
         ControllerServicesEntity controllerServicesEntity = new ControllerServicesEntity();
         controllerServicesEntity.getControllerServices().add(TestUtils.createControllerServiceEntity("idCtrl", "nameCtrl"));
         when(flowapiMock.getControllerServicesFromGroup("idComponent")).thenReturn(controllerServicesEntity);
-        when(controllerServicesServiceMock.setStateControllerService(any(), any())).thenReturn(controllerServicesEntity.getControllerServices().get(0));
+        when(controllerServicesServiceMock.setStateControllerServices(any(), any()))
+                .thenReturn(Collections.singletonMap("idCtrl", controllerServicesEntity.getControllerServices().get(0)));
         when(controllerServicesServiceMock.updateControllerService(any(), any(), eq(false))).thenReturn(controllerServicesEntity.getControllerServices().get(0));
 
         updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytestController.json").getPath(), false);
@@ -119,6 +136,135 @@ public class UpdateProcessorServiceTest {
         assertEquals(2, controllerServiceDTO.getValue().getProperties().size());
     }
 
+    @Test
+    public void updateBranchNameFirstTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+        response.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc", "nameProc"));
+        response.getProcessGroupFlow().getFlow()
+                .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubGroup", "nameSubGroup"));
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        when(processGroupServiceMock.getFlow("idComponent")).thenReturn(response);
+
+        ProcessGroupFlowEntity subGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubGroup", "nameSubGroup");
+        subGroupResponse.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc2", "nameProc2"));
+        subGroupResponse.getProcessGroupFlow().getFlow()
+                .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubSubGroup", "nameSubSubGroup"));
+        when(processGroupServiceMock.getFlow("idSubGroup")).thenReturn(subGroupResponse);
+
+        ProcessGroupFlowEntity subSubGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubSubGroup", "nameSubSubGroup");
+        subSubGroupResponse.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc3", "nameProc3"));
+        when(processGroupServiceMock.getFlow("idSubSubGroup")).thenReturn(subSubGroupResponse);
+
+        updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytestNameFirst.json").getPath(), true);
+
+        //the processors are updated in the order of the file
+        InOrder inOrder = inOrder(processorsApiMock);
+        inOrder.verify(processorsApiMock).updateProcessor(eq("idProc"), any());
+        inOrder.verify(processorsApiMock).updateProcessor(eq("idProc2"), any());
+        inOrder.verify(processorsApiMock).updateProcessor(eq("idProc3"), any());
+        verify(createRouteServiceMock).createRoutes(eq(Collections.emptyList()), eq(true));
+    }
+
+    @Test
+    public void updateInvalidFileTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        try {
+            updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytestInvalid.json").getPath(), false);
+            fail();
+        } catch (IOException e) {
+            //the branch is not stopped for an invalid file
+            verify(processGroupServiceMock, never()).changeDirectory(any());
+            verify(processGroupServiceMock, never()).stop(any());
+        }
+    }
+
+    @Test
+    public void updateBranchDiffTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+        ProcessorEntity proc = TestUtils.createProcessorEntity("idProc", "nameProc");
+        proc.getComponent().getConfig().setProperties(new HashMap<>());
+        proc.getComponent().getConfig().getProperties().put("Input Directory", "/tmp");
+        proc.getComponent().getConfig().getProperties().put("Recurse Subdirectories", "false");
+        proc.getComponent().getConfig().setSchedulingPeriod("0 sec");
+        ProcessorEntity proc2 = TestUtils.createProcessorEntity("idProc2", "nameProc2");
+        proc2.getComponent().getConfig().setProperties(new HashMap<>());
+        proc2.getComponent().getConfig().getProperties().put("Input Directory", "/tmp");
+        proc2.getComponent().setState(ProcessorDTO.StateEnum.RUNNING);
+        response.getProcessGroupFlow().getFlow().getProcessors().add(proc);
+        response.getProcessGroupFlow().getFlow().getProcessors().add(proc2);
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        when(processorServiceMock.getById("idProc2")).thenReturn(proc2);
+
+        ControllerServicesEntity controllerServicesEntity = new ControllerServicesEntity();
+        ControllerServiceEntity controllerService = TestUtils.createControllerServiceEntity("idCtrl", "nameCtrl");
+        controllerService.getComponent().setProperties(new HashMap<>());
+        controllerService.getComponent().getProperties().put("Database Connection URL", "jdbc:h2:mem");
+        controllerServicesEntity.getControllerServices().add(controllerService);
+        when(flowapiMock.getControllerServicesFromGroup("idComponent")).thenReturn(controllerServicesEntity);
+
+        updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytestDiff.json").getPath(), false, true);
+
+        //only the processor changed is stopped, updated and restarted
+        verify(processGroupServiceMock, never()).stop(any());
+        verify(processGroupServiceMock, never()).start(any());
+        verify(processorsApiMock, times(1)).updateProcessor(any(), any());
+        verify(processorsApiMock).updateProcessor(eq("idProc2"), any());
+        verify(processorServiceMock).setState(Collections.singletonList(proc2), ProcessorDTO.StateEnum.STOPPED);
+        verify(processorServiceMock).setState(Collections.singletonList(proc2), ProcessorDTO.StateEnum.RUNNING);
+        //the controller is the same
+        verify(controllerServicesServiceMock, never()).setStateControllerServices(any(), any());
+        verify(controllerServicesServiceMock, never()).updateControllerService(any(), any(), anyBoolean());
+    }
+
+    @Test
+    public void updateBranchDiffControllerTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+        ProcessorEntity proc = TestUtils.createProcessorEntity("idProc", "nameProc");
+        proc.getComponent().getConfig().setProperties(new HashMap<>());
+        proc.getComponent().getConfig().getProperties().put("Input Directory", "/tmp");
+        proc.getComponent().getConfig().setSchedulingPeriod("0 sec");
+        ProcessorEntity proc2 = TestUtils.createProcessorEntity("idProc2", "nameProc2");
+        proc2.getComponent().getConfig().setProperties(new HashMap<>());
+        proc2.getComponent().getConfig().getProperties().put("Input Directory", "/tmp");
+        //the processor changed was stopped
+        proc2.getComponent().setState(ProcessorDTO.StateEnum.STOPPED);
+        response.getProcessGroupFlow().getFlow().getProcessors().add(proc);
+        response.getProcessGroupFlow().getFlow().getProcessors().add(proc2);
+        //a processor running and a processor stopped use the controller
+        ProcessorEntity proc3 = TestUtils.createProcessorEntity("idProc3", "nameProc3");
+        proc3.getComponent().setState(ProcessorDTO.StateEnum.RUNNING);
+        ProcessorEntity proc4 = TestUtils.createProcessorEntity("idProc4", "nameProc4");
+        proc4.getComponent().setState(ProcessorDTO.StateEnum.STOPPED);
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        when(processorServiceMock.getById("idProc2")).thenReturn(proc2);
+        when(processorServiceMock.getById("idProc3")).thenReturn(proc3);
+        when(processorServiceMock.getById("idProc4")).thenReturn(proc4);
+
+        ControllerServicesEntity controllerServicesEntity = new ControllerServicesEntity();
+        ControllerServiceEntity controllerService = TestUtils.createControllerServiceEntity("idCtrl", "nameCtrl");
+        controllerServicesEntity.getControllerServices().add(controllerService);
+        when(flowapiMock.getControllerServicesFromGroup("idComponent")).thenReturn(controllerServicesEntity);
+        when(controllerServicesServiceMock.getReferencingProcessors("idCtrl")).thenReturn(new LinkedHashSet<>(Arrays.asList("idProc3", "idProc4")));
+        when(controllerServicesServiceMock.setStateControllerServices(any(), any())).thenReturn(Collections.singletonMap("idCtrl", controllerService));
+
+        updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytestDiff.json").getPath(), false, true);
+
+        //the processors changed and the processors using the controller are stopped, only the processors running before are restarted
+        verify(processGroupServiceMock, never()).stop(any());
+        verify(processorServiceMock).setState(Arrays.asList(proc2, proc3, proc4), ProcessorDTO.StateEnum.STOPPED);
+        verify(processorServiceMock).setState(Collections.singletonList(proc3), ProcessorDTO.StateEnum.RUNNING);
+        verify(controllerServicesServiceMock).updateControllerService(any(), eq(controllerService), eq(false));
+        verify(controllerServicesServiceMock).setStateControllerServices(Collections.singletonList(controllerService), ControllerServiceDTO.StateEnum.DISABLED);
+        verify(controllerServicesServiceMock).setStateControllerServices(Collections.singletonList(controllerService), ControllerServiceDTO.StateEnum.ENABLED);
+        verify(controllerServicesServiceMock, never()).setStateReferenceProcessors(any(), any());
+    }
+
     @Test(expected = ConfigException.class)
     public void updateErrorBranchTest() throws ApiException, IOException, URISyntaxException {
         List<String> branch = Arrays.asList("root", "elt1");
@@ -129,7 +275,7 @@ public class UpdateProcessorServiceTest {
                 .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubGroup", "nameSubGroup"));
 
         when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
-        when(flowapiMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
+        when(processGroupServiceMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
 
         when(processorsApiMock.updateProcessor(any(), any())).thenThrow(new ApiException());
         updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytest1.json").getPath(), false);
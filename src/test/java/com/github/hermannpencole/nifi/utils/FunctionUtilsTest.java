@@ -2,16 +2,30 @@ package com.github.hermannpencole.nifi.utils;
 
 import com.github.hermannpencole.nifi.config.model.ConfigException;
 import com.github.hermannpencole.nifi.config.model.TimeoutException;
+import com.github.hermannpencole.nifi.config.utils.Backoff;
+import com.github.hermannpencole.nifi.config.utils.CancellableApiClient;
 import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
 import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Request;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
 
 /**
  * API tests for AccessApi
@@ -46,4 +60,85 @@ public class FunctionUtilsTest {
         FunctionUtils.runWhile(() -> { throw new ConfigException("test");}, 1, -1);
         assertEquals(2, this.result);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void pollWhileManyTest() throws ApiException, IOException, URISyntaxException {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < 200; i++) {
+            AtomicInteger calls = new AtomicInteger();
+            futures.add(FunctionUtils.pollWhile(() -> {
+                count.incrementAndGet();
+                return calls.incrementAndGet() < 3;
+            }, 10, 5000, TimeUnit.MILLISECONDS));
+        }
+        FunctionUtils.await(futures);
+        assertEquals(600, count.get());
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void pollWhileTimeoutCancelCallTest() throws ApiException, IOException, URISyntaxException, InterruptedException {
+        //a nifi that accept the connection and never answer
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            CancellableApiClient apiClient = new CancellableApiClient();
+            Call call = apiClient.getHttpClient().newCall(new Request.Builder().url("http://127.0.0.1:" + server.getLocalPort() + "/nifi-api/flow/about").build());
+            CountDownLatch returned = new CountDownLatch(1);
+            CompletableFuture<Void> future = FunctionUtils.pollWhile(() -> {
+                try {
+                    apiClient.execute(call, null);
+                } finally {
+                    returned.countDown();
+                }
+                return true;
+            }, 10, 100, TimeUnit.MILLISECONDS);
+            try {
+                FunctionUtils.await(future);
+            } finally {
+                //the read of the socket stop well before the read timeout of okhttp (10s)
+                assertTrue(returned.await(5, TimeUnit.SECONDS));
+                assertTrue(call.isCanceled());
+            }
+        }
+    }
+
+    @Test
+    public void cancellableOutOfPollTest() {
+        AtomicInteger cancelled = new AtomicInteger();
+        assertEquals("result", FunctionUtils.cancellable(cancelled::incrementAndGet, () -> "result"));
+        assertEquals(0, cancelled.get());
+    }
+
+    @Test
+    public void backoffDelayTest() {
+        Backoff backoff = new Backoff(50, 300);
+        for (int i = 0; i < 100; i++) {
+            long first = backoff.getDelay(0);
+            assertTrue(first >= 40 && first <= 50);
+            long third = backoff.getDelay(2);
+            assertTrue(third >= 160 && third <= 200);
+            long capped = backoff.getDelay(10);
+            assertTrue(capped >= 240 && capped <= 300);
+        }
+        assertEquals(1000, Backoff.fixed(1000).getDelay(5));
+    }
+
+    @Test(expected = ConfigException.class)
+    public void backoffInvalidTest() {
+        new Backoff(500, 100);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void backoffZeroTest() {
+        new Backoff(0, 100);
+    }
+
+    @Test
+    public void runWhileBackoffTest() throws ApiException, IOException, URISyntaxException {
+        this.result = 0;
+        long start = System.nanoTime();
+        //50 + 100 + 200 ms at most, far below the interval of one second
+        FunctionUtils.runWhile(() -> {this.result +=1; return this.result != 4;}, new Backoff(50, 1000), 10);
+        assertEquals(4, this.result);
+        assertFalse(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 1000);
+    }
+}